@@ -0,0 +1,58 @@
+package sketchy.commands;
+
+import sketchy.document.CommandType;
+import sketchy.document.DocumentSnapshot;
+import java.util.function.Consumer;
+
+/**
+ * This is the Batch class. It implements the Command interface. This command is instantiated
+ * when a transaction is committed, and stands for every edit made in the transaction, so that
+ * the whole batch is undone and redone as one. Instead of reversing each edit, it restores the
+ * snapshot of the drawing from before or after the transaction.
+ */
+public class Batch implements Command {
+
+    private DocumentSnapshot before;
+    private DocumentSnapshot after;
+    private Consumer<DocumentSnapshot> restorer;
+
+    /**
+     * This is the Batch constructor. It takes in three parameters: the snapshot of the drawing
+     * before the transaction, the snapshot after it, and the function that puts the drawing back
+     * into the state of a given snapshot.
+     * @param beforeSnapshot
+     * @param afterSnapshot
+     * @param restoreTo
+     */
+    public Batch(DocumentSnapshot beforeSnapshot, DocumentSnapshot afterSnapshot,
+                 Consumer<DocumentSnapshot> restoreTo) {
+        this.before = beforeSnapshot;
+        this.after = afterSnapshot;
+        this.restorer = restoreTo;
+    }
+
+    /**
+     * This undos the transaction by restoring the snapshot from before it.
+     */
+    @Override
+    public void undo() {
+        this.restorer.accept(this.before);
+    }
+
+    /**
+     * This redos the transaction by restoring the snapshot from after it.
+     */
+    @Override
+    public void redo() {
+        this.restorer.accept(this.after);
+    }
+
+    /**
+     * This returns the type of this command, BATCH, since it stands for a batch of edits.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.BATCH;
+    }
+}
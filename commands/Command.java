@@ -1,10 +1,14 @@
 package sketchy.commands;
 
+import sketchy.document.CommandType;
+
 /**
  * This is the Command interface. This interface is implemented by all the commands, since they
- * all need to be able to undo and redo themselves. Both methods have return type void.
+ * all need to be able to undo and redo themselves. Both methods have return type void. Each
+ * command also tells which type of command it is, which is what the mutation stream reports.
  */
 public interface Command {
     void undo();
     void redo();
+    CommandType getType();
 }
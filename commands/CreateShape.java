@@ -1,5 +1,6 @@
 package sketchy.commands;
 
+import sketchy.document.CommandType;
 import sketchy.shapes.Saveable;
 import sketchy.shapes.SketchyShape;
 import java.util.ArrayList;
@@ -50,4 +51,13 @@ public class CreateShape implements Command {
     public void redo() {
         this.shape.add(this.arrayIndex, this.paneIndex, this.shapes, this.saveables);
     }
+
+    /**
+     * This returns the type of this command, CREATE_SHAPE, since it stands for the creation of a shape.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.CREATE_SHAPE;
+    }
 }
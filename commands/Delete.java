@@ -1,5 +1,6 @@
 package sketchy.commands;
 
+import sketchy.document.CommandType;
 import sketchy.shapes.Saveable;
 import sketchy.shapes.SketchyShape;
 
@@ -53,4 +54,13 @@ public class Delete implements Command{
     public void redo() {
         this.shape.delete(this.shapes, this.saveables);
     }
+
+    /**
+     * This returns the type of this command, DELETE, since it stands for a deletion.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.DELETE;
+    }
 }
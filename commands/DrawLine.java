@@ -1,7 +1,9 @@
 package sketchy.commands;
 
+import sketchy.document.CommandType;
 import sketchy.shapes.CurvedLine;
 import sketchy.shapes.Saveable;
+import sketchy.shapes.SketchyShape;
 import java.util.ArrayList;
 
 /**
@@ -11,39 +13,51 @@ import java.util.ArrayList;
 public class DrawLine implements Command{
 
     private CurvedLine line;
+    private int arrayIndex;
     private int indexInPane;
+    private ArrayList<SketchyShape> shapes;
     private ArrayList<Saveable> saveables;
 
     /**
-     * This is the DrawLine constructor. It takes in two parameters: the newly created CurvedLIne,
-     * and the arrayList of Saveables.
+     * This is the DrawLine constructor. It takes in three parameters: the newly created CurvedLIne,
+     * the arrayList of shapes, and the arrayList of Saveables.
      * @param newestCurvedLine
+     * @param shapesArray
      * @param saved
      */
-    public DrawLine(CurvedLine newestCurvedLine, ArrayList<Saveable> saved) {
+    public DrawLine(CurvedLine newestCurvedLine, ArrayList<SketchyShape> shapesArray, ArrayList<Saveable> saved) {
         this.line = newestCurvedLine;
+        this.shapes = shapesArray;
         this.saveables = saved;
+        this.arrayIndex = this.shapes.indexOf(this.line);
         this.indexInPane = this.line.getPaneIndex();
     }
 
     /**
      * This undos the creation of the new CurvedLine. It removes the line from the pane
-     * graphically, and then removes the line from the array of saveables logically.
+     * graphically, and then removes the line from the arrays of shapes and saveables logically.
      */
     @Override
     public void undo() {
-        this.line.removeFromPane();
-        this.saveables.remove(this.line);
+        this.line.delete(this.shapes, this.saveables);
     }
 
     /**
      * This redos the creation of the new CurvedLine. It re-adds the line to the pane
-     * at the specified index, and re-adds the line to the arrayList of
-     * saveables logically at the specified index.
+     * at the specified index, and re-adds the line to the arrayLists of shapes and
+     * saveables logically at the specified indices.
      */
     @Override
     public void redo() {
-        this.line.addToPane(this.indexInPane);
-        this.saveables.add(this.indexInPane, this.line);
+        this.line.add(this.arrayIndex, this.indexInPane, this.shapes, this.saveables);
+    }
+
+    /**
+     * This returns the type of this command, DRAW_LINE, since it stands for the drawing of a line.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.DRAW_LINE;
     }
 }
@@ -1,6 +1,7 @@
 package sketchy.commands;
 
 import javafx.scene.paint.Color;
+import sketchy.document.CommandType;
 import sketchy.shapes.SketchyShape;
 
 /**
@@ -40,4 +41,13 @@ public class Fill implements Command{
     public void redo() {
         this.shape.setColor(this.current);
     }
+
+    /**
+     * This returns the type of this command, FILL, since it stands for a fill.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.FILL;
+    }
 }
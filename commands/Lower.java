@@ -1,5 +1,6 @@
 package sketchy.commands;
 
+import sketchy.document.CommandType;
 import sketchy.shapes.Saveable;
 import sketchy.shapes.SketchyShape;
 
@@ -48,7 +49,7 @@ public class Lower implements Command{
         this.shapes.remove(this.shape);
         this.shapes.add(this.currShape, this.shape);
         this.saveables.remove(this.shape);
-        this.saveables.add(this.currPane, this.shape);
+        this.saveables.add(this.currShape, this.shape);
     }
 
     /**
@@ -62,6 +63,15 @@ public class Lower implements Command{
         this.shapes.remove(this.shape);
         this.shapes.add(this.moveToShape, this.shape);
         this.saveables.remove(this.shape);
-        this.saveables.add(this.moveToPane, this.shape);
+        this.saveables.add(this.moveToShape, this.shape);
+    }
+
+    /**
+     * This returns the type of this command, LOWER, since it stands for a lowering.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.LOWER;
     }
 }
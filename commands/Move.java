@@ -1,6 +1,7 @@
 package sketchy.commands;
 
 import javafx.geometry.Point2D;
+import sketchy.document.CommandType;
 import sketchy.shapes.SketchyShape;
 
 /**
@@ -53,4 +54,13 @@ public class Move implements Command{
     public void redo() {
         this.shape.translate(this.curr, this.prev);
     }
+
+    /**
+     * This returns the type of this command, MOVE, since it stands for a translation.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.MOVE;
+    }
 }
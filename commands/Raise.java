@@ -1,5 +1,6 @@
 package sketchy.commands;
 
+import sketchy.document.CommandType;
 import sketchy.shapes.Saveable;
 import sketchy.shapes.SketchyShape;
 
@@ -47,7 +48,7 @@ public class Raise implements Command {
         this.shapes.remove(this.shape);
         this.shapes.add(this.currShape, this.shape);
         this.saveables.remove(this.shape);
-        this.saveables.add(this.currPane, this.shape);
+        this.saveables.add(this.currShape, this.shape);
     }
 
     /**
@@ -60,6 +61,15 @@ public class Raise implements Command {
         this.shapes.remove(this.shape);
         this.shapes.add(this.moveToShape, this.shape);
         this.saveables.remove(this.shape);
-        this.saveables.add(this.moveToPane, this.shape);
+        this.saveables.add(this.moveToShape, this.shape);
+    }
+
+    /**
+     * This returns the type of this command, RAISE, since it stands for a raising.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.RAISE;
     }
 }
@@ -1,6 +1,7 @@
 package sketchy.commands;
 
 import javafx.geometry.Point2D;
+import sketchy.document.CommandType;
 import sketchy.shapes.SketchyShape;
 
 /**
@@ -63,4 +64,13 @@ public class Resize implements Command{
         this.shape.setHeight(this.currHeight);
         this.shape.setCenter(this.currCenter);
     }
+
+    /**
+     * This returns the type of this command, RESIZE, since it stands for a resizing.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.RESIZE;
+    }
 }
@@ -1,5 +1,6 @@
 package sketchy.commands;
 
+import sketchy.document.CommandType;
 import sketchy.shapes.SketchyShape;
 
 /**
@@ -42,4 +43,13 @@ public class Rotate implements Command{
     public void redo() {
         this.shape.setAngle(this.curr);
     }
+
+    /**
+     * This returns the type of this command, ROTATE, since it stands for a rotation.
+     * @return
+     */
+    @Override
+    public CommandType getType() {
+        return CommandType.ROTATE;
+    }
 }
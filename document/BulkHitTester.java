@@ -0,0 +1,38 @@
+package sketchy.document;
+
+/**
+ * This is the BulkHitTester interface. A BulkHitTester answers "which shapes contain or
+ * intersect this region" for every shape in a ShapeStore at once, by scanning the store's
+ * columns instead of asking each shape in turn. containing finds the shapes that contain a
+ * point (the same test as SketchyRectangle.contains and SketchyEllipse.contains), within finds
+ * the shapes that lie entirely inside an axis-aligned region (marquee selection), and
+ * intersecting finds the shapes that overlap such a region at all (erasing, overlap queries).
+ * Each method writes the handles of the shapes it finds into the given array, in slot order,
+ * and returns how many it found; the array must have room for every shape in the store.
+ *
+ * ScalarHitTester works on any JVM. VectorHitTester uses the jdk.incubator.vector module to
+ * test several shapes per instruction; it is compiled separately (from the vector/ source tree),
+ * and is only available when it was and that module is added to the JVM (with --add-modules
+ * jdk.incubator.vector). create() picks it whenever it can, so the rest of the program never
+ * needs the module.
+ */
+public interface BulkHitTester {
+    int containing(ShapeStore store, double x, double y, int[] handles);
+    int within(ShapeStore store, double minX, double minY, double maxX, double maxY, int[] handles);
+    int intersecting(ShapeStore store, double minX, double minY, double maxX, double maxY, int[] handles);
+
+    /**
+     * This method returns a VectorHitTester if the Vector API is available, and a
+     * ScalarHitTester otherwise.
+     * @return
+     */
+    static BulkHitTester create() {
+        try {
+            return (BulkHitTester) Class.forName("sketchy.document.VectorHitTester")
+                    .getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarHitTester();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package sketchy.document;
+
+/**
+ * This is the ChangeKind enum class. There are six enums in total: ADDED, REMOVED, MOVED,
+ * RECOLORED, RELAYERED, and RESHAPED, which are the ways a shape can differ between two
+ * versions of a drawing. A shape that is in both versions can have several of them at once
+ * (for example, it can be both moved and recolored). RESHAPED (resized, rotated, or edited) is
+ * only reported for shapes that are known to be the same by their id; otherwise a reshaped
+ * shape cannot be told apart from one that was removed and another that was added.
+ */
+public enum ChangeKind {
+    ADDED, REMOVED, MOVED, RECOLORED, RELAYERED, RESHAPED;
+}
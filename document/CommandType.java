@@ -0,0 +1,12 @@
+package sketchy.document;
+
+/**
+ * This is the CommandType enum class. There are ten enums in total, one for each kind of
+ * command: CREATE_SHAPE, DRAW_LINE, DELETE, MOVE, RESIZE, ROTATE, FILL, RAISE, LOWER, and BATCH
+ * (which stands for a committed transaction or a whole erase). It tells subscribers of the
+ * mutation stream which command a MutationEvent is about, without them needing the command
+ * classes themselves.
+ */
+public enum CommandType {
+    CREATE_SHAPE, DRAW_LINE, DELETE, MOVE, RESIZE, ROTATE, FILL, RAISE, LOWER, BATCH;
+}
@@ -0,0 +1,140 @@
+package sketchy.document;
+
+import sketchy.shapes.Saveable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This is the Document class. It holds the most recently published DocumentSnapshot of the
+ * drawing. The editor (on the FX thread) publishes a new snapshot after every command, and
+ * any other thread (autosave, export, thumbnails, metrics) can call getSnapshot() at any time
+ * to get a consistent version of the drawing without taking a lock.
+ */
+public class Document {
+
+    private AtomicReference<DocumentSnapshot> current;
+
+    /**
+     * This is the Document constructor. The document starts out with an empty snapshot at
+     * version zero.
+     */
+    public Document() {
+        this.current = new AtomicReference<>(new DocumentSnapshot(0, PersistentList.empty()));
+    }
+
+    /**
+     * This method returns the most recently published snapshot. It can be called from any
+     * thread, and never blocks.
+     * @return
+     */
+    public DocumentSnapshot getSnapshot() {
+        return this.current.get();
+    }
+
+    /**
+     * This method publishes a new snapshot built from the given list of Saveables (in layer
+     * order), and must only be called from the FX thread. Every Saveable hands back the same
+     * record until it changes, so the new snapshot reuses the records of untouched Saveables.
+     * If only records were replaced, just those positions are updated in the previous list,
+     * sharing the rest of its nodes. If Saveables were added or removed, the runs of Saveables
+     * at the bottom and top that are still there are kept, and only the window between them is
+     * removed and inserted, so the list still shares its untouched nodes (which is what lets
+     * views of the drawing catch up in O(k log n)); only when most of the drawing was replaced
+     * is the list rebuilt. If nothing changed at all, the previous snapshot is kept and returned.
+     * @param saveables
+     * @return
+     */
+    public DocumentSnapshot publish(List<Saveable> saveables) {
+        DocumentSnapshot previous = this.current.get();
+        PersistentList<ShapeRecord> records = previous.getRecords();
+        if (records.size() == saveables.size()) {
+            Iterator<ShapeRecord> oldRecords = records.iterator();
+            for (int index = 0; index < saveables.size(); index++) {
+                ShapeRecord record = saveables.get(index).toRecord();
+                if (oldRecords.next() != record) {
+                    records = records.set(index, record);
+                }
+            }
+        }
+        else {
+            records = this.splice(records, saveables);
+        }
+        if (records == previous.getRecords()) {
+            return previous;
+        }
+        DocumentSnapshot next = new DocumentSnapshot(previous.getVersion() + 1, records);
+        this.current.set(next);
+        return next;
+    }
+
+    /**
+     * This helper method returns the given list changed to hold the records of the given
+     * Saveables, which are not as many as the list holds. The Saveables kept at the bottom and
+     * top (found by id) have their positions updated where their records changed, and the window
+     * between them is removed and inserted one record at a time, unless that window is more than
+     * half of the drawing, in which case the list is rebuilt.
+     * @param records
+     * @param saveables
+     * @return
+     */
+    private PersistentList<ShapeRecord> splice(PersistentList<ShapeRecord> records, List<Saveable> saveables) {
+        ShapeRecord[] rebuilt = new ShapeRecord[saveables.size()];
+        for (int index = 0; index < rebuilt.length; index++) {
+            rebuilt[index] = saveables.get(index).toRecord();
+        }
+        ArrayList<ShapeRecord> old = records.toArrayList();
+        int limit = Math.min(old.size(), rebuilt.length);
+        int bottom = 0;
+        while (bottom < limit && old.get(bottom).getId() == rebuilt[bottom].getId()) {
+            bottom++;
+        }
+        int top = 0;
+        while (top < limit - bottom
+                && old.get(old.size() - 1 - top).getId() == rebuilt[rebuilt.length - 1 - top].getId()) {
+            top++;
+        }
+        int removed = old.size() - bottom - top;
+        int inserted = rebuilt.length - bottom - top;
+        if (removed + inserted > Math.max(old.size(), rebuilt.length) / 2) {
+            return PersistentList.of(List.of(rebuilt));
+        }
+        for (int index = 0; index < bottom; index++) {
+            if (old.get(index) != rebuilt[index]) {
+                records = records.set(index, rebuilt[index]);
+            }
+        }
+        for (int i=0; i<top; i++) {
+            if (old.get(old.size() - 1 - i) != rebuilt[rebuilt.length - 1 - i]) {
+                records = records.set(old.size() - 1 - i, rebuilt[rebuilt.length - 1 - i]);
+            }
+        }
+        for (int i=0; i<removed; i++) {
+            records = records.remove(bottom);
+        }
+        for (int i=0; i<inserted; i++) {
+            records = records.insert(bottom + i, rebuilt[bottom + i]);
+        }
+        return records;
+    }
+
+    /**
+     * This method makes the records of an older snapshot (a checkpoint) current again, and
+     * must only be called from the FX thread, after the scene has been put back into the
+     * state the checkpoint describes. The records are published under a new version number,
+     * so readers always see versions go up. This takes O(1) time, whatever the size of the
+     * drawing or the edits in between.
+     * @param checkpoint
+     * @return
+     */
+    public DocumentSnapshot restore(DocumentSnapshot checkpoint) {
+        DocumentSnapshot previous = this.current.get();
+        if (checkpoint.getRecords() == previous.getRecords()) {
+            return previous;
+        }
+        DocumentSnapshot next = new DocumentSnapshot(previous.getVersion() + 1, checkpoint.getRecords());
+        this.current.set(next);
+        return next;
+    }
+}
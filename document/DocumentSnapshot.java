@@ -0,0 +1,84 @@
+package sketchy.document;
+
+import java.util.Iterator;
+
+/**
+ * This is the DocumentSnapshot class. It is one immutable, numbered version of the drawing:
+ * the records of every Saveable, in the same order as they are layered in the pane (bottom
+ * first). Snapshots are safe to read from any thread, and holding on to one never blocks the
+ * editor. Consecutive snapshots share the records and list nodes that did not change.
+ */
+public final class DocumentSnapshot implements Iterable<ShapeRecord> {
+
+    private final long version;
+    private final PersistentList<ShapeRecord> records;
+
+    /**
+     * This is the DocumentSnapshot constructor. It takes in the version number of the snapshot
+     * and the list of records it holds.
+     * @param version
+     * @param records
+     */
+    public DocumentSnapshot(long version, PersistentList<ShapeRecord> records) {
+        this.version = version;
+        this.records = records;
+    }
+
+    /**
+     * This method is an accessor for the version number of the snapshot. Version numbers
+     * increase by one every time the editor publishes a change.
+     * @return
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * This method is an accessor for the list of records, bottom shape first.
+     * @return
+     */
+    public PersistentList<ShapeRecord> getRecords() {
+        return this.records;
+    }
+
+    /**
+     * This method returns how many Saveables are in the drawing.
+     * @return
+     */
+    public int size() {
+        return this.records.size();
+    }
+
+    /**
+     * This method returns the record at the given stacking index.
+     * @param index
+     * @return
+     */
+    public ShapeRecord get(int index) {
+        return this.records.get(index);
+    }
+
+    /**
+     * This method returns how many records of the given type are in the drawing.
+     * @param type
+     * @return
+     */
+    public int count(ShapeType type) {
+        int count = 0;
+        for (ShapeRecord record : this.records) {
+            if (record.getType() == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method returns an iterator over the records, bottom shape first.
+     * @return
+     */
+    @Override
+    public Iterator<ShapeRecord> iterator() {
+        return this.records.iterator();
+    }
+}
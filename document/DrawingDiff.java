@@ -0,0 +1,415 @@
+package sketchy.document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This is the DrawingDiff class. It compares two versions of a drawing (as lists of records,
+ * for example a drawing read from a file and the one on screen, or two snapshots from the
+ * history) and finds which shapes were added, removed, moved, recolored, moved to another
+ * layer, or reshaped. Shapes are matched up in three passes, each only looking at the shapes
+ * the earlier passes left over:
+ *
+ * 1. by id, which only ties records from the same session together (ids are not saved);
+ * 2. by shape and position: every shape gets a 64-bit hash of what it looks like, apart from
+ *    where it is, what color it is, and what layer it is on (its type, size, angle, the members
+ *    of its symbol, and a line's points relative to its first point), and shapes with the same hash at the same
+ *    place are matched through a hash map;
+ * 3. by shape and nearness: among the shapes with the same hash that are left, each old one is
+ *    matched to the nearest new one, found through a grid of cells about as big as the space
+ *    each shape has, searching only the nearby cells. Whatever is still left with the same hash
+ *    is matched in stacking order.
+ *
+ * Each pass costs about the same per shape however many shapes there are (a line costs as much
+ * as its points), so drawings of a million shapes are compared in seconds. Coordinates are
+ * compared to within QUANTUM, so a drawing that was saved and loaded again has no changes.
+ */
+public class DrawingDiff {
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+    private static final double QUANTUM = 1.0 / 1024;
+    private static final int SEARCH_RINGS = 2;
+    private static final int SEARCH_LIMIT = 256;
+
+    private ArrayList<ShapeChange> changes;
+    private int unchanged;
+    private int[] counts;
+    private IdentityHashMap<Symbol, Long> symbolHashes;
+
+    /**
+     * This is the DrawingDiff constructor. It is private, since diffs are made by compare().
+     */
+    private DrawingDiff() {
+        this.changes = new ArrayList<>();
+        this.unchanged = 0;
+        this.counts = new int[ChangeKind.values().length];
+        this.symbolHashes = new IdentityHashMap<>();
+    }
+
+    /**
+     * This method compares the old and new versions of a drawing, and returns how they differ.
+     * The changes are listed with the old version's shapes first (in its stacking order), and
+     * then the shapes that were added (in the new version's stacking order).
+     * @param before
+     * @param after
+     * @return
+     */
+    public static DrawingDiff compare(List<ShapeRecord> before, List<ShapeRecord> after) {
+        DrawingDiff diff = new DrawingDiff();
+        int[] partner = new int[before.size()];
+        Arrays.fill(partner, -1);
+        boolean[] taken = new boolean[after.size()];
+
+        //1. by id
+        HashMap<Integer, Integer> afterIds = new HashMap<>();
+        for (int j=0; j<after.size(); j++) {
+            afterIds.put(after.get(j).getId(), j);
+        }
+        for (int i=0; i<before.size(); i++) {
+            Integer j = afterIds.get(before.get(i).getId());
+            if (j != null && !taken[j] && after.get(j).getType() == before.get(i).getType()) {
+                partner[i] = j;
+                taken[j] = true;
+            }
+        }
+
+        //2. by shape and position
+        long[] afterHashes = new long[after.size()];
+        HashMap<Long, ArrayDeque<Integer>> placed = new HashMap<>();
+        for (int j=0; j<after.size(); j++) {
+            if (!taken[j]) {
+                afterHashes[j] = diff.shapeHash(after.get(j));
+                placed.computeIfAbsent(placeHash(afterHashes[j], after.get(j)), (Long key) -> new ArrayDeque<>()).add(j);
+            }
+        }
+        long[] beforeHashes = new long[before.size()];
+        for (int i=0; i<before.size(); i++) {
+            if (partner[i] < 0) {
+                beforeHashes[i] = diff.shapeHash(before.get(i));
+                ArrayDeque<Integer> candidates = placed.get(placeHash(beforeHashes[i], before.get(i)));
+                if (candidates != null && !candidates.isEmpty()) {
+                    partner[i] = candidates.poll();
+                    taken[partner[i]] = true;
+                }
+            }
+        }
+
+        //3. by shape and nearness
+        HashMap<Long, ArrayList<Integer>> oldByShape = new HashMap<>();
+        for (int i=0; i<before.size(); i++) {
+            if (partner[i] < 0) {
+                oldByShape.computeIfAbsent(beforeHashes[i], (Long key) -> new ArrayList<>()).add(i);
+            }
+        }
+        HashMap<Long, ArrayList<Integer>> newByShape = new HashMap<>();
+        for (int j=0; j<after.size(); j++) {
+            if (!taken[j] && oldByShape.containsKey(afterHashes[j])) {
+                newByShape.computeIfAbsent(afterHashes[j], (Long key) -> new ArrayList<>()).add(j);
+            }
+        }
+        for (Long hash : newByShape.keySet()) {
+            matchNearest(before, after, oldByShape.get(hash), newByShape.get(hash), partner, taken);
+        }
+
+        for (int i=0; i<before.size(); i++) {
+            if (partner[i] < 0) {
+                diff.add(before.get(i), null, EnumSet.of(ChangeKind.REMOVED));
+            }
+            else {
+                diff.add(before.get(i), after.get(partner[i]), diff.kinds(before.get(i), after.get(partner[i])));
+            }
+        }
+        for (int j=0; j<after.size(); j++) {
+            if (!taken[j]) {
+                diff.add(null, after.get(j), EnumSet.of(ChangeKind.ADDED));
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * This method returns every change, old shapes first. The list must not be changed.
+     * @return
+     */
+    public List<ShapeChange> getChanges() {
+        return Collections.unmodifiableList(this.changes);
+    }
+
+    /**
+     * This method returns how many shapes changed in the given way.
+     * @param kind
+     * @return
+     */
+    public int count(ChangeKind kind) {
+        return this.counts[kind.ordinal()];
+    }
+
+    /**
+     * This method returns how many shapes are in both versions without any change.
+     * @return
+     */
+    public int getUnchangedCount() {
+        return this.unchanged;
+    }
+
+    /**
+     * This method returns whether the two versions are the same.
+     * @return
+     */
+    public boolean isEmpty() {
+        return this.changes.isEmpty();
+    }
+
+    /**
+     * This method returns how many shapes changed in each way, as a single line of text.
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (ChangeKind kind : ChangeKind.values()) {
+            summary.append(this.count(kind)).append(' ').append(kind.name().toLowerCase()).append(", ");
+        }
+        return summary.append(this.unchanged).append(" unchanged").toString();
+    }
+
+    /**
+     * This helper method records a pair of records (either of which may be null) with the given
+     * kinds of change, or counts it as unchanged if there are none.
+     * @param oldRecord
+     * @param newRecord
+     * @param changeKinds
+     */
+    private void add(ShapeRecord oldRecord, ShapeRecord newRecord, EnumSet<ChangeKind> changeKinds) {
+        if (changeKinds.isEmpty()) {
+            this.unchanged++;
+            return;
+        }
+        this.changes.add(new ShapeChange(oldRecord, newRecord, changeKinds));
+        for (ChangeKind kind : changeKinds) {
+            this.counts[kind.ordinal()]++;
+        }
+    }
+
+    /**
+     * This helper method returns how a shape's new record differs from its old one.
+     * @param oldRecord
+     * @param newRecord
+     * @return
+     */
+    private EnumSet<ChangeKind> kinds(ShapeRecord oldRecord, ShapeRecord newRecord) {
+        EnumSet<ChangeKind> found = EnumSet.noneOf(ChangeKind.class);
+        if (quantize(oldRecord.getCenterX()) != quantize(newRecord.getCenterX())
+                || quantize(oldRecord.getCenterY()) != quantize(newRecord.getCenterY())) {
+            found.add(ChangeKind.MOVED);
+        }
+        if (!Objects.equals(oldRecord.getColor(), newRecord.getColor())) {
+            found.add(ChangeKind.RECOLORED);
+        }
+        if (oldRecord.getLayer() != newRecord.getLayer()) {
+            found.add(ChangeKind.RELAYERED);
+        }
+        if (oldRecord != newRecord && this.shapeHash(oldRecord) != this.shapeHash(newRecord)) {
+            found.add(ChangeKind.RESHAPED);
+        }
+        return found;
+    }
+
+    /**
+     * This helper method matches each of the given old shapes (which all have the same shape
+     * hash) to the nearest of the given new shapes that has not been matched yet. The new shapes
+     * are put in a grid whose cells are about as big as the space each of them has, and only the
+     * cells within SEARCH_RINGS of an old shape's cell (and at most SEARCH_LIMIT shapes) are
+     * searched. The shapes that are left are then matched in order.
+     * @param before
+     * @param after
+     * @param oldShapes
+     * @param newShapes
+     * @param partner
+     * @param taken
+     */
+    private static void matchNearest(List<ShapeRecord> before, List<ShapeRecord> after, ArrayList<Integer> oldShapes,
+                                     ArrayList<Integer> newShapes, int[] partner, boolean[] taken) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int j : newShapes) {
+            minX = Math.min(minX, after.get(j).getCenterX());
+            minY = Math.min(minY, after.get(j).getCenterY());
+            maxX = Math.max(maxX, after.get(j).getCenterX());
+            maxY = Math.max(maxY, after.get(j).getCenterY());
+        }
+        double cell = Math.max(Math.sqrt((maxX - minX) * (maxY - minY) / newShapes.size()),
+                Math.max(maxX - minX, maxY - minY) / newShapes.size());
+        if (!(cell > QUANTUM)) {
+            cell = 1;
+        }
+        HashMap<Long, ArrayList<Integer>> grid = new HashMap<>();
+        for (int j : newShapes) {
+            grid.computeIfAbsent(cellKey(cellOf(after.get(j).getCenterX(), cell), cellOf(after.get(j).getCenterY(), cell)),
+                    (Long key) -> new ArrayList<>()).add(j);
+        }
+        for (int i : oldShapes) {
+            ShapeRecord record = before.get(i);
+            long column = cellOf(record.getCenterX(), cell);
+            long row = cellOf(record.getCenterY(), cell);
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            int searched = 0;
+            for (long dx = -SEARCH_RINGS; dx <= SEARCH_RINGS && searched < SEARCH_LIMIT; dx++) {
+                for (long dy = -SEARCH_RINGS; dy <= SEARCH_RINGS && searched < SEARCH_LIMIT; dy++) {
+                    ArrayList<Integer> candidates = grid.get(cellKey(column + dx, row + dy));
+                    if (candidates == null) {
+                        continue;
+                    }
+                    for (int c=0; c<candidates.size() && searched < SEARCH_LIMIT; c++) {
+                        int j = candidates.get(c);
+                        if (taken[j]) {
+                            //matched already, so it is swapped out of the cell
+                            candidates.set(c, candidates.get(candidates.size() - 1));
+                            candidates.remove(candidates.size() - 1);
+                            c--;
+                            continue;
+                        }
+                        searched++;
+                        double distanceX = after.get(j).getCenterX() - record.getCenterX();
+                        double distanceY = after.get(j).getCenterY() - record.getCenterY();
+                        double distance = distanceX * distanceX + distanceY * distanceY;
+                        if (distance < bestDistance) {
+                            best = j;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+            if (best >= 0) {
+                partner[i] = best;
+                taken[best] = true;
+            }
+        }
+
+        //whatever is left of this shape is matched in order
+        int next = 0;
+        for (int i : oldShapes) {
+            if (partner[i] >= 0) {
+                continue;
+            }
+            while (next < newShapes.size() && taken[newShapes.get(next)]) {
+                next++;
+            }
+            if (next == newShapes.size()) {
+                return;
+            }
+            partner[i] = newShapes.get(next);
+            taken[partner[i]] = true;
+        }
+    }
+
+    /**
+     * This helper method returns a 64-bit hash of what the shape looks like, apart from where
+     * it is, what color it is, and what layer it is on: its type, its width, height, and angle,
+     * the members of its symbol (for an instance), and (for a line) its points relative to its
+     * first point, all to within QUANTUM.
+     * @param record
+     * @return
+     */
+    private long shapeHash(ShapeRecord record) {
+        long hash = mix(HASH_SEED, record.getType().ordinal());
+        hash = mix(hash, quantize(record.getWidth()));
+        hash = mix(hash, quantize(record.getHeight()));
+        hash = mix(hash, quantize(record.getAngle()));
+        if (record.getSymbol() != null) {
+            hash = mix(hash, this.symbolHash(record.getSymbol()));
+        }
+        if (record.getType() == ShapeType.LINE && record.getPointCount() > 0) {
+            double firstX = record.getPointX(0);
+            double firstY = record.getPointY(0);
+            hash = mix(hash, record.getPointCount());
+            for (int index = 1; index < record.getPointCount(); index++) {
+                hash = mix(hash, quantize(record.getPointX(index) - firstX));
+                hash = mix(hash, quantize(record.getPointY(index) - firstY));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * This helper method returns a hash of a symbol's members: what each looks like, where it is
+     * in the symbol, and what color it is. It is found once per symbol, and does not depend on
+     * the symbol's id, which is new every time a drawing is read.
+     * @param symbol
+     * @return
+     */
+    private long symbolHash(Symbol symbol) {
+        Long known = this.symbolHashes.get(symbol);
+        if (known != null) {
+            return known;
+        }
+        long hash = HASH_SEED;
+        for (ShapeRecord member : symbol.getMembers()) {
+            hash = mix(hash, mix(placeHash(this.shapeHash(member), member), Objects.hashCode(member.getColor())));
+        }
+        this.symbolHashes.put(symbol, hash);
+        return hash;
+    }
+
+    /**
+     * This helper method mixes where a shape is (to within QUANTUM) into its shape hash.
+     * @param shapeHash
+     * @param record
+     * @return
+     */
+    private static long placeHash(long shapeHash, ShapeRecord record) {
+        return mix(mix(shapeHash, quantize(record.getCenterX())), quantize(record.getCenterY()));
+    }
+
+    /**
+     * This helper method returns a coordinate as a whole number of QUANTUMs.
+     * @param coordinate
+     * @return
+     */
+    private static long quantize(double coordinate) {
+        return Math.round(coordinate / QUANTUM);
+    }
+
+    /**
+     * This helper method returns the column (or row) of the grid the given coordinate is in.
+     * @param coordinate
+     * @param cell
+     * @return
+     */
+    private static long cellOf(double coordinate, double cell) {
+        return (long) Math.floor(coordinate / cell);
+    }
+
+    /**
+     * This helper method packs a cell's column and row into a single key.
+     * @param column
+     * @param row
+     * @return
+     */
+    private static long cellKey(long column, long row) {
+        return (column << 32) ^ (row & 0xffffffffL);
+    }
+
+    /**
+     * This helper method mixes one more value into a hash.
+     * @param hash
+     * @param value
+     * @return
+     */
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= HASH_PRIME;
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -0,0 +1,35 @@
+package sketchy.document;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.geometry.Point2D;
+import javafx.scene.paint.Color;
+import sketchy.main.Sketchy;
+
+/**
+ * This is the EditableShape interface. It has what every shape the user can edit has in
+ * common, whether the shape is drawn by a node of its own (a SketchyShape) or only kept in the
+ * columns of a ShapeStore (a ShapeHandle): its id, how to move, rotate, resize, and recolor it,
+ * whether it contains a point, and how to write it to a file or describe it as a ShapeRecord.
+ * Selecting a shape, and adding it to or removing it from the pane, are left to SketchyShape,
+ * since a stored shape has no node.
+ */
+public interface EditableShape {
+    int getId();
+    void rotate(Point2D curr, Point2D prev);
+    void translate(Point2D curr, Point2D prev);
+    void resize(Point2D currMousePos, Sketchy sketchy);
+    boolean contains(double x, double y);
+    Color getColor();
+    void setColor(Color color);
+    Point2D getCenter();
+    void setCenter(Point2D point);
+    double getAngle();
+    void setAngle(double angle);
+    double getWidth();
+    double getHeight();
+    void setWidth(double width);
+    void setHeight(double height);
+    void writeToFile(CS15FileIO cs15file);
+    ShapeRecord toRecord();
+    void restore(ShapeRecord record);
+}
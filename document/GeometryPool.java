@@ -0,0 +1,277 @@
+package sketchy.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This is the GeometryPool class. It makes identical geometry share a single, immutable copy.
+ * The geometry worth sharing is that of lines (a stamped stroke may have thousands of points,
+ * where a rectangle has four numbers), so the pool keeps one points array for every distinct
+ * stroke it has seen. Interning a line's record stores its points relative to its first point
+ * and puts the line in place with its LineTransform instead, so the same stroke stamped in a
+ * thousand places is backed by one array. Since subtracting the first point rounds differently
+ * depending on where the stroke is, the relative points are snapped to a grid of QUANTUM (far
+ * below what can be seen), so copies of a stroke end up with exactly the same numbers. Arrays
+ * are looked up by a 64-bit hash of their contents, and only compared in full when the hashes
+ * match.
+ *
+ * The pool also tells whether two records are the same shape apart from where they are (that
+ * is, whether they have the same definition), which is what saving uses to write a repeated
+ * shape once and then only refer to it. Instances of a symbol only have the same definition if
+ * they draw the very same version of the same symbol.
+ *
+ * Lines drawn on screen need their points boxed, so the pool also keeps one boxed copy of each
+ * of its arrays, made the first time it is asked for: a thousand pasted copies of a stroke then
+ * share one array of points and one array of boxed points between them.
+ */
+public class GeometryPool {
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+    private static final double QUANTUM = 1.0 / 4096;
+
+    private HashMap<Long, ArrayList<double[]>> arrays;
+    private IdentityHashMap<double[], Long> hashes;
+    private IdentityHashMap<double[], Double[]> boxes;
+
+    /**
+     * This is the GeometryPool constructor. The pool starts out empty.
+     */
+    public GeometryPool() {
+        this.arrays = new HashMap<>();
+        this.hashes = new IdentityHashMap<>();
+        this.boxes = new IdentityHashMap<>();
+    }
+
+    /**
+     * This method returns a record that draws what the given record draws (to within QUANTUM),
+     * but whose points (for a line) are the pool's shared array for them. Records of rectangles
+     * and ellipses, and records that already use a shared array, are returned as they are.
+     * @param record
+     * @return
+     */
+    public ShapeRecord intern(ShapeRecord record) {
+        if (record.getType() != ShapeType.LINE || record.getPointCount() == 0) {
+            return record;
+        }
+        double firstX = record.getRawPointX(0);
+        double firstY = record.getRawPointY(0);
+        if (firstX == 0 && firstY == 0 && this.hashes.containsKey(record.getPointArray())) {
+            return record;
+        }
+        double[] relative = new double[2 * record.getPointCount()];
+        for (int index = 0; index < record.getPointCount(); index++) {
+            relative[2 * index] = quantize(record.getRawPointX(index) - firstX);
+            relative[2 * index + 1] = quantize(record.getRawPointY(index) - firstY);
+        }
+        double[] shared = this.share(relative);
+
+        //the points moved by -first are drawn where they were by moving the pivot by -first and the translation by +first
+        LineTransform current = record.getLineTransform();
+        LineTransform placed;
+        if (current == null) {
+            placed = LineTransform.identity(0, 0).translated(firstX, firstY);
+        }
+        else {
+            placed = new LineTransform(current.getPivotX() - firstX, current.getPivotY() - firstY,
+                    current.getCenterX() - current.getPivotX() + firstX,
+                    current.getCenterY() - current.getPivotY() + firstY,
+                    current.getAngle(), current.getScaleX(), current.getScaleY());
+        }
+        return new ShapeRecord(record.getId(), ShapeType.LINE, record.getColor(), 0, 0, record.getWidth(),
+                record.getHeight(), record.getAngle(), shared, null, record.getLayer()).withLineTransform(placed)
+                .withGroups(record.getGroups());
+    }
+
+    /**
+     * This method returns whether the two records, which must both have been interned, are the
+     * same shape apart from where they are: one can be turned into the other just by moving it,
+     * so that its center (or a line's first point) lands on the other's.
+     * @param first
+     * @param second
+     * @return
+     */
+    public boolean sameDefinition(ShapeRecord first, ShapeRecord second) {
+        if (first.getType() != second.getType() || !Objects.equals(first.getColor(), second.getColor())
+                || first.getWidth() != second.getWidth() || first.getHeight() != second.getHeight()
+                || first.getAngle() != second.getAngle() || first.getSymbol() != second.getSymbol()) {
+            return false;
+        }
+        if (first.getType() != ShapeType.LINE) {
+            return true;
+        }
+        if (!first.sharesPoints(second)) {
+            return false;
+        }
+        return Arrays.equals(linearPart(first.getLineTransform()), linearPart(second.getLineTransform()));
+    }
+
+    /**
+     * This method returns the untransformed points of the given record of a line as boxed
+     * values, laid out as x0, y0, x1, y1, ..., ready to be handed to a Polyline. If the points
+     * are in the pool, every line that uses them gets the very same boxed array, which is only
+     * made the first time. The array must not be modified.
+     * @param record
+     * @return
+     */
+    public Double[] boxedPoints(ShapeRecord record) {
+        double[] points = record.getPointArray();
+        Double[] boxed = this.boxes.get(points);
+        if (boxed == null) {
+            boxed = new Double[points.length];
+            for (int i = 0; i < points.length; i++) {
+                boxed[i] = points[i];
+            }
+            if (this.hashes.containsKey(points)) {
+                this.boxes.put(points, boxed);
+            }
+        }
+        return boxed;
+    }
+
+    /**
+     * This method returns a hash of the definition of the given record, which must have been
+     * interned: records with the same definition (see sameDefinition) have the same hash.
+     * @param record
+     * @return
+     */
+    public long definitionHash(ShapeRecord record) {
+        long hash = mix(HASH_SEED, record.getType().ordinal());
+        hash = mix(hash, Objects.hashCode(record.getColor()));
+        if (record.getSymbol() != null) {
+            hash = mix(hash, record.getSymbol().getId());
+            hash = mix(hash, record.getSymbol().getVersion());
+        }
+        hash = mix(hash, Double.doubleToLongBits(record.getWidth()));
+        hash = mix(hash, Double.doubleToLongBits(record.getHeight()));
+        hash = mix(hash, Double.doubleToLongBits(record.getAngle()));
+        if (record.getType() == ShapeType.LINE && record.getPointCount() > 0) {
+            Long pointsHash = this.hashes.get(record.getPointArray());
+            hash = mix(hash, pointsHash != null ? pointsHash : contentHash(record.getPointArray()));
+            hash = mix(hash, contentHash(linearPart(record.getLineTransform())));
+        }
+        return hash;
+    }
+
+    /**
+     * This method finds the repeated shapes in the given list of records. It returns an array
+     * with one entry per record: the index of the first record in the list with the same
+     * definition, or -1 if the record is the first of its kind. The records do not need to have
+     * been interned. They are interned into a pool of their own, which is dropped when this
+     * returns, so finding the repeats of a drawing (as every save does) never adds its arrays to
+     * a pool that lasts.
+     * @param records
+     * @return
+     */
+    public static int[] findRepeats(List<ShapeRecord> records) {
+        GeometryPool scratch = new GeometryPool();
+        int[] repeats = new int[records.size()];
+        ArrayList<ShapeRecord> interned = new ArrayList<>(records.size());
+        HashMap<Long, ArrayList<Integer>> firsts = new HashMap<>();
+        for (int index = 0; index < records.size(); index++) {
+            ShapeRecord record = scratch.intern(records.get(index));
+            interned.add(record);
+            ArrayList<Integer> candidates = firsts.computeIfAbsent(scratch.definitionHash(record),
+                    (Long hash) -> new ArrayList<>());
+            repeats[index] = -1;
+            for (int candidate : candidates) {
+                if (scratch.sameDefinition(interned.get(candidate), record)) {
+                    repeats[index] = candidate;
+                    break;
+                }
+            }
+            if (repeats[index] == -1) {
+                candidates.add(index);
+            }
+        }
+        return repeats;
+    }
+
+    /**
+     * This method returns the number of distinct points arrays in the pool.
+     * @return
+     */
+    public int size() {
+        return this.hashes.size();
+    }
+
+    /**
+     * This method empties the pool. Records that were interned keep their arrays.
+     */
+    public void clear() {
+        this.arrays.clear();
+        this.hashes.clear();
+        this.boxes.clear();
+    }
+
+    /**
+     * This method returns a 64-bit hash of the given values, which is the same for any two
+     * arrays that Arrays.equals considers equal.
+     * @param values
+     * @return
+     */
+    public static long contentHash(double[] values) {
+        long hash = HASH_SEED;
+        for (double value : values) {
+            hash = mix(hash, Double.doubleToLongBits(value));
+        }
+        return hash;
+    }
+
+    /**
+     * This helper method returns the pool's array with the same contents as the given one,
+     * adding the given one to the pool if there is none.
+     * @param candidate
+     * @return
+     */
+    private double[] share(double[] candidate) {
+        long hash = contentHash(candidate);
+        ArrayList<double[]> bucket = this.arrays.computeIfAbsent(hash, (Long key) -> new ArrayList<>());
+        for (double[] existing : bucket) {
+            if (Arrays.equals(existing, candidate)) {
+                return existing;
+            }
+        }
+        bucket.add(candidate);
+        this.hashes.put(candidate, hash);
+        return candidate;
+    }
+
+    /**
+     * This helper method snaps a coordinate to the nearest multiple of QUANTUM.
+     * @param coordinate
+     * @return
+     */
+    private static double quantize(double coordinate) {
+        return Math.rint(coordinate / QUANTUM) * QUANTUM;
+    }
+
+    /**
+     * This helper method mixes one more value into a hash.
+     * @param hash
+     * @param value
+     * @return
+     */
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= HASH_PRIME;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * This helper method returns the part of a line's transform that does not move it (the
+     * scaling and rotation) as mxx, mxy, myx, myy. No transform counts as the identity.
+     * @param transform
+     * @return
+     */
+    private static double[] linearPart(LineTransform transform) {
+        if (transform == null) {
+            return new double[] {1, 0, 0, 1};
+        }
+        return new double[] {transform.getMxx(), transform.getMxy(), transform.getMyx(), transform.getMyy()};
+    }
+}
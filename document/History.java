@@ -0,0 +1,120 @@
+package sketchy.document;
+
+import java.util.ArrayList;
+
+/**
+ * This is the History class. It keeps one checkpoint (a DocumentSnapshot) for every state the
+ * drawing has been in, in order, along with a cursor pointing at the checkpoint currently shown.
+ * Since snapshots share structure, storing a checkpoint costs O(1) time, and moving the cursor
+ * to any checkpoint (one step back, one step forward, or straight to any other point in the
+ * history) is also O(1). Restoring the scene to match the checkpoint is left to the caller.
+ */
+public class History {
+
+    private ArrayList<DocumentSnapshot> checkpoints;
+    private int cursor;
+
+    /**
+     * This is the History constructor. It takes in the snapshot of the drawing before any
+     * command has been carried out, which becomes the first checkpoint.
+     * @param initial
+     */
+    public History(DocumentSnapshot initial) {
+        this.checkpoints = new ArrayList<>();
+        this.reset(initial);
+    }
+
+    /**
+     * This method throws away every checkpoint and starts the history over from the given
+     * snapshot.
+     * @param initial
+     */
+    public void reset(DocumentSnapshot initial) {
+        this.checkpoints.clear();
+        this.checkpoints.add(initial);
+        this.cursor = 0;
+    }
+
+    /**
+     * This method records the snapshot taken after a new command. Every checkpoint after the
+     * cursor (the states that could have been redone) is thrown away, just like the redo stack.
+     * @param snapshot
+     */
+    public void record(DocumentSnapshot snapshot) {
+        this.checkpoints.subList(this.cursor + 1, this.checkpoints.size()).clear();
+        this.checkpoints.add(snapshot);
+        this.cursor++;
+    }
+
+    /**
+     * This method replaces the checkpoint at the cursor. It is used when the most recent command
+     * keeps changing the drawing after it is created (for example, a line that is still being
+     * drawn).
+     * @param snapshot
+     */
+    public void replaceCurrent(DocumentSnapshot snapshot) {
+        this.checkpoints.set(this.cursor, snapshot);
+    }
+
+    /**
+     * This method returns whether there is a checkpoint before the cursor.
+     * @return
+     */
+    public boolean canUndo() {
+        return this.cursor > 0;
+    }
+
+    /**
+     * This method returns whether there is a checkpoint after the cursor.
+     * @return
+     */
+    public boolean canRedo() {
+        return this.cursor < this.checkpoints.size() - 1;
+    }
+
+    /**
+     * This method moves the cursor back by one and returns the checkpoint it now points at.
+     * @return
+     */
+    public DocumentSnapshot undo() {
+        return this.jumpTo(this.cursor - 1);
+    }
+
+    /**
+     * This method moves the cursor forward by one and returns the checkpoint it now points at.
+     * @return
+     */
+    public DocumentSnapshot redo() {
+        return this.jumpTo(this.cursor + 1);
+    }
+
+    /**
+     * This method moves the cursor straight to the checkpoint at the given index and returns it.
+     * @param index
+     * @return
+     */
+    public DocumentSnapshot jumpTo(int index) {
+        if (index < 0 || index >= this.checkpoints.size()) {
+            throw new IndexOutOfBoundsException("No checkpoint " + index + " in a history of "
+                    + this.checkpoints.size());
+        }
+        this.cursor = index;
+        return this.checkpoints.get(index);
+    }
+
+    /**
+     * This method is an accessor for the index of the checkpoint currently shown.
+     * @return
+     */
+    public int getCursor() {
+        return this.cursor;
+    }
+
+    /**
+     * This method returns how many checkpoints are in the history.
+     * @return
+     */
+    public int size() {
+        return this.checkpoints.size();
+    }
+}
@@ -0,0 +1,73 @@
+package sketchy.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the ListDifference class. It holds what PersistentList.differenceFrom() found when it
+ * compared two versions of a list: the elements that are only in the older version's unshared
+ * nodes, and the ones that are only in the newer version's, each with its index in its own
+ * version. Every element that was added, removed, or replaced is in here, but so can be a few
+ * unchanged elements whose nodes were copied on the way to a change.
+ * @param <T>
+ */
+public class ListDifference<T> {
+
+    private ArrayList<T> oldValues;
+    private ArrayList<Integer> oldIndexes;
+    private ArrayList<T> newValues;
+    private ArrayList<Integer> newIndexes;
+
+    /**
+     * This is the ListDifference constructor. The difference starts out empty, and is filled
+     * in by the PersistentList that makes it.
+     */
+    public ListDifference() {
+        this.oldValues = new ArrayList<>();
+        this.oldIndexes = new ArrayList<>();
+        this.newValues = new ArrayList<>();
+        this.newIndexes = new ArrayList<>();
+    }
+
+    /**
+     * This method is an accessor for the elements found only in the older version.
+     * @return
+     */
+    public List<T> getOldValues() {
+        return this.oldValues;
+    }
+
+    /**
+     * This method is an accessor for the indexes, in the older version, of the elements
+     * returned by getOldValues() (in the same order).
+     * @return
+     */
+    public List<Integer> getOldIndexes() {
+        return this.oldIndexes;
+    }
+
+    /**
+     * This method is an accessor for the elements found only in the newer version.
+     * @return
+     */
+    public List<T> getNewValues() {
+        return this.newValues;
+    }
+
+    /**
+     * This method is an accessor for the indexes, in the newer version, of the elements
+     * returned by getNewValues() (in the same order).
+     * @return
+     */
+    public List<Integer> getNewIndexes() {
+        return this.newIndexes;
+    }
+
+    /**
+     * This method returns whether the two versions were found to be the same.
+     * @return
+     */
+    public boolean isEmpty() {
+        return this.oldValues.isEmpty() && this.newValues.isEmpty();
+    }
+}
@@ -0,0 +1,95 @@
+package sketchy.document;
+
+/**
+ * This is the MutationEvent class. It is an immutable description of one change to the
+ * drawing, sent to every subscriber of a MutationPublisher. It holds the kind of change, the
+ * type of the command involved (if any), the snapshot of the drawing once the change was made,
+ * the changes since the snapshot of the previous event (which shapes were added, removed,
+ * updated, or moved, as SnapshotChanges works them out), and, for DRAGGED events, the record of
+ * the shape being dragged. Since it only holds immutable data, subscribers can read it on any
+ * thread.
+ */
+public final class MutationEvent {
+
+    private final MutationKind kind;
+    private final CommandType commandType;
+    private final DocumentSnapshot snapshot;
+    private final SnapshotChanges changes;
+    private final ShapeRecord dragged;
+
+    /**
+     * This is the MutationEvent constructor. It takes in the kind of change, the type of the
+     * command involved (or null), the snapshot of the drawing after the change, the changes
+     * since the previous event's snapshot (or null, for DRAGGED and RESYNC events), and the
+     * record of the shape being dragged (or null, for anything but DRAGGED events).
+     * @param kind
+     * @param commandType
+     * @param snapshot
+     * @param changes
+     * @param dragged
+     */
+    public MutationEvent(MutationKind kind, CommandType commandType, DocumentSnapshot snapshot,
+                         SnapshotChanges changes, ShapeRecord dragged) {
+        this.kind = kind;
+        this.commandType = commandType;
+        this.snapshot = snapshot;
+        this.changes = changes;
+        this.dragged = dragged;
+    }
+
+    /**
+     * This method is an accessor for the kind of change.
+     * @return
+     */
+    public MutationKind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * This method is an accessor for the type of the command involved (for example MOVE or
+     * FILL), or null if no command was involved.
+     * @return
+     */
+    public CommandType getCommandType() {
+        return this.commandType;
+    }
+
+    /**
+     * This method is an accessor for the snapshot of the drawing after the change. For DRAGGED
+     * events, this is the latest published snapshot, which does not include the drag yet.
+     * @return
+     */
+    public DocumentSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * This method is an accessor for the changes from the snapshot of the previous event to
+     * this one's, by shape. It is null for DRAGGED events (see getDragged()) and for RESYNC
+     * events, after which a subscriber should start over from the snapshot.
+     * @return
+     */
+    public SnapshotChanges getChanges() {
+        return this.changes;
+    }
+
+    /**
+     * This method is an accessor for the record of the shape being dragged, or null.
+     * @return
+     */
+    public ShapeRecord getDragged() {
+        return this.dragged;
+    }
+
+    /**
+     * This method returns whether this event can be replaced by the given, newer event without
+     * losing anything a subscriber needs: that is the case when both are DRAGGED events for the
+     * same shape, since only the latest position of a drag matters.
+     * @param newer
+     * @return
+     */
+    public boolean isCoalescedBy(MutationEvent newer) {
+        return this.kind == MutationKind.DRAGGED && newer.kind == MutationKind.DRAGGED
+                && this.dragged.getId() == newer.dragged.getId();
+    }
+}
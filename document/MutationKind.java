@@ -0,0 +1,13 @@
+package sketchy.document;
+
+/**
+ * This is the MutationKind enum class. There are five enums in total: EXECUTED, UNDONE, REDONE,
+ * DRAGGED, and RESYNC. The first three are sent when a command is carried out, undone, or redone.
+ * DRAGGED is sent while a shape is being moved, rotated, or resized with the mouse, before its
+ * command exists. RESYNC means the drawing changed in a way that is not a single step (a load,
+ * a jump through the history, or a subscriber falling too far behind), so the subscriber should
+ * start over from the event's snapshot.
+ */
+public enum MutationKind {
+    EXECUTED, UNDONE, REDONE, DRAGGED, RESYNC;
+}
@@ -0,0 +1,246 @@
+package sketchy.document;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the MutationPublisher class. It is a java.util.concurrent.Flow.Publisher of
+ * MutationEvents, which lets code outside the editor (autosave, a minimap, collaboration,
+ * metrics) observe every change to the drawing instead of polling it.
+ *
+ * Each subscriber gets its own bounded buffer, and events are handed to it on the given
+ * Executor, only as fast as it requests them. Publishing (on the FX thread) only ever adds an
+ * event to each buffer, so a slow subscriber can never hold up the editor. A run of DRAGGED
+ * events for the same shape is coalesced into the latest one. If a subscriber still falls so far
+ * behind that its buffer fills up, its pending events are replaced with a single RESYNC event
+ * carrying the latest snapshot, which tells it everything the dropped events would have.
+ */
+public class MutationPublisher implements Flow.Publisher<MutationEvent> {
+
+    private CopyOnWriteArrayList<BufferedSubscription> subscriptions;
+    private Executor executor;
+    private int bufferSize;
+    private volatile boolean closed;
+
+    /**
+     * This is the MutationPublisher constructor. It takes in the Executor on which events are
+     * delivered to subscribers, and the number of events each subscriber's buffer can hold
+     * (at least two).
+     * @param deliveryExecutor
+     * @param bufferCapacity
+     */
+    public MutationPublisher(Executor deliveryExecutor, int bufferCapacity) {
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.executor = deliveryExecutor;
+        this.bufferSize = Math.max(2, bufferCapacity);
+        this.closed = false;
+    }
+
+    /**
+     * This method adds a subscriber. Its onSubscribe method is called on the delivery
+     * Executor, and it receives every event published after this call, once it requests them.
+     * If the publisher is already closed, the subscriber is completed right away.
+     * @param subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super MutationEvent> subscriber) {
+        Objects.requireNonNull(subscriber);
+        BufferedSubscription subscription = new BufferedSubscription(subscriber);
+        if (this.closed) {
+            subscription.complete();
+            return;
+        }
+        this.subscriptions.add(subscription);
+        subscription.schedule();
+    }
+
+    /**
+     * This method sends an event to every subscriber. It never blocks: the event is only added
+     * to each subscriber's buffer, and delivered later on the delivery Executor.
+     * @param event
+     */
+    public void publish(MutationEvent event) {
+        for (BufferedSubscription subscription : this.subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * This method closes the publisher. Every subscriber receives the events already in its
+     * buffer, and then onComplete.
+     */
+    public void close() {
+        this.closed = true;
+        for (BufferedSubscription subscription : this.subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * This method returns how many subscribers are currently subscribed.
+     * @return
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /**
+     * This is the BufferedSubscription class. It holds one subscriber's buffer and outstanding
+     * demand. Its drain loop is the only place the subscriber is called from, and at most one
+     * drain loop runs at a time (tracked by the work-in-progress counter), so the subscriber
+     * receives its signals one at a time and in order.
+     */
+    private class BufferedSubscription implements Flow.Subscription {
+
+        private Flow.Subscriber<? super MutationEvent> subscriber;
+        private ArrayDeque<MutationEvent> buffer;
+        private long demand;
+        private boolean completed;
+        private Throwable error;
+        private volatile boolean cancelled;
+        private boolean subscribed;
+        private AtomicInteger workInProgress;
+
+        private BufferedSubscription(Flow.Subscriber<? super MutationEvent> subscriber) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayDeque<>();
+            this.demand = 0;
+            this.completed = false;
+            this.error = null;
+            this.cancelled = false;
+            this.subscribed = false;
+            this.workInProgress = new AtomicInteger(0);
+        }
+
+        /**
+         * This method adds an event to the buffer, coalescing it with the newest buffered event
+         * if possible, and collapsing the buffer into a RESYNC event if it is full.
+         * @param event
+         */
+        private void offer(MutationEvent event) {
+            synchronized (this) {
+                if (this.cancelled || this.completed) {
+                    return;
+                }
+                MutationEvent newest = this.buffer.peekLast();
+                if (newest != null && newest.isCoalescedBy(event)) {
+                    this.buffer.pollLast();
+                }
+                if (this.buffer.size() >= MutationPublisher.this.bufferSize) {
+                    this.buffer.clear();
+                    this.buffer.add(new MutationEvent(MutationKind.RESYNC, null, event.getSnapshot(), null, null));
+                    if (event.getKind() == MutationKind.DRAGGED) {
+                        this.buffer.add(event);
+                    }
+                }
+                else {
+                    this.buffer.add(event);
+                }
+            }
+            this.schedule();
+        }
+
+        /**
+         * This method marks the subscription as complete once its buffer has been delivered.
+         */
+        private void complete() {
+            synchronized (this) {
+                this.completed = true;
+            }
+            this.schedule();
+        }
+
+        /**
+         * This method adds to the number of events the subscriber is ready to receive. A
+         * request for zero or fewer events is an error, reported through onError.
+         * @param n
+         */
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    this.error = new IllegalArgumentException("Requested " + n + " events; must be positive");
+                }
+                else {
+                    this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+                }
+            }
+            this.schedule();
+        }
+
+        /**
+         * This method cancels the subscription. Buffered events are thrown away, and the
+         * subscriber receives nothing more.
+         */
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            MutationPublisher.this.subscriptions.remove(this);
+            synchronized (this) {
+                this.buffer.clear();
+            }
+        }
+
+        /**
+         * This method starts a drain loop on the delivery Executor, unless one is already
+         * running (in which case that loop will pick up the new work).
+         */
+        private void schedule() {
+            if (this.workInProgress.getAndIncrement() == 0) {
+                MutationPublisher.this.executor.execute(() -> this.drain());
+            }
+        }
+
+        /**
+         * This method delivers buffered events to the subscriber for as long as it has demand,
+         * then delivers onComplete or onError if they are due. If the subscriber throws, the
+         * subscription is cancelled.
+         */
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!this.subscribed) {
+                    this.subscribed = true;
+                    this.subscriber.onSubscribe(this);
+                }
+                while (!this.cancelled) {
+                    MutationEvent next = null;
+                    Throwable failure;
+                    boolean done;
+                    synchronized (this) {
+                        failure = this.error;
+                        done = this.completed && this.buffer.isEmpty();
+                        if (failure == null && this.demand > 0 && !this.buffer.isEmpty()) {
+                            next = this.buffer.poll();
+                            this.demand--;
+                        }
+                    }
+                    if (failure != null) {
+                        this.cancel();
+                        this.subscriber.onError(failure);
+                        break;
+                    }
+                    if (next == null) {
+                        if (done) {
+                            this.cancel();
+                            this.subscriber.onComplete();
+                        }
+                        break;
+                    }
+                    try {
+                        this.subscriber.onNext(next);
+                    }
+                    catch (RuntimeException e) {
+                        this.cancel();
+                        this.subscriber.onError(e);
+                    }
+                }
+                missed = this.workInProgress.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package sketchy.document;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This is the ParallelTransformer class. It computes the new geometry of many shapes at once
+ * on a ForkJoinPool, off the FX thread's critical path: the list of records is split in halves
+ * until each task holds a small run of records. Every record takes the same, constant time
+ * (a line only gets a new LineTransform, whatever its number of points). It only makes new
+ * records; applying them to the scene (in one batch, through a Transaction) is up to the
+ * caller.
+ */
+public class ParallelTransformer {
+
+    private static final int RECORDS_PER_TASK = 256;
+
+    private ForkJoinPool pool;
+
+    /**
+     * This is the ParallelTransformer constructor. It takes in the ForkJoinPool the work is
+     * done on.
+     * @param forkJoinPool
+     */
+    public ParallelTransformer(ForkJoinPool forkJoinPool) {
+        this.pool = forkJoinPool;
+    }
+
+    /**
+     * This method returns the records of the given shapes with the transform applied, in the
+     * same order. It blocks until every record has been computed.
+     * @param records
+     * @param transform
+     * @return
+     */
+    public ShapeRecord[] transform(List<ShapeRecord> records, SimilarityTransform transform) {
+        ShapeRecord[] from = records.toArray(new ShapeRecord[0]);
+        ShapeRecord[] to = new ShapeRecord[from.length];
+        this.pool.invoke(new RecordTask(from, to, transform, 0, from.length));
+        return to;
+    }
+
+    /**
+     * This is the RecordTask class. It transforms the records from index "start" (inclusive)
+     * to index "end" (exclusive), splitting itself in two while it holds too many of them.
+     */
+    private static class RecordTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private ShapeRecord[] from;
+        private ShapeRecord[] to;
+        private SimilarityTransform transform;
+        private int start;
+        private int end;
+
+        /**
+         * This is the RecordTask constructor. It takes in the records, the array their
+         * transformed records go in, the transform, and the range of records to transform.
+         * @param records
+         * @param transformed
+         * @param similarity
+         * @param startIndex
+         * @param endIndex
+         */
+        private RecordTask(ShapeRecord[] records, ShapeRecord[] transformed, SimilarityTransform similarity,
+                           int startIndex, int endIndex) {
+            this.from = records;
+            this.to = transformed;
+            this.transform = similarity;
+            this.start = startIndex;
+            this.end = endIndex;
+        }
+
+        /**
+         * This method transforms the records, or splits the work in two.
+         */
+        @Override
+        protected void compute() {
+            if (this.end - this.start > RECORDS_PER_TASK) {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(new RecordTask(this.from, this.to, this.transform, this.start, middle),
+                        new RecordTask(this.from, this.to, this.transform, middle, this.end));
+                return;
+            }
+            for (int index = this.start; index < this.end; index++) {
+                this.to[index] = this.transform.apply(this.from[index]);
+            }
+        }
+    }
+}
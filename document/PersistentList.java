@@ -0,0 +1,415 @@
+package sketchy.document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This is the PersistentList class. It is an immutable list: every "mutation" returns a new
+ * list and leaves the old one untouched. Internally it is a balanced (AVL) binary tree ordered
+ * by position, so get, set, insert, and remove are all O(log n). A mutation only copies the
+ * O(log n) nodes on the path to the changed position, and the new list shares every other node
+ * with the old one. Keeping an old version around therefore costs nothing extra, and since no
+ * node ever changes after it is built, any number of threads can read any version without locks.
+ * @param <T>
+ */
+public final class PersistentList<T> implements Iterable<T> {
+
+    private static final PersistentList<?> EMPTY = new PersistentList<>(null);
+
+    private final Node<T> root;
+
+    /**
+     * This is the PersistentList constructor. It is private, since lists are only ever created
+     * through empty(), of(), or by mutating an existing list.
+     * @param root
+     */
+    private PersistentList(Node<T> root) {
+        this.root = root;
+    }
+
+    /**
+     * This method returns the empty list.
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    /**
+     * This method builds a perfectly balanced list holding the given elements, in order.
+     * It takes O(n) time, which is cheaper than n separate appends.
+     * @param elements
+     * @param <T>
+     * @return
+     */
+    public static <T> PersistentList<T> of(List<? extends T> elements) {
+        if (elements.isEmpty()) {
+            return empty();
+        }
+        return new PersistentList<>(build(elements, 0, elements.size()));
+    }
+
+    /**
+     * This method returns the number of elements in the list.
+     * @return
+     */
+    public int size() {
+        return size(this.root);
+    }
+
+    /**
+     * This method returns whether the list has no elements.
+     * @return
+     */
+    public boolean isEmpty() {
+        return this.root == null;
+    }
+
+    /**
+     * This method returns the element at the given index.
+     * @param index
+     * @return
+     */
+    public T get(int index) {
+        this.checkIndex(index, this.size());
+        Node<T> node = this.root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            }
+            else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+            else {
+                return node.value;
+            }
+        }
+    }
+
+    /**
+     * This method returns a new list with the element at the given index replaced. If the
+     * element is already there, this list is returned as-is.
+     * @param index
+     * @param value
+     * @return
+     */
+    public PersistentList<T> set(int index, T value) {
+        this.checkIndex(index, this.size());
+        if (this.get(index) == value) {
+            return this;
+        }
+        return new PersistentList<>(set(this.root, index, value));
+    }
+
+    /**
+     * This method returns a new list with the given element inserted at the given index.
+     * Elements at and after the index are shifted up by one.
+     * @param index
+     * @param value
+     * @return
+     */
+    public PersistentList<T> insert(int index, T value) {
+        this.checkIndex(index, this.size() + 1);
+        return new PersistentList<>(insert(this.root, index, value));
+    }
+
+    /**
+     * This method returns a new list with the given element added to the end.
+     * @param value
+     * @return
+     */
+    public PersistentList<T> add(T value) {
+        return this.insert(this.size(), value);
+    }
+
+    /**
+     * This method returns a new list with the element at the given index removed.
+     * @param index
+     * @return
+     */
+    public PersistentList<T> remove(int index) {
+        this.checkIndex(index, this.size());
+        return new PersistentList<>(remove(this.root, index));
+    }
+
+    /**
+     * This method returns the index of the first element that is the same object as the given
+     * one, or -1 if there is none. This is a linear scan.
+     * @param value
+     * @return
+     */
+    public int indexOf(T value) {
+        int index = 0;
+        for (T element : this) {
+            if (element == value) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * This method compares this list with an older version of it (or with any list made from
+     * the same lists by mutations) without looking inside the subtrees the two share. Both trees
+     * are walked from the top down, tallest nodes first; a node found in both trees is the root
+     * of a shared subtree, so it and everything below it is skipped. The elements of the nodes
+     * left over are returned, along with their indexes. Since a mutation only copies the path to
+     * the position it changes, this takes O(k log n) time for k changed positions, rather than
+     * O(n). The elements returned are a superset of the ones that changed: an unchanged element
+     * can turn up on both sides, at the same or a shifted index, if its node was copied.
+     * @param older
+     * @return
+     */
+    public ListDifference<T> differenceFrom(PersistentList<T> older) {
+        ListDifference<T> difference = new ListDifference<>();
+        if (older.root == this.root) {
+            return difference;
+        }
+        int tallest = Math.max(height(older.root), height(this.root));
+        ArrayList<ArrayList<Node<T>>> oldNodes = new ArrayList<>();
+        ArrayList<ArrayList<Node<T>>> newNodes = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> oldOffsets = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> newOffsets = new ArrayList<>();
+        for (int i=0; i<=tallest; i++) {
+            oldNodes.add(new ArrayList<>());
+            newNodes.add(new ArrayList<>());
+            oldOffsets.add(new ArrayList<>());
+            newOffsets.add(new ArrayList<>());
+        }
+        queue(older.root, 0, oldNodes, oldOffsets);
+        queue(this.root, 0, newNodes, newOffsets);
+        IdentityHashMap<Node<T>, Boolean> shared = new IdentityHashMap<>();
+        for (int height = tallest; height > 0; height--) {
+            shared.clear();
+            for (Node<T> node : newNodes.get(height)) {
+                shared.put(node, Boolean.FALSE);
+            }
+            for (Node<T> node : oldNodes.get(height)) {
+                if (shared.containsKey(node)) {
+                    shared.put(node, Boolean.TRUE);
+                }
+            }
+            expand(height, shared, oldNodes, oldOffsets, difference.getOldValues(), difference.getOldIndexes());
+            expand(height, shared, newNodes, newOffsets, difference.getNewValues(), difference.getNewIndexes());
+        }
+        return difference;
+    }
+
+    /**
+     * This method copies the list into a new ArrayList.
+     * @return
+     */
+    public ArrayList<T> toArrayList() {
+        ArrayList<T> list = new ArrayList<>(this.size());
+        for (T element : this) {
+            list.add(element);
+        }
+        return list;
+    }
+
+    /**
+     * This method returns an iterator that walks the list in order. It keeps a stack of the
+     * nodes it still has to visit, so a full walk is O(n).
+     * @return
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final ArrayDeque<Node<T>> stack = this.pushLeft(new ArrayDeque<>(), PersistentList.this.root);
+
+            private ArrayDeque<Node<T>> pushLeft(ArrayDeque<Node<T>> nodes, Node<T> node) {
+                while (node != null) {
+                    nodes.push(node);
+                    node = node.left;
+                }
+                return nodes;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !this.stack.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (this.stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<T> node = this.stack.pop();
+                this.pushLeft(this.stack, node.right);
+                return node.value;
+            }
+        };
+    }
+
+    /**
+     * This helper method throws an IndexOutOfBoundsException if the index is not in [0, limit).
+     * @param index
+     * @param limit
+     */
+    private void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+        }
+    }
+
+    /**
+     * This helper method files a node (if there is one) under its height, along with the index
+     * of the first element of its subtree.
+     * @param node
+     * @param offset
+     * @param nodes
+     * @param offsets
+     * @param <T>
+     */
+    private static <T> void queue(Node<T> node, int offset, ArrayList<ArrayList<Node<T>>> nodes,
+                                  ArrayList<ArrayList<Integer>> offsets) {
+        if (node != null) {
+            nodes.get(node.height).add(node);
+            offsets.get(node.height).add(offset);
+        }
+    }
+
+    /**
+     * This helper method goes through the nodes of one tree at the given height. A node that was
+     * found in both trees is skipped, along with its subtree; any other node has its element
+     * (and that element's index) added to the given lists, and its children queued up.
+     * @param height
+     * @param shared
+     * @param nodes
+     * @param offsets
+     * @param values
+     * @param indexes
+     * @param <T>
+     */
+    private static <T> void expand(int height, IdentityHashMap<Node<T>, Boolean> shared,
+                                   ArrayList<ArrayList<Node<T>>> nodes, ArrayList<ArrayList<Integer>> offsets,
+                                   List<T> values, List<Integer> indexes) {
+        ArrayList<Node<T>> level = nodes.get(height);
+        ArrayList<Integer> levelOffsets = offsets.get(height);
+        for (int i=0; i<level.size(); i++) {
+            Node<T> node = level.get(i);
+            if (shared.get(node) == Boolean.TRUE) {
+                continue;
+            }
+            int offset = levelOffsets.get(i);
+            int leftSize = size(node.left);
+            values.add(node.value);
+            indexes.add(offset + leftSize);
+            queue(node.left, offset, nodes, offsets);
+            queue(node.right, offset + leftSize + 1, nodes, offsets);
+        }
+    }
+
+    private static <T> Node<T> build(List<? extends T> elements, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        return new Node<>(build(elements, from, middle), elements.get(middle), build(elements, middle + 1, to));
+    }
+
+    private static <T> Node<T> set(Node<T> node, int index, T value) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return new Node<>(set(node.left, index, value), node.value, node.right);
+        }
+        if (index > leftSize) {
+            return new Node<>(node.left, node.value, set(node.right, index - leftSize - 1, value));
+        }
+        return new Node<>(node.left, value, node.right);
+    }
+
+    private static <T> Node<T> insert(Node<T> node, int index, T value) {
+        if (node == null) {
+            return new Node<>(null, value, null);
+        }
+        int leftSize = size(node.left);
+        if (index <= leftSize) {
+            return balance(insert(node.left, index, value), node.value, node.right);
+        }
+        return balance(node.left, node.value, insert(node.right, index - leftSize - 1, value));
+    }
+
+    private static <T> Node<T> remove(Node<T> node, int index) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return balance(remove(node.left, index), node.value, node.right);
+        }
+        if (index > leftSize) {
+            return balance(node.left, node.value, remove(node.right, index - leftSize - 1));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<T> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(node.left, successor.value, remove(node.right, 0));
+    }
+
+    /**
+     * This helper method builds a node out of the given children, doing a single or double
+     * rotation first if the two sides differ in height by more than one.
+     */
+    private static <T> Node<T> balance(Node<T> left, T value, Node<T> right) {
+        int difference = height(left) - height(right);
+        if (difference > 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.left, left.value, new Node<>(left.right, value, right));
+            }
+            return new Node<>(new Node<>(left.left, left.value, left.right.left), left.right.value,
+                    new Node<>(left.right.right, value, right));
+        }
+        if (difference < -1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(new Node<>(left, value, right.left), right.value, right.right);
+            }
+            return new Node<>(new Node<>(left, value, right.left.left), right.left.value,
+                    new Node<>(right.left.right, right.value, right.right));
+        }
+        return new Node<>(left, value, right);
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * This is the Node class. Nodes are immutable; each one caches the size and height of
+     * the subtree below it.
+     * @param <T>
+     */
+    private static final class Node<T> {
+        private final Node<T> left;
+        private final T value;
+        private final Node<T> right;
+        private final int size;
+        private final int height;
+
+        private Node(Node<T> left, T value, Node<T> right) {
+            this.left = left;
+            this.value = value;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package sketchy.document;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is the ScalarHitTester class. It is the BulkHitTester that works on any JVM: it tests
+ * one shape at a time, but still reads the ShapeStore's columns in order rather than going
+ * through an object per shape. Its static helpers hold the exact geometry, and are shared with
+ * ShapeStore and VectorHitTester.
+ */
+public class ScalarHitTester implements BulkHitTester {
+
+    private static final int DOUBLE_BYTES = 8;
+
+    /**
+     * This method finds every shape that contains the given point.
+     * @param store
+     * @param x
+     * @param y
+     * @param handles
+     * @return
+     */
+    @Override
+    public int containing(ShapeStore store, double x, double y, int[] handles) {
+        checkRoom(store, handles);
+        ByteBuffer centerXs = store.getCenterXColumn();
+        ByteBuffer centerYs = store.getCenterYColumn();
+        ByteBuffer widths = store.getWidthColumn();
+        ByteBuffer heights = store.getHeightColumn();
+        ByteBuffer cosines = store.getCosineColumn();
+        ByteBuffer sines = store.getSineColumn();
+        ByteBuffer types = store.getTypeColumn();
+        int found = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            int offset = slot * DOUBLE_BYTES;
+            if (contains(isEllipse(types, slot), centerXs.getDouble(offset), centerYs.getDouble(offset),
+                    widths.getDouble(offset), heights.getDouble(offset), cosines.getDouble(offset),
+                    sines.getDouble(offset), x, y)) {
+                handles[found] = store.handleAt(slot);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method finds every shape that lies entirely inside the given region.
+     * @param store
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param handles
+     * @return
+     */
+    @Override
+    public int within(ShapeStore store, double minX, double minY, double maxX, double maxY, int[] handles) {
+        checkRoom(store, handles);
+        ByteBuffer centerXs = store.getCenterXColumn();
+        ByteBuffer centerYs = store.getCenterYColumn();
+        ByteBuffer widths = store.getWidthColumn();
+        ByteBuffer heights = store.getHeightColumn();
+        ByteBuffer cosines = store.getCosineColumn();
+        ByteBuffer sines = store.getSineColumn();
+        ByteBuffer types = store.getTypeColumn();
+        int found = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            int offset = slot * DOUBLE_BYTES;
+            boolean ellipse = isEllipse(types, slot);
+            double halfWidth = halfWidth(ellipse, widths.getDouble(offset));
+            double halfHeight = halfWidth(ellipse, heights.getDouble(offset));
+            double cosine = cosines.getDouble(offset);
+            double sine = sines.getDouble(offset);
+            double extentX = extentX(ellipse, halfWidth, halfHeight, cosine, sine);
+            double extentY = extentY(ellipse, halfWidth, halfHeight, cosine, sine);
+            double centerX = centerXs.getDouble(offset);
+            double centerY = centerYs.getDouble(offset);
+            if (centerX - extentX >= minX && centerX + extentX <= maxX
+                    && centerY - extentY >= minY && centerY + extentY <= maxY) {
+                handles[found] = store.handleAt(slot);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method finds every shape that overlaps the given region.
+     * @param store
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param handles
+     * @return
+     */
+    @Override
+    public int intersecting(ShapeStore store, double minX, double minY, double maxX, double maxY, int[] handles) {
+        checkRoom(store, handles);
+        ByteBuffer centerXs = store.getCenterXColumn();
+        ByteBuffer centerYs = store.getCenterYColumn();
+        ByteBuffer widths = store.getWidthColumn();
+        ByteBuffer heights = store.getHeightColumn();
+        ByteBuffer cosines = store.getCosineColumn();
+        ByteBuffer sines = store.getSineColumn();
+        ByteBuffer types = store.getTypeColumn();
+        int found = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            int offset = slot * DOUBLE_BYTES;
+            if (intersects(isEllipse(types, slot), centerXs.getDouble(offset), centerYs.getDouble(offset),
+                    widths.getDouble(offset), heights.getDouble(offset), cosines.getDouble(offset),
+                    sines.getDouble(offset), minX, minY, maxX, maxY)) {
+                handles[found] = store.handleAt(slot);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method returns whether a shape contains a point. The point is mapped into the
+     * shape's unrotated frame the same way Sketchy.rotatePoint does, using the shape's cosine
+     * and sine. As in ShapeRecord, width and height are the radii of an ellipse.
+     * @param ellipse
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param cosine
+     * @param sine
+     * @param x
+     * @param y
+     * @return
+     */
+    static boolean contains(boolean ellipse, double centerX, double centerY, double width, double height,
+                            double cosine, double sine, double x, double y) {
+        double dx = x - centerX;
+        double dy = y - centerY;
+        double localX = dx * cosine + dy * sine;
+        double localY = -dx * sine + dy * cosine;
+        if (ellipse) {
+            localX = localX / width;
+            localY = localY / height;
+            return localX * localX + localY * localY <= 1;
+        }
+        return Math.abs(localX) <= width / 2 && Math.abs(localY) <= height / 2;
+    }
+
+    /**
+     * This method returns whether a shape overlaps an axis-aligned region. Shapes whose
+     * bounding boxes miss the region are ruled out first. For a rectangle, the region's corners
+     * are then projected onto the rectangle's own axes (the separating axis test). For an
+     * ellipse, the region is mapped into the frame in which the ellipse is the unit circle, where
+     * it becomes a parallelogram, and the two overlap if the parallelogram holds the circle's
+     * center or one of its edges comes within a distance of 1 of it.
+     * @param ellipse
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param cosine
+     * @param sine
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return
+     */
+    static boolean intersects(boolean ellipse, double centerX, double centerY, double width, double height,
+                              double cosine, double sine, double minX, double minY, double maxX, double maxY) {
+        double halfWidth = halfWidth(ellipse, width);
+        double halfHeight = halfWidth(ellipse, height);
+        double extentX = extentX(ellipse, halfWidth, halfHeight, cosine, sine);
+        double extentY = extentY(ellipse, halfWidth, halfHeight, cosine, sine);
+        if (centerX + extentX < minX || centerX - extentX > maxX
+                || centerY + extentY < minY || centerY - extentY > maxY) {
+            return false;
+        }
+
+        //the region's corners, in order around it, in the shape's unrotated frame
+        double[] cornerXs = {minX, maxX, maxX, minX};
+        double[] cornerYs = {minY, minY, maxY, maxY};
+        double[] localXs = new double[4];
+        double[] localYs = new double[4];
+        for (int corner = 0; corner < 4; corner++) {
+            double dx = cornerXs[corner] - centerX;
+            double dy = cornerYs[corner] - centerY;
+            localXs[corner] = dx * cosine + dy * sine;
+            localYs[corner] = -dx * sine + dy * cosine;
+        }
+
+        if (!ellipse) {
+            double lowX = Math.min(Math.min(localXs[0], localXs[1]), Math.min(localXs[2], localXs[3]));
+            double highX = Math.max(Math.max(localXs[0], localXs[1]), Math.max(localXs[2], localXs[3]));
+            double lowY = Math.min(Math.min(localYs[0], localYs[1]), Math.min(localYs[2], localYs[3]));
+            double highY = Math.max(Math.max(localYs[0], localYs[1]), Math.max(localYs[2], localYs[3]));
+            return lowX <= halfWidth && highX >= -halfWidth && lowY <= halfHeight && highY >= -halfHeight;
+        }
+
+        if (halfWidth == 0 || halfHeight == 0) {
+            return false;
+        }
+        boolean allLeft = true;
+        boolean allRight = true;
+        for (int corner = 0; corner < 4; corner++) {
+            localXs[corner] = localXs[corner] / halfWidth;
+            localYs[corner] = localYs[corner] / halfHeight;
+        }
+        for (int corner = 0; corner < 4; corner++) {
+            int next = (corner + 1) % 4;
+            double edgeX = localXs[next] - localXs[corner];
+            double edgeY = localYs[next] - localYs[corner];
+            //which side of the edge the circle's center is on
+            double cross = edgeX * -localYs[corner] - edgeY * -localXs[corner];
+            allLeft = allLeft && cross >= 0;
+            allRight = allRight && cross <= 0;
+            //closest point of the edge to the circle's center
+            double lengthSquared = edgeX * edgeX + edgeY * edgeY;
+            double t = lengthSquared == 0 ? 0
+                    : Math.max(0, Math.min(1, -(localXs[corner] * edgeX + localYs[corner] * edgeY) / lengthSquared));
+            double closestX = localXs[corner] + t * edgeX;
+            double closestY = localYs[corner] + t * edgeY;
+            if (closestX * closestX + closestY * closestY <= 1) {
+                return true;
+            }
+        }
+        return allLeft || allRight;
+    }
+
+    /**
+     * This method returns half the width (or height) of a shape's unrotated bounds: half the
+     * width of a rectangle, or the radius of an ellipse.
+     * @param ellipse
+     * @param width
+     * @return
+     */
+    static double halfWidth(boolean ellipse, double width) {
+        return ellipse ? width : width / 2;
+    }
+
+    /**
+     * This method returns how far a rotated shape's bounding box reaches left and right of its
+     * center. It is the same calculation ShapeTransform.update carries out.
+     * @param ellipse
+     * @param halfWidth
+     * @param halfHeight
+     * @param cosine
+     * @param sine
+     * @return
+     */
+    static double extentX(boolean ellipse, double halfWidth, double halfHeight, double cosine, double sine) {
+        if (ellipse) {
+            return Math.hypot(halfWidth * cosine, halfHeight * sine);
+        }
+        return Math.abs(halfWidth * cosine) + Math.abs(halfHeight * sine);
+    }
+
+    /**
+     * This method returns how far a rotated shape's bounding box reaches above and below its
+     * center.
+     * @param ellipse
+     * @param halfWidth
+     * @param halfHeight
+     * @param cosine
+     * @param sine
+     * @return
+     */
+    static double extentY(boolean ellipse, double halfWidth, double halfHeight, double cosine, double sine) {
+        if (ellipse) {
+            return Math.hypot(halfWidth * sine, halfHeight * cosine);
+        }
+        return Math.abs(halfWidth * sine) + Math.abs(halfHeight * cosine);
+    }
+
+    /**
+     * This method returns whether the shape in the given slot is an ellipse.
+     * @param types
+     * @param slot
+     * @return
+     */
+    static boolean isEllipse(ByteBuffer types, int slot) {
+        return types.get(slot) == ShapeType.ELLIPSE.ordinal();
+    }
+
+    /**
+     * This method throws an IllegalArgumentException if the array of handles is too small to
+     * hold every shape in the store.
+     * @param store
+     * @param handles
+     */
+    static void checkRoom(ShapeStore store, int[] handles) {
+        if (handles.length < store.size()) {
+            throw new IllegalArgumentException("Room for " + handles.length + " handles, but the store holds "
+                    + store.size() + " shapes");
+        }
+    }
+}
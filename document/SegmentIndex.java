@@ -0,0 +1,284 @@
+package sketchy.document;
+
+/**
+ * This is the SegmentIndex class. It is a bounding volume hierarchy over the segments of one
+ * line, so that finding the segments near a point takes O(log n) instead of checking all of
+ * them. Since the points of a stroke are drawn in order, segments that are close in the list
+ * are close on screen, so the hierarchy is simply a balanced binary tree over runs of
+ * consecutive segments: each leaf holds the bounding box of LEAF_SIZE segments, and each
+ * inner node the box around its two children. Building it takes O(n), with no sorting.
+ *
+ * The boxes are built from the line's untransformed points, so one index serves every record
+ * that shares those points (a line that is moved, rotated, or resized keeps its index). A
+ * query around a point on screen is mapped back through the line's transform into a box
+ * around the untransformed points; the segments found there are then checked exactly, on
+ * screen. A line with a single point has one segment, of zero length.
+ */
+public final class SegmentIndex {
+
+    private static final int LEAF_SIZE = 8;
+    private static final int MAX_DEPTH = 64;
+
+    private final ShapeRecord line;
+    private final int pointCount;
+    private final int segmentCount;
+    private final int leaves;
+    private final double[] minXs;
+    private final double[] minYs;
+    private final double[] maxXs;
+    private final double[] maxYs;
+
+    /**
+     * This is the SegmentIndex constructor. It takes in the record of the line to index, and
+     * builds the hierarchy over its untransformed points.
+     * @param record
+     */
+    public SegmentIndex(ShapeRecord record) {
+        this.line = record;
+        this.pointCount = record.getPointCount();
+        this.segmentCount = this.pointCount == 1 ? 1 : Math.max(0, this.pointCount - 1);
+        int leafCount = Math.max(1, (this.segmentCount + LEAF_SIZE - 1) / LEAF_SIZE);
+        this.leaves = Integer.highestOneBit(leafCount) == leafCount ? leafCount : Integer.highestOneBit(leafCount) << 1;
+        this.minXs = new double[2 * this.leaves];
+        this.minYs = new double[2 * this.leaves];
+        this.maxXs = new double[2 * this.leaves];
+        this.maxYs = new double[2 * this.leaves];
+        for (int leaf = 0; leaf < this.leaves; leaf++) {
+            int node = this.leaves + leaf;
+            this.minXs[node] = Double.POSITIVE_INFINITY;
+            this.minYs[node] = Double.POSITIVE_INFINITY;
+            this.maxXs[node] = Double.NEGATIVE_INFINITY;
+            this.maxYs[node] = Double.NEGATIVE_INFINITY;
+            int first = leaf * LEAF_SIZE;
+            int last = Math.min(first + LEAF_SIZE, this.segmentCount);
+            for (int segment = first; segment < last; segment++) {
+                this.include(node, this.getStart(segment));
+                this.include(node, this.getEnd(segment));
+            }
+        }
+        for (int node = this.leaves - 1; node >= 1; node--) {
+            this.minXs[node] = Math.min(this.minXs[2 * node], this.minXs[2 * node + 1]);
+            this.minYs[node] = Math.min(this.minYs[2 * node], this.minYs[2 * node + 1]);
+            this.maxXs[node] = Math.max(this.maxXs[2 * node], this.maxXs[2 * node + 1]);
+            this.maxYs[node] = Math.max(this.maxYs[2 * node], this.maxYs[2 * node + 1]);
+        }
+    }
+
+    /**
+     * This method returns whether this index can be used for the given record, which is the
+     * case if the record has the very same points as the one the index was built from.
+     * @param record
+     * @return
+     */
+    public boolean isFor(ShapeRecord record) {
+        return this.line.sharesPoints(record);
+    }
+
+    /**
+     * This method returns the number of segments in the line.
+     * @return
+     */
+    public int getSegmentCount() {
+        return this.segmentCount;
+    }
+
+    /**
+     * This method returns the index of the point a segment starts at.
+     * @param segment
+     * @return
+     */
+    public int getStart(int segment) {
+        return segment;
+    }
+
+    /**
+     * This method returns the index of the point a segment ends at (the same as its start, for
+     * the one segment of a single-point line).
+     * @param segment
+     * @return
+     */
+    public int getEnd(int segment) {
+        return Math.min(segment + 1, this.pointCount - 1);
+    }
+
+    /**
+     * This method returns whether any segment of the line, as the given record draws it, comes
+     * within the given radius of the point (x, y).
+     * @param record
+     * @param x
+     * @param y
+     * @param radius
+     * @return
+     */
+    public boolean hits(ShapeRecord record, double x, double y, double radius) {
+        return this.search(record, x, y, radius, null) > 0;
+    }
+
+    /**
+     * This method finds every segment of the line, as the given record draws it, that comes
+     * within the given radius of the point (x, y). The segments are put in the given array in
+     * increasing order, and their number is returned. The array must have room for every
+     * segment of the line.
+     * @param record
+     * @param x
+     * @param y
+     * @param radius
+     * @param segments
+     * @return
+     */
+    public int near(ShapeRecord record, double x, double y, double radius, int[] segments) {
+        if (segments.length < this.segmentCount) {
+            throw new IllegalArgumentException("Room for " + segments.length + " segments, but the line has "
+                    + this.segmentCount);
+        }
+        return this.search(record, x, y, radius, segments);
+    }
+
+    /**
+     * This helper method walks the hierarchy, left to right, for the segments within the radius
+     * of (x, y). If segments is null, it stops at the first one and returns 1.
+     * @param record
+     * @param x
+     * @param y
+     * @param radius
+     * @param segments
+     * @return
+     */
+    private int search(ShapeRecord record, double x, double y, double radius, int[] segments) {
+        if (!this.isFor(record)) {
+            throw new IllegalArgumentException("The record does not have the points this index was built from");
+        }
+        if (this.segmentCount == 0) {
+            return 0;
+        }
+
+        //the box, around the untransformed points, that holds every point within the radius on screen
+        double boxMinX = Double.NEGATIVE_INFINITY;
+        double boxMinY = Double.NEGATIVE_INFINITY;
+        double boxMaxX = Double.POSITIVE_INFINITY;
+        double boxMaxY = Double.POSITIVE_INFINITY;
+        LineTransform transform = record.getLineTransform();
+        if (transform == null) {
+            boxMinX = x - radius;
+            boxMinY = y - radius;
+            boxMaxX = x + radius;
+            boxMaxY = y + radius;
+        }
+        else {
+            double determinant = transform.getMxx() * transform.getMyy() - transform.getMxy() * transform.getMyx();
+            if (determinant != 0) {
+                double screenX = x - transform.getTx();
+                double screenY = y - transform.getTy();
+                double localX = (transform.getMyy() * screenX - transform.getMxy() * screenY) / determinant;
+                double localY = (transform.getMxx() * screenY - transform.getMyx() * screenX) / determinant;
+                double extentX = radius * Math.hypot(transform.getMyy(), transform.getMxy()) / Math.abs(determinant);
+                double extentY = radius * Math.hypot(transform.getMyx(), transform.getMxx()) / Math.abs(determinant);
+                boxMinX = localX - extentX;
+                boxMinY = localY - extentY;
+                boxMaxX = localX + extentX;
+                boxMaxY = localY + extentY;
+            }
+        }
+
+        int found = 0;
+        int[] stack = new int[MAX_DEPTH];
+        int top = 0;
+        stack[top++] = 1;
+        while (top > 0) {
+            int node = stack[--top];
+            if (this.maxXs[node] < boxMinX || this.minXs[node] > boxMaxX
+                    || this.maxYs[node] < boxMinY || this.minYs[node] > boxMaxY) {
+                continue;
+            }
+            if (node < this.leaves) {
+                stack[top++] = 2 * node + 1;
+                stack[top++] = 2 * node;
+                continue;
+            }
+            int first = (node - this.leaves) * LEAF_SIZE;
+            int last = Math.min(first + LEAF_SIZE, this.segmentCount);
+            for (int segment = first; segment < last; segment++) {
+                int start = this.getStart(segment);
+                int end = this.getEnd(segment);
+                if (distanceToSegment(x, y, record.getPointX(start), record.getPointY(start),
+                        record.getPointX(end), record.getPointY(end)) <= radius) {
+                    if (segments == null) {
+                        return 1;
+                    }
+                    segments[found] = segment;
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method returns the smallest x coordinate of the line's untransformed points.
+     * @return
+     */
+    public double getMinX() {
+        return this.minXs[1];
+    }
+
+    /**
+     * This method returns the smallest y coordinate of the line's untransformed points.
+     * @return
+     */
+    public double getMinY() {
+        return this.minYs[1];
+    }
+
+    /**
+     * This method returns the largest x coordinate of the line's untransformed points.
+     * @return
+     */
+    public double getMaxX() {
+        return this.maxXs[1];
+    }
+
+    /**
+     * This method returns the largest y coordinate of the line's untransformed points.
+     * @return
+     */
+    public double getMaxY() {
+        return this.maxYs[1];
+    }
+
+    /**
+     * This method returns the distance from the point (x, y) to the segment between
+     * (startX, startY) and (endX, endY).
+     * @param x
+     * @param y
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @return
+     */
+    public static double distanceToSegment(double x, double y, double startX, double startY,
+                                           double endX, double endY) {
+        double dx = endX - startX;
+        double dy = endY - startY;
+        double lengthSquared = dx * dx + dy * dy;
+        double along = 0;
+        if (lengthSquared > 0) {
+            along = Math.max(0, Math.min(1, ((x - startX) * dx + (y - startY) * dy) / lengthSquared));
+        }
+        return Math.hypot(x - (startX + along * dx), y - (startY + along * dy));
+    }
+
+    /**
+     * This helper method grows the box of a node to include the given untransformed point.
+     * @param node
+     * @param point
+     */
+    private void include(int node, int point) {
+        double x = this.line.getRawPointX(point);
+        double y = this.line.getRawPointY(point);
+        this.minXs[node] = Math.min(this.minXs[node], x);
+        this.minYs[node] = Math.min(this.minYs[node], y);
+        this.maxXs[node] = Math.max(this.maxXs[node], x);
+        this.maxYs[node] = Math.max(this.maxYs[node], y);
+    }
+}
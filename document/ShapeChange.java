@@ -0,0 +1,64 @@
+package sketchy.document;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * This is the ShapeChange class. It is an immutable description of how one shape differs
+ * between two versions of a drawing: its record in the old version (null if it was added), its
+ * record in the new version (null if it was removed), and the kinds of change.
+ */
+public final class ShapeChange {
+
+    private final ShapeRecord before;
+    private final ShapeRecord after;
+    private final EnumSet<ChangeKind> kinds;
+
+    /**
+     * This is the ShapeChange constructor. It takes in the shape's old record (or null), its new
+     * record (or null), and the kinds of change, which are copied.
+     * @param oldRecord
+     * @param newRecord
+     * @param changeKinds
+     */
+    public ShapeChange(ShapeRecord oldRecord, ShapeRecord newRecord, EnumSet<ChangeKind> changeKinds) {
+        this.before = oldRecord;
+        this.after = newRecord;
+        this.kinds = EnumSet.copyOf(changeKinds);
+    }
+
+    /**
+     * This method is an accessor for the shape's record in the old version, which is null if
+     * the shape was added.
+     * @return
+     */
+    public ShapeRecord getBefore() {
+        return this.before;
+    }
+
+    /**
+     * This method is an accessor for the shape's record in the new version, which is null if
+     * the shape was removed.
+     * @return
+     */
+    public ShapeRecord getAfter() {
+        return this.after;
+    }
+
+    /**
+     * This method returns the kinds of change. The set must not be changed.
+     * @return
+     */
+    public Set<ChangeKind> getKinds() {
+        return this.kinds;
+    }
+
+    /**
+     * This method returns whether the shape changed in the given way.
+     * @param kind
+     * @return
+     */
+    public boolean is(ChangeKind kind) {
+        return this.kinds.contains(kind);
+    }
+}
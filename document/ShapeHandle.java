@@ -0,0 +1,284 @@
+package sketchy.document;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.geometry.Point2D;
+import javafx.scene.paint.Color;
+import sketchy.main.Sketchy;
+
+/**
+ * This is the ShapeHandle class. It is a view of one shape in a ShapeStore, which implements
+ * EditableShape just as SketchyShape does (with the same writeToFile, toRecord, and restore as a
+ * Saveable), so code written against EditableShape works with stored shapes too. It holds nothing
+ * but the store and the shape's handle; every call reads or writes the store's columns directly.
+ * Since a stored shape has no node, there is nothing to add to or remove from the pane, and
+ * selection is up to the caller.
+ */
+public class ShapeHandle implements EditableShape {
+
+    private ShapeStore store;
+    private int handle;
+
+    /**
+     * This is the ShapeHandle constructor. It takes in the store and the shape's handle.
+     * ShapeStore.get(handle) should be used instead, since it checks that the handle is live.
+     * @param shapeStore
+     * @param shapeHandle
+     */
+    public ShapeHandle(ShapeStore shapeStore, int shapeHandle) {
+        this.store = shapeStore;
+        this.handle = shapeHandle;
+    }
+
+    /**
+     * This method is an accessor for the shape's handle in the store.
+     * @return
+     */
+    public int getHandle() {
+        return this.handle;
+    }
+
+    /**
+     * This method returns whether the shape is still in the store. Every other method throws
+     * an IllegalArgumentException once it has been removed.
+     * @return
+     */
+    public boolean isLive() {
+        return this.store.isLive(this.handle);
+    }
+
+    /**
+     * This method is an accessor for the shape's id, which matches the ids of Saveables and
+     * ShapeRecords.
+     * @return
+     */
+    @Override
+    public int getId() {
+        return this.store.getId(this.slot());
+    }
+
+    /**
+     * This method is an accessor for the shape's type, RECTANGLE or ELLIPSE.
+     * @return
+     */
+    public ShapeType getType() {
+        return this.store.getType(this.slot());
+    }
+
+    /**
+     * This method rotates the shape based on two Point2Ds, the same way
+     * SketchyRectangle.rotate does: one representing the point to rotate to (curr), and one
+     * representing the previous mouse point.
+     * @param curr
+     * @param prev
+     */
+    @Override
+    public void rotate(Point2D curr, Point2D prev) {
+        int slot = this.slot();
+        double centerX = this.store.getCenterX(slot);
+        double centerY = this.store.getCenterY(slot);
+        double angle = Math.toDegrees(Math.atan2(prev.getY() - centerY, prev.getX() - centerX) -
+                Math.atan2(curr.getY() - centerY, curr.getX() - centerX));
+        this.store.setAngle(slot, this.store.getAngle(slot) - angle);
+    }
+
+    /**
+     * This method translates the shape by the difference between the current point (curr)
+     * and the previous point (prev).
+     * @param curr
+     * @param prev
+     */
+    @Override
+    public void translate(Point2D curr, Point2D prev) {
+        int slot = this.slot();
+        this.store.setCenter(slot, this.store.getCenterX(slot) + curr.getX() - prev.getX(),
+                this.store.getCenterY(slot) + curr.getY() - prev.getY());
+    }
+
+    /**
+     * This method resizes the shape about its center so that it reaches the new mouse position,
+     * accounting for its rotation with Sketchy's rotatePoint method, the same way
+     * SketchyRectangle.resize and SketchyEllipse.resize do.
+     * @param currMousePos
+     * @param sketchy
+     */
+    @Override
+    public void resize(Point2D currMousePos, Sketchy sketchy) {
+        int slot = this.slot();
+        Point2D center = new Point2D(this.store.getCenterX(slot), this.store.getCenterY(slot));
+        Point2D rotated = sketchy.rotatePoint(currMousePos, center, this.store.getAngle(slot));
+        this.store.setSize(slot, 2 * Math.abs(rotated.getX() - center.getX()),
+                2 * Math.abs(rotated.getY() - center.getY()));
+    }
+
+    /**
+     * This method removes the shape from the store.
+     */
+    public void delete() {
+        this.store.remove(this.handle);
+    }
+
+    /**
+     * This method returns whether a point, in scene coordinates, is within the shape.
+     * @param x
+     * @param y
+     * @return
+     */
+    @Override
+    public boolean contains(double x, double y) {
+        return this.store.slotContains(this.slot(), x, y);
+    }
+
+    /**
+     * This method is an accessor for the color of the shape.
+     * @return
+     */
+    @Override
+    public Color getColor() {
+        return this.store.getColor(this.slot());
+    }
+
+    /**
+     * This method is a mutator for the color of the shape.
+     * @param color
+     */
+    @Override
+    public void setColor(Color color) {
+        this.store.setColor(this.slot(), color);
+    }
+
+    /**
+     * This method is an accessor for the center of the shape, which is returned as a Point2D.
+     * @return
+     */
+    @Override
+    public Point2D getCenter() {
+        int slot = this.slot();
+        return new Point2D(this.store.getCenterX(slot), this.store.getCenterY(slot));
+    }
+
+    /**
+     * This is a mutator method for the center of the shape.
+     * @param point
+     */
+    @Override
+    public void setCenter(Point2D point) {
+        this.store.setCenter(this.slot(), point.getX(), point.getY());
+    }
+
+    /**
+     * This method is an accessor for the rotation/angle of the shape.
+     * @return
+     */
+    @Override
+    public double getAngle() {
+        return this.store.getAngle(this.slot());
+    }
+
+    /**
+     * This method is a mutator for the rotation/angle of the shape.
+     * @param angle
+     */
+    @Override
+    public void setAngle(double angle) {
+        this.store.setAngle(this.slot(), angle);
+    }
+
+    /**
+     * This method is an accessor for the width of the shape (the x radius of an ellipse).
+     * @return
+     */
+    @Override
+    public double getWidth() {
+        return this.store.getWidth(this.slot());
+    }
+
+    /**
+     * This method is an accessor for the height of the shape (the y radius of an ellipse).
+     * @return
+     */
+    @Override
+    public double getHeight() {
+        return this.store.getHeight(this.slot());
+    }
+
+    /**
+     * This method is a mutator for the width of the shape.
+     * @param width
+     */
+    @Override
+    public void setWidth(double width) {
+        int slot = this.slot();
+        this.store.setSize(slot, width, this.store.getHeight(slot));
+    }
+
+    /**
+     * This method is a mutator for the height of the shape.
+     * @param height
+     */
+    @Override
+    public void setHeight(double height) {
+        int slot = this.slot();
+        this.store.setSize(slot, this.store.getWidth(slot), height);
+    }
+
+    /**
+     * This method is an accessor for the shape's z-key. Shapes with higher z-keys are drawn on
+     * top of shapes with lower ones.
+     * @return
+     */
+    public int getZKey() {
+        return this.store.getZKey(this.slot());
+    }
+
+    /**
+     * This method is a mutator for the shape's z-key.
+     * @param zKey
+     */
+    public void setZKey(int zKey) {
+        this.store.setZKey(this.slot(), zKey);
+    }
+
+    /**
+     * This method writes the shape to a file, in the same format as SketchyRectangle or
+     * SketchyEllipse.
+     * @param io
+     */
+    @Override
+    public void writeToFile(CS15FileIO io) {
+        this.store.writeSlot(io, this.slot());
+    }
+
+    /**
+     * This method returns an immutable record of the shape's current state.
+     * @return
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        int slot = this.slot();
+        return new ShapeRecord(this.store.getId(slot), this.store.getType(slot), this.store.getColor(slot),
+                this.store.getCenterX(slot), this.store.getCenterY(slot), this.store.getWidth(slot),
+                this.store.getHeight(slot), this.store.getAngle(slot), null);
+    }
+
+    /**
+     * This method puts the shape back into the state described by the given record. The shape
+     * keeps its id, type, and z-key.
+     * @param record
+     */
+    @Override
+    public void restore(ShapeRecord record) {
+        int slot = this.slot();
+        this.store.setColor(slot, record.getColor());
+        this.store.setCenter(slot, record.getCenterX(), record.getCenterY());
+        this.store.setSize(slot, record.getWidth(), record.getHeight());
+        this.store.setAngle(slot, record.getAngle());
+    }
+
+    /**
+     * This helper method returns the shape's current slot in the store.
+     * @return
+     */
+    private int slot() {
+        return this.store.slotOf(this.handle);
+    }
+}
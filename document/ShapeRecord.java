@@ -0,0 +1,541 @@
+package sketchy.document;
+
+import javafx.scene.paint.Color;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the ShapeRecord class. It is an immutable copy of the state of one Saveable at one
+ * point in time: its id, its type, its color, its geometry, and (for lines) its points. Records
+ * never reference the JavaFX node they were taken from, so they can be read from any thread.
+ * A Saveable hands out the same record until it is changed, which is what lets consecutive
+ * document snapshots share every record that an edit did not touch.
+ *
+ * For rectangles and ellipses, width and height follow the SketchyShape accessors (so for an
+ * ellipse they are the radii). For lines, the center is the first point and the points array
+ * holds every coordinate as x0, y0, x1, y1, ... The points array must never be modified after
+ * the record is created. A line may also carry a LineTransform: its points are then stored as
+ * they were drawn, and getPointX and getPointY map them through the transform as they are read,
+ * so moving, rotating, or resizing a line makes a new record without copying its points.
+ * Every record also holds the id of the layer its Saveable is on.
+ *
+ * A record of type SYMBOL describes an instance of a Symbol: it holds the symbol, and only
+ * where the instance is drawn (its center, the width and height it is drawn at, and its angle).
+ * Its color is the color every member of the symbol is drawn in, or null if the members keep
+ * their own colors.
+ *
+ * A record of a shape that is in a group holds the ids of the groups it is in, from the
+ * outermost one in, so the records alone say how the drawing is grouped (and undoing a grouping
+ * only means going back to the old records). The array must never be modified after the record
+ * is created, and is null for a shape that is not in any group.
+ */
+public final class ShapeRecord {
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    private final int id;
+    private final ShapeType type;
+    private final Color color;
+    private final double centerX;
+    private final double centerY;
+    private final double width;
+    private final double height;
+    private final double angle;
+    private final double[] points;
+    private final LineTransform lineTransform;
+    private final int layer;
+    private final Symbol symbol;
+    private final int[] groups;
+
+    /**
+     * This is the ShapeRecord constructor. It takes in the id of the Saveable the record
+     * describes, its type, its color, the x and y coordinates of its center, its width, its
+     * height, its angle of rotation, and its points (null for rectangles and ellipses). For
+     * lines, the width is the stroke width and the height is unused.
+     * @param id
+     * @param type
+     * @param color
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param points
+     */
+    public ShapeRecord(int id, ShapeType type, Color color, double centerX, double centerY,
+                       double width, double height, double angle, double[] points) {
+        this(id, type, color, centerX, centerY, width, height, angle, points, null, 0);
+    }
+
+    /**
+     * This is the ShapeRecord constructor for lines that are drawn with a transform. It takes
+     * in the same values as the constructor above, followed by the line's transform (or null if
+     * its points are drawn as they are). The points are the line's untransformed points, and the
+     * center is its transformed first point.
+     * @param id
+     * @param type
+     * @param color
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param points
+     * @param lineTransform
+     */
+    public ShapeRecord(int id, ShapeType type, Color color, double centerX, double centerY,
+                       double width, double height, double angle, double[] points, LineTransform lineTransform) {
+        this(id, type, color, centerX, centerY, width, height, angle, points, lineTransform, 0);
+    }
+
+    /**
+     * This is the ShapeRecord constructor for Saveables on a layer other than the bottom one.
+     * It takes in the same values as the constructor above, followed by the id of the layer the
+     * Saveable is on.
+     * @param id
+     * @param type
+     * @param color
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param points
+     * @param lineTransform
+     * @param layer
+     */
+    public ShapeRecord(int id, ShapeType type, Color color, double centerX, double centerY, double width,
+                       double height, double angle, double[] points, LineTransform lineTransform, int layer) {
+        this(id, type, color, centerX, centerY, width, height, angle, points, lineTransform, layer, null, null);
+    }
+
+    /**
+     * This is the ShapeRecord constructor for instances of a symbol. It takes in the id of the
+     * instance, the symbol, the color to draw every member of the symbol in (or null to keep
+     * their own colors), the x and y coordinates of the instance's center, the width and height
+     * it is drawn at, its angle of rotation, and the id of the layer it is on.
+     * @param id
+     * @param symbol
+     * @param colorOverride
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param layer
+     */
+    public ShapeRecord(int id, Symbol symbol, Color colorOverride, double centerX, double centerY,
+                       double width, double height, double angle, int layer) {
+        this(id, ShapeType.SYMBOL, colorOverride, centerX, centerY, width, height, angle, null, null, layer, symbol, null);
+    }
+
+    /**
+     * This is the constructor every other one calls. It takes in every value a record holds.
+     * @param id
+     * @param type
+     * @param color
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param points
+     * @param lineTransform
+     * @param layer
+     * @param symbol
+     * @param groups
+     */
+    private ShapeRecord(int id, ShapeType type, Color color, double centerX, double centerY, double width,
+                        double height, double angle, double[] points, LineTransform lineTransform, int layer,
+                        Symbol symbol, int[] groups) {
+        this.id = id;
+        this.type = type;
+        this.color = color;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.width = width;
+        this.height = height;
+        this.angle = angle;
+        this.points = points;
+        this.lineTransform = lineTransform;
+        this.layer = layer;
+        this.symbol = symbol;
+        this.groups = groups;
+    }
+
+    /**
+     * This method hands out a new, unique id. Every Saveable asks for one when it is created,
+     * and keeps it for as long as it exists, so records of the same Saveable can be matched up
+     * across snapshots.
+     * @return
+     */
+    public static int newId() {
+        return NEXT_ID.getAndIncrement();
+    }
+
+    /**
+     * This method is an accessor for the id of the Saveable this record describes.
+     * @return
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * This method is an accessor for the type of the Saveable.
+     * @return
+     */
+    public ShapeType getType() {
+        return this.type;
+    }
+
+    /**
+     * This method is an accessor for the color of the Saveable (which, for an instance of a
+     * symbol, is null unless its members are all drawn in one color).
+     * @return
+     */
+    public Color getColor() {
+        return this.color;
+    }
+
+    /**
+     * This method is an accessor for the x coordinate of the center (or first point).
+     * @return
+     */
+    public double getCenterX() {
+        return this.centerX;
+    }
+
+    /**
+     * This method is an accessor for the y coordinate of the center (or first point).
+     * @return
+     */
+    public double getCenterY() {
+        return this.centerY;
+    }
+
+    /**
+     * This method is an accessor for the width of the shape (the stroke width, for lines).
+     * @return
+     */
+    public double getWidth() {
+        return this.width;
+    }
+
+    /**
+     * This method is an accessor for the height of the shape.
+     * @return
+     */
+    public double getHeight() {
+        return this.height;
+    }
+
+    /**
+     * This method is an accessor for the angle of rotation of the shape.
+     * @return
+     */
+    public double getAngle() {
+        return this.angle;
+    }
+
+    /**
+     * This method returns the number of points in a line record, or zero for rectangles
+     * and ellipses.
+     * @return
+     */
+    public int getPointCount() {
+        if (this.points == null) {
+            return 0;
+        }
+        return this.points.length / 2;
+    }
+
+    /**
+     * This method returns the x coordinate of the point at the given index of a line record,
+     * where it is drawn (that is, with the line's transform applied).
+     * @param index
+     * @return
+     */
+    public double getPointX(int index) {
+        if (this.lineTransform == null) {
+            return this.points[2 * index];
+        }
+        return this.lineTransform.mapX(this.points[2 * index], this.points[2 * index + 1]);
+    }
+
+    /**
+     * This method returns the y coordinate of the point at the given index of a line record,
+     * where it is drawn (that is, with the line's transform applied).
+     * @param index
+     * @return
+     */
+    public double getPointY(int index) {
+        if (this.lineTransform == null) {
+            return this.points[2 * index + 1];
+        }
+        return this.lineTransform.mapY(this.points[2 * index], this.points[2 * index + 1]);
+    }
+
+    /**
+     * This method returns the x coordinate of the point at the given index of a line record, as
+     * it was drawn (that is, without the line's transform).
+     * @param index
+     * @return
+     */
+    public double getRawPointX(int index) {
+        return this.points[2 * index];
+    }
+
+    /**
+     * This method returns the y coordinate of the point at the given index of a line record, as
+     * it was drawn (that is, without the line's transform).
+     * @param index
+     * @return
+     */
+    public double getRawPointY(int index) {
+        return this.points[2 * index + 1];
+    }
+
+    /**
+     * This method is an accessor for the transform a line is drawn with, which is null if its
+     * points are drawn as they are.
+     * @return
+     */
+    public LineTransform getLineTransform() {
+        return this.lineTransform;
+    }
+
+    /**
+     * This method is an accessor for the id of the layer the Saveable is on (0 for the bottom
+     * layer every drawing starts with).
+     * @return
+     */
+    public int getLayer() {
+        return this.layer;
+    }
+
+    /**
+     * This method is an accessor for the symbol an instance record draws, which is null for
+     * every other type of record.
+     * @return
+     */
+    public Symbol getSymbol() {
+        return this.symbol;
+    }
+
+    /**
+     * This method returns the ids of the groups the shape is in, from the outermost one in, or
+     * null if it is not in any group. The array must not be modified.
+     * @return
+     */
+    public int[] getGroups() {
+        return this.groups;
+    }
+
+    /**
+     * This method returns whether the shape is in the group with the given id, directly or
+     * through a group inside it.
+     * @param groupId
+     * @return
+     */
+    public boolean isInGroup(int groupId) {
+        if (this.groups != null) {
+            for (int group : this.groups) {
+                if (group == groupId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method returns whether the given record has exactly the same untransformed points as
+     * this one (their transforms may differ). Records that share the same points array are equal
+     * without comparing any coordinates.
+     * @param other
+     * @return
+     */
+    public boolean hasSamePoints(ShapeRecord other) {
+        if (this.points == other.points) {
+            return true;
+        }
+        if (this.points == null || other.points == null) {
+            return false;
+        }
+        return Arrays.equals(this.points, other.points);
+    }
+
+    /**
+     * This method returns whether the given record uses the very same points array as this
+     * one, which is how the records of a line that was only moved, restyled, or transformed
+     * are recognized without comparing any coordinates.
+     * @param other
+     * @return
+     */
+    boolean sharesPoints(ShapeRecord other) {
+        return this.points == other.points;
+    }
+
+    /**
+     * This method returns the array that holds the untransformed points, which must not be
+     * modified.
+     * @return
+     */
+    double[] getPointArray() {
+        return this.points;
+    }
+
+    /**
+     * This method returns a copy of this record with a different color and width, which shares
+     * this record's points instead of copying them.
+     * @param newColor
+     * @param newWidth
+     * @return
+     */
+    public ShapeRecord withStyle(Color newColor, double newWidth) {
+        return new ShapeRecord(this.id, this.type, newColor, this.centerX, this.centerY,
+                newWidth, this.height, this.angle, this.points, this.lineTransform, this.layer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of this record with a different color.
+     * @param newColor
+     * @return
+     */
+    public ShapeRecord withColor(Color newColor) {
+        return new ShapeRecord(this.id, this.type, newColor, this.centerX, this.centerY,
+                this.width, this.height, this.angle, this.points, this.lineTransform, this.layer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of this record with a different angle of rotation.
+     * @param newAngle
+     * @return
+     */
+    public ShapeRecord withAngle(double newAngle) {
+        return new ShapeRecord(this.id, this.type, this.color, this.centerX, this.centerY,
+                this.width, this.height, newAngle, this.points, this.lineTransform, this.layer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of this record with a different width and height.
+     * @param newWidth
+     * @param newHeight
+     * @return
+     */
+    public ShapeRecord withSize(double newWidth, double newHeight) {
+        return new ShapeRecord(this.id, this.type, this.color, this.centerX, this.centerY,
+                newWidth, newHeight, this.angle, this.points, this.lineTransform, this.layer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of a line's record that is drawn with the given transform
+     * (or with none, if it is null) instead of this record's one. The copy shares this record's
+     * points, and its center is moved to its new first point.
+     * @param newTransform
+     * @return
+     */
+    public ShapeRecord withLineTransform(LineTransform newTransform) {
+        double firstX = 0;
+        double firstY = 0;
+        if (this.getPointCount() > 0) {
+            firstX = this.points[0];
+            firstY = this.points[1];
+        }
+        if (newTransform != null) {
+            double rawX = firstX;
+            firstX = newTransform.mapX(rawX, firstY);
+            firstY = newTransform.mapY(rawX, firstY);
+        }
+        return new ShapeRecord(this.id, this.type, this.color, firstX, firstY,
+                this.width, this.height, this.angle, this.points, newTransform, this.layer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of this record moved by dx and dy. For lines, only the
+     * transform is moved, so the copy shares this record's points.
+     * @param dx
+     * @param dy
+     * @return
+     */
+    public ShapeRecord translated(double dx, double dy) {
+        if (this.points != null) {
+            LineTransform moved = this.lineTransform;
+            if (moved == null) {
+                moved = LineTransform.identity(this.centerX, this.centerY);
+            }
+            return this.withLineTransform(moved.translated(dx, dy));
+        }
+        return this.withPlacement(this.centerX + dx, this.centerY + dy, this.width, this.height, this.angle);
+    }
+
+    /**
+     * This method returns a copy of the record of a rectangle, an ellipse, or an instance of a
+     * symbol, with a different center, width, height, and angle of rotation.
+     * @param newCenterX
+     * @param newCenterY
+     * @param newWidth
+     * @param newHeight
+     * @param newAngle
+     * @return
+     */
+    public ShapeRecord withPlacement(double newCenterX, double newCenterY, double newWidth, double newHeight,
+                                     double newAngle) {
+        return new ShapeRecord(this.id, this.type, this.color, newCenterX, newCenterY,
+                newWidth, newHeight, newAngle, null, null, this.layer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of the record of an instance that draws the given symbol
+     * (usually a newer version of its current one) instead. The instance keeps its center and
+     * angle, and its width and height change so that it is scaled by as much as before.
+     * @param newSymbol
+     * @return
+     */
+    public ShapeRecord withSymbol(Symbol newSymbol) {
+        double scaleX = this.width / this.symbol.getWidth();
+        double scaleY = this.height / this.symbol.getHeight();
+        return new ShapeRecord(this.id, this.type, this.color, this.centerX, this.centerY,
+                newSymbol.getWidth() * scaleX, newSymbol.getHeight() * scaleY, this.angle, null, null, this.layer,
+                newSymbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of this record that describes a different Saveable (the one
+     * with the given id), for example a copy of a shape. The copy shares this record's points.
+     * @param newId
+     * @return
+     */
+    public ShapeRecord withId(int newId) {
+        return new ShapeRecord(newId, this.type, this.color, this.centerX, this.centerY,
+                this.width, this.height, this.angle, this.points, this.lineTransform, this.layer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of this record on the layer with the given id, which shares
+     * this record's points instead of copying them.
+     * @param newLayer
+     * @return
+     */
+    public ShapeRecord withLayer(int newLayer) {
+        return new ShapeRecord(this.id, this.type, this.color, this.centerX, this.centerY,
+                this.width, this.height, this.angle, this.points, this.lineTransform, newLayer, this.symbol, this.groups);
+    }
+
+    /**
+     * This method returns a copy of this record in the given groups (from the outermost one in,
+     * or null for none), which shares this record's points. If the record is already in exactly
+     * that array of groups, the record itself is returned.
+     * @param newGroups
+     * @return
+     */
+    public ShapeRecord withGroups(int[] newGroups) {
+        if (newGroups == this.groups) {
+            return this;
+        }
+        return new ShapeRecord(this.id, this.type, this.color, this.centerX, this.centerY,
+                this.width, this.height, this.angle, this.points, this.lineTransform, this.layer, this.symbol,
+                newGroups);
+    }
+}
@@ -0,0 +1,674 @@
+package sketchy.document;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.scene.paint.Color;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * This is the ShapeStore class. It holds rectangles and ellipses without creating a Java object
+ * or a JavaFX node for each of them, so that a drawing can hold millions of simple shapes. The
+ * shapes are stored as a struct of arrays: every property (center x, center y, width, height,
+ * angle, the cosine and sine of the angle, packed ARGB color, type, z-key, and id) lives in its
+ * own column, and every column is a direct (off-heap) ByteBuffer in native byte order. The live
+ * shapes always occupy slots 0 to size() - 1 with no gaps, so hit-testing, export, and
+ * serialization are straight scans over contiguous memory.
+ *
+ * Removing a shape moves the shape in the last slot into the hole, so slots are not stable.
+ * Shapes are therefore referred to by handle: a small int that stays the same for as long as
+ * the shape is in the store, and that is mapped to the shape's current slot. get(handle) returns
+ * a ShapeHandle, a lightweight view that is an EditableShape, as a SketchyShape is.
+ *
+ * As with ShapeRecord, width and height are the full width and height of a rectangle, and the
+ * radii of an ellipse. The z-key orders shapes from bottom (lowest) to top (highest); new shapes
+ * are added on top. The store is not thread-safe, and is meant to be used from the FX thread.
+ */
+public class ShapeStore {
+
+    private static final int DOUBLE_BYTES = 8;
+    private static final int INT_BYTES = 4;
+    private static final int OPAQUE = 255;
+
+    private ByteBuffer centerXs;
+    private ByteBuffer centerYs;
+    private ByteBuffer widths;
+    private ByteBuffer heights;
+    private ByteBuffer angles;
+    private ByteBuffer cosines;
+    private ByteBuffer sines;
+    private ByteBuffer colors;
+    private ByteBuffer types;
+    private ByteBuffer zKeys;
+    private ByteBuffer ids;
+    private int[] handleOfSlot;
+    private int[] slotOfHandle;
+    private int[] freeHandles;
+    private int freeCount;
+    private int handleCount;
+    private int size;
+    private int capacity;
+    private int nextZKey;
+
+    /**
+     * This is the ShapeStore constructor. It takes in the number of shapes the store should
+     * have room for at first; the store grows as needed.
+     * @param initialCapacity
+     */
+    public ShapeStore(int initialCapacity) {
+        this.capacity = Math.max(16, initialCapacity);
+        this.centerXs = allocate(this.capacity * DOUBLE_BYTES);
+        this.centerYs = allocate(this.capacity * DOUBLE_BYTES);
+        this.widths = allocate(this.capacity * DOUBLE_BYTES);
+        this.heights = allocate(this.capacity * DOUBLE_BYTES);
+        this.angles = allocate(this.capacity * DOUBLE_BYTES);
+        this.cosines = allocate(this.capacity * DOUBLE_BYTES);
+        this.sines = allocate(this.capacity * DOUBLE_BYTES);
+        this.colors = allocate(this.capacity * INT_BYTES);
+        this.types = allocate(this.capacity);
+        this.zKeys = allocate(this.capacity * INT_BYTES);
+        this.ids = allocate(this.capacity * INT_BYTES);
+        this.handleOfSlot = new int[this.capacity];
+        this.slotOfHandle = new int[this.capacity];
+        this.freeHandles = new int[this.capacity];
+        this.freeCount = 0;
+        this.handleCount = 0;
+        this.size = 0;
+        this.nextZKey = 0;
+    }
+
+    /**
+     * This method returns how many shapes are in the store.
+     * @return
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * This method adds a rectangle on top of the other shapes, and returns its handle.
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param color
+     * @return
+     */
+    public int addRectangle(double centerX, double centerY, double width, double height, double angle, Color color) {
+        return this.add(ShapeRecord.newId(), ShapeType.RECTANGLE, centerX, centerY, width, height, angle, color);
+    }
+
+    /**
+     * This method adds an ellipse on top of the other shapes, and returns its handle. The width
+     * and height are the radii of the ellipse.
+     * @param centerX
+     * @param centerY
+     * @param radiusX
+     * @param radiusY
+     * @param angle
+     * @param color
+     * @return
+     */
+    public int addEllipse(double centerX, double centerY, double radiusX, double radiusY, double angle, Color color) {
+        return this.add(ShapeRecord.newId(), ShapeType.ELLIPSE, centerX, centerY, radiusX, radiusY, angle, color);
+    }
+
+    /**
+     * This method adds the shape described by a record on top of the other shapes, keeping the
+     * record's id, and returns its handle. Only rectangles and ellipses can be stored; a record
+     * of a line or of an instance of a symbol throws an IllegalArgumentException.
+     * @param record
+     * @return
+     */
+    public int add(ShapeRecord record) {
+        if (record.getType() == ShapeType.LINE || record.getType() == ShapeType.SYMBOL) {
+            throw new IllegalArgumentException("Only rectangles and ellipses can be kept in a ShapeStore");
+        }
+        return this.add(record.getId(), record.getType(), record.getCenterX(), record.getCenterY(),
+                record.getWidth(), record.getHeight(), record.getAngle(), record.getColor());
+    }
+
+    /**
+     * This method removes the shape with the given handle. The shape in the last slot is moved
+     * into its slot, and the handle may later be handed out again.
+     * @param handle
+     */
+    public void remove(int handle) {
+        int slot = this.slotOf(handle);
+        int last = this.size - 1;
+        if (slot != last) {
+            this.copySlot(last, slot);
+        }
+        this.slotOfHandle[handle] = -1;
+        this.freeHandles[this.freeCount] = handle;
+        this.freeCount++;
+        this.size--;
+    }
+
+    /**
+     * This method removes every shape from the store. The memory is kept for reuse.
+     */
+    public void clear() {
+        this.size = 0;
+        this.handleCount = 0;
+        this.freeCount = 0;
+        this.nextZKey = 0;
+    }
+
+    /**
+     * This method returns whether the given handle refers to a shape in the store.
+     * @param handle
+     * @return
+     */
+    public boolean isLive(int handle) {
+        return handle >= 0 && handle < this.handleCount && this.slotOfHandle[handle] >= 0;
+    }
+
+    /**
+     * This method returns a ShapeHandle for the shape with the given handle. The ShapeHandle
+     * holds nothing but the store and the handle, so it is cheap to create and throw away.
+     * @param handle
+     * @return
+     */
+    public ShapeHandle get(int handle) {
+        this.slotOf(handle);
+        return new ShapeHandle(this, handle);
+    }
+
+    /**
+     * This method returns the handle of the topmost shape that contains the given point, or -1
+     * if there is none. Every slot is checked in a single pass over the columns, with no
+     * trigonometry, since the cosine and sine of each angle are stored.
+     * @param x
+     * @param y
+     * @return
+     */
+    public int hitTest(double x, double y) {
+        int hit = -1;
+        int hitZKey = Integer.MIN_VALUE;
+        for (int slot = 0; slot < this.size; slot++) {
+            int zKey = this.zKeys.getInt(slot * INT_BYTES);
+            if ((hit < 0 || zKey > hitZKey) && this.slotContains(slot, x, y)) {
+                hit = slot;
+                hitZKey = zKey;
+            }
+        }
+        return hit < 0 ? -1 : this.handleOfSlot[hit];
+    }
+
+    /**
+     * This method returns the handles of every shape, from the bottom shape to the top shape.
+     * @return
+     */
+    public int[] handlesInZOrder() {
+        //the z-key goes in the high half and the slot in the low half, so one primitive sort orders both
+        long[] keys = new long[this.size];
+        for (int slot = 0; slot < this.size; slot++) {
+            keys[slot] = ((long) this.zKeys.getInt(slot * INT_BYTES) << 32) | slot;
+        }
+        Arrays.sort(keys);
+        int[] handles = new int[this.size];
+        for (int index = 0; index < this.size; index++) {
+            handles[index] = this.handleOfSlot[(int) keys[index]];
+        }
+        return handles;
+    }
+
+    /**
+     * This method writes every shape to a file, from the bottom shape to the top shape, in the
+     * same format that SketchyRectangle and SketchyEllipse use, so the file can be loaded
+     * normally.
+     * @param io
+     */
+    public void writeToFile(CS15FileIO io) {
+        for (int handle : this.handlesInZOrder()) {
+            this.writeSlot(io, this.slotOfHandle[handle]);
+        }
+    }
+
+    /**
+     * This method returns the slot the shape with the given handle currently occupies, or
+     * throws an IllegalArgumentException if the handle does not refer to a shape in the store.
+     * Slots change whenever a shape is removed, so they should only be held on to while the
+     * store is not being changed.
+     * @param handle
+     * @return
+     */
+    public int slotOf(int handle) {
+        if (!this.isLive(handle)) {
+            throw new IllegalArgumentException("No shape with handle " + handle + " in the store");
+        }
+        return this.slotOfHandle[handle];
+    }
+
+    /**
+     * This method returns the handle of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    public int handleAt(int slot) {
+        return this.handleOfSlot[this.checkSlot(slot)];
+    }
+
+    /**
+     * This method returns a read-only view of the column of center x coordinates, in native
+     * byte order, one double per slot. Together with the other column accessors, it lets bulk
+     * queries read the store directly.
+     * @return
+     */
+    public ByteBuffer getCenterXColumn() {
+        return this.readOnly(this.centerXs);
+    }
+
+    /**
+     * This method returns a read-only view of the column of center y coordinates.
+     * @return
+     */
+    public ByteBuffer getCenterYColumn() {
+        return this.readOnly(this.centerYs);
+    }
+
+    /**
+     * This method returns a read-only view of the column of widths (x radii for ellipses).
+     * @return
+     */
+    public ByteBuffer getWidthColumn() {
+        return this.readOnly(this.widths);
+    }
+
+    /**
+     * This method returns a read-only view of the column of heights (y radii for ellipses).
+     * @return
+     */
+    public ByteBuffer getHeightColumn() {
+        return this.readOnly(this.heights);
+    }
+
+    /**
+     * This method returns a read-only view of the column of the cosines of the angles.
+     * @return
+     */
+    public ByteBuffer getCosineColumn() {
+        return this.readOnly(this.cosines);
+    }
+
+    /**
+     * This method returns a read-only view of the column of the sines of the angles.
+     * @return
+     */
+    public ByteBuffer getSineColumn() {
+        return this.readOnly(this.sines);
+    }
+
+    /**
+     * This method returns a read-only view of the column of types, one byte per slot holding
+     * the ordinal of the ShapeType.
+     * @return
+     */
+    public ByteBuffer getTypeColumn() {
+        return this.readOnly(this.types);
+    }
+
+    /**
+     * This method returns a read-only view of the column of z-keys, one int per slot.
+     * @return
+     */
+    public ByteBuffer getZKeyColumn() {
+        return this.readOnly(this.zKeys);
+    }
+
+    /**
+     * This method returns whether the shape in the given slot contains the given point. It is
+     * the same test SketchyRectangle.contains and SketchyEllipse.contains carry out, using the
+     * stored cosine and sine.
+     * @param slot
+     * @param x
+     * @param y
+     * @return
+     */
+    boolean slotContains(int slot, double x, double y) {
+        int offset = slot * DOUBLE_BYTES;
+        return ScalarHitTester.contains(this.types.get(slot) == ShapeType.ELLIPSE.ordinal(),
+                this.centerXs.getDouble(offset), this.centerYs.getDouble(offset), this.widths.getDouble(offset),
+                this.heights.getDouble(offset), this.cosines.getDouble(offset), this.sines.getDouble(offset), x, y);
+    }
+
+    /**
+     * This method returns the center x coordinate of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    double getCenterX(int slot) {
+        return this.centerXs.getDouble(slot * DOUBLE_BYTES);
+    }
+
+    /**
+     * This method returns the center y coordinate of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    double getCenterY(int slot) {
+        return this.centerYs.getDouble(slot * DOUBLE_BYTES);
+    }
+
+    /**
+     * This method returns the width (x radius for an ellipse) of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    double getWidth(int slot) {
+        return this.widths.getDouble(slot * DOUBLE_BYTES);
+    }
+
+    /**
+     * This method returns the height (y radius for an ellipse) of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    double getHeight(int slot) {
+        return this.heights.getDouble(slot * DOUBLE_BYTES);
+    }
+
+    /**
+     * This method returns the angle of rotation of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    double getAngle(int slot) {
+        return this.angles.getDouble(slot * DOUBLE_BYTES);
+    }
+
+    /**
+     * This method returns the type of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    ShapeType getType(int slot) {
+        return ShapeType.values()[this.types.get(slot)];
+    }
+
+    /**
+     * This method returns the id of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    int getId(int slot) {
+        return this.ids.getInt(slot * INT_BYTES);
+    }
+
+    /**
+     * This method returns the z-key of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    int getZKey(int slot) {
+        return this.zKeys.getInt(slot * INT_BYTES);
+    }
+
+    /**
+     * This method returns the color of the shape in the given slot.
+     * @param slot
+     * @return
+     */
+    Color getColor(int slot) {
+        return unpackColor(this.colors.getInt(slot * INT_BYTES));
+    }
+
+    /**
+     * This method moves the center of the shape in the given slot.
+     * @param slot
+     * @param x
+     * @param y
+     */
+    void setCenter(int slot, double x, double y) {
+        this.centerXs.putDouble(slot * DOUBLE_BYTES, x);
+        this.centerYs.putDouble(slot * DOUBLE_BYTES, y);
+    }
+
+    /**
+     * This method sets the width and height of the shape in the given slot.
+     * @param slot
+     * @param width
+     * @param height
+     */
+    void setSize(int slot, double width, double height) {
+        this.widths.putDouble(slot * DOUBLE_BYTES, width);
+        this.heights.putDouble(slot * DOUBLE_BYTES, height);
+    }
+
+    /**
+     * This method sets the angle of rotation of the shape in the given slot, along with its
+     * stored cosine and sine.
+     * @param slot
+     * @param angle
+     */
+    void setAngle(int slot, double angle) {
+        this.angles.putDouble(slot * DOUBLE_BYTES, angle);
+        this.cosines.putDouble(slot * DOUBLE_BYTES, Math.cos(Math.toRadians(angle)));
+        this.sines.putDouble(slot * DOUBLE_BYTES, Math.sin(Math.toRadians(angle)));
+    }
+
+    /**
+     * This method sets the color of the shape in the given slot.
+     * @param slot
+     * @param color
+     */
+    void setColor(int slot, Color color) {
+        this.colors.putInt(slot * INT_BYTES, packColor(color));
+    }
+
+    /**
+     * This method sets the z-key of the shape in the given slot. Shapes added later are
+     * still placed above it.
+     * @param slot
+     * @param zKey
+     */
+    void setZKey(int slot, int zKey) {
+        this.zKeys.putInt(slot * INT_BYTES, zKey);
+        this.nextZKey = Math.max(this.nextZKey, zKey + 1);
+    }
+
+    /**
+     * This method writes the shape in the given slot to a file, in the format of
+     * SketchyRectangle.writeToFile or SketchyEllipse.writeToFile.
+     * @param io
+     * @param slot
+     */
+    void writeSlot(CS15FileIO io, int slot) {
+        int argb = this.colors.getInt(slot * INT_BYTES);
+        boolean ellipse = this.types.get(slot) == ShapeType.ELLIPSE.ordinal();
+        io.writeString(ellipse ? "ellipse" : "rectangle");
+
+        //RGB
+        io.writeInt((argb >> 16) & 0xFF);
+        io.writeInt((argb >> 8) & 0xFF);
+        io.writeInt(argb & 0xFF);
+
+        //center for an ellipse, top left corner for a rectangle
+        double width = this.getWidth(slot);
+        double height = this.getHeight(slot);
+        io.writeDouble(ellipse ? this.getCenterX(slot) : this.getCenterX(slot) - width / 2);
+        io.writeDouble(ellipse ? this.getCenterY(slot) : this.getCenterY(slot) - height / 2);
+
+        //width and height
+        io.writeDouble(width);
+        io.writeDouble(height);
+
+        //angle
+        io.writeDouble(this.getAngle(slot));
+    }
+
+    /**
+     * This helper method fills in a new slot, and hands out a handle for it.
+     * @param id
+     * @param type
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param color
+     * @return
+     */
+    private int add(int id, ShapeType type, double centerX, double centerY, double width, double height,
+                    double angle, Color color) {
+        if (this.size == this.capacity) {
+            this.grow();
+        }
+        int slot = this.size;
+        int handle;
+        if (this.freeCount > 0) {
+            this.freeCount--;
+            handle = this.freeHandles[this.freeCount];
+        }
+        else {
+            handle = this.handleCount;
+            this.handleCount++;
+        }
+        this.size++;
+        this.handleOfSlot[slot] = handle;
+        this.slotOfHandle[handle] = slot;
+        this.ids.putInt(slot * INT_BYTES, id);
+        this.types.put(slot, (byte) type.ordinal());
+        this.setCenter(slot, centerX, centerY);
+        this.setSize(slot, width, height);
+        this.setAngle(slot, angle);
+        this.setColor(slot, color);
+        this.setZKey(slot, this.nextZKey);
+        return handle;
+    }
+
+    /**
+     * This helper method copies every column of one slot into another, and moves the
+     * handle along with it.
+     * @param from
+     * @param to
+     */
+    private void copySlot(int from, int to) {
+        copy(this.centerXs, from, to, DOUBLE_BYTES);
+        copy(this.centerYs, from, to, DOUBLE_BYTES);
+        copy(this.widths, from, to, DOUBLE_BYTES);
+        copy(this.heights, from, to, DOUBLE_BYTES);
+        copy(this.angles, from, to, DOUBLE_BYTES);
+        copy(this.cosines, from, to, DOUBLE_BYTES);
+        copy(this.sines, from, to, DOUBLE_BYTES);
+        copy(this.colors, from, to, INT_BYTES);
+        copy(this.zKeys, from, to, INT_BYTES);
+        copy(this.ids, from, to, INT_BYTES);
+        this.types.put(to, this.types.get(from));
+        int handle = this.handleOfSlot[from];
+        this.handleOfSlot[to] = handle;
+        this.slotOfHandle[handle] = to;
+    }
+
+    /**
+     * This helper method doubles the capacity of the store, copying the used part of every
+     * column into new off-heap memory.
+     */
+    private void grow() {
+        int newCapacity = this.capacity * 2;
+        this.centerXs = grown(this.centerXs, this.size * DOUBLE_BYTES, newCapacity * DOUBLE_BYTES);
+        this.centerYs = grown(this.centerYs, this.size * DOUBLE_BYTES, newCapacity * DOUBLE_BYTES);
+        this.widths = grown(this.widths, this.size * DOUBLE_BYTES, newCapacity * DOUBLE_BYTES);
+        this.heights = grown(this.heights, this.size * DOUBLE_BYTES, newCapacity * DOUBLE_BYTES);
+        this.angles = grown(this.angles, this.size * DOUBLE_BYTES, newCapacity * DOUBLE_BYTES);
+        this.cosines = grown(this.cosines, this.size * DOUBLE_BYTES, newCapacity * DOUBLE_BYTES);
+        this.sines = grown(this.sines, this.size * DOUBLE_BYTES, newCapacity * DOUBLE_BYTES);
+        this.colors = grown(this.colors, this.size * INT_BYTES, newCapacity * INT_BYTES);
+        this.types = grown(this.types, this.size, newCapacity);
+        this.zKeys = grown(this.zKeys, this.size * INT_BYTES, newCapacity * INT_BYTES);
+        this.ids = grown(this.ids, this.size * INT_BYTES, newCapacity * INT_BYTES);
+        this.handleOfSlot = Arrays.copyOf(this.handleOfSlot, newCapacity);
+        this.slotOfHandle = Arrays.copyOf(this.slotOfHandle, newCapacity);
+        this.freeHandles = Arrays.copyOf(this.freeHandles, newCapacity);
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * This helper method throws an IndexOutOfBoundsException if the given slot is not in use.
+     * @param slot
+     * @return
+     */
+    private int checkSlot(int slot) {
+        if (slot < 0 || slot >= this.size) {
+            throw new IndexOutOfBoundsException("No slot " + slot + " in a store of " + this.size);
+        }
+        return slot;
+    }
+
+    /**
+     * This helper method returns a read-only view of a column, covering only the slots in use.
+     * @param column
+     * @return
+     */
+    private ByteBuffer readOnly(ByteBuffer column) {
+        int bytesPerSlot = column.capacity() / this.capacity;
+        ByteBuffer view = column.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+        view.limit(this.size * bytesPerSlot);
+        return view;
+    }
+
+    /**
+     * This helper method allocates a column of the given number of bytes off the heap.
+     * @param bytes
+     * @return
+     */
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * This helper method returns a bigger copy of a column.
+     * @param column
+     * @param usedBytes
+     * @param newBytes
+     * @return
+     */
+    private static ByteBuffer grown(ByteBuffer column, int usedBytes, int newBytes) {
+        ByteBuffer bigger = allocate(newBytes);
+        ByteBuffer used = column.duplicate();
+        used.position(0).limit(usedBytes);
+        bigger.put(used);
+        bigger.clear();
+        return bigger;
+    }
+
+    /**
+     * This helper method copies one value of a column from one slot to another.
+     * @param column
+     * @param from
+     * @param to
+     * @param bytes
+     */
+    private static void copy(ByteBuffer column, int from, int to, int bytes) {
+        if (bytes == DOUBLE_BYTES) {
+            column.putDouble(to * bytes, column.getDouble(from * bytes));
+        }
+        else {
+            column.putInt(to * bytes, column.getInt(from * bytes));
+        }
+    }
+
+    /**
+     * This helper method packs a Color into an int, as 8 bits each of alpha, red, green, and blue.
+     * @param color
+     * @return
+     */
+    private static int packColor(Color color) {
+        int alpha = (int) Math.round(color.getOpacity() * OPAQUE);
+        int red = (int) Math.round(color.getRed() * OPAQUE);
+        int green = (int) Math.round(color.getGreen() * OPAQUE);
+        int blue = (int) Math.round(color.getBlue() * OPAQUE);
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * This helper method unpacks a Color from an int made by packColor.
+     * @param argb
+     * @return
+     */
+    private static Color unpackColor(int argb) {
+        return Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, ((argb >>> 24) & 0xFF) / (double) OPAQUE);
+    }
+}
@@ -0,0 +1,9 @@
+package sketchy.document;
+
+/**
+ * This is the ShapeType enum class. There are four enums in total: RECTANGLE, ELLIPSE, LINE,
+ * and SYMBOL. These correspond to the four kinds of Saveables that can appear in a drawing.
+ */
+public enum ShapeType {
+    RECTANGLE, ELLIPSE, LINE, SYMBOL;
+}
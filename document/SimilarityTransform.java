@@ -0,0 +1,125 @@
+package sketchy.document;
+
+/**
+ * This is the SimilarityTransform class. It is an immutable transform made of a uniform scale
+ * and a rotation about a pivot point, followed by a translation: these are the transforms that
+ * keep a rotated rectangle a rotated rectangle (and an ellipse an ellipse), so they can be
+ * applied to a shape just by changing its center, size, and angle. As with node rotation in
+ * JavaFX, a positive angle turns clockwise on screen.
+ */
+public final class SimilarityTransform {
+
+    private final double scale;
+    private final double angle;
+    private final double pivotX;
+    private final double pivotY;
+    private final double dx;
+    private final double dy;
+    private final double cosine;
+    private final double sine;
+
+    /**
+     * This is the SimilarityTransform constructor. It takes in the scale factor (which must be
+     * positive), the angle of rotation in degrees, the pivot point the scale and rotation are
+     * about, and the translation applied afterwards.
+     * @param scaleFactor
+     * @param degrees
+     * @param x
+     * @param y
+     * @param moveX
+     * @param moveY
+     */
+    public SimilarityTransform(double scaleFactor, double degrees, double x, double y, double moveX, double moveY) {
+        if (!(scaleFactor > 0)) {
+            throw new IllegalArgumentException("The scale factor must be positive, not " + scaleFactor);
+        }
+        this.scale = scaleFactor;
+        this.angle = degrees;
+        this.pivotX = x;
+        this.pivotY = y;
+        this.dx = moveX;
+        this.dy = moveY;
+        this.cosine = Math.cos(Math.toRadians(degrees)) * scaleFactor;
+        this.sine = Math.sin(Math.toRadians(degrees)) * scaleFactor;
+    }
+
+    /**
+     * This method returns a transform that moves everything by dx and dy.
+     * @param dx
+     * @param dy
+     * @return
+     */
+    public static SimilarityTransform translation(double dx, double dy) {
+        return new SimilarityTransform(1, 0, 0, 0, dx, dy);
+    }
+
+    /**
+     * This method returns a transform that rotates everything by the given angle, in degrees,
+     * about the given point.
+     * @param degrees
+     * @param pivotX
+     * @param pivotY
+     * @return
+     */
+    public static SimilarityTransform rotation(double degrees, double pivotX, double pivotY) {
+        return new SimilarityTransform(1, degrees, pivotX, pivotY, 0, 0);
+    }
+
+    /**
+     * This method returns a transform that scales everything by the given factor about the
+     * given point.
+     * @param factor
+     * @param pivotX
+     * @param pivotY
+     * @return
+     */
+    public static SimilarityTransform scaling(double factor, double pivotX, double pivotY) {
+        return new SimilarityTransform(factor, 0, pivotX, pivotY, 0, 0);
+    }
+
+    /**
+     * This method returns the x coordinate the given point is mapped to.
+     * @param x
+     * @param y
+     * @return
+     */
+    public double mapX(double x, double y) {
+        return this.pivotX + (x - this.pivotX) * this.cosine - (y - this.pivotY) * this.sine + this.dx;
+    }
+
+    /**
+     * This method returns the y coordinate the given point is mapped to.
+     * @param x
+     * @param y
+     * @return
+     */
+    public double mapY(double x, double y) {
+        return this.pivotY + (x - this.pivotX) * this.sine + (y - this.pivotY) * this.cosine + this.dy;
+    }
+
+    /**
+     * This method returns a record of the shape moved by this transform. Rectangles and
+     * ellipses get a new center, size, and angle. Lines get a new LineTransform, made by applying
+     * this transform after the line's current one, so no point is copied or mapped however long
+     * the line is. The record keeps its id, type, color, layer, and symbol, and a line keeps its
+     * stroke width.
+     * @param record
+     * @return
+     */
+    public ShapeRecord apply(ShapeRecord record) {
+        if (record.getType() == ShapeType.LINE) {
+            LineTransform current = record.getLineTransform();
+            if (current == null) {
+                current = LineTransform.identity(record.getCenterX(), record.getCenterY());
+            }
+            double centerX = current.getCenterX();
+            double centerY = current.getCenterY();
+            return record.withLineTransform(new LineTransform(current.getPivotX(), current.getPivotY(),
+                    this.mapX(centerX, centerY) - current.getPivotX(), this.mapY(centerX, centerY) - current.getPivotY(),
+                    current.getAngle() + this.angle, current.getScaleX() * this.scale, current.getScaleY() * this.scale));
+        }
+        return record.withPlacement(this.mapX(record.getCenterX(), record.getCenterY()),
+                this.mapY(record.getCenterX(), record.getCenterY()), record.getWidth() * this.scale,
+                record.getHeight() * this.scale, record.getAngle() + this.angle);
+    }
+}
@@ -0,0 +1,226 @@
+package sketchy.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This is the SnapshotChanges class. It sorts out what changed between two snapshots of the
+ * drawing, by shape id, from the structural difference of their record lists: which shapes were
+ * removed, which were added, which had their record replaced, and which kept their record but
+ * changed places in the stacking order. Because the difference only looks at the list nodes the
+ * two snapshots do not share, this costs O(k log n) for k changed shapes rather than a walk
+ * over the whole drawing, so the views of the drawing (the snap index, the group tree, and the
+ * layer stack) can all keep themselves up to date from it after every command. Its lists cannot
+ * be changed once it is made, so the same changes can also be handed to other threads, as
+ * MutationEvents do.
+ */
+public class SnapshotChanges {
+
+    private DocumentSnapshot snapshot;
+    private ArrayList<ShapeRecord> removed;
+    private ArrayList<ShapeRecord> added;
+    private ArrayList<ShapeRecord> updated;
+    private ArrayList<ShapeRecord> outdated;
+    private ArrayList<ShapeRecord> moved;
+    private ArrayList<ShapeRecord> placed;
+    private int[] placedIndexes;
+
+    /**
+     * This is the SnapshotChanges constructor. It is private, since changes are only ever made
+     * by between(). It takes in the snapshot the changes lead to.
+     * @param newer
+     */
+    private SnapshotChanges(DocumentSnapshot newer) {
+        this.snapshot = newer;
+        this.removed = new ArrayList<>();
+        this.added = new ArrayList<>();
+        this.updated = new ArrayList<>();
+        this.outdated = new ArrayList<>();
+        this.moved = new ArrayList<>();
+        this.placed = new ArrayList<>();
+        this.placedIndexes = new int[0];
+    }
+
+    /**
+     * This method works out the changes that turn the older snapshot into the newer one. A record
+     * that turns up on both sides of the difference unchanged has moved in the stacking order if
+     * the number of surviving shapes below it is different in the two snapshots; otherwise its
+     * node was only copied on the way to some other change.
+     * @param older
+     * @param newer
+     * @return
+     */
+    public static SnapshotChanges between(DocumentSnapshot older, DocumentSnapshot newer) {
+        SnapshotChanges changes = new SnapshotChanges(newer);
+        ListDifference<ShapeRecord> difference = newer.getRecords().differenceFrom(older.getRecords());
+        if (difference.isEmpty()) {
+            return changes;
+        }
+        HashMap<Integer, Integer> oldPositions = new HashMap<>();
+        List<ShapeRecord> oldValues = difference.getOldValues();
+        for (int i=0; i<oldValues.size(); i++) {
+            oldPositions.put(oldValues.get(i).getId(), i);
+        }
+        HashMap<Integer, Integer> newPositions = new HashMap<>();
+        List<ShapeRecord> newValues = difference.getNewValues();
+        for (int i=0; i<newValues.size(); i++) {
+            newPositions.put(newValues.get(i).getId(), i);
+        }
+
+        int[] removedIndexes = new int[oldValues.size()];
+        int removedCount = 0;
+        for (int i=0; i<oldValues.size(); i++) {
+            if (!newPositions.containsKey(oldValues.get(i).getId())) {
+                changes.removed.add(oldValues.get(i));
+                removedIndexes[removedCount++] = difference.getOldIndexes().get(i);
+            }
+        }
+        int[] addedIndexes = new int[newValues.size()];
+        int addedCount = 0;
+        for (int i=0; i<newValues.size(); i++) {
+            if (!oldPositions.containsKey(newValues.get(i).getId())) {
+                changes.added.add(newValues.get(i));
+                addedIndexes[addedCount++] = difference.getNewIndexes().get(i);
+            }
+        }
+        removedIndexes = Arrays.copyOf(removedIndexes, removedCount);
+        addedIndexes = Arrays.copyOf(addedIndexes, addedCount);
+        Arrays.sort(removedIndexes);
+        Arrays.sort(addedIndexes);
+
+        for (int i=0; i<newValues.size(); i++) {
+            ShapeRecord record = newValues.get(i);
+            Integer oldPosition = oldPositions.get(record.getId());
+            if (oldPosition == null) {
+                continue;
+            }
+            ShapeRecord oldRecord = oldValues.get(oldPosition);
+            if (oldRecord != record) {
+                changes.updated.add(record);
+                changes.outdated.add(oldRecord);
+                continue;
+            }
+            int oldIndex = difference.getOldIndexes().get(oldPosition);
+            int newIndex = difference.getNewIndexes().get(i);
+            if (oldIndex - countBelow(removedIndexes, oldIndex) != newIndex - countBelow(addedIndexes, newIndex)) {
+                changes.moved.add(record);
+            }
+        }
+
+        //sorted by index, with each value's position in the difference in the low bits
+        long[] order = new long[newValues.size()];
+        for (int i=0; i<order.length; i++) {
+            order[i] = ((long) difference.getNewIndexes().get(i) << 32) | i;
+        }
+        Arrays.sort(order);
+        changes.placedIndexes = new int[order.length];
+        for (int i=0; i<order.length; i++) {
+            changes.placed.add(newValues.get((int) order[i]));
+            changes.placedIndexes[i] = (int) (order[i] >>> 32);
+        }
+        return changes;
+    }
+
+    /**
+     * This method is an accessor for the snapshot the changes lead to.
+     * @return
+     */
+    public DocumentSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * This method is an accessor for the records (from the older snapshot) of the shapes that
+     * are no longer in the drawing.
+     * @return
+     */
+    public List<ShapeRecord> getRemoved() {
+        return Collections.unmodifiableList(this.removed);
+    }
+
+    /**
+     * This method is an accessor for the records of the shapes that are new to the drawing.
+     * @return
+     */
+    public List<ShapeRecord> getAdded() {
+        return Collections.unmodifiableList(this.added);
+    }
+
+    /**
+     * This method is an accessor for the new records of the shapes whose record was replaced.
+     * @return
+     */
+    public List<ShapeRecord> getUpdated() {
+        return Collections.unmodifiableList(this.updated);
+    }
+
+    /**
+     * This method is an accessor for the old records of the shapes whose record was replaced, in
+     * the same order as getUpdated().
+     * @return
+     */
+    public List<ShapeRecord> getOutdated() {
+        return Collections.unmodifiableList(this.outdated);
+    }
+
+    /**
+     * This method is an accessor for the records of the shapes that kept their record but
+     * changed places in the stacking order.
+     * @return
+     */
+    public List<ShapeRecord> getMoved() {
+        return Collections.unmodifiableList(this.moved);
+    }
+
+    /**
+     * This method is an accessor for every record at a position of the newer snapshot that the
+     * older one does not share, bottom first. Every added, updated, and moved record is in here,
+     * along with a few that did not change. Any position not in here holds a record that is
+     * still in the same order relative to the other positions not in here.
+     * @return
+     */
+    public List<ShapeRecord> getPlaced() {
+        return Collections.unmodifiableList(this.placed);
+    }
+
+    /**
+     * This method is an accessor for the indexes, in the newer snapshot, of the records returned
+     * by getPlaced() (in the same order).
+     * @return
+     */
+    public int[] getPlacedIndexes() {
+        return this.placedIndexes;
+    }
+
+    /**
+     * This method returns whether nothing changed at all.
+     * @return
+     */
+    public boolean isEmpty() {
+        return this.placed.isEmpty() && this.removed.isEmpty();
+    }
+
+    /**
+     * This helper method returns how many of the given sorted indexes are below the given index.
+     * @param sortedIndexes
+     * @param index
+     * @return
+     */
+    private static int countBelow(int[] sortedIndexes, int index) {
+        int low = 0;
+        int high = sortedIndexes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedIndexes[middle] < index) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,247 @@
+package sketchy.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This is the StrokeEraser class. It works out what is left of a line after an eraser (a disk
+ * of a given radius) is dragged across it. Only the segments the eraser touches are looked at:
+ * they are found through the line's SegmentIndex, and for each of them the part inside the
+ * eraser is worked out exactly, so a long segment is cut where the eraser crosses it rather than
+ * being removed whole. What is left is split into pieces wherever the eraser cut all the way
+ * through, and each piece becomes a record of its own.
+ *
+ * The eraser counts as touching the line when it reaches the line's stroke, not just its center
+ * line. Since a transform never changes where along a segment a point is, the cuts are worked
+ * out on screen and then applied to the untransformed points, and every piece keeps the line's
+ * transform, color, stroke width, layer, and groups.
+ */
+public class StrokeEraser {
+
+    private static final double EPSILON = 1e-9;
+
+    private double radius;
+    private int[] hits;
+
+    /**
+     * This is the StrokeEraser constructor. It takes in the radius of the eraser.
+     * @param eraserRadius
+     */
+    public StrokeEraser(double eraserRadius) {
+        this.radius = eraserRadius;
+        this.hits = new int[0];
+    }
+
+    /**
+     * This method erases the part of the line that the eraser touches as it is dragged in a
+     * straight line from (fromX, fromY) to (toX, toY). It returns null if the eraser does not
+     * touch the line at all. Otherwise, it returns the pieces that are left, in order along the
+     * line: the first keeps the line's id, and the others get new ids. If nothing is left, the
+     * array is empty.
+     * @param line
+     * @param segments
+     * @param fromX
+     * @param fromY
+     * @param toX
+     * @param toY
+     * @return
+     */
+    public ShapeRecord[] erase(ShapeRecord line, SegmentIndex segments, double fromX, double fromY,
+                               double toX, double toY) {
+        if (this.hits.length < segments.getSegmentCount()) {
+            this.hits = new int[Math.max(segments.getSegmentCount(), 2 * this.hits.length)];
+        }
+        double reach = this.radius + line.getWidth() / 2;
+
+        //the eraser is put down often enough along the drag that the disks overlap
+        int steps = 1;
+        if (this.radius > 0) {
+            steps = Math.max(1, (int) Math.ceil(Math.hypot(toX - fromX, toY - fromY) / (this.radius / 2)));
+        }
+        HashMap<Integer, ArrayList<double[]>> cuts = new HashMap<>();
+        for (int step = 0; step <= steps; step++) {
+            double x = fromX + (toX - fromX) * step / steps;
+            double y = fromY + (toY - fromY) * step / steps;
+            int found = segments.near(line, x, y, reach, this.hits);
+            for (int hit = 0; hit < found; hit++) {
+                int segment = this.hits[hit];
+                double[] cut = this.cut(line, segments.getStart(segment), segments.getEnd(segment), x, y, reach);
+                if (cut != null) {
+                    cuts.computeIfAbsent(segment, (Integer key) -> new ArrayList<>()).add(cut);
+                }
+            }
+        }
+        if (cuts.isEmpty()) {
+            return null;
+        }
+
+        ArrayList<ShapeRecord> pieces = new ArrayList<>();
+        PointList current = new PointList();
+        for (int segment = 0; segment < segments.getSegmentCount(); segment++) {
+            int start = segments.getStart(segment);
+            int end = segments.getEnd(segment);
+            ArrayList<double[]> removed = cuts.get(segment);
+            if (removed == null) {
+                if (current.isEmpty()) {
+                    current.add(line.getRawPointX(start), line.getRawPointY(start));
+                }
+                current.add(line.getRawPointX(end), line.getRawPointY(end));
+                continue;
+            }
+            double[] kept = keep(removed);
+            for (int index = 0; index < kept.length; index += 2) {
+                if (kept[index] > 0) {
+                    this.finish(line, current, pieces);
+                    current.add(lerp(line.getRawPointX(start), line.getRawPointX(end), kept[index]),
+                            lerp(line.getRawPointY(start), line.getRawPointY(end), kept[index]));
+                }
+                else if (current.isEmpty()) {
+                    current.add(line.getRawPointX(start), line.getRawPointY(start));
+                }
+                if (kept[index + 1] >= 1) {
+                    current.add(line.getRawPointX(end), line.getRawPointY(end));
+                }
+                else {
+                    current.add(lerp(line.getRawPointX(start), line.getRawPointX(end), kept[index + 1]),
+                            lerp(line.getRawPointY(start), line.getRawPointY(end), kept[index + 1]));
+                }
+            }
+            if (kept.length == 0 || kept[kept.length - 1] < 1) {
+                this.finish(line, current, pieces);
+            }
+        }
+        this.finish(line, current, pieces);
+        return pieces.toArray(new ShapeRecord[0]);
+    }
+
+    /**
+     * This helper method returns the part of the segment between the given points (as the line
+     * draws them) that lies inside the disk of the given radius around (x, y), as the range of
+     * positions along the segment (from 0 at its start to 1 at its end), or null if none of it
+     * does.
+     * @param line
+     * @param start
+     * @param end
+     * @param x
+     * @param y
+     * @param reach
+     * @return
+     */
+    private double[] cut(ShapeRecord line, int start, int end, double x, double y, double reach) {
+        double startX = line.getPointX(start);
+        double startY = line.getPointY(start);
+        double dx = line.getPointX(end) - startX;
+        double dy = line.getPointY(end) - startY;
+        double fx = startX - x;
+        double fy = startY - y;
+        double a = dx * dx + dy * dy;
+        double b = 2 * (fx * dx + fy * dy);
+        double c = fx * fx + fy * fy - reach * reach;
+        if (a == 0) {
+            return c <= 0 ? new double[] {0, 1} : null;
+        }
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+            return null;
+        }
+        double root = Math.sqrt(discriminant);
+        double enter = Math.max(0, (-b - root) / (2 * a));
+        double leave = Math.min(1, (-b + root) / (2 * a));
+        if (enter > leave) {
+            return null;
+        }
+        return new double[] {enter, leave};
+    }
+
+    /**
+     * This helper method returns the parts of a segment that are left once the given ranges
+     * are removed from it, as a flat array of ranges: start0, end0, start1, end1, ...
+     * @param removed
+     * @return
+     */
+    private static double[] keep(ArrayList<double[]> removed) {
+        removed.sort((double[] first, double[] second) -> Double.compare(first[0], second[0]));
+        double[] kept = new double[2 * (removed.size() + 1)];
+        int count = 0;
+        double from = 0;
+        for (double[] range : removed) {
+            if (range[0] - from > EPSILON) {
+                kept[count++] = from;
+                kept[count++] = range[0];
+            }
+            from = Math.max(from, range[1]);
+        }
+        if (1 - from > EPSILON) {
+            kept[count++] = from;
+            kept[count++] = 1;
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /**
+     * This helper method turns the points collected so far into a piece of the line (if there
+     * are at least two of them), and empties the list for the next piece.
+     * @param line
+     * @param points
+     * @param pieces
+     */
+    private void finish(ShapeRecord line, PointList points, ArrayList<ShapeRecord> pieces) {
+        if (points.size() >= 2) {
+            int id = pieces.isEmpty() ? line.getId() : ShapeRecord.newId();
+            pieces.add(new ShapeRecord(id, ShapeType.LINE, line.getColor(), 0, 0, line.getWidth(), 0, 0,
+                    points.toArray(), null, line.getLayer()).withLineTransform(line.getLineTransform())
+                    .withGroups(line.getGroups()));
+        }
+        points.clear();
+    }
+
+    /**
+     * This helper method returns the value the given fraction of the way from start to end.
+     * @param start
+     * @param end
+     * @param fraction
+     * @return
+     */
+    private static double lerp(double start, double end, double fraction) {
+        return start + (end - start) * fraction;
+    }
+
+    /**
+     * This is the PointList class. It is a growable list of points, stored as x0, y0, x1, y1, ...
+     */
+    private static class PointList {
+
+        private double[] coordinates;
+        private int length;
+
+        private PointList() {
+            this.coordinates = new double[16];
+            this.length = 0;
+        }
+
+        private void add(double x, double y) {
+            if (this.length + 2 > this.coordinates.length) {
+                this.coordinates = Arrays.copyOf(this.coordinates, 2 * this.coordinates.length);
+            }
+            this.coordinates[this.length++] = x;
+            this.coordinates[this.length++] = y;
+        }
+
+        private boolean isEmpty() {
+            return this.length == 0;
+        }
+
+        private int size() {
+            return this.length / 2;
+        }
+
+        private void clear() {
+            this.length = 0;
+        }
+
+        private double[] toArray() {
+            return Arrays.copyOf(this.coordinates, this.length);
+        }
+    }
+}
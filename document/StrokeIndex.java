@@ -0,0 +1,388 @@
+package sketchy.document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * This is the StrokeIndex class. It is a document-level index of the lines in a drawing: a
+ * uniform grid in which each line is listed in every cell its bounding box (stroke included)
+ * covers, so finding the lines near a point only looks at the lines in a few cells rather than
+ * at every line. Each line also gets a SegmentIndex, which is kept for as long as the line keeps
+ * the same points (so moving or restyling a line only moves it to other cells).
+ *
+ * The index is kept up to date from DocumentSnapshots: sync() compares the records of the new
+ * snapshot with the ones it last indexed, and only re-indexes the lines whose records changed.
+ * Since unchanged lines keep the very same record, this is a pointer comparison per line, and
+ * syncing the same snapshot twice does nothing. While the eraser is being dragged, split()
+ * updates the index for just the lines it cut, without a snapshot.
+ *
+ * The index also knows where each line is in the stacking order, so the eraser never has to
+ * scan the drawing for a line it cuts. sync() notes each line's index in the snapshot (its
+ * slot), and a Fenwick tree holds how many shapes each slot stands for now: one until its line
+ * is split, and then however many pieces are left of it, which are kept in order with the line.
+ * A line's stacking index is then the number of shapes in the slots below its own, plus its
+ * place among the pieces of its slot, which takes O(log n) time.
+ *
+ * Lines whose bounding box
+ * covers more than MAX_CELLS cells are kept in a separate list that every query checks, so that
+ * a huge line cannot fill the grid.
+ */
+public class StrokeIndex {
+
+    private static final double CELL_SIZE = 64;
+    private static final int MAX_CELLS = 1024;
+
+    private PersistentList<ShapeRecord> synced;
+    private HashMap<Integer, Entry> entries;
+    private HashMap<Long, ArrayList<Entry>> cells;
+    private ArrayList<Entry> oversized;
+    private int generation;
+    private int queryStamp;
+    private int[] slotCounts;
+
+    /**
+     * This is the StrokeIndex constructor. The index starts out empty.
+     */
+    public StrokeIndex() {
+        this.synced = null;
+        this.entries = new HashMap<>();
+        this.cells = new HashMap<>();
+        this.oversized = new ArrayList<>();
+        this.generation = 0;
+        this.queryStamp = 0;
+        this.slotCounts = new int[1];
+    }
+
+    /**
+     * This method brings the index up to date with the given snapshot: lines that are new or
+     * whose records changed are (re-)indexed, and lines that are no longer in the snapshot are
+     * dropped.
+     * @param snapshot
+     */
+    public void sync(DocumentSnapshot snapshot) {
+        if (snapshot.getRecords() == this.synced) {
+            return;
+        }
+        this.generation++;
+        this.resetSlots(snapshot.size());
+        int next = 0;
+        for (ShapeRecord record : snapshot) {
+            int slot = next++;
+            if (record.getType() != ShapeType.LINE) {
+                continue;
+            }
+            Entry entry = this.entries.get(record.getId());
+            if (entry == null) {
+                entry = new Entry();
+                this.entries.put(record.getId(), entry);
+            }
+            else if (entry.record == record) {
+                entry.generation = this.generation;
+                entry.slot = slot;
+                entry.pieces = null;
+                continue;
+            }
+            else {
+                this.unlist(entry);
+            }
+            if (entry.segments == null || !entry.segments.isFor(record)) {
+                entry.segments = new SegmentIndex(record);
+            }
+            entry.record = record;
+            entry.generation = this.generation;
+            entry.slot = slot;
+            entry.pieces = null;
+            this.list(entry);
+        }
+        Iterator<Entry> all = this.entries.values().iterator();
+        while (all.hasNext()) {
+            Entry entry = all.next();
+            if (entry.generation != this.generation) {
+                this.unlist(entry);
+                all.remove();
+            }
+        }
+        this.synced = snapshot.getRecords();
+    }
+
+    /**
+     * This method brings the index up to date after a line was split into the given pieces
+     * (see Transaction.split()), without looking at any other line: the line is dropped, and
+     * each piece that is a line is indexed, taking the line's place in the stacking order. The
+     * given records, which must be those of the drawing after the split, count as synced from
+     * then on, so syncing a snapshot of them does nothing.
+     * @param line
+     * @param pieces
+     * @param records
+     */
+    public void split(ShapeRecord line, ShapeRecord[] pieces, PersistentList<ShapeRecord> records) {
+        Entry removed = this.entries.remove(line.getId());
+        if (removed == null) {
+            throw new IllegalArgumentException("The line with id " + line.getId() + " is not indexed");
+        }
+        this.unlist(removed);
+        ArrayList<Integer> siblings = removed.pieces;
+        if (siblings == null) {
+            siblings = new ArrayList<>();
+            siblings.add(line.getId());
+        }
+        int place = siblings.indexOf(line.getId());
+        siblings.remove(place);
+        for (int i=0; i<pieces.length; i++) {
+            siblings.add(place + i, pieces[i].getId());
+        }
+        this.addToSlot(removed.slot, pieces.length - 1);
+        for (ShapeRecord piece : pieces) {
+            if (piece.getType() != ShapeType.LINE) {
+                continue;
+            }
+            Entry entry = new Entry();
+            entry.segments = new SegmentIndex(piece);
+            entry.record = piece;
+            entry.generation = this.generation;
+            entry.slot = removed.slot;
+            entry.pieces = siblings;
+            this.entries.put(piece.getId(), entry);
+            this.list(entry);
+        }
+        this.synced = records;
+    }
+
+    /**
+     * This method returns the stacking index of the given line in the records the index was
+     * last synced with (or split into), without looking at any other shape.
+     * @param line
+     * @return
+     */
+    public int indexOf(ShapeRecord line) {
+        Entry entry = this.entries.get(line.getId());
+        if (entry == null) {
+            throw new IllegalArgumentException("The line with id " + line.getId() + " is not indexed");
+        }
+        int below = 0;
+        for (int node = entry.slot; node > 0; node -= node & -node) {
+            below += this.slotCounts[node];
+        }
+        return entry.pieces == null ? below : below + entry.pieces.indexOf(line.getId());
+    }
+
+    /**
+     * This method returns the records of the lines whose bounding boxes (stroke included)
+     * overlap the given region, as of the last snapshot the index was synced with.
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return
+     */
+    public ArrayList<ShapeRecord> query(double minX, double minY, double maxX, double maxY) {
+        this.queryStamp++;
+        ArrayList<ShapeRecord> found = new ArrayList<>();
+        for (Entry entry : this.oversized) {
+            this.check(entry, minX, minY, maxX, maxY, found);
+        }
+        int firstColumn = cell(minX);
+        int lastColumn = cell(maxX);
+        int firstRow = cell(minY);
+        int lastRow = cell(maxY);
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                ArrayList<Entry> listed = this.cells.get(key(column, row));
+                if (listed != null) {
+                    for (Entry entry : listed) {
+                        this.check(entry, minX, minY, maxX, maxY, found);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method returns the SegmentIndex of the given line record, which must be one the
+     * index was synced with.
+     * @param record
+     * @return
+     */
+    public SegmentIndex getSegments(ShapeRecord record) {
+        Entry entry = this.entries.get(record.getId());
+        if (entry == null || !entry.segments.isFor(record)) {
+            throw new IllegalArgumentException("The line with id " + record.getId() + " is not indexed");
+        }
+        return entry.segments;
+    }
+
+    /**
+     * This method returns the number of lines in the index.
+     * @return
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * This helper method adds a line to the query's results (once) if its bounding box
+     * overlaps the region.
+     * @param entry
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param found
+     */
+    private void check(Entry entry, double minX, double minY, double maxX, double maxY,
+                       ArrayList<ShapeRecord> found) {
+        if (entry.queryStamp == this.queryStamp) {
+            return;
+        }
+        entry.queryStamp = this.queryStamp;
+        if (entry.maxX >= minX && entry.minX <= maxX && entry.maxY >= minY && entry.minY <= maxY) {
+            found.add(entry.record);
+        }
+    }
+
+    /**
+     * This helper method works out the bounding box of a line on screen (the box around its
+     * untransformed points, mapped through its transform, and grown by half its stroke width)
+     * and lists it in the cells the box covers.
+     * @param entry
+     */
+    private void list(Entry entry) {
+        SegmentIndex segments = entry.segments;
+        LineTransform transform = entry.record.getLineTransform();
+        double[] cornersX = {segments.getMinX(), segments.getMaxX(), segments.getMinX(), segments.getMaxX()};
+        double[] cornersY = {segments.getMinY(), segments.getMinY(), segments.getMaxY(), segments.getMaxY()};
+        entry.minX = Double.POSITIVE_INFINITY;
+        entry.minY = Double.POSITIVE_INFINITY;
+        entry.maxX = Double.NEGATIVE_INFINITY;
+        entry.maxY = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; corner++) {
+            double x = cornersX[corner];
+            double y = cornersY[corner];
+            if (transform != null) {
+                x = transform.mapX(cornersX[corner], cornersY[corner]);
+                y = transform.mapY(cornersX[corner], cornersY[corner]);
+            }
+            entry.minX = Math.min(entry.minX, x);
+            entry.minY = Math.min(entry.minY, y);
+            entry.maxX = Math.max(entry.maxX, x);
+            entry.maxY = Math.max(entry.maxY, y);
+        }
+        double margin = entry.record.getWidth() / 2;
+        entry.minX -= margin;
+        entry.minY -= margin;
+        entry.maxX += margin;
+        entry.maxY += margin;
+
+        if (segments.getSegmentCount() == 0) {
+            entry.oversized = false;
+            entry.listed = false;
+            return;
+        }
+        entry.listed = true;
+        long columns = (long) cell(entry.maxX) - cell(entry.minX) + 1;
+        long rows = (long) cell(entry.maxY) - cell(entry.minY) + 1;
+        entry.oversized = columns * rows > MAX_CELLS;
+        if (entry.oversized) {
+            this.oversized.add(entry);
+            return;
+        }
+        for (int column = cell(entry.minX); column <= cell(entry.maxX); column++) {
+            for (int row = cell(entry.minY); row <= cell(entry.maxY); row++) {
+                this.cells.computeIfAbsent(key(column, row), (Long cellKey) -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    /**
+     * This helper method removes a line from the cells it is listed in.
+     * @param entry
+     */
+    private void unlist(Entry entry) {
+        if (!entry.listed) {
+            return;
+        }
+        entry.listed = false;
+        if (entry.oversized) {
+            this.oversized.remove(entry);
+            return;
+        }
+        for (int column = cell(entry.minX); column <= cell(entry.maxX); column++) {
+            for (int row = cell(entry.minY); row <= cell(entry.maxY); row++) {
+                long cellKey = key(column, row);
+                ArrayList<Entry> listed = this.cells.get(cellKey);
+                listed.remove(entry);
+                if (listed.isEmpty()) {
+                    this.cells.remove(cellKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * This helper method sets up the Fenwick tree of slot counts for a snapshot of the given
+     * size, with every slot standing for one shape (so node i of the tree, which covers the
+     * i & -i slots ending at slot i - 1, holds i & -i).
+     * @param size
+     */
+    private void resetSlots(int size) {
+        if (this.slotCounts.length < size + 1) {
+            this.slotCounts = new int[size + 1];
+        }
+        for (int node = 1; node <= size; node++) {
+            this.slotCounts[node] = node & -node;
+        }
+    }
+
+    /**
+     * This helper method changes how many shapes the given slot stands for by the given amount.
+     * @param slot
+     * @param change
+     */
+    private void addToSlot(int slot, int change) {
+        for (int node = slot + 1; node < this.slotCounts.length; node += node & -node) {
+            this.slotCounts[node] += change;
+        }
+    }
+
+    /**
+     * This helper method returns the column (or row) of the grid a coordinate falls in.
+     * @param coordinate
+     * @return
+     */
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    /**
+     * This helper method packs a column and a row into the key of a cell.
+     * @param column
+     * @param row
+     * @return
+     */
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    /**
+     * This is the Entry class. It holds what the index knows about one line: its record, its
+     * SegmentIndex, its bounding box on screen, and its slot in the stacking order (with the ids
+     * of what is left of the slot's line, in order, once that line has been split).
+     */
+    private static class Entry {
+
+        private ShapeRecord record;
+        private SegmentIndex segments;
+        private double minX;
+        private double minY;
+        private double maxX;
+        private double maxY;
+        private boolean listed;
+        private boolean oversized;
+        private int generation;
+        private int queryStamp;
+        private int slot;
+        private ArrayList<Integer> pieces;
+    }
+}
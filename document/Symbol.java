@@ -0,0 +1,176 @@
+package sketchy.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the Symbol class. A symbol is a group of shapes and lines that is defined once and
+ * placed in the drawing many times. Each placement (an instance) is a single record of type
+ * SYMBOL that only says where the symbol is drawn, how big, at what angle, and optionally in
+ * what color; the members themselves are only kept here, once.
+ *
+ * A symbol is immutable, like the records it holds. Its members are kept in the symbol's own
+ * coordinates, moved so that the center of their bounding box is at (0, 0). Editing a symbol
+ * makes a new version of it with the same id (see redefine), and the instances are then pointed
+ * at the new version, so every version that the undo history can reach stays intact.
+ */
+public final class Symbol {
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+    private static final AtomicInteger NEXT_VERSION = new AtomicInteger(1);
+
+    private final int id;
+    private final int version;
+    private final List<ShapeRecord> members;
+    private final double width;
+    private final double height;
+
+    /**
+     * This is the Symbol constructor. It takes in the symbol's id and version, and its members,
+     * which must already be centered on (0, 0), along with the width and height of their bounds.
+     * @param id
+     * @param version
+     * @param members
+     * @param width
+     * @param height
+     */
+    private Symbol(int id, int version, List<ShapeRecord> members, double width, double height) {
+        this.id = id;
+        this.version = version;
+        this.members = Collections.unmodifiableList(members);
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * This method defines a new symbol, with a new id, from the records of its members (in
+     * order from bottom to top). The records may be anywhere in the drawing; the symbol keeps
+     * copies of them moved so that their bounds are centered on (0, 0). A symbol cannot be empty
+     * (or cover no area), and cannot have instances of other symbols as members; either throws an
+     * IllegalArgumentException.
+     * @param records
+     * @return
+     */
+    public static Symbol define(List<ShapeRecord> records) {
+        return create(NEXT_ID.getAndIncrement(), records);
+    }
+
+    /**
+     * This method returns the next version of this symbol, with the same id, whose members are
+     * the given records instead (with the same rules as define).
+     * @param records
+     * @return
+     */
+    public Symbol redefine(List<ShapeRecord> records) {
+        return create(this.id, records);
+    }
+
+    /**
+     * This method is an accessor for the symbol's id, which every version of it shares.
+     * @return
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * This method is an accessor for the symbol's version. Every version of every symbol gets
+     * its own number, so the id and version together tell any two versions apart (even two
+     * made by redefining the same old version twice).
+     * @return
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * This method returns the records of the symbol's members, from bottom to top, in the
+     * symbol's own coordinates. The list cannot be changed.
+     * @return
+     */
+    public List<ShapeRecord> getMembers() {
+        return this.members;
+    }
+
+    /**
+     * This method is an accessor for the width of the members' bounding box.
+     * @return
+     */
+    public double getWidth() {
+        return this.width;
+    }
+
+    /**
+     * This method is an accessor for the height of the members' bounding box.
+     * @return
+     */
+    public double getHeight() {
+        return this.height;
+    }
+
+    /**
+     * This helper method checks the records, finds their bounding box, and makes a symbol of
+     * them moved so that the box is centered on (0, 0), with the given id and a new version.
+     * @param id
+     * @param records
+     * @return
+     */
+    private static Symbol create(int id, List<ShapeRecord> records) {
+        if (records.isEmpty()) {
+            throw new IllegalArgumentException("A symbol needs at least one shape");
+        }
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (ShapeRecord record : records) {
+            if (record.getType() == ShapeType.SYMBOL) {
+                throw new IllegalArgumentException("A symbol cannot contain another symbol");
+            }
+            addBounds(record, bounds);
+        }
+        if (bounds[2] <= bounds[0] || bounds[3] <= bounds[1]) {
+            throw new IllegalArgumentException("The shapes of a symbol must cover some area");
+        }
+        double centerX = (bounds[0] + bounds[2]) / 2;
+        double centerY = (bounds[1] + bounds[3]) / 2;
+        ArrayList<ShapeRecord> centered = new ArrayList<>(records.size());
+        for (ShapeRecord record : records) {
+            centered.add(record.translated(-centerX, -centerY));
+        }
+        return new Symbol(id, NEXT_VERSION.getAndIncrement(), centered, bounds[2] - bounds[0], bounds[3] - bounds[1]);
+    }
+
+    /**
+     * This method grows the bounding box (minX, minY, maxX, maxY) so that it covers the
+     * given record. A rectangle or ellipse covers the box around it once rotated, and a line
+     * covers its points plus half its stroke width on each side.
+     * @param record
+     * @param bounds
+     */
+    public static void addBounds(ShapeRecord record, double[] bounds) {
+        if (record.getType() == ShapeType.LINE) {
+            double halfStroke = record.getWidth() / 2;
+            for (int index = 0; index < record.getPointCount(); index++) {
+                double x = record.getPointX(index);
+                double y = record.getPointY(index);
+                bounds[0] = Math.min(bounds[0], x - halfStroke);
+                bounds[1] = Math.min(bounds[1], y - halfStroke);
+                bounds[2] = Math.max(bounds[2], x + halfStroke);
+                bounds[3] = Math.max(bounds[3], y + halfStroke);
+            }
+            return;
+        }
+        //a rectangle's width and height are its full size, an ellipse's are its radii
+        double halfWidth = record.getType() == ShapeType.ELLIPSE ? record.getWidth() : record.getWidth() / 2;
+        double halfHeight = record.getType() == ShapeType.ELLIPSE ? record.getHeight() : record.getHeight() / 2;
+        double cosine = Math.abs(Math.cos(Math.toRadians(record.getAngle())));
+        double sine = Math.abs(Math.sin(Math.toRadians(record.getAngle())));
+        double extentX = halfWidth * cosine + halfHeight * sine;
+        double extentY = halfWidth * sine + halfHeight * cosine;
+        bounds[0] = Math.min(bounds[0], record.getCenterX() - extentX);
+        bounds[1] = Math.min(bounds[1], record.getCenterY() - extentY);
+        bounds[2] = Math.max(bounds[2], record.getCenterX() + extentX);
+        bounds[3] = Math.max(bounds[3], record.getCenterY() + extentY);
+    }
+}
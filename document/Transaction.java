@@ -0,0 +1,360 @@
+package sketchy.document;
+
+import javafx.scene.paint.Color;
+import java.util.HashMap;
+
+/**
+ * This is the Transaction class. It collects a batch of edits to the drawing without touching
+ * the scene: every edit is made to a private PersistentList of records that starts out as the
+ * snapshot the transaction began from. Nothing is visible until the transaction is committed
+ * through Sketchy, which then applies all of the edits to the shapes, saveables, and pane in a
+ * single pass and records them as a single undo entry. Rolling back simply throws the records
+ * away.
+ *
+ * Shapes are referred to by id (see Saveable.getId() and ShapeRecord.getId()). Looking a shape
+ * up by id scans the list, so each edit is O(n).
+ */
+public class Transaction {
+
+    private DocumentSnapshot base;
+    private PersistentList<ShapeRecord> records;
+    private boolean open;
+
+    /**
+     * This is the Transaction constructor. It takes in the snapshot of the drawing that the
+     * transaction starts from.
+     * @param baseSnapshot
+     */
+    public Transaction(DocumentSnapshot baseSnapshot) {
+        this.base = baseSnapshot;
+        this.records = baseSnapshot.getRecords();
+        this.open = true;
+    }
+
+    /**
+     * This method is an accessor for the snapshot the transaction started from.
+     * @return
+     */
+    public DocumentSnapshot getBase() {
+        return this.base;
+    }
+
+    /**
+     * This method is an accessor for the records as edited so far, bottom shape first.
+     * @return
+     */
+    public PersistentList<ShapeRecord> getRecords() {
+        return this.records;
+    }
+
+    /**
+     * This method returns whether any edit has been made since the transaction began.
+     * @return
+     */
+    public boolean hasChanges() {
+        return this.records != this.base.getRecords();
+    }
+
+    /**
+     * This method returns whether the transaction can still be edited, committed, or rolled back.
+     * @return
+     */
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    /**
+     * This method closes the transaction. It is called by Sketchy once the transaction has been
+     * committed or rolled back; after that, any further edit throws an IllegalStateException.
+     */
+    public void close() {
+        this.open = false;
+    }
+
+    /**
+     * This method returns the stacking index of the shape with the given id, or -1 if the
+     * drawing (as edited so far) has no such shape.
+     * @param id
+     * @return
+     */
+    public int indexOf(int id) {
+        int index = 0;
+        for (ShapeRecord record : this.records) {
+            if (record.getId() == id) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * This method returns the record of the shape with the given id, as edited so far.
+     * @param id
+     * @return
+     */
+    public ShapeRecord get(int id) {
+        return this.records.get(this.requireIndex(id));
+    }
+
+    /**
+     * This method adds a new rectangle on top of the drawing, on the given layer, and returns
+     * its id.
+     * @param centerX
+     * @param centerY
+     * @param width
+     * @param height
+     * @param angle
+     * @param color
+     * @param layer
+     * @return
+     */
+    public int addRectangle(double centerX, double centerY, double width, double height,
+                            double angle, Color color, int layer) {
+        return this.add(new ShapeRecord(ShapeRecord.newId(), ShapeType.RECTANGLE, color,
+                centerX, centerY, width, height, angle, null, null, layer));
+    }
+
+    /**
+     * This method adds a new ellipse on top of the drawing, on the given layer, and returns its
+     * id. The width and height are the radii of the ellipse, as with SketchyEllipse.
+     * @param centerX
+     * @param centerY
+     * @param radiusX
+     * @param radiusY
+     * @param angle
+     * @param color
+     * @param layer
+     * @return
+     */
+    public int addEllipse(double centerX, double centerY, double radiusX, double radiusY,
+                          double angle, Color color, int layer) {
+        return this.add(new ShapeRecord(ShapeRecord.newId(), ShapeType.ELLIPSE, color,
+                centerX, centerY, radiusX, radiusY, angle, null, null, layer));
+    }
+
+    /**
+     * This method adds a new line on top of the drawing, on the given layer, and returns its id.
+     * The points are laid out as x0, y0, x1, y1, ... and are copied, so the caller may reuse the
+     * array.
+     * @param points
+     * @param strokeWidth
+     * @param color
+     * @param layer
+     * @return
+     */
+    public int addLine(double[] points, double strokeWidth, Color color, int layer) {
+        if (points.length < 2 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("A line needs at least one point, as x and y pairs");
+        }
+        return this.add(new ShapeRecord(ShapeRecord.newId(), ShapeType.LINE, color,
+                points[0], points[1], strokeWidth, 0, 0, points.clone(), null, layer));
+    }
+
+    /**
+     * This method adds a new instance of the given symbol on top of the drawing, on the given
+     * layer, and returns its id. The instance is centered on the given point, drawn at the given
+     * scale, and either in its members' own colors (if the color is null) or all in the given one.
+     * @param symbol
+     * @param centerX
+     * @param centerY
+     * @param scale
+     * @param colorOverride
+     * @param layer
+     * @return
+     */
+    public int addSymbol(Symbol symbol, double centerX, double centerY, double scale, Color colorOverride,
+                         int layer) {
+        return this.add(new ShapeRecord(ShapeRecord.newId(), symbol, colorOverride, centerX, centerY,
+                symbol.getWidth() * scale, symbol.getHeight() * scale, 0, layer));
+    }
+
+    /**
+     * This method adds a copy of the given record (which may come from any snapshot, even one
+     * of a drawing that has since been cleared) on top of the drawing, moved by dx and dy, and
+     * returns the copy's id. The copy shares the record's points, so copying a line costs the
+     * same however many points it has; since records never change, each side gets points of its
+     * own only when it is edited.
+     * @param source
+     * @param dx
+     * @param dy
+     * @return
+     */
+    public int addCopy(ShapeRecord source, double dx, double dy) {
+        return this.add(source.withId(ShapeRecord.newId()).translated(dx, dy));
+    }
+
+    /**
+     * This method removes the shape with the given id from the drawing.
+     * @param id
+     */
+    public void remove(int id) {
+        this.checkOpen();
+        this.records = this.records.remove(this.requireIndex(id));
+    }
+
+    /**
+     * This method replaces the record of a shape with the given one, which must have the id of
+     * a shape in the drawing. The shape keeps its place in the stacking order.
+     * @param record
+     */
+    public void replace(ShapeRecord record) {
+        this.checkOpen();
+        this.records = this.records.set(this.requireIndex(record.getId()), record);
+    }
+
+    /**
+     * This method replaces the shape with the given id by the given pieces (for example, what
+     * is left of a line after part of it is erased). The first piece takes the shape's stacking
+     * index and the others go right above it, in order; if there are no pieces, the shape is
+     * removed.
+     * @param id
+     * @param pieces
+     */
+    public void split(int id, ShapeRecord[] pieces) {
+        this.splitAt(this.requireIndex(id), pieces);
+    }
+
+    /**
+     * This method is the same as split(), for a shape whose index in the drawing (as edited so
+     * far) is already known, so the drawing does not have to be scanned for it.
+     * @param index
+     * @param pieces
+     */
+    public void splitAt(int index, ShapeRecord[] pieces) {
+        this.checkOpen();
+        if (pieces.length == 0) {
+            this.records = this.records.remove(index);
+            return;
+        }
+        PersistentList<ShapeRecord> split = this.records.set(index, pieces[0]);
+        for (int piece = 1; piece < pieces.length; piece++) {
+            split = split.insert(index + piece, pieces[piece]);
+        }
+        this.records = split;
+    }
+
+    /**
+     * This method replaces the records of many shapes at once. Each record must have the id of
+     * a shape in the drawing, and each shape keeps its place in the stacking order. Unlike
+     * calling replace for each record, the drawing is only scanned once, so this is O(n) however
+     * many records are given.
+     * @param replacements
+     */
+    public void replaceAll(ShapeRecord[] replacements) {
+        this.checkOpen();
+        HashMap<Integer, ShapeRecord> byId = new HashMap<>();
+        for (ShapeRecord record : replacements) {
+            byId.put(record.getId(), record);
+        }
+        PersistentList<ShapeRecord> replaced = this.records;
+        int index = 0;
+        int remaining = byId.size();
+        for (ShapeRecord record : this.records) {
+            if (remaining == 0) {
+                break;
+            }
+            ShapeRecord replacement = byId.get(record.getId());
+            if (replacement != null) {
+                replaced = replaced.set(index, replacement);
+                remaining--;
+            }
+            index++;
+        }
+        if (remaining > 0) {
+            throw new IllegalArgumentException(remaining + " of the records have no matching shape in the drawing");
+        }
+        this.records = replaced;
+    }
+
+    /**
+     * This method fills the shape (or colors the line) with the given id.
+     * @param id
+     * @param color
+     */
+    public void setColor(int id, Color color) {
+        this.replace(this.get(id).withColor(color));
+    }
+
+    /**
+     * This method moves the shape with the given id by dx and dy.
+     * @param id
+     * @param dx
+     * @param dy
+     */
+    public void translate(int id, double dx, double dy) {
+        this.replace(this.get(id).translated(dx, dy));
+    }
+
+    /**
+     * This method sets the angle of rotation, in degrees, of the shape with the given id.
+     * @param id
+     * @param angle
+     */
+    public void setAngle(int id, double angle) {
+        this.replace(this.get(id).withAngle(angle));
+    }
+
+    /**
+     * This method sets the width and height of the shape with the given id, keeping its center.
+     * @param id
+     * @param width
+     * @param height
+     */
+    public void setSize(int id, double width, double height) {
+        this.replace(this.get(id).withSize(width, height));
+    }
+
+    /**
+     * This method moves the shape with the given id to the given stacking index (its place in
+     * the drawing's order, from the bottom), shifting the shapes in between. It does not change
+     * which layer the shape is on.
+     * @param id
+     * @param index
+     */
+    public void moveToIndex(int id, int index) {
+        this.checkOpen();
+        int from = this.requireIndex(id);
+        ShapeRecord record = this.records.get(from);
+        PersistentList<ShapeRecord> removed = this.records.remove(from);
+        if (index < 0 || index > removed.size()) {
+            throw new IndexOutOfBoundsException("No index " + index + " in a drawing of " + this.records.size());
+        }
+        this.records = removed.insert(index, record);
+    }
+
+    /**
+     * This helper method adds a record on top of the drawing and returns its id.
+     * @param record
+     * @return
+     */
+    private int add(ShapeRecord record) {
+        this.checkOpen();
+        this.records = this.records.add(record);
+        return record.getId();
+    }
+
+    /**
+     * This helper method returns the stacking index of the shape with the given id, or throws an
+     * IllegalArgumentException if there is none.
+     * @param id
+     * @return
+     */
+    private int requireIndex(int id) {
+        int index = this.indexOf(id);
+        if (index < 0) {
+            throw new IllegalArgumentException("No shape with id " + id + " in the drawing");
+        }
+        return index;
+    }
+
+    /**
+     * This helper method throws an IllegalStateException if the transaction has already been
+     * committed or rolled back.
+     */
+    private void checkOpen() {
+        if (!this.open) {
+            throw new IllegalStateException("The transaction has already been committed or rolled back");
+        }
+    }
+}
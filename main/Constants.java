@@ -17,9 +17,45 @@ public class Constants {
 
     public static final Color BORDER_COLOR = Color.BLACK;
     public static final double BORDER_WIDTH = 1.5;
+    public static final double HANDLE_SIZE = 6;
+    public static final Color HANDLE_COLOR = Color.WHITE;
 
     public static final int RGB = 255;
     public static final double MIN_STROKE_WIDTH = 0;
     public static final double MAX_STROKE_WIDTH = 10;
     public static final double DEFAULT_STROKE_WIDTH = 2;
+    public static final double LINE_HIT_TOLERANCE = 3;
+    public static final double ERASER_RADIUS = 8;
+    public static final double SNAP_TOLERANCE = 6;
+    public static final Color GUIDE_COLOR = Color.MAGENTA;
+    public static final double GUIDE_WIDTH = 1;
+    public static final double PASTE_OFFSET = 10;
+    public static final Color DIFF_ADDED_COLOR = Color.GREEN;
+    public static final Color DIFF_REMOVED_COLOR = Color.RED;
+    public static final Color DIFF_RESHAPED_COLOR = Color.PURPLE;
+    public static final Color DIFF_MOVED_COLOR = Color.ORANGE;
+    public static final Color DIFF_RELAYERED_COLOR = Color.DODGERBLUE;
+    public static final Color DIFF_RECOLORED_COLOR = Color.GOLD;
+    public static final double DIFF_MARKER_WIDTH = 2;
+    public static final double DIFF_MARKER_MARGIN = 3;
+    public static final double DIFF_OLD_OPACITY = 0.5;
+    public static final int MAX_DIFF_MARKERS = 5000;
+    public static final String PAGED_FILE_SUFFIX = ".sketchy";
+    public static final int PREVIEW_SIZE = 128;
+    public static final String THUMBNAIL_CACHE_DIRECTORY = ".sketchy-thumbnails";
+    public static final int THUMBNAIL_CACHE_ENTRIES = 1000;
+    public static final int BROWSER_WIDTH = 760;
+    public static final int BROWSER_HEIGHT = 560;
+    public static final double BROWSER_SPACING = 12;
+    public static final Insets BROWSER_PADDING = new Insets(12);
+
+    public static final int PEN_BATCH_CAPACITY = 256;
+    public static final int MAX_PEN_SAMPLES_PER_FRAME = 2048;
+
+    public static final int MUTATION_BUFFER_SIZE = 256;
+
+    public static final double MIN_SYMBOL_RASTER_SCALE = 1.0 / 16;
+    public static final double MAX_SYMBOL_RASTER_SCALE = 16;
+    public static final double MAX_SYMBOL_RASTER_SIZE = 4096;
+    public static final double MIN_SYMBOL_SIZE = 0.01;
 }
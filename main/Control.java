@@ -51,6 +51,8 @@ public class Control {
         this.setUpSlider();
         this.setUpShapeActions();
         this.setUpOperations();
+        this.setUpLayers();
+        this.setUpHistorySlider();
 
         this.controlPane.setOnKeyPressed((KeyEvent e) -> this.sketchy.keyPressed(e));
         this.controlPane.setFocusTraversable(true);
@@ -70,17 +72,20 @@ public class Control {
         RadioButton pen = new RadioButton("Draw with Pen");
         RadioButton rectangle = new RadioButton("Draw Rectangle");
         RadioButton ellipse = new RadioButton("Draw Ellipse");
+        RadioButton eraser = new RadioButton("Erase Lines");
 
         select.setOnAction((ActionEvent e) -> this.sketchy.handleRadioButtonPress(SelectOption.SELECT));
         pen.setOnAction((ActionEvent e) -> this.sketchy.handleRadioButtonPress(SelectOption.PEN));
         rectangle.setOnAction((ActionEvent e) -> this.sketchy.handleRadioButtonPress(SelectOption.RECTANGLE));
         ellipse.setOnAction((ActionEvent e) -> this.sketchy.handleRadioButtonPress(SelectOption.ELLIPSE));
+        eraser.setOnAction((ActionEvent e) -> this.sketchy.handleRadioButtonPress(SelectOption.ERASER));
 
         select.setToggleGroup(radios);
         pen.setToggleGroup(radios);
         rectangle.setToggleGroup(radios);
         ellipse.setToggleGroup(radios);
-        this.controlPane.getChildren().addAll(drawingOptions, select, pen, rectangle, ellipse);
+        eraser.setToggleGroup(radios);
+        this.controlPane.getChildren().addAll(drawingOptions, select, pen, rectangle, ellipse, eraser);
     }
 
     /**
@@ -111,7 +116,9 @@ public class Control {
     }
 
     /**
-     * This sets up the shapeAction buttons: fill, delete, raise, and lower. It tells the
+     * This sets up the shapeAction buttons: fill, delete, raise, lower, group (the shapes
+     * picked out with shift-clicks), ungroup (the selected shape's group), make symbol (from the
+     * picked shapes), and place symbol (an instance of the current symbol). It tells the
      * buttons what to do when each of the buttons is filled, and all the methods to be invoked
      * are part of the Sketchy class.
      */
@@ -121,17 +128,27 @@ public class Control {
         Button delete = new Button("Delete");
         Button raise = new Button("Raise");
         Button lower = new Button("Lower");
+        Button group = new Button("Group");
+        Button ungroup = new Button("Ungroup");
+        Button makeSymbol = new Button("Make Symbol");
+        Button placeSymbol = new Button("Place Symbol");
 
         fill.setOnAction(((ActionEvent e) -> this.sketchy.fillShape()));
         delete.setOnAction((ActionEvent e) -> this.sketchy.deleteShape());
         raise.setOnAction((ActionEvent e) -> this.sketchy.raiseShape());
         lower.setOnAction((ActionEvent e) -> this.sketchy.lowerShape());
+        group.setOnAction((ActionEvent e) -> this.sketchy.groupSelection());
+        ungroup.setOnAction((ActionEvent e) -> this.sketchy.ungroupSelection());
+        makeSymbol.setOnAction((ActionEvent e) -> this.sketchy.makeSymbolFromSelection());
+        placeSymbol.setOnAction((ActionEvent e) -> this.sketchy.placeCurrentSymbol());
 
-        this.controlPane.getChildren().addAll(shapeActions, fill, delete, raise, lower);
+        this.controlPane.getChildren().addAll(shapeActions, fill, delete, raise, lower, group, ungroup, makeSymbol,
+                placeSymbol);
     }
 
     /**
-     * This method sets up the Operations buttons: undo, redo, save, and load. It tells the
+     * This method sets up the Operations buttons: undo, redo, save, load, browse (a folder of drawings), compare (with a saved
+     * drawing), and hide changes, as well as the check boxes that switch undo and redo to restoring checkpoints and compress paged saves. It tells the
      * buttons what to do when each of the buttons is filled, and all the methods to be invoked
      * are part of the Sketchy class.
      */
@@ -141,12 +158,85 @@ public class Control {
         Button redo = new Button("Redo");
         Button save = new Button("Save");
         Button load = new Button("Load");
-        this.controlPane.getChildren().addAll(operations, undo, redo, save, load);
+        Button browse = new Button("Browse");
+        Button compare = new Button("Compare");
+        Button hideChanges = new Button("Hide Changes");
+        CheckBox historyMode = new CheckBox("Undo to Checkpoints");
+        CheckBox compressSaves = new CheckBox("Compress Saves");
+        this.controlPane.getChildren().addAll(operations, undo, redo, save, load, browse, compare, hideChanges, historyMode,
+                compressSaves);
 
         undo.setOnAction((ActionEvent e) -> this.sketchy.undo());
         redo.setOnAction((ActionEvent e) -> this.sketchy.redo());
         save.setOnAction((ActionEvent e) -> this.sketchy.save());
         load.setOnAction((ActionEvent e) -> this.sketchy.load());
+        browse.setOnAction((ActionEvent e) -> this.sketchy.browse());
+        compare.setOnAction((ActionEvent e) -> this.sketchy.compareWithFile());
+        hideChanges.setOnAction((ActionEvent e) -> this.sketchy.hideDiff());
+        historyMode.setOnAction((ActionEvent e) -> this.sketchy.setHistoryMode(historyMode.isSelected()));
+        compressSaves.setOnAction((ActionEvent e) -> this.sketchy.setCompressSaves(compressSaves.isSelected()));
     }
 
+    /**
+     * This method sets up the layer controls: a list of the layers (top layer first) to choose
+     * the active layer from, a button that adds a new layer, buttons that move the active layer
+     * up and down the stack, and check boxes that show and lock it. All the methods to be
+     * invoked are part of the Sketchy class, which in turn lets the controls know whenever the
+     * layers change (including after a load), so they always show the active layer.
+     */
+    private void setUpLayers() {
+        Label layersLabel = new Label("Layers");
+        ComboBox<String> layers = new ComboBox<>();
+        Button newLayer = new Button("New Layer");
+        Button raiseLayer = new Button("Raise Layer");
+        Button lowerLayer = new Button("Lower Layer");
+        CheckBox showLayer = new CheckBox("Show Layer");
+        CheckBox lockLayer = new CheckBox("Lock Layer");
+
+        layers.setOnAction((ActionEvent e) -> {
+            int position = layers.getItems().indexOf(layers.getValue());
+            if (position >= 0) {
+                this.sketchy.selectLayer(position);
+            }
+        });
+        newLayer.setOnAction((ActionEvent e) -> this.sketchy.addLayer());
+        raiseLayer.setOnAction((ActionEvent e) -> this.sketchy.raiseLayer());
+        lowerLayer.setOnAction((ActionEvent e) -> this.sketchy.lowerLayer());
+        showLayer.setOnAction((ActionEvent e) -> this.sketchy.setLayerVisible(showLayer.isSelected()));
+        lockLayer.setOnAction((ActionEvent e) -> this.sketchy.setLayerLocked(lockLayer.isSelected()));
+
+        Runnable update = () -> {
+            layers.getItems().setAll(this.sketchy.getLayerNames());
+            layers.setValue(layers.getItems().get(this.sketchy.getActiveLayerPosition()));
+            showLayer.setSelected(this.sketchy.isLayerVisible());
+            lockLayer.setSelected(this.sketchy.isLayerLocked());
+        };
+        this.sketchy.setLayerListener(update);
+        update.run();
+        this.controlPane.getChildren().addAll(layersLabel, layers, newLayer, raiseLayer, lowerLayer, showLayer, lockLayer);
+    }
+
+    /**
+     * This method sets up the history slider, which lets the user scrub through the undo/redo
+     * history. Each tick is one command, and the slider snaps to the ticks, so every point in the
+     * history can be reached. Moving the slider invokes the scrubTo method from the
+     * Sketchy class, and the Sketchy class in turn lets the slider know whenever the history
+     * changes (after a new command, an undo, a redo, or a load), so it always shows the current
+     * position.
+     */
+    private void setUpHistorySlider() {
+        Label historyLabel = new Label("History");
+        Slider history = new Slider(0, 0, 0);
+        history.setBlockIncrement(1);
+        history.setMajorTickUnit(1);
+        history.setMinorTickCount(0);
+        history.setSnapToTicks(true);
+        history.valueProperty().addListener((observable, oldValue, newValue) ->
+                this.sketchy.scrubTo((int) Math.round(newValue.doubleValue())));
+        this.sketchy.setHistoryListener(() -> {
+            history.setMax(this.sketchy.getHistorySize() - 1);
+            history.setValue(this.sketchy.getHistoryPosition());
+        });
+        this.controlPane.getChildren().addAll(historyLabel, history);
+    }
 }
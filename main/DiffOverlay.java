@@ -0,0 +1,139 @@
+package sketchy.main;
+
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Line;
+import javafx.scene.shape.Rectangle;
+import sketchy.document.ChangeKind;
+import sketchy.document.DrawingDiff;
+import sketchy.document.ShapeChange;
+import sketchy.document.ShapeRecord;
+import sketchy.document.Symbol;
+import java.util.ArrayList;
+
+/**
+ * This is the DiffOverlay class. It marks how the drawing on screen differs from another
+ * version of it (found by a DrawingDiff) on its own pane, which sits on top of the sketchy pane
+ * and lets all mouse events through to it. Each changed shape gets a box around it, colored by
+ * how it changed: added, removed (where it used to be), reshaped, moved, moved to another layer,
+ * or recolored, in that order of priority. A shape that moved also gets a fainter box where it
+ * used to be, and a line from there to where it is now. The markers are built from the records
+ * alone, so the overlay never touches the shapes themselves, and at most MAX_DIFF_MARKERS
+ * changes are marked, so that comparing against a very different drawing cannot flood the
+ * scene graph.
+ */
+public class DiffOverlay {
+
+    private Pane overlayPane;
+
+    /**
+     * This is the DiffOverlay constructor. The overlay pane is created here, and made
+     * transparent to the mouse.
+     */
+    public DiffOverlay() {
+        this.overlayPane = new Pane();
+        this.overlayPane.setMouseTransparent(true);
+    }
+
+    /**
+     * This method is an accessor for the overlay pane, which should be stacked on top of the
+     * sketchy pane.
+     * @return
+     */
+    public Pane getPane() {
+        return this.overlayPane;
+    }
+
+    /**
+     * This method replaces the markers on the overlay with markers for the changes in the given
+     * diff, and returns how many changes were marked. The markers are added in a single change.
+     * @param diff
+     * @return
+     */
+    public int show(DrawingDiff diff) {
+        ArrayList<Node> markers = new ArrayList<>();
+        int marked = 0;
+        for (ShapeChange change : diff.getChanges()) {
+            if (marked == Constants.MAX_DIFF_MARKERS) {
+                break;
+            }
+            Color color = colorOf(change);
+            if (change.getAfter() == null) {
+                markers.add(marker(change.getBefore(), color));
+            }
+            else {
+                if (change.is(ChangeKind.MOVED)) {
+                    Rectangle old = marker(change.getBefore(), color);
+                    old.setOpacity(Constants.DIFF_OLD_OPACITY);
+                    markers.add(old);
+                    Line path = new Line(change.getBefore().getCenterX(), change.getBefore().getCenterY(),
+                            change.getAfter().getCenterX(), change.getAfter().getCenterY());
+                    path.setStroke(color);
+                    path.setStrokeWidth(Constants.DIFF_MARKER_WIDTH);
+                    markers.add(path);
+                }
+                markers.add(marker(change.getAfter(), color));
+            }
+            marked++;
+        }
+        this.overlayPane.getChildren().setAll(markers);
+        return marked;
+    }
+
+    /**
+     * This method removes every marker from the overlay.
+     */
+    public void clear() {
+        this.overlayPane.getChildren().clear();
+    }
+
+    /**
+     * This helper method returns the box that marks the given shape: its bounding box, with a
+     * small margin, outlined in the given color.
+     * @param record
+     * @param color
+     * @return
+     */
+    private static Rectangle marker(ShapeRecord record, Color color) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        Symbol.addBounds(record, bounds);
+        if (bounds[2] < bounds[0]) {
+            //a line without points
+            bounds = new double[] {record.getCenterX(), record.getCenterY(), record.getCenterX(), record.getCenterY()};
+        }
+        double margin = Constants.DIFF_MARKER_MARGIN;
+        Rectangle box = new Rectangle(bounds[0] - margin, bounds[1] - margin,
+                bounds[2] - bounds[0] + 2 * margin, bounds[3] - bounds[1] + 2 * margin);
+        box.setFill(Color.TRANSPARENT);
+        box.setStroke(color);
+        box.setStrokeWidth(Constants.DIFF_MARKER_WIDTH);
+        return box;
+    }
+
+    /**
+     * This helper method returns the color of the marker for the given change, by the most
+     * important way the shape changed.
+     * @param change
+     * @return
+     */
+    private static Color colorOf(ShapeChange change) {
+        if (change.is(ChangeKind.ADDED)) {
+            return Constants.DIFF_ADDED_COLOR;
+        }
+        if (change.is(ChangeKind.REMOVED)) {
+            return Constants.DIFF_REMOVED_COLOR;
+        }
+        if (change.is(ChangeKind.RESHAPED)) {
+            return Constants.DIFF_RESHAPED_COLOR;
+        }
+        if (change.is(ChangeKind.MOVED)) {
+            return Constants.DIFF_MOVED_COLOR;
+        }
+        if (change.is(ChangeKind.RELAYERED)) {
+            return Constants.DIFF_RELAYERED_COLOR;
+        }
+        return Constants.DIFF_RECOLORED_COLOR;
+    }
+}
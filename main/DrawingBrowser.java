@@ -0,0 +1,131 @@
+package sketchy.main;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * This is the DrawingBrowser class. It is a window that shows every file in a folder as a tile,
+ * with the drawing's preview, its name, and how many shapes it has, and opens a drawing when
+ * its tile is clicked. A tile can only be clicked once its preview has been read, so files
+ * that are not drawings are never opened, and if opening a drawing still fails, the error is
+ * shown on its tile instead of being thrown. The window opens at once, with a tile for each
+ * file, and the previews are filled in as a few background threads get them from the thumbnail
+ * cache (which only reads a drawing the first time it is shown), so a folder of hundreds of
+ * drawings never holds up the FX thread. Closing the window stops the previews that have not been read yet.
+ */
+public class DrawingBrowser {
+
+    private ThumbnailCache cache;
+    private Consumer<File> opener;
+    private Stage stage;
+    private FlowPane tiles;
+    private ExecutorService readers;
+
+    /**
+     * This is the DrawingBrowser constructor. It takes in the thumbnail cache, and what to do
+     * with the drawing whose tile is clicked.
+     * @param thumbnails
+     * @param onOpen
+     */
+    public DrawingBrowser(ThumbnailCache thumbnails, Consumer<File> onOpen) {
+        this.cache = thumbnails;
+        this.opener = onOpen;
+        this.stage = new Stage();
+        this.tiles = new FlowPane(Constants.BROWSER_SPACING, Constants.BROWSER_SPACING);
+        this.tiles.setPadding(Constants.BROWSER_PADDING);
+        ScrollPane scroller = new ScrollPane(this.tiles);
+        scroller.setFitToWidth(true);
+        this.stage.setScene(new Scene(scroller, Constants.BROWSER_WIDTH, Constants.BROWSER_HEIGHT));
+        this.readers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (Runnable task) -> {
+            Thread thread = new Thread(task, "sketchy-previews");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stage.setOnHidden((WindowEvent e) -> this.readers.shutdownNow());
+    }
+
+    /**
+     * This method shows the window, over the given window, with a tile for every file in the
+     * given folder (in order of name), and starts reading their previews.
+     * @param folder
+     * @param owner
+     */
+    public void show(File folder, Window owner) {
+        this.stage.setTitle(folder.getName());
+        this.stage.initOwner(owner);
+        File[] files = folder.listFiles((File file) -> file.isFile() && !file.isHidden());
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                this.addTile(file);
+            }
+        }
+        this.stage.show();
+    }
+
+    /**
+     * This helper method adds the tile for a file, which says it is being read until its
+     * preview is, and asks a background thread for the preview. Once the preview is shown, the
+     * tile opens the drawing when clicked; a file whose preview cannot be read is marked as not
+     * a drawing, and is never opened.
+     * @param file
+     */
+    private void addTile(File file) {
+        ImageView picture = new ImageView();
+        picture.setFitWidth(Constants.PREVIEW_SIZE);
+        picture.setFitHeight(Constants.PREVIEW_SIZE);
+        picture.setPreserveRatio(true);
+        Label name = new Label(file.getName());
+        name.setMaxWidth(Constants.PREVIEW_SIZE);
+        Label summary = new Label("Reading...");
+        summary.setMaxWidth(Constants.PREVIEW_SIZE);
+        summary.setWrapText(true);
+        VBox tile = new VBox(picture, name, summary);
+        this.tiles.getChildren().add(tile);
+        this.readers.submit(() -> {
+            try {
+                DrawingPreview preview = this.cache.getPreview(file);
+                Platform.runLater(() -> {
+                    picture.setImage(preview.toImage());
+                    summary.setText(preview.getStats().getShapeCount() + " shapes");
+                    tile.setOnMouseClicked((MouseEvent e) -> this.open(file, summary));
+                });
+            }
+            catch (IOException | RuntimeException e) {
+                Platform.runLater(() -> summary.setText("Not a drawing"));
+            }
+        });
+    }
+
+    /**
+     * This helper method opens the drawing of a tile that was clicked, and closes the window.
+     * If the drawing cannot be opened (for example, because the file changed since its preview
+     * was read), the window stays open and the error is shown on the tile's summary instead.
+     * @param file
+     * @param summary
+     */
+    private void open(File file, Label summary) {
+        try {
+            this.opener.accept(file);
+            this.stage.close();
+        }
+        catch (RuntimeException e) {
+            summary.setText("Could not open: " + e.getMessage());
+        }
+    }
+}
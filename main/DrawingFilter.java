@@ -0,0 +1,396 @@
+package sketchy.main;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.scene.paint.Color;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeType;
+import sketchy.document.Symbol;
+import sketchy.shapes.RecordFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the DrawingFilter class. It streams saved drawings into an output file (or into no
+ * file at all, to only count what is in them) one entry at a time, reading and writing each
+ * shape with RecordFormat, just as the Saveables do, but without ever building a scene graph.
+ * Only one shape is held at a time, plus the drawing's symbols and (when flattening) the shapes
+ * that are definitions, which "use" entries refer back to. Along the way, every shape can be drawn in
+ * a single color, every line can be stripped out (along with every use of it), and every use
+ * can be written out in full (flattened), for readers that do not understand definitions.
+ *
+ * Several drawings can be streamed into the same output one after another, which merges them.
+ * Group and definition ids are renumbered for the whole output, and symbols are given new ids,
+ * so entries from different drawings never refer to each other. When merging, the caller
+ * writes the combined list of layers first, and gives each drawing a map from its own layer
+ * ids to the merged ones.
+ *
+ * A drawing that is already in records (read from a paged file, say) can be written out with
+ * writeAll, which recolors and strips it the same way.
+ */
+public class DrawingFilter {
+
+    private static final int DROPPED = -1;
+
+    private CS15FileIO out;
+    private Color recolor;
+    private boolean stripLines;
+    private boolean flatten;
+    private int nextDefinition;
+    private int nextGroup;
+    private boolean inGroups;
+    private ArrayList<ShapeRecord> collected;
+
+    /**
+     * This is the DrawingFilter constructor. It takes in the file to write to (or null to write
+     * nothing), the color to draw every shape in (or null to keep their colors), whether to
+     * strip out lines, and whether to write out every use of a definition in full.
+     * @param output
+     * @param recolorTo
+     * @param strip
+     * @param flattenUses
+     */
+    public DrawingFilter(CS15FileIO output, Color recolorTo, boolean strip, boolean flattenUses) {
+        this.out = output;
+        this.recolor = recolorTo;
+        this.stripLines = strip;
+        this.flatten = flattenUses;
+        this.nextDefinition = 0;
+        this.nextGroup = 1;
+        this.inGroups = false;
+        this.collected = null;
+    }
+
+    /**
+     * This method reads every shape in a drawing into a list of records, in stacking order,
+     * each on its layer and in its groups (with new group ids), and with every use of a
+     * definition written out in full. Nothing is written. The records are not interned, and
+     * are given new ids, so they are only tied to shapes on screen by what they look like.
+     * @param in
+     * @return
+     */
+    public static List<ShapeRecord> readAll(CS15FileIO in) {
+        DrawingFilter filter = new DrawingFilter(null, null, false, true);
+        filter.collected = new ArrayList<>();
+        filter.copy(in, null);
+        return filter.collected;
+    }
+
+    /**
+     * This method reads the list of layers at the start of a drawing, as {id, visible, locked}
+     * for each layer. A drawing saved without layers has its shapes on a single, visible,
+     * unlocked layer with id 0. The file is left just after the list, so it should be reopened
+     * before the drawing is streamed.
+     * @param in
+     * @return
+     */
+    public static List<int[]> readLayers(CS15FileIO in) {
+        ArrayList<int[]> layers = new ArrayList<>();
+        if (in.hasMoreData() && in.readString().equals("layers")) {
+            int layerCount = in.readInt();
+            for (int i=0; i<layerCount; i++) {
+                layers.add(new int[] {in.readInt(), in.readInt(), in.readInt()});
+            }
+        }
+        else {
+            layers.add(new int[] {0, 1, 0});
+        }
+        return layers;
+    }
+
+    /**
+     * This method writes a list of layers, each as {id, visible, locked}, which should be the
+     * first entry of the output.
+     * @param layers
+     */
+    public void writeLayers(List<int[]> layers) {
+        if (this.out == null) {
+            return;
+        }
+        this.out.writeString("layers");
+        this.out.writeInt(layers.size());
+        for (int[] layer : layers) {
+            for (int value : layer) {
+                this.out.writeInt(value);
+            }
+        }
+    }
+
+    /**
+     * This method writes a whole drawing that is already in records (its layers, each as {id,
+     * visible, locked}, and its records, bottom first) to the output, as a save would: the
+     * layers, then each symbol that is placed, once, and then every record, preceded by "layer"
+     * and "groups" entries whenever those change. Records are recolored and lines stripped out
+     * as asked; nothing is written as a use of a definition. It returns what was written.
+     * @param layers
+     * @param records
+     * @return
+     */
+    public DrawingStats writeAll(List<int[]> layers, List<ShapeRecord> records) {
+        DrawingStats stats = new DrawingStats();
+        stats.countDrawing();
+        this.writeLayers(layers);
+        stats.countLayers(layers.size());
+        LinkedHashSet<Symbol> symbols = new LinkedHashSet<>();
+        for (ShapeRecord record : records) {
+            if (record.getSymbol() != null) {
+                symbols.add(record.getSymbol());
+            }
+        }
+        for (Symbol symbol : symbols) {
+            this.writeString("symbol");
+            this.writeInt(symbol.getId());
+            this.writeInt(symbol.getVersion());
+            this.writeInt(symbol.getMembers().size());
+            for (ShapeRecord member : symbol.getMembers()) {
+                this.writeRecord(member);
+            }
+            stats.countSymbol();
+        }
+        HashSet<Integer> groups = new HashSet<>();
+        int currentLayer = 0;
+        int[] currentGroups = null;
+        for (ShapeRecord record : records) {
+            if (this.stripLines && record.getType() == ShapeType.LINE) {
+                continue;
+            }
+            if (record.getLayer() != currentLayer) {
+                currentLayer = record.getLayer();
+                this.writeString("layer");
+                this.writeInt(currentLayer);
+            }
+            if (!Arrays.equals(record.getGroups(), currentGroups)) {
+                currentGroups = record.getGroups();
+                this.writeString("groups");
+                this.writeInt(currentGroups == null ? 0 : currentGroups.length);
+                if (currentGroups != null) {
+                    for (int group : currentGroups) {
+                        this.writeInt(group);
+                        groups.add(group);
+                    }
+                }
+            }
+            if (this.recolor != null) {
+                record = record.withStyle(this.recolor, record.getWidth());
+            }
+            this.writeRecord(record);
+            stats.countShape(record);
+        }
+        stats.countGroups(groups.size());
+        return stats;
+    }
+
+    /**
+     * This method streams one drawing into the output, and returns what was in it (after
+     * stripping and flattening). If the map of layer ids is null, the drawing's own list of
+     * layers is written and its layer ids are kept; otherwise its list of layers is skipped
+     * (the caller has written the merged one) and its layer ids are mapped through the map.
+     * @param in
+     * @param layerIds
+     * @return
+     */
+    public DrawingStats copy(CS15FileIO in, Map<Integer, Integer> layerIds) {
+        DrawingStats stats = new DrawingStats();
+        stats.countDrawing();
+        HashMap<String, Symbol> symbols = new HashMap<>();
+        HashMap<Integer, Integer> groupIds = new HashMap<>();
+        HashMap<Integer, Integer> definitionIds = new HashMap<>();
+        HashMap<Integer, ShapeRecord> definitions = new HashMap<>();
+        int pendingDefinition = DROPPED;
+        int currentLayer = 0;
+        int[] currentGroups = null;
+
+        //every drawing starts out on the layer with id 0 (if it has one), in no group
+        if (layerIds != null && layerIds.containsKey(0)) {
+            currentLayer = mapLayer(layerIds, 0);
+            this.writeString("layer");
+            this.writeInt(currentLayer);
+        }
+        if (this.inGroups) {
+            this.writeString("groups");
+            this.writeInt(0);
+            this.inGroups = false;
+        }
+        while (in.hasMoreData()) {
+            String entry = in.readString();
+            if (entry.equals("layers")) {
+                ArrayList<int[]> layers = new ArrayList<>();
+                int layerCount = in.readInt();
+                for (int i=0; i<layerCount; i++) {
+                    layers.add(new int[] {in.readInt(), in.readInt(), in.readInt()});
+                }
+                if (layerIds == null) {
+                    this.writeLayers(layers);
+                }
+                stats.countLayers(layerCount);
+            }
+            else if (entry.equals("layer")) {
+                int layer = in.readInt();
+                currentLayer = layerIds == null ? layer : mapLayer(layerIds, layer);
+                this.writeString("layer");
+                this.writeInt(currentLayer);
+            }
+            else if (entry.equals("groups")) {
+                int depth = in.readInt();
+                this.writeString("groups");
+                this.writeInt(depth);
+                currentGroups = depth == 0 ? null : new int[depth];
+                for (int i=0; i<depth; i++) {
+                    currentGroups[i] = groupIds.computeIfAbsent(in.readInt(), (Integer saved) -> this.nextGroup++);
+                    this.writeInt(currentGroups[i]);
+                }
+                this.inGroups = depth > 0;
+            }
+            else if (entry.equals("define")) {
+                pendingDefinition = in.readInt();
+            }
+            else if (entry.equals("use")) {
+                int definition = in.readInt();
+                double x = in.readDouble();
+                double y = in.readDouble();
+                Integer written = definitionIds.get(definition);
+                if (written == null) {
+                    throw new IllegalArgumentException("The file uses definition " + definition + " before defining it");
+                }
+                if (written == DROPPED) {
+                    continue;
+                }
+                if (this.flatten) {
+                    ShapeRecord defined = definitions.get(definition);
+                    ShapeRecord placed = defined.translated(x - defined.getCenterX(), y - defined.getCenterY());
+                    this.writeRecord(placed);
+                    this.collect(placed, currentLayer, currentGroups);
+                    stats.countShape(placed);
+                }
+                else {
+                    this.writeString("use");
+                    this.writeInt(written);
+                    this.writeDouble(x);
+                    this.writeDouble(y);
+                    stats.countUse();
+                }
+            }
+            else if (entry.equals("symbol")) {
+                String key = in.readInt() + " " + in.readInt();
+                int memberCount = in.readInt();
+                ArrayList<ShapeRecord> members = new ArrayList<>();
+                for (int i=0; i<memberCount; i++) {
+                    members.add(RecordFormat.read(in, in.readString()));
+                }
+                Symbol symbol = Symbol.define(members);
+                symbols.put(key, symbol);
+                this.writeString("symbol");
+                this.writeInt(symbol.getId());
+                this.writeInt(symbol.getVersion());
+                this.writeInt(symbol.getMembers().size());
+                for (ShapeRecord member : symbol.getMembers()) {
+                    this.writeRecord(member);
+                }
+                stats.countSymbol();
+            }
+            else {
+                ShapeRecord record = entry.equals("instance") ? RecordFormat.readInstance(in, symbols, 0)
+                        : RecordFormat.read(in, entry);
+                if (this.stripLines && record.getType() == ShapeType.LINE) {
+                    if (pendingDefinition != DROPPED) {
+                        definitionIds.put(pendingDefinition, DROPPED);
+                        pendingDefinition = DROPPED;
+                    }
+                    continue;
+                }
+                if (this.recolor != null) {
+                    record = record.withStyle(this.recolor, record.getWidth());
+                }
+                if (pendingDefinition != DROPPED) {
+                    if (this.flatten) {
+                        definitions.put(pendingDefinition, record);
+                    }
+                    definitionIds.put(pendingDefinition, this.nextDefinition);
+                    if (!this.flatten) {
+                        this.writeString("define");
+                        this.writeInt(this.nextDefinition);
+                    }
+                    this.nextDefinition++;
+                    pendingDefinition = DROPPED;
+                }
+                this.writeRecord(record);
+                this.collect(record, currentLayer, currentGroups);
+                stats.countShape(record);
+            }
+        }
+        stats.countGroups(groupIds.size());
+        return stats;
+    }
+
+    /**
+     * This helper method returns the merged id of the given layer, or throws an
+     * IllegalArgumentException if the drawing did not list the layer.
+     * @param layerIds
+     * @param layer
+     * @return
+     */
+    private static int mapLayer(Map<Integer, Integer> layerIds, int layer) {
+        Integer merged = layerIds.get(layer);
+        if (merged == null) {
+            throw new IllegalArgumentException("The file puts shapes on layer " + layer + ", which it does not list");
+        }
+        return merged;
+    }
+
+    /**
+     * This helper method adds a shape to the collected records, on the given layer and in the
+     * given groups, when the drawing is being read by readAll().
+     * @param record
+     * @param layer
+     * @param groups
+     */
+    private void collect(ShapeRecord record, int layer, int[] groups) {
+        if (this.collected != null) {
+            this.collected.add(record.withId(ShapeRecord.newId()).withLayer(layer).withGroups(groups));
+        }
+    }
+
+    /**
+     * This helper method writes a shape's entry, unless there is no output.
+     * @param record
+     */
+    private void writeRecord(ShapeRecord record) {
+        if (this.out != null) {
+            RecordFormat.write(this.out, record);
+        }
+    }
+
+    /**
+     * This helper method writes a string, unless there is no output.
+     * @param value
+     */
+    private void writeString(String value) {
+        if (this.out != null) {
+            this.out.writeString(value);
+        }
+    }
+
+    /**
+     * This helper method writes an int, unless there is no output.
+     * @param value
+     */
+    private void writeInt(int value) {
+        if (this.out != null) {
+            this.out.writeInt(value);
+        }
+    }
+
+    /**
+     * This helper method writes a double, unless there is no output.
+     * @param value
+     */
+    private void writeDouble(double value) {
+        if (this.out != null) {
+            this.out.writeDouble(value);
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package sketchy.main;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeType;
+import sketchy.document.Symbol;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This is the DrawingPreview class. It is a small picture of a drawing (at most
+ * Constants.PREVIEW_SIZE pixels on a side, framing everything in the drawing) along with the
+ * stats of what is in it, which is kept in a paged file and in the thumbnail cache so that a
+ * drawing can be shown without being loaded. The picture is drawn from the records alone, in
+ * software, without a scene graph, so it can be made on any thread: each visible layer is drawn
+ * from the bottom up, rectangles and ellipses are filled (a shape smaller than a pixel still
+ * sets the pixel its center is in), lines are drawn at their scaled stroke width, and each
+ * instance of a symbol is drawn as its members, placed, scaled, and turned as the instance is.
+ */
+public class DrawingPreview {
+
+    private static final int OPAQUE = 0xff000000;
+
+    private int width;
+    private int height;
+    private int[] pixels;
+    private DrawingStats stats;
+
+    /**
+     * This is the DrawingPreview constructor. It takes in the size of the picture, its pixels
+     * (as ARGB, row by row), and the stats of the drawing.
+     * @param previewWidth
+     * @param previewHeight
+     * @param previewPixels
+     * @param drawingStats
+     */
+    private DrawingPreview(int previewWidth, int previewHeight, int[] previewPixels, DrawingStats drawingStats) {
+        this.width = previewWidth;
+        this.height = previewHeight;
+        this.pixels = previewPixels;
+        this.stats = drawingStats;
+    }
+
+    /**
+     * This method draws the preview of a drawing, from its layers (each as {id, visible,
+     * locked}, from the bottom layer up) and its records, bottom first, and counts its stats.
+     * An empty drawing has a single transparent pixel.
+     * @param drawingLayers
+     * @param records
+     * @return
+     */
+    public static DrawingPreview of(List<int[]> drawingLayers, List<ShapeRecord> records) {
+        DrawingStats drawingStats = new DrawingStats();
+        drawingStats.countDrawing();
+        drawingStats.countLayers(drawingLayers.size());
+        HashSet<Integer> groups = new HashSet<>();
+        Set<Symbol> symbols = Collections.newSetFromMap(new IdentityHashMap<>());
+        LinkedHashMap<Integer, ArrayList<ShapeRecord>> byLayer = new LinkedHashMap<>();
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (ShapeRecord record : records) {
+            drawingStats.countShape(record);
+            if (record.getGroups() != null) {
+                for (int group : record.getGroups()) {
+                    groups.add(group);
+                }
+            }
+            if (record.getSymbol() != null) {
+                symbols.add(record.getSymbol());
+            }
+            Symbol.addBounds(record, bounds);
+            byLayer.computeIfAbsent(record.getLayer(), (Integer layer) -> new ArrayList<>()).add(record);
+        }
+        drawingStats.countGroups(groups.size());
+        for (int i=0; i<symbols.size(); i++) {
+            drawingStats.countSymbol();
+        }
+        if (bounds[2] < bounds[0]) {
+            return new DrawingPreview(1, 1, new int[1], drawingStats);
+        }
+
+        //the longer side of the drawing fills the preview
+        double scale = Constants.PREVIEW_SIZE / Math.max(Math.max(bounds[2] - bounds[0], bounds[3] - bounds[1]),
+                Constants.MIN_SYMBOL_SIZE);
+        int previewWidth = Math.min(Constants.PREVIEW_SIZE, Math.max(1, (int) Math.ceil((bounds[2] - bounds[0]) * scale)));
+        int previewHeight = Math.min(Constants.PREVIEW_SIZE, Math.max(1, (int) Math.ceil((bounds[3] - bounds[1]) * scale)));
+        DrawingPreview preview = new DrawingPreview(previewWidth, previewHeight,
+                new int[previewWidth * previewHeight], drawingStats);
+        for (int[] layer : drawingLayers) {
+            ArrayList<ShapeRecord> onLayer = byLayer.remove(layer[0]);
+            if (onLayer != null && layer[1] != 0) {
+                preview.drawAll(onLayer, bounds[0], bounds[1], scale);
+            }
+        }
+        for (ArrayList<ShapeRecord> onLayer : byLayer.values()) {
+            //shapes on a layer the drawing does not list are drawn on top
+            preview.drawAll(onLayer, bounds[0], bounds[1], scale);
+        }
+        return preview;
+    }
+
+    /**
+     * This method is an accessor for the width of the picture, in pixels.
+     * @return
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * This method is an accessor for the height of the picture, in pixels.
+     * @return
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * This method is an accessor for the stats of the drawing.
+     * @return
+     */
+    public DrawingStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * This method returns the color of the pixel at the given position, as ARGB.
+     * @param x
+     * @param y
+     * @return
+     */
+    public int getArgb(int x, int y) {
+        return this.pixels[y * this.width + x];
+    }
+
+    /**
+     * This method returns the picture as an image, to be shown in an image view.
+     * @return
+     */
+    public Image toImage() {
+        WritableImage image = new WritableImage(this.width, this.height);
+        PixelWriter writer = image.getPixelWriter();
+        for (int y=0; y<this.height; y++) {
+            for (int x=0; x<this.width; x++) {
+                writer.setArgb(x, y, this.pixels[y * this.width + x]);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * This method writes the preview in binary: its size, its stats, and its pixels.
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(this.width);
+        out.writeInt(this.height);
+        this.stats.writeTo(out);
+        for (int pixel : this.pixels) {
+            out.writeInt(pixel);
+        }
+    }
+
+    /**
+     * This method reads a preview written by writeTo(), and throws an IOException if its size
+     * is not one a preview can have.
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static DrawingPreview readFrom(DataInput in) throws IOException {
+        int previewWidth = in.readInt();
+        int previewHeight = in.readInt();
+        if (previewWidth < 1 || previewHeight < 1 || previewWidth > Constants.PREVIEW_SIZE
+                || previewHeight > Constants.PREVIEW_SIZE) {
+            throw new IOException("A preview cannot be " + previewWidth + " by " + previewHeight);
+        }
+        DrawingStats drawingStats = DrawingStats.readFrom(in);
+        int[] previewPixels = new int[previewWidth * previewHeight];
+        for (int i=0; i<previewPixels.length; i++) {
+            previewPixels[i] = in.readInt();
+        }
+        return new DrawingPreview(previewWidth, previewHeight, previewPixels, drawingStats);
+    }
+
+    /**
+     * This helper method draws the given records, in order, where (originX, originY) in the
+     * drawing is the top left corner of the picture, and the drawing is scaled by the given
+     * scale.
+     * @param records
+     * @param originX
+     * @param originY
+     * @param scale
+     */
+    private void drawAll(List<ShapeRecord> records, double originX, double originY, double scale) {
+        Placement drawing = new Placement(-originX * scale, -originY * scale, scale, scale, 0);
+        for (ShapeRecord record : records) {
+            if (record.getType() != ShapeType.SYMBOL) {
+                this.draw(record, record.getColor(), drawing);
+                continue;
+            }
+            //the members are placed as the instance places the symbol's box, which is centered on (0, 0)
+            Symbol symbol = record.getSymbol();
+            Placement instance = new Placement(drawing.toX(record.getCenterX(), record.getCenterY()),
+                    drawing.toY(record.getCenterX(), record.getCenterY()), scale * record.getWidth() / symbol.getWidth(),
+                    scale * record.getHeight() / symbol.getHeight(), record.getAngle());
+            for (ShapeRecord member : symbol.getMembers()) {
+                this.draw(member, record.getColor() != null ? record.getColor() : member.getColor(), instance);
+            }
+        }
+    }
+
+    /**
+     * This helper method draws one shape (or member of a symbol) in the given color, placed
+     * in the picture by the given placement.
+     * @param record
+     * @param color
+     * @param placement
+     */
+    private void draw(ShapeRecord record, Color color, Placement placement) {
+        int argb = argbOf(color);
+        if (record.getType() == ShapeType.LINE) {
+            double radius = record.getWidth() * (placement.scaleX + placement.scaleY) / 4;
+            double lastX = 0;
+            double lastY = 0;
+            for (int index = 0; index < record.getPointCount(); index++) {
+                double x = placement.toX(record.getPointX(index), record.getPointY(index));
+                double y = placement.toY(record.getPointX(index), record.getPointY(index));
+                if (index == 0) {
+                    this.dot(x, y, radius, argb);
+                }
+                else {
+                    this.segment(lastX, lastY, x, y, radius, argb);
+                }
+                lastX = x;
+                lastY = y;
+            }
+            return;
+        }
+        boolean ellipse = record.getType() == ShapeType.ELLIPSE;
+        //a rectangle's width and height are its full size, an ellipse's are its radii
+        double halfWidth = (ellipse ? record.getWidth() : record.getWidth() / 2) * placement.scaleX;
+        double halfHeight = (ellipse ? record.getHeight() : record.getHeight() / 2) * placement.scaleY;
+        if (halfWidth < 0.5 && halfHeight < 0.5) {
+            //too small to cover more than the pixel its center is in, however it is turned
+            this.dot(placement.toX(record.getCenterX(), record.getCenterY()),
+                    placement.toY(record.getCenterX(), record.getCenterY()), 0, argb);
+            return;
+        }
+        this.fill(placement.toX(record.getCenterX(), record.getCenterY()),
+                placement.toY(record.getCenterX(), record.getCenterY()), halfWidth, halfHeight,
+                Math.toRadians(record.getAngle() + placement.angle), ellipse, argb);
+    }
+
+    /**
+     * This helper method fills a rectangle or ellipse with the given center and half sizes,
+     * turned by the given angle, by setting every pixel whose center is inside it, or the pixel
+     * its center is in, if it is too small to hold the center of any pixel.
+     * @param centerX
+     * @param centerY
+     * @param halfWidth
+     * @param halfHeight
+     * @param radians
+     * @param ellipse
+     * @param argb
+     */
+    private void fill(double centerX, double centerY, double halfWidth, double halfHeight, double radians,
+                      boolean ellipse, int argb) {
+        double cosine = Math.cos(radians);
+        double sine = Math.sin(radians);
+        double extentX = halfWidth * Math.abs(cosine) + halfHeight * Math.abs(sine);
+        double extentY = halfWidth * Math.abs(sine) + halfHeight * Math.abs(cosine);
+        int minX = Math.max(0, (int) Math.floor(centerX - extentX));
+        int maxX = Math.min(this.width - 1, (int) Math.floor(centerX + extentX));
+        int minY = Math.max(0, (int) Math.floor(centerY - extentY));
+        int maxY = Math.min(this.height - 1, (int) Math.floor(centerY + extentY));
+        boolean filled = false;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                double dx = x + 0.5 - centerX;
+                double dy = y + 0.5 - centerY;
+                double localX = (dx * cosine + dy * sine) / Math.max(halfWidth, Double.MIN_VALUE);
+                double localY = (dy * cosine - dx * sine) / Math.max(halfHeight, Double.MIN_VALUE);
+                if (ellipse ? localX * localX + localY * localY <= 1 : Math.abs(localX) <= 1 && Math.abs(localY) <= 1) {
+                    this.pixels[y * this.width + x] = argb;
+                    filled = true;
+                }
+            }
+        }
+        if (!filled) {
+            this.dot(centerX, centerY, 0, argb);
+        }
+    }
+
+    /**
+     * This helper method draws a line segment of the given radius (not counting its start,
+     * which the segment before it, or the first dot, has drawn). A thin segment sets one pixel
+     * per step along its longer axis; a thick one is drawn as dots half a pixel apart.
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @param radius
+     * @param argb
+     */
+    private void segment(double startX, double startY, double endX, double endY, double radius, int argb) {
+        double length = Math.max(Math.abs(endX - startX), Math.abs(endY - startY));
+        if (radius >= 1) {
+            int steps = (int) Math.ceil(2 * length);
+            for (int step = 1; step <= steps; step++) {
+                double along = (double) step / steps;
+                this.dot(startX + (endX - startX) * along, startY + (endY - startY) * along, radius, argb);
+            }
+            return;
+        }
+        int steps = Math.max(1, (int) Math.ceil(length));
+        double stepX = (endX - startX) / steps;
+        double stepY = (endY - startY) / steps;
+        double x = startX;
+        double y = startY;
+        for (int step = 1; step <= steps; step++) {
+            x += stepX;
+            y += stepY;
+            if (x >= 0 && x < this.width && y >= 0 && y < this.height) {
+                this.pixels[(int) y * this.width + (int) x] = argb;
+            }
+        }
+    }
+
+    /**
+     * This helper method sets every pixel whose center is within the given radius of the
+     * given point, or, if the radius is under a pixel, just the pixel the point is in.
+     * @param x
+     * @param y
+     * @param radius
+     * @param argb
+     */
+    private void dot(double x, double y, double radius, int argb) {
+        if (radius < 1) {
+            int pixelX = (int) Math.floor(x);
+            int pixelY = (int) Math.floor(y);
+            if (pixelX >= 0 && pixelX < this.width && pixelY >= 0 && pixelY < this.height) {
+                this.pixels[pixelY * this.width + pixelX] = argb;
+            }
+            return;
+        }
+        this.fill(x, y, radius, radius, 0, true, argb);
+    }
+
+    /**
+     * This helper method returns a color as an opaque ARGB pixel (black, if there is no
+     * color).
+     * @param color
+     * @return
+     */
+    private static int argbOf(Color color) {
+        if (color == null) {
+            return OPAQUE;
+        }
+        return OPAQUE | (int) Math.round(color.getRed() * Constants.RGB) << 16
+                | (int) Math.round(color.getGreen() * Constants.RGB) << 8 | (int) Math.round(color.getBlue() * Constants.RGB);
+    }
+
+    /**
+     * This is the Placement class. It is how shapes are placed in the picture: scaled (on
+     * each axis), turned by an angle in degrees, and then moved to a position in pixels.
+     */
+    private static class Placement {
+
+        private double offsetX;
+        private double offsetY;
+        private double scaleX;
+        private double scaleY;
+        private double angle;
+        private double cosine;
+        private double sine;
+
+        /**
+         * This is the Placement constructor. It takes in where (0, 0) ends up, the scales,
+         * and the angle.
+         * @param x
+         * @param y
+         * @param horizontalScale
+         * @param verticalScale
+         * @param degrees
+         */
+        private Placement(double x, double y, double horizontalScale, double verticalScale, double degrees) {
+            this.offsetX = x;
+            this.offsetY = y;
+            this.scaleX = horizontalScale;
+            this.scaleY = verticalScale;
+            this.angle = degrees;
+            this.cosine = Math.cos(Math.toRadians(degrees));
+            this.sine = Math.sin(Math.toRadians(degrees));
+        }
+
+        /**
+         * This method returns the x coordinate in pixels of the given point.
+         * @param x
+         * @param y
+         * @return
+         */
+        private double toX(double x, double y) {
+            return this.offsetX + x * this.scaleX * this.cosine - y * this.scaleY * this.sine;
+        }
+
+        /**
+         * This method returns the y coordinate in pixels of the given point.
+         * @param x
+         * @param y
+         * @return
+         */
+        private double toY(double x, double y) {
+            return this.offsetY + x * this.scaleX * this.sine + y * this.scaleY * this.cosine;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package sketchy.main;
+
+import sketchy.document.ShapeRecord;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * This is the DrawingStats class. It counts what is in one or more saved drawings as they are
+ * streamed by a DrawingFilter: how many rectangles, ellipses, lines (and points in them), and
+ * instances of symbols there are, how many shapes only refer to a definition ("use" entries),
+ * and how many layers, groups, and symbols the drawings have. Stats for many drawings are the
+ * sum of the stats for each, which is how the batch tool adds up the drawings its workers read.
+ * Stats can also be written out in binary and read back, which is how a DrawingPreview keeps the
+ * summary of a drawing next to its picture.
+ */
+public class DrawingStats {
+
+    private long drawings;
+    private long rectangles;
+    private long ellipses;
+    private long lines;
+    private long points;
+    private long instances;
+    private long uses;
+    private long layers;
+    private long groups;
+    private long symbols;
+
+    /**
+     * This is the DrawingStats constructor. Every count starts at zero.
+     */
+    public DrawingStats() {
+        this.drawings = 0;
+    }
+
+    /**
+     * This method counts one more drawing.
+     */
+    public void countDrawing() {
+        this.drawings++;
+    }
+
+    /**
+     * This method counts the shape, line, or instance the given record describes.
+     * @param record
+     */
+    public void countShape(ShapeRecord record) {
+        switch (record.getType()) {
+            case RECTANGLE:
+                this.rectangles++;
+                break;
+            case ELLIPSE:
+                this.ellipses++;
+                break;
+            case LINE:
+                this.lines++;
+                this.points += record.getPointCount();
+                break;
+            default:
+                this.instances++;
+                break;
+        }
+    }
+
+    /**
+     * This method counts one more shape that only refers to a definition.
+     */
+    public void countUse() {
+        this.uses++;
+    }
+
+    /**
+     * This method counts the given number of layers.
+     * @param count
+     */
+    public void countLayers(int count) {
+        this.layers += count;
+    }
+
+    /**
+     * This method counts the given number of groups.
+     * @param count
+     */
+    public void countGroups(int count) {
+        this.groups += count;
+    }
+
+    /**
+     * This method counts one more symbol.
+     */
+    public void countSymbol() {
+        this.symbols++;
+    }
+
+    /**
+     * This method adds the given stats to these. It is synchronized, so that workers can add
+     * the stats of the drawings they read to the same total.
+     * @param other
+     */
+    public synchronized void add(DrawingStats other) {
+        this.drawings += other.drawings;
+        this.rectangles += other.rectangles;
+        this.ellipses += other.ellipses;
+        this.lines += other.lines;
+        this.points += other.points;
+        this.instances += other.instances;
+        this.uses += other.uses;
+        this.layers += other.layers;
+        this.groups += other.groups;
+        this.symbols += other.symbols;
+    }
+
+    /**
+     * This method writes every count, in binary.
+     * @param out
+     * @throws IOException
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        for (long count : new long[] {this.drawings, this.rectangles, this.ellipses, this.lines, this.points,
+                this.instances, this.uses, this.layers, this.groups, this.symbols}) {
+            out.writeLong(count);
+        }
+    }
+
+    /**
+     * This method reads stats written by writeTo().
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static DrawingStats readFrom(DataInput in) throws IOException {
+        DrawingStats stats = new DrawingStats();
+        stats.drawings = in.readLong();
+        stats.rectangles = in.readLong();
+        stats.ellipses = in.readLong();
+        stats.lines = in.readLong();
+        stats.points = in.readLong();
+        stats.instances = in.readLong();
+        stats.uses = in.readLong();
+        stats.layers = in.readLong();
+        stats.groups = in.readLong();
+        stats.symbols = in.readLong();
+        return stats;
+    }
+
+    /**
+     * This method returns the total number of shapes, lines, instances, and uses counted.
+     * @return
+     */
+    public long getShapeCount() {
+        return this.rectangles + this.ellipses + this.lines + this.instances + this.uses;
+    }
+
+    /**
+     * This method returns the counts as a single line of text.
+     * @return
+     */
+    @Override
+    public synchronized String toString() {
+        return this.drawings + " drawings, " + this.getShapeCount() + " shapes (" + this.rectangles
+                + " rectangles, " + this.ellipses + " ellipses, " + this.lines + " lines with " + this.points
+                + " points, " + this.instances + " instances, " + this.uses + " uses), " + this.layers
+                + " layers, " + this.groups + " groups, " + this.symbols + " symbols";
+    }
+}
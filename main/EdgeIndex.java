@@ -0,0 +1,156 @@
+package sketchy.main;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This is the EdgeIndex class. It keeps one kind of coordinate (for example, the left edges)
+ * of every shape in sorted order, along with the ids of the shapes it belongs to, so the
+ * coordinate nearest to a value, or the first one below or above it, is found in O(log n)
+ * rather than by looking at every shape. Adding or removing a shape's coordinate is also
+ * O(log n), so the index is kept up to date one shape at a time as the drawing changes.
+ */
+public class EdgeIndex {
+
+    private TreeMap<Double, ArrayList<Integer>> edges;
+    private int size;
+
+    /**
+     * This is the EdgeIndex constructor. The index starts out empty.
+     */
+    public EdgeIndex() {
+        this.edges = new TreeMap<>();
+        this.size = 0;
+    }
+
+    /**
+     * This method adds the given coordinate of the shape with the given id.
+     * @param value
+     * @param id
+     */
+    public void add(double value, int id) {
+        this.edges.computeIfAbsent(value, (Double key) -> new ArrayList<>(1)).add(id);
+        this.size++;
+    }
+
+    /**
+     * This method removes the given coordinate of the shape with the given id, which must have
+     * been added before.
+     * @param value
+     * @param id
+     */
+    public void remove(double value, int id) {
+        ArrayList<Integer> ids = this.edges.get(value);
+        if (ids != null && ids.remove(Integer.valueOf(id))) {
+            this.size--;
+            if (ids.isEmpty()) {
+                this.edges.remove(value);
+            }
+        }
+    }
+
+    /**
+     * This method empties the index.
+     */
+    public void clear() {
+        this.edges.clear();
+        this.size = 0;
+    }
+
+    /**
+     * This method returns how many coordinates are in the index.
+     * @return
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * This method returns the coordinate nearest to the given value, no further than the
+     * tolerance from it, that belongs to a shape other than the excluded ones, as the
+     * coordinate and the id of its shape. It returns null if there is none.
+     * @param value
+     * @param tolerance
+     * @param excluded
+     * @return
+     */
+    public Map.Entry<Double, Integer> nearest(double value, double tolerance, Set<Integer> excluded) {
+        Map.Entry<Double, Integer> best = null;
+        double bestDistance = tolerance;
+        NavigableMap<Double, ArrayList<Integer>> window = this.edges.subMap(value - tolerance, true,
+                value + tolerance, true);
+        for (Map.Entry<Double, ArrayList<Integer>> entry : window.entrySet()) {
+            double distance = Math.abs(entry.getKey() - value);
+            if (distance <= bestDistance) {
+                Integer id = firstIncluded(entry.getValue(), excluded);
+                if (id != null) {
+                    best = new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), id);
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This method returns the greatest coordinate that is at most the given value and belongs
+     * to a shape other than the excluded ones, as the coordinate and the id of its shape, or
+     * null if there is none.
+     * @param value
+     * @param excluded
+     * @return
+     */
+    public Map.Entry<Double, Integer> below(double value, Set<Integer> excluded) {
+        return first(this.edges.headMap(value, true).descendingMap(), excluded);
+    }
+
+    /**
+     * This method returns the least coordinate that is at least the given value and belongs to
+     * a shape other than the excluded ones, as the coordinate and the id of its shape, or null
+     * if there is none.
+     * @param value
+     * @param excluded
+     * @return
+     */
+    public Map.Entry<Double, Integer> above(double value, Set<Integer> excluded) {
+        return first(this.edges.tailMap(value, true), excluded);
+    }
+
+    /**
+     * This helper method returns the first coordinate, in the order of the given map, that
+     * belongs to a shape other than the excluded ones. Since only a few shapes are ever
+     * excluded, only a few coordinates are ever skipped.
+     * @param ordered
+     * @param excluded
+     * @return
+     */
+    private static Map.Entry<Double, Integer> first(NavigableMap<Double, ArrayList<Integer>> ordered,
+                                                    Set<Integer> excluded) {
+        for (Map.Entry<Double, ArrayList<Integer>> entry : ordered.entrySet()) {
+            Integer id = firstIncluded(entry.getValue(), excluded);
+            if (id != null) {
+                return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This helper method returns the first of the given ids that is not excluded, or null.
+     * @param ids
+     * @param excluded
+     * @return
+     */
+    private static Integer firstIncluded(ArrayList<Integer> ids, Set<Integer> excluded) {
+        for (Integer id : ids) {
+            if (!excluded.contains(id)) {
+                return id;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,264 @@
+package sketchy.main;
+
+import sketchy.shapes.SketchyShape;
+import java.util.ArrayList;
+
+/**
+ * This is the GroupNode class. It is one node of the GroupTree: either a group, whose children
+ * are the shapes and groups directly inside it, a leaf, which stands for a single shape, or a
+ * cluster, which holds some of a group's children (or some of its clusters) that are near each
+ * other, so that no node has more than a handful of children however big the group is. Every
+ * node caches the axis-aligned bounding box of everything under it, so that a search can skip a
+ * whole group or cluster whose box does not reach what it is looking for. A leaf also remembers
+ * its shape's key in the stacking order.
+ */
+public class GroupNode {
+
+    private int id;
+    private SketchyShape shape;
+    private GroupNode parent;
+    private boolean cluster;
+    private ArrayList<GroupNode> children;
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+    private long order;
+
+    /**
+     * This is the GroupNode constructor for groups. It takes in the group's id and its parent
+     * (null for the root of the tree). A new group has no children and empty bounds.
+     * @param groupId
+     * @param parentNode
+     */
+    public GroupNode(int groupId, GroupNode parentNode) {
+        this.id = groupId;
+        this.shape = null;
+        this.cluster = false;
+        this.parent = parentNode;
+        this.children = new ArrayList<>();
+        this.clearBounds();
+    }
+
+    /**
+     * This is the GroupNode constructor for clusters. A cluster has no id of its own, and is not
+     * in any group until it is added to one.
+     */
+    public GroupNode() {
+        this.id = -1;
+        this.shape = null;
+        this.cluster = true;
+        this.parent = null;
+        this.children = new ArrayList<>();
+        this.clearBounds();
+    }
+
+    /**
+     * This is the GroupNode constructor for leaves. It takes in the shape the leaf stands for.
+     * The leaf is not in any group until it is added to one.
+     * @param leafShape
+     */
+    public GroupNode(SketchyShape leafShape) {
+        this.id = leafShape.getId();
+        this.shape = leafShape;
+        this.cluster = false;
+        this.parent = null;
+        this.children = null;
+        this.clearBounds();
+    }
+
+    /**
+     * This method is an accessor for the node's id: the group's id, or the id of a leaf's shape.
+     * @return
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * This method returns whether the node is a leaf (stands for a shape) rather than a group.
+     * @return
+     */
+    public boolean isLeaf() {
+        return this.shape != null;
+    }
+
+    /**
+     * This method returns whether the node is a cluster rather than a group or a leaf.
+     * @return
+     */
+    public boolean isCluster() {
+        return this.cluster;
+    }
+
+    /**
+     * This method is an accessor for the shape a leaf stands for, which is null for a group.
+     * @return
+     */
+    public SketchyShape getShape() {
+        return this.shape;
+    }
+
+    /**
+     * This method is an accessor for the group or cluster the node is directly in.
+     * @return
+     */
+    public GroupNode getParent() {
+        return this.parent;
+    }
+
+    /**
+     * This method returns the nodes directly inside a group or cluster. The list must not be
+     * changed.
+     * @return
+     */
+    public ArrayList<GroupNode> getChildren() {
+        return this.children;
+    }
+
+    /**
+     * This method puts the given node directly inside this group or cluster, taking it out of
+     * the one it was in (if any). The bounds are not updated.
+     * @param child
+     */
+    public void addChild(GroupNode child) {
+        if (child.parent != null) {
+            child.parent.children.remove(child);
+        }
+        child.parent = this;
+        this.children.add(child);
+    }
+
+    /**
+     * This method takes the given node out of this group or cluster. The bounds are not updated.
+     * @param child
+     */
+    public void removeChild(GroupNode child) {
+        this.children.remove(child);
+        child.parent = null;
+    }
+
+    /**
+     * This method is an accessor for the key of a leaf's shape in the stacking order (higher is
+     * nearer the top). Keys are spaced out, so a shape can be given a key between two others
+     * without changing theirs.
+     * @return
+     */
+    public long getOrder() {
+        return this.order;
+    }
+
+    /**
+     * This method sets the key of a leaf's shape in the stacking order.
+     * @param key
+     */
+    public void setOrder(long key) {
+        this.order = key;
+    }
+
+    /**
+     * This method brings the node's bounds up to date: a leaf takes its shape's bounding box,
+     * and a group or cluster the box around its children's (cached) boxes. It returns whether the bounds
+     * changed, which is how an update knows when it can stop going up the tree.
+     * @return
+     */
+    public boolean updateBounds() {
+        double oldMinX = this.minX;
+        double oldMinY = this.minY;
+        double oldMaxX = this.maxX;
+        double oldMaxY = this.maxY;
+        if (this.isLeaf()) {
+            this.minX = this.shape.getTransform().getMinX();
+            this.minY = this.shape.getTransform().getMinY();
+            this.maxX = this.shape.getTransform().getMaxX();
+            this.maxY = this.shape.getTransform().getMaxY();
+        }
+        else {
+            this.clearBounds();
+            for (GroupNode child : this.children) {
+                this.minX = Math.min(this.minX, child.minX);
+                this.minY = Math.min(this.minY, child.minY);
+                this.maxX = Math.max(this.maxX, child.maxX);
+                this.maxY = Math.max(this.maxY, child.maxY);
+            }
+        }
+        return oldMinX != this.minX || oldMinY != this.minY || oldMaxX != this.maxX || oldMaxY != this.maxY;
+    }
+
+    /**
+     * This method returns whether the given point is within the node's cached bounds.
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean boundsContain(double x, double y) {
+        return x >= this.minX && x <= this.maxX && y >= this.minY && y <= this.maxY;
+    }
+
+    /**
+     * This method returns whether the node's cached bounds overlap the given box.
+     * @param otherMinX
+     * @param otherMinY
+     * @param otherMaxX
+     * @param otherMaxY
+     * @return
+     */
+    public boolean boundsIntersect(double otherMinX, double otherMinY, double otherMaxX, double otherMaxY) {
+        return this.minX <= otherMaxX && otherMinX <= this.maxX && this.minY <= otherMaxY && otherMinY <= this.maxY;
+    }
+
+    /**
+     * This method returns the x coordinate of the center of the node's cached bounds.
+     * @return
+     */
+    public double getCenterX() {
+        return (this.minX + this.maxX) / 2;
+    }
+
+    /**
+     * This method returns the y coordinate of the center of the node's cached bounds.
+     * @return
+     */
+    public double getCenterY() {
+        return (this.minY + this.maxY) / 2;
+    }
+
+    /**
+     * This method returns whether the node's cached bounds are wider than they are tall.
+     * @return
+     */
+    public boolean isWide() {
+        return this.maxX - this.minX >= this.maxY - this.minY;
+    }
+
+    /**
+     * This method returns the area of the node's cached bounds.
+     * @return
+     */
+    public double getArea() {
+        return (this.maxX - this.minX) * (this.maxY - this.minY);
+    }
+
+    /**
+     * This method returns how much the area of the node's cached bounds would grow if they had
+     * to take in the given node's bounds as well.
+     * @param other
+     * @return
+     */
+    public double getEnlargement(GroupNode other) {
+        double width = Math.max(this.maxX, other.maxX) - Math.min(this.minX, other.minX);
+        double height = Math.max(this.maxY, other.maxY) - Math.min(this.minY, other.minY);
+        return width * height - this.getArea();
+    }
+
+    /**
+     * This helper method empties the bounds, so that they contain nothing until something is
+     * added to them.
+     */
+    private void clearBounds() {
+        this.minX = Double.POSITIVE_INFINITY;
+        this.minY = Double.POSITIVE_INFINITY;
+        this.maxX = Double.NEGATIVE_INFINITY;
+        this.maxY = Double.NEGATIVE_INFINITY;
+    }
+}
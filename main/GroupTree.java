@@ -0,0 +1,508 @@
+package sketchy.main;
+
+import sketchy.document.DocumentSnapshot;
+import sketchy.document.ShapeRecord;
+import sketchy.document.SnapshotChanges;
+import sketchy.shapes.Saveable;
+import sketchy.shapes.SketchyShape;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This is the GroupTree class. It mirrors how the drawing is grouped as a tree of GroupNodes
+ * (a bounding volume hierarchy): the root holds the shapes that are not in any group and the
+ * outermost groups, and each group holds the shapes and groups directly inside it. A group (or
+ * the root) with more than MAX_CHILDREN children keeps them in clusters, like an R-tree: a new
+ * child goes into the cluster whose box grows least to take it in, and a cluster that gets too
+ * full is split in two at the median of its children along its longer side. Every node caches
+ * the bounding box of everything under it, so finding the shape under the mouse, or the shapes
+ * in a box, skips every group and cluster whose box is out of the way without looking at any of
+ * its shapes, even when most of the drawing is not grouped at all. When a whole drawing is put
+ * into an empty tree (after a load), the clusters are packed all at once instead, by sort-tile-
+ * recursive (STR) packing: the children are sorted into vertical strips by x, and each strip
+ * into clusters by y.
+ *
+ * The tree is brought up to date from the changes between each snapshot of the drawing and the
+ * one before it, without walking the drawing: a removed shape's leaf is taken out, an added or
+ * changed shape's leaf is put (back) in the right group and cluster, and the boxes above them
+ * are updated from the inside out, stopping at the first one that did not change. Each leaf
+ * keeps a key for its shape's place in the stacking order. Keys are spaced ORDER_GAP apart, so
+ * the shapes at the positions that changed get new keys between those of their neighbors, and
+ * every key is only handed out again when there is no room left between two of them. A group
+ * exists for as long as some shape is in it.
+ */
+public class GroupTree {
+
+    private static final int MAX_CHILDREN = 16;
+    private static final long ORDER_GAP = 1L << 32;
+
+    private HashMap<Integer, Saveable> liveSaveables;
+    private GroupNode root;
+    private HashMap<Integer, GroupNode> leaves;
+    private HashMap<Integer, GroupNode> groups;
+
+    /**
+     * This is the GroupTree constructor. It takes in the map from id to every Saveable that has
+     * been created, which is where the leaves find their shapes. The tree starts out empty.
+     * @param live
+     */
+    public GroupTree(HashMap<Integer, Saveable> live) {
+        this.liveSaveables = live;
+        this.clear();
+    }
+
+    /**
+     * This method empties the tree.
+     */
+    public void clear() {
+        this.root = new GroupNode(0, null);
+        this.leaves = new HashMap<>();
+        this.groups = new HashMap<>();
+    }
+
+    /**
+     * This method brings the tree up to date with the given changes, which must turn the
+     * snapshot the tree was last brought up to date with into one that describes what is in the
+     * arraylist of saveables. Shapes that were added, removed, regrouped, or changed are put in
+     * their place, the boxes of the groups and clusters they are (or were) in are updated, and
+     * the shapes at the positions that changed get new keys in the stacking order.
+     * @param changes
+     */
+    public void refresh(SnapshotChanges changes) {
+        if (this.leaves.isEmpty() && changes.getAdded().size() > MAX_CHILDREN) {
+            this.load(changes);
+            return;
+        }
+        ArrayList<GroupNode> dirty = new ArrayList<>();
+        for (ShapeRecord record : changes.getRemoved()) {
+            GroupNode leaf = this.leaves.remove(record.getId());
+            if (leaf != null) {
+                this.detach(leaf, dirty);
+            }
+        }
+        //every changed shape is taken out before any is put back, so a group whose shapes were all
+        //regrouped is emptied (and put back where it now belongs) rather than found in its old place
+        for (ShapeRecord record : changes.getUpdated()) {
+            this.detach(this.leaves.get(record.getId()), dirty);
+        }
+        for (ShapeRecord record : changes.getUpdated()) {
+            this.attach(this.leaves.get(record.getId()), record.getGroups(), dirty);
+        }
+        for (ShapeRecord record : changes.getAdded()) {
+            GroupNode leaf = new GroupNode((SketchyShape) this.liveSaveables.get(record.getId()));
+            this.leaves.put(record.getId(), leaf);
+            this.attach(leaf, record.getGroups(), dirty);
+        }
+        this.reorder(changes);
+        for (GroupNode node : dirty) {
+            this.propagate(node);
+        }
+    }
+
+    /**
+     * This method returns the topmost shape on the given layer that contains the given point,
+     * or null if there is none. Groups whose boxes do not contain the point are skipped whole,
+     * and a shape is only checked exactly if it would be above the best one found so far.
+     * @param x
+     * @param y
+     * @param layer
+     * @return
+     */
+    public SketchyShape hit(double x, double y, int layer) {
+        GroupNode best = this.hit(this.root, x, y, layer, null);
+        return best == null ? null : best.getShape();
+    }
+
+    /**
+     * This method returns the ids of the shapes whose boxes overlap the given box, skipping
+     * every group whose box does not.
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return
+     */
+    public List<Integer> query(double minX, double minY, double maxX, double maxY) {
+        ArrayList<Integer> found = new ArrayList<>();
+        this.query(this.root, minX, minY, maxX, maxY, found);
+        return found;
+    }
+
+    /**
+     * This method returns the ids of the shapes that go along with the shape with the given id:
+     * every shape in its outermost group, or just the shape itself if it is not in a group.
+     * @param shapeId
+     * @return
+     */
+    public List<Integer> getOutermostMembers(int shapeId) {
+        ArrayList<Integer> members = new ArrayList<>();
+        GroupNode node = this.leaves.get(shapeId);
+        if (node == null) {
+            return members;
+        }
+        GroupNode outermost = node;
+        while (node.getParent() != null) {
+            node = node.getParent();
+            if (node != this.root && !node.isCluster()) {
+                outermost = node;
+            }
+        }
+        this.collect(outermost, members);
+        return members;
+    }
+
+    /**
+     * This method returns the number of groups in the drawing.
+     * @return
+     */
+    public int getGroupCount() {
+        return this.groups.size();
+    }
+
+    /**
+     * This helper method fills the empty tree with every shape in the given changes (which must
+     * all be added) at once: each shape and group is put straight into the group it belongs in,
+     * and then every group with too many children has them packed into clusters, from the
+     * innermost groups out, so each group's box is known before it is packed itself.
+     * @param changes
+     */
+    private void load(SnapshotChanges changes) {
+        HashMap<GroupNode, ArrayList<GroupNode>> members = new HashMap<>();
+        for (ShapeRecord record : changes.getAdded()) {
+            GroupNode leaf = new GroupNode((SketchyShape) this.liveSaveables.get(record.getId()));
+            this.leaves.put(record.getId(), leaf);
+            leaf.updateBounds();
+            GroupNode parent = this.root;
+            if (record.getGroups() != null) {
+                for (int groupId : record.getGroups()) {
+                    GroupNode group = this.groups.get(groupId);
+                    if (group == null) {
+                        group = new GroupNode(groupId, null);
+                        this.groups.put(groupId, group);
+                        members.computeIfAbsent(parent, (GroupNode key) -> new ArrayList<>()).add(group);
+                    }
+                    parent = group;
+                }
+            }
+            members.computeIfAbsent(parent, (GroupNode key) -> new ArrayList<>()).add(leaf);
+        }
+        this.pack(this.root, members);
+        this.renumber(changes.getSnapshot());
+    }
+
+    /**
+     * This helper method packs the given members of a group (or the root), once its own
+     * groups have been packed, into clusters of at most MAX_CHILDREN, and those into clusters
+     * of their own, until the group has few enough children, and then updates the group's box.
+     * @param node
+     * @param members
+     */
+    private void pack(GroupNode node, HashMap<GroupNode, ArrayList<GroupNode>> members) {
+        ArrayList<GroupNode> level = members.get(node);
+        if (level == null) {
+            return;
+        }
+        for (GroupNode child : level) {
+            if (!child.isLeaf()) {
+                this.pack(child, members);
+            }
+        }
+        while (level.size() > MAX_CHILDREN) {
+            level = this.tile(level);
+        }
+        for (GroupNode child : level) {
+            node.addChild(child);
+        }
+        if (node != this.root) {
+            node.updateBounds();
+        }
+    }
+
+    /**
+     * This helper method does one round of STR packing: the nodes are sorted by x into about
+     * the square root of as many vertical strips as there will be clusters, and each strip is
+     * sorted by y and cut into clusters of MAX_CHILDREN. The new clusters are returned.
+     * @param nodes
+     * @return
+     */
+    private ArrayList<GroupNode> tile(ArrayList<GroupNode> nodes) {
+        int clusterCount = (nodes.size() + MAX_CHILDREN - 1) / MAX_CHILDREN;
+        int stripCount = (int) Math.ceil(Math.sqrt(clusterCount));
+        int stripSize = MAX_CHILDREN * ((clusterCount + stripCount - 1) / stripCount);
+        nodes.sort(Comparator.comparingDouble(GroupNode::getCenterX));
+        ArrayList<GroupNode> clusters = new ArrayList<>();
+        for (int start = 0; start < nodes.size(); start += stripSize) {
+            ArrayList<GroupNode> strip = new ArrayList<>(nodes.subList(start, Math.min(nodes.size(), start + stripSize)));
+            strip.sort(Comparator.comparingDouble(GroupNode::getCenterY));
+            for (int first = 0; first < strip.size(); first += MAX_CHILDREN) {
+                GroupNode cluster = new GroupNode();
+                for (int i=first; i<Math.min(strip.size(), first + MAX_CHILDREN); i++) {
+                    cluster.addChild(strip.get(i));
+                }
+                cluster.updateBounds();
+                clusters.add(cluster);
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * This helper method puts a leaf in the group at the end of the given path of group ids
+     * (or in the root, if the path is null), creating any group on the path that does not exist
+     * yet, from the inside out, so that each one has a box by the time it is put in the group
+     * above it. Whatever group or cluster the leaf (or its new group) ends up in is marked for
+     * its box to be updated.
+     * @param leaf
+     * @param path
+     * @param dirty
+     */
+    private void attach(GroupNode leaf, int[] path, ArrayList<GroupNode> dirty) {
+        leaf.updateBounds();
+        GroupNode member = leaf;
+        if (path != null) {
+            for (int i=path.length - 1; i>=0; i--) {
+                GroupNode group = this.groups.get(path[i]);
+                if (group != null) {
+                    this.insert(member, group, dirty);
+                    return;
+                }
+                group = new GroupNode(path[i], null);
+                this.groups.put(path[i], group);
+                group.addChild(member);
+                group.updateBounds();
+                member = group;
+            }
+        }
+        this.insert(member, this.root, dirty);
+    }
+
+    /**
+     * This helper method puts a node in the given group (or the root). If the group keeps its
+     * children in clusters, the node goes down into the cluster whose box would grow the least
+     * to take it in (the smaller one, on a tie) at each level. A cluster, group, or root that
+     * ends up with too many children is split.
+     * @param member
+     * @param group
+     * @param dirty
+     */
+    private void insert(GroupNode member, GroupNode group, ArrayList<GroupNode> dirty) {
+        GroupNode node = group;
+        while (!node.getChildren().isEmpty() && node.getChildren().get(0).isCluster()) {
+            GroupNode best = null;
+            double bestEnlargement = 0;
+            for (GroupNode child : node.getChildren()) {
+                double enlargement = child.getEnlargement(member);
+                if (best == null || enlargement < bestEnlargement
+                        || (enlargement == bestEnlargement && child.getArea() < best.getArea())) {
+                    best = child;
+                    bestEnlargement = enlargement;
+                }
+            }
+            node = best;
+        }
+        node.addChild(member);
+        dirty.add(node);
+        if (node.getChildren().size() > MAX_CHILDREN) {
+            this.split(node, dirty);
+        }
+    }
+
+    /**
+     * This helper method splits a node with too many children at the median of their centers,
+     * along the longer side of its box. A cluster hands the upper half of its children to a new
+     * cluster next to it (which may in turn split the node above); a group or the root moves its
+     * children into two new clusters of its own, which makes its part of the tree one level
+     * deeper.
+     * @param node
+     * @param dirty
+     */
+    private void split(GroupNode node, ArrayList<GroupNode> dirty) {
+        node.updateBounds();
+        ArrayList<GroupNode> children = new ArrayList<>(node.getChildren());
+        children.sort(Comparator.comparingDouble(node.isWide() ? GroupNode::getCenterX : GroupNode::getCenterY));
+        GroupNode upper = new GroupNode();
+        for (int i=children.size() / 2; i<children.size(); i++) {
+            upper.addChild(children.get(i));
+        }
+        upper.updateBounds();
+        if (node.isCluster()) {
+            node.updateBounds();
+            GroupNode parent = node.getParent();
+            parent.addChild(upper);
+            dirty.add(parent);
+            if (parent.getChildren().size() > MAX_CHILDREN) {
+                this.split(parent, dirty);
+            }
+            return;
+        }
+        GroupNode lower = new GroupNode();
+        for (int i=0; i<children.size() / 2; i++) {
+            lower.addChild(children.get(i));
+        }
+        lower.updateBounds();
+        node.addChild(lower);
+        node.addChild(upper);
+        dirty.add(node);
+    }
+
+    /**
+     * This helper method takes a leaf out of its group. Clusters and groups that are left empty
+     * are removed, and the first node that is not is marked for its box to be updated. A group
+     * left with a single cluster takes that cluster's children back.
+     * @param leaf
+     * @param dirty
+     */
+    private void detach(GroupNode leaf, ArrayList<GroupNode> dirty) {
+        GroupNode parent = leaf.getParent();
+        parent.removeChild(leaf);
+        while (parent != this.root && parent.getChildren().isEmpty()) {
+            GroupNode above = parent.getParent();
+            above.removeChild(parent);
+            if (!parent.isCluster()) {
+                this.groups.remove(parent.getId());
+            }
+            parent = above;
+        }
+        if (!parent.isCluster() && parent.getChildren().size() == 1 && parent.getChildren().get(0).isCluster()) {
+            GroupNode only = parent.getChildren().get(0);
+            for (GroupNode child : new ArrayList<>(only.getChildren())) {
+                parent.addChild(child);
+            }
+            parent.removeChild(only);
+        }
+        dirty.add(parent);
+    }
+
+    /**
+     * This helper method gives new keys in the stacking order to the shapes at the positions of
+     * the newer snapshot that changed. Each run of such positions gets keys spread evenly
+     * between the keys of the shapes just below and just above it (whose positions did not
+     * change), or ORDER_GAP apart past the bottom or top of the drawing. If a run does not fit
+     * between its neighbors, every shape is given a new key instead.
+     * @param changes
+     */
+    private void reorder(SnapshotChanges changes) {
+        int[] indexes = changes.getPlacedIndexes();
+        List<ShapeRecord> placed = changes.getPlaced();
+        DocumentSnapshot snapshot = changes.getSnapshot();
+        int start = 0;
+        while (start < indexes.length) {
+            int end = start;
+            while (end + 1 < indexes.length && indexes[end + 1] == indexes[end] + 1) {
+                end++;
+            }
+            int count = end - start + 1;
+            boolean hasBelow = indexes[start] > 0;
+            boolean hasAbove = indexes[end] + 1 < snapshot.size();
+            long low = hasBelow ? this.leaves.get(snapshot.get(indexes[start] - 1).getId()).getOrder() : 0;
+            long step = ORDER_GAP;
+            if (hasAbove) {
+                long high = this.leaves.get(snapshot.get(indexes[end] + 1).getId()).getOrder();
+                if (hasBelow) {
+                    step = (high - low) / (count + 1);
+                }
+                else {
+                    low = high - ORDER_GAP * (count + 1);
+                }
+            }
+            if (step == 0) {
+                this.renumber(snapshot);
+                return;
+            }
+            for (int i=start; i<=end; i++) {
+                this.leaves.get(placed.get(i).getId()).setOrder(low + step * (i - start + 1));
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * This helper method gives every shape a new key in the stacking order, ORDER_GAP apart.
+     * @param snapshot
+     */
+    private void renumber(DocumentSnapshot snapshot) {
+        long key = 0;
+        for (ShapeRecord record : snapshot) {
+            key += ORDER_GAP;
+            this.leaves.get(record.getId()).setOrder(key);
+        }
+    }
+
+    /**
+     * This helper method updates the box of the given node, and then of the groups and clusters
+     * it is in, from the inside out, until one of them does not change. The root has no box.
+     * @param node
+     */
+    private void propagate(GroupNode node) {
+        while (node != null && node != this.root && node.updateBounds()) {
+            node = node.getParent();
+        }
+    }
+
+    /**
+     * This helper method finds the topmost shape on the given layer under the given node that
+     * contains the given point and is above the best one found so far, which it returns (or the
+     * best one so far, if there is none).
+     * @param node
+     * @param x
+     * @param y
+     * @param layer
+     * @param best
+     * @return
+     */
+    private GroupNode hit(GroupNode node, double x, double y, int layer, GroupNode best) {
+        for (GroupNode child : node.getChildren()) {
+            if (!child.boundsContain(x, y)) {
+                continue;
+            }
+            if (!child.isLeaf()) {
+                best = this.hit(child, x, y, layer, best);
+            }
+            else if ((best == null || child.getOrder() > best.getOrder())
+                    && child.getShape().getLayer() == layer && child.getShape().contains(x, y)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This helper method adds the ids of the shapes under the given node whose boxes overlap
+     * the given box to the list.
+     * @param node
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param found
+     */
+    private void query(GroupNode node, double minX, double minY, double maxX, double maxY, ArrayList<Integer> found) {
+        for (GroupNode child : node.getChildren()) {
+            if (child.boundsIntersect(minX, minY, maxX, maxY)) {
+                if (child.isLeaf()) {
+                    found.add(child.getId());
+                }
+                else {
+                    this.query(child, minX, minY, maxX, maxY, found);
+                }
+            }
+        }
+    }
+
+    /**
+     * This helper method adds the ids of every shape under the given node to the list.
+     * @param node
+     * @param members
+     */
+    private void collect(GroupNode node, ArrayList<Integer> members) {
+        if (node.isLeaf()) {
+            members.add(node.getId());
+            return;
+        }
+        for (GroupNode child : node.getChildren()) {
+            this.collect(child, members);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package sketchy.main;
+
+import javafx.scene.paint.Color;
+import sketchy.document.BulkHitTester;
+import sketchy.document.ScalarHitTester;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeStore;
+import sketchy.document.ShapeType;
+import sketchy.shapes.SketchyEllipse;
+import sketchy.shapes.SketchyRectangle;
+import sketchy.shapes.SketchyShape;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This is the HitTestBenchmark class. It is a small command-line program (it does not open a
+ * window) that times point hit-testing over a large number of random rectangles and ellipses
+ * three ways: the per-object loop Sketchy uses (SketchyShape.contains on every shape), the
+ * ScalarHitTester over a ShapeStore, and the BulkHitTester picked by BulkHitTester.create()
+ * (the VectorHitTester when the JVM is started with --add-modules jdk.incubator.vector). It also
+ * times marquee queries with the two bulk testers, and checks that all of them agree.
+ *
+ * Usage: HitTestBenchmark [number of shapes] [number of queries]
+ */
+public class HitTestBenchmark {
+
+    private static final int DEFAULT_SHAPES = 200000;
+    private static final int DEFAULT_QUERIES = 200;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final double MAX_SIZE = 40;
+    private static final double MARQUEE_SIZE = 150;
+
+    /**
+     * This is the main method. It builds the shapes, warms every approach up, and then prints
+     * the time each one takes per query and per shape.
+     * @param argv
+     */
+    public static void main(String[] argv) {
+        int shapeCount = argv.length > 0 ? Integer.parseInt(argv[0]) : DEFAULT_SHAPES;
+        int queryCount = argv.length > 1 ? Integer.parseInt(argv[1]) : DEFAULT_QUERIES;
+        Random random = new Random(15);
+
+        ShapeStore store = new ShapeStore(shapeCount);
+        ArrayList<SketchyShape> shapes = new ArrayList<>();
+        for (int index = 0; index < shapeCount; index++) {
+            ShapeType type = random.nextBoolean() ? ShapeType.RECTANGLE : ShapeType.ELLIPSE;
+            ShapeRecord record = new ShapeRecord(ShapeRecord.newId(), type, Color.WHITE,
+                    random.nextDouble() * Constants.SCENE_WIDTH, random.nextDouble() * Constants.SCENE_HEIGHT,
+                    1 + random.nextDouble() * MAX_SIZE, 1 + random.nextDouble() * MAX_SIZE,
+                    random.nextDouble() * 360, null);
+            store.add(record);
+            if (type == ShapeType.RECTANGLE) {
+                shapes.add(SketchyRectangle.fromRecord(record, null));
+            }
+            else {
+                shapes.add(SketchyEllipse.fromRecord(record, null));
+            }
+        }
+        double[] xs = new double[queryCount];
+        double[] ys = new double[queryCount];
+        for (int query = 0; query < queryCount; query++) {
+            xs[query] = random.nextDouble() * Constants.SCENE_WIDTH;
+            ys[query] = random.nextDouble() * Constants.SCENE_HEIGHT;
+        }
+
+        BulkHitTester scalar = new ScalarHitTester();
+        BulkHitTester best = BulkHitTester.create();
+        int[] handles = new int[shapeCount];
+        long perObjectHits = 0;
+        long scalarHits = 0;
+        long bestHits = 0;
+        long scalarMarquee = 0;
+        long bestMarquee = 0;
+        for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            perObjectHits = 0;
+            for (int query = 0; query < queryCount; query++) {
+                for (SketchyShape shape : shapes) {
+                    if (shape.contains(xs[query], ys[query])) {
+                        perObjectHits++;
+                    }
+                }
+            }
+            long perObjectTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            scalarHits = 0;
+            for (int query = 0; query < queryCount; query++) {
+                scalarHits += scalar.containing(store, xs[query], ys[query], handles);
+            }
+            long scalarTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            bestHits = 0;
+            for (int query = 0; query < queryCount; query++) {
+                bestHits += best.containing(store, xs[query], ys[query], handles);
+            }
+            long bestTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            scalarMarquee = 0;
+            for (int query = 0; query < queryCount; query++) {
+                scalarMarquee += scalar.within(store, xs[query], ys[query],
+                        xs[query] + MARQUEE_SIZE, ys[query] + MARQUEE_SIZE, handles);
+            }
+            long scalarMarqueeTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            bestMarquee = 0;
+            for (int query = 0; query < queryCount; query++) {
+                bestMarquee += best.within(store, xs[query], ys[query],
+                        xs[query] + MARQUEE_SIZE, ys[query] + MARQUEE_SIZE, handles);
+            }
+            long bestMarqueeTime = System.nanoTime() - start;
+
+            if (round == WARM_UP_ROUNDS) {
+                System.out.println(shapeCount + " shapes, " + queryCount + " queries, bulk tester: "
+                        + best.getClass().getSimpleName());
+                print("per-object contains", perObjectTime, queryCount, shapeCount);
+                print("scalar containing", scalarTime, queryCount, shapeCount);
+                print("bulk containing", bestTime, queryCount, shapeCount);
+                print("scalar within", scalarMarqueeTime, queryCount, shapeCount);
+                print("bulk within", bestMarqueeTime, queryCount, shapeCount);
+            }
+        }
+        if (perObjectHits != scalarHits || scalarHits != bestHits || scalarMarquee != bestMarquee) {
+            System.out.println("MISMATCH: " + perObjectHits + " / " + scalarHits + " / " + bestHits
+                    + " hits, " + scalarMarquee + " / " + bestMarquee + " marquee");
+        }
+    }
+
+    /**
+     * This helper method prints how long one approach took, per query and per shape.
+     * @param label
+     * @param nanos
+     * @param queries
+     * @param shapes
+     */
+    private static void print(String label, long nanos, int queries, int shapes) {
+        System.out.printf("%-20s %10.1f us/query %8.2f ns/shape%n", label,
+                nanos / 1000.0 / queries, (double) nanos / queries / shapes);
+    }
+}
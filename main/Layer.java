@@ -0,0 +1,127 @@
+package sketchy.main;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+
+/**
+ * This is the Layer class. It holds one layer of the drawing: its id, whether it is shown,
+ * whether it is locked, the pane that holds the nodes of its Saveables (in order from bottom
+ * to top), and the bitmap it is drawn from while another layer is being edited.
+ */
+public class Layer {
+
+    private int id;
+    private boolean visible;
+    private boolean locked;
+    private Pane content;
+    private ImageView cache;
+    private boolean stale;
+
+    /**
+     * This is the Layer constructor. It takes in the layer's id. A new layer is shown, is not
+     * locked, has no nodes on its pane, and has no bitmap yet.
+     * @param layerId
+     */
+    public Layer(int layerId) {
+        this.id = layerId;
+        this.visible = true;
+        this.locked = false;
+        this.content = new Pane();
+        this.content.setPickOnBounds(false);
+        this.cache = new ImageView();
+        this.stale = true;
+    }
+
+    /**
+     * This method is an accessor for the layer's id, which is what the records of its
+     * Saveables refer to it by.
+     * @return
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * This method returns the name the layer is shown under.
+     * @return
+     */
+    public String getName() {
+        return "Layer " + (this.id + 1);
+    }
+
+    /**
+     * This method returns whether the layer is shown.
+     * @return
+     */
+    public boolean isVisible() {
+        return this.visible;
+    }
+
+    /**
+     * This method shows or hides the layer.
+     * @param shown
+     */
+    public void setVisible(boolean shown) {
+        this.visible = shown;
+    }
+
+    /**
+     * This method returns whether the layer is locked, in which case nothing on it can be
+     * selected, drawn, or erased.
+     * @return
+     */
+    public boolean isLocked() {
+        return this.locked;
+    }
+
+    /**
+     * This method locks or unlocks the layer.
+     * @param lock
+     */
+    public void setLocked(boolean lock) {
+        this.locked = lock;
+    }
+
+    /**
+     * This method returns the pane that holds the nodes of the layer's Saveables, in the same
+     * order as they are in the arraylist of saveables.
+     * @return
+     */
+    public Pane getContent() {
+        return this.content;
+    }
+
+    /**
+     * This method returns the ImageView that shows the layer's bitmap.
+     * @return
+     */
+    public ImageView getCache() {
+        return this.cache;
+    }
+
+    /**
+     * This method returns whether the layer's bitmap is out of date.
+     * @return
+     */
+    public boolean isStale() {
+        return this.stale;
+    }
+
+    /**
+     * This method replaces the layer's bitmap with a freshly drawn one.
+     * @param image
+     */
+    public void setImage(Image image) {
+        this.cache.setImage(image);
+        this.stale = false;
+    }
+
+    /**
+     * This method marks the layer's bitmap as out of date, for example after its Saveables
+     * changed or the pane was resized.
+     */
+    public void invalidate() {
+        this.stale = true;
+    }
+}
@@ -0,0 +1,343 @@
+package sketchy.main;
+
+import javafx.collections.ObservableList;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import sketchy.document.ShapeRecord;
+import sketchy.document.SnapshotChanges;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the LayerStack class. It keeps the layers of the drawing, in order from bottom to
+ * top, and decides how each of them is drawn. Each layer keeps the nodes of its Saveables on a
+ * pane of its own, and the sketchy pane only ever holds the pane of the active layer (the one
+ * being edited), so that layer is drawn from its live nodes. Every other layer is drawn from a
+ * bitmap of its pane, on a pane below the sketchy pane (for layers under the active one) or
+ * above it (for layers over it). Editing the active layer therefore only redraws its own nodes,
+ * however busy the other layers are, and switching layers only swaps one pane for another.
+ *
+ * The nodes on a layer's pane are in the same order as those Saveables are in the arraylist of
+ * saveables, since the order of two Saveables only matters if they are on the same layer. A
+ * layer's bitmap is redrawn when the records of its Saveables change (which, for a layer that
+ * is not active, only happens through undo, redo, or a transaction), when it is shown again,
+ * or when the pane is resized. Which layers changed is read off the changes between snapshots,
+ * so the Saveables of unchanged layers are never looked at.
+ */
+public class LayerStack {
+
+    private Pane sketchyPane;
+    private Pane belowPane;
+    private Pane abovePane;
+    private ArrayList<Layer> layers;
+    private Layer active;
+    private int nextId;
+
+    /**
+     * This is the LayerStack constructor. It takes in the sketchy pane. The stack starts out
+     * with a single layer.
+     * @param pane
+     */
+    public LayerStack(Pane pane) {
+        this.sketchyPane = pane;
+        this.belowPane = new Pane();
+        this.belowPane.setMouseTransparent(true);
+        this.abovePane = new Pane();
+        this.abovePane.setMouseTransparent(true);
+        this.layers = new ArrayList<>();
+        this.reset();
+        this.sketchyPane.widthProperty().addListener((observable, oldValue, newValue) -> this.resized());
+        this.sketchyPane.heightProperty().addListener((observable, oldValue, newValue) -> this.resized());
+    }
+
+    /**
+     * This method is an accessor for the pane that shows the bitmaps of the layers under the
+     * active one. It should be stacked under the sketchy pane.
+     * @return
+     */
+    public Pane getBelowPane() {
+        return this.belowPane;
+    }
+
+    /**
+     * This method is an accessor for the pane that shows the bitmaps of the layers over the
+     * active one. It should be stacked over the sketchy pane.
+     * @return
+     */
+    public Pane getAbovePane() {
+        return this.abovePane;
+    }
+
+    /**
+     * This method throws away every layer and starts over with a single, active layer with
+     * id 0.
+     */
+    public void reset() {
+        ArrayList<Layer> fresh = new ArrayList<>();
+        fresh.add(new Layer(0));
+        this.setLayers(fresh);
+    }
+
+    /**
+     * This method replaces the layers with the given ones (in order from bottom to top), for
+     * example ones read from a file. The top layer becomes the active one, and its pane is put
+     * on the sketchy pane.
+     * @param loaded
+     */
+    public void setLayers(List<Layer> loaded) {
+        if (loaded.isEmpty()) {
+            throw new IllegalArgumentException("A drawing needs at least one layer");
+        }
+        this.layers.clear();
+        this.layers.addAll(loaded);
+        this.nextId = 0;
+        for (Layer layer : this.layers) {
+            this.nextId = Math.max(this.nextId, layer.getId() + 1);
+        }
+        this.active = this.layers.get(this.layers.size() - 1);
+        this.showActive();
+        this.arrange();
+    }
+
+    /**
+     * This method adds a new, empty layer on top of the others, and makes it the active layer.
+     * @return
+     */
+    public Layer addLayer() {
+        Layer layer = new Layer(this.nextId);
+        this.nextId++;
+        this.layers.add(layer);
+        this.setActive(layer);
+        return layer;
+    }
+
+    /**
+     * This method returns the layers, in order from bottom to top. The list must not be
+     * changed.
+     * @return
+     */
+    public List<Layer> getLayers() {
+        return this.layers;
+    }
+
+    /**
+     * This method is an accessor for the active layer.
+     * @return
+     */
+    public Layer getActive() {
+        return this.active;
+    }
+
+    /**
+     * This method makes the given layer the active one. Its pane takes the place of the pane of
+     * the layer that was active until now, which is drawn from its bitmap from then on.
+     * @param layer
+     */
+    public void setActive(Layer layer) {
+        if (!this.layers.contains(layer)) {
+            throw new IllegalArgumentException(layer.getName() + " is not part of this drawing");
+        }
+        this.active = layer;
+        this.redraw();
+    }
+
+    /**
+     * This method returns whether the active layer can be edited, which is the case if it is
+     * shown and not locked.
+     * @return
+     */
+    public boolean isEditable() {
+        return this.active.isVisible() && !this.active.isLocked();
+    }
+
+    /**
+     * This method shows or hides the given layer.
+     * @param layer
+     * @param shown
+     */
+    public void setVisible(Layer layer, boolean shown) {
+        layer.setVisible(shown);
+        this.redraw();
+    }
+
+    /**
+     * This method moves the active layer the given number of places up (or down, if it is
+     * negative) the stack, stopping at the top or the bottom.
+     * @param places
+     */
+    public void moveActive(int places) {
+        int from = this.layers.indexOf(this.active);
+        int to = Math.max(0, Math.min(this.layers.size() - 1, from + places));
+        if (from != to) {
+            this.layers.remove(from);
+            this.layers.add(to, this.active);
+            this.arrange();
+        }
+    }
+
+    /**
+     * This method brings the layers up to date with the given changes to the drawing. The
+     * bitmaps of the layers that a removed, added, replaced, or moved record was on are marked
+     * as out of date, and then redrawn. A layer that a record refers to but that does not exist
+     * yet (for example, one that was made by a transaction) is added on top of the others.
+     * @param changes
+     */
+    public void refresh(SnapshotChanges changes) {
+        for (ShapeRecord record : changes.getRemoved()) {
+            this.invalidate(record.getLayer());
+        }
+        for (ShapeRecord record : changes.getOutdated()) {
+            this.invalidate(record.getLayer());
+        }
+        for (ShapeRecord record : changes.getAdded()) {
+            this.layerFor(record.getLayer()).invalidate();
+        }
+        for (ShapeRecord record : changes.getUpdated()) {
+            this.layerFor(record.getLayer()).invalidate();
+        }
+        for (ShapeRecord record : changes.getMoved()) {
+            this.invalidate(record.getLayer());
+        }
+        this.redraw();
+    }
+
+    /**
+     * This method returns the pane that holds the nodes of the Saveables on the layer with the
+     * given id. If there is no such layer yet, it is added on top of the others.
+     * @param layerId
+     * @return
+     */
+    public Pane getContent(int layerId) {
+        return this.layerFor(layerId).getContent();
+    }
+
+    /**
+     * This method returns the layer with the given id, or null if there is none.
+     * @param id
+     * @return
+     */
+    public Layer find(int id) {
+        for (Layer layer : this.layers) {
+            if (layer.getId() == id) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This helper method returns the layer with the given id, adding it on top of the others
+     * if there is none yet.
+     * @param id
+     * @return
+     */
+    private Layer layerFor(int id) {
+        Layer layer = this.find(id);
+        if (layer == null) {
+            layer = new Layer(id);
+            this.layers.add(layer);
+            this.nextId = Math.max(this.nextId, id + 1);
+        }
+        return layer;
+    }
+
+    /**
+     * This helper method marks the bitmap of the layer with the given id as out of date, if
+     * there is such a layer.
+     * @param id
+     */
+    private void invalidate(int id) {
+        Layer layer = this.find(id);
+        if (layer != null) {
+            layer.invalidate();
+        }
+    }
+
+    /**
+     * This helper method redraws the bitmaps of the shown layers (other than the active one)
+     * that are out of date, then puts the pane of the active layer on the sketchy pane, and
+     * every other layer's bitmap in its place.
+     */
+    private void redraw() {
+        for (Layer layer : this.layers) {
+            if (layer != this.active && layer.isVisible() && layer.isStale()) {
+                this.render(layer);
+            }
+        }
+        this.showActive();
+        this.arrange();
+    }
+
+    /**
+     * This helper method draws the bitmap of a layer, by taking a snapshot of the layer's pane,
+     * which is not on the sketchy pane at the time. If the sketchy pane has no size yet, the
+     * layer is left out of date, and is drawn once the pane is laid out.
+     * @param layer
+     */
+    private void render(Layer layer) {
+        double width = this.sketchyPane.getWidth();
+        double height = this.sketchyPane.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Pane content = layer.getContent();
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        parameters.setViewport(new Rectangle2D(content.getLayoutX(), content.getLayoutY(), width, height));
+        layer.setImage(content.snapshot(parameters, null));
+    }
+
+    /**
+     * This helper method puts the pane of the active layer on the sketchy pane, in place of
+     * whatever pane was there, or leaves the sketchy pane empty if the active layer is hidden.
+     * Nothing is changed if the right pane is already there.
+     */
+    private void showActive() {
+        ObservableList<Node> shown = this.sketchyPane.getChildren();
+        if (!this.active.isVisible()) {
+            shown.clear();
+        }
+        else if (shown.size() != 1 || shown.get(0) != this.active.getContent()) {
+            shown.setAll(this.active.getContent());
+        }
+    }
+
+    /**
+     * This helper method puts the bitmaps of the shown layers under the active layer on the
+     * pane below the sketchy pane, and those over it on the pane above, in order.
+     */
+    private void arrange() {
+        ArrayList<Node> below = new ArrayList<>();
+        ArrayList<Node> above = new ArrayList<>();
+        boolean passedActive = false;
+        for (Layer layer : this.layers) {
+            if (layer == this.active) {
+                passedActive = true;
+            }
+            else if (layer.isVisible()) {
+                if (passedActive) {
+                    above.add(layer.getCache());
+                }
+                else {
+                    below.add(layer.getCache());
+                }
+            }
+        }
+        this.belowPane.getChildren().setAll(below);
+        this.abovePane.getChildren().setAll(above);
+    }
+
+    /**
+     * This helper method marks every bitmap as out of date after the sketchy pane was resized,
+     * since the bitmaps cover the whole pane, and redraws them.
+     */
+    private void resized() {
+        for (Layer layer : this.layers) {
+            layer.invalidate();
+        }
+        this.redraw();
+    }
+}
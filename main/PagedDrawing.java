@@ -0,0 +1,1312 @@
+package sketchy.main;
+
+import sketchy.document.ShapeRecord;
+import sketchy.document.Symbol;
+import sketchy.shapes.RecordFormat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This is the PagedDrawing class. It is a drawing saved in a paged file, which, unlike the
+ * token files, can be saved again by writing only what changed. The records (in binary, through
+ * RecordFormat) are split into chunks of up to CHUNK_RECORDS consecutive shapes, and the file
+ * holds the chunks, a chunk of the symbols that instances refer to, and an index listing the
+ * layers and where each chunk is (in stacking order), with a checksum of each. The header at the
+ * start of the file has two root slots, each naming an index along with a generation number and
+ * checksums; the slot with the highest generation whose checksums hold is the current one.
+ *
+ * Saving never overwrites anything the current root points to. The chunks that changed, and a
+ * new index, are appended to the end of the file, flushed to the disk, and only then is the
+ * other root slot written (and flushed) to point to the new index, which is the single step that
+ * commits the save. A save that is cut short therefore leaves the previous one in place.
+ *
+ * Whether a shape changed is told by its record: a command that changes a shape gives it a new
+ * record, and an untouched shape keeps the same one, so a chunk is only written again if the
+ * records it holds are no longer the same records, in the same order, as the ones it was written
+ * from. A shape that is changed, added, or removed only rewrites the chunk around it, so a save
+ * writes roughly as many records as were edited, plus the index (one entry per chunk). Chunks
+ * that are no longer used are left in the file until it has more unused space than used, or the
+ * chunks have been split up too much, when it is written out again in full, into a new file that
+ * then replaces it.
+ *
+ * Chunks can be compressed (with Deflate, at its fastest level), each on its own, so the
+ * chunks are the blocks the compressed stream is framed in: the index gives each chunk's size
+ * both as stored and once inflated (or zero, if it is stored as it is, which is also how a chunk
+ * that would not get any smaller is stored). Chunks are encoded and compressed in parallel on
+ * the common ForkJoinPool before being written in order, and when a file is read, each chunk is
+ * handed to the pool to be inflated and decoded as soon as it has been read, so decoding keeps
+ * up with reading instead of waiting for it.
+ *
+ * Inside a chunk, each record is framed by its length and its own checksum, and the index gives
+ * each chunk's number of records and the bounding box of its shapes. A damaged chunk therefore
+ * only loses the records whose frames no longer hold (or all of its records, if it was
+ * compressed, or its frames can no longer be told apart), which are left out, and counted, when
+ * the file is read; the chunks they were in are written again on the next save. The bounding
+ * boxes let readRegion() read only the chunks that reach into a region, and verify() checks every
+ * chunk of a file in parallel. Files from before version 3 have no frames or bounds, so a damaged
+ * chunk in one is still an error, and every one of its chunks is taken to reach everywhere.
+ *
+ * From version 4 on, every save also writes a DrawingPreview (a small picture of the drawing and
+ * the stats of what is in it) in a compressed chunk of its own, which the index points to, so
+ * that readPreview() can show a drawing by reading only the header, the index, and that chunk.
+ * The preview is drawn on the pool while the chunks are written.
+ */
+public class PagedDrawing {
+
+    private static final int MAGIC = 0x534b5047;
+    private static final int FORMAT_VERSION = 4;
+    private static final int ROOT_OFFSET = 8;
+    private static final int ROOT_SIZE = 28;
+    private static final int HEADER_SIZE = 64;
+    private static final int CHUNK_RECORDS = 256;
+    private static final int MIN_COMPACT_BYTES = 1 << 16;
+
+    private File file;
+    private long generation;
+    private boolean compress;
+    private List<int[]> layers;
+    private ArrayList<Symbol> symbols;
+    private Chunk symbolChunk;
+    private Chunk previewChunk;
+    private ArrayList<Chunk> chunks;
+    private int damaged;
+
+    /**
+     * This is the PagedDrawing constructor. It is private, since paged drawings are made by
+     * create() or open().
+     * @param pagedFile
+     */
+    private PagedDrawing(File pagedFile) {
+        this.file = pagedFile.getAbsoluteFile();
+        this.generation = 0;
+        this.compress = false;
+        this.layers = new ArrayList<>();
+        this.symbols = new ArrayList<>();
+        this.symbolChunk = null;
+        this.previewChunk = null;
+        this.chunks = new ArrayList<>();
+        this.damaged = 0;
+    }
+
+    /**
+     * This method writes the given drawing (its layers, each as {id, visible, locked}, and its
+     * records, bottom first) in full to a new paged file, which replaces the given file (if there
+     * is one) in a single step, and returns the paged drawing. Its chunks are compressed if
+     * asked.
+     * @param pagedFile
+     * @param drawingLayers
+     * @param records
+     * @param compressChunks
+     * @return
+     * @throws IOException
+     */
+    public static PagedDrawing create(File pagedFile, List<int[]> drawingLayers, List<ShapeRecord> records,
+                                      boolean compressChunks) throws IOException {
+        PagedDrawing drawing = new PagedDrawing(pagedFile);
+        drawing.compress = compressChunks;
+        drawing.rewrite(drawingLayers, records);
+        return drawing;
+    }
+
+    /**
+     * This method reads the current version of a paged file (the one its newest valid root
+     * slot points to), and returns the paged drawing. Its records, which getRecords() returns,
+     * have new ids, and keep the group ids they were saved with. The records that are damaged
+     * are left out, and getDamagedCount() says how many there were. The drawing goes on being
+     * compressed if any of its chunks were. It throws an IOException if the file is not a paged
+     * drawing, or its index is damaged.
+     * @param pagedFile
+     * @return
+     * @throws IOException
+     */
+    public static PagedDrawing open(File pagedFile) throws IOException {
+        PagedDrawing drawing = new PagedDrawing(pagedFile);
+        try (FileChannel channel = FileChannel.open(drawing.file.toPath(), StandardOpenOption.READ)) {
+            ArrayList<Chunk> entries = new ArrayList<>();
+            Root root = drawing.readIndex(channel, entries);
+            drawing.readSymbols(channel, root.formatVersion);
+
+            //each chunk is decoded on the pool while the next one is read
+            ArrayList<ForkJoinTask<ShapeRecord[]>> decoding = new ArrayList<>();
+            for (Chunk chunk : entries) {
+                byte[] stored = readStored(channel, chunk, root.formatVersion);
+                decoding.add(ForkJoinPool.commonPool().submit(() ->
+                        salvage(stored, chunk, drawing.symbols, root.formatVersion)));
+            }
+            for (int c=0; c<entries.size(); c++) {
+                drawing.keep(entries.get(c), await(decoding.get(c)));
+            }
+            drawing.generation = root.generation;
+        }
+        return drawing;
+    }
+
+    /**
+     * This method reads the records of the current version of a paged file whose bounding boxes
+     * reach into the given region, bottom first, without reading the chunks that do not. The
+     * records have new ids, and the ones that are damaged are left out. It throws an IOException
+     * if the file is not a paged drawing, or its index is damaged.
+     * @param pagedFile
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return
+     * @throws IOException
+     */
+    public static List<ShapeRecord> readRegion(File pagedFile, double minX, double minY, double maxX, double maxY)
+            throws IOException {
+        PagedDrawing drawing = new PagedDrawing(pagedFile);
+        double[] region = {minX, minY, maxX, maxY};
+        ArrayList<ShapeRecord> found = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(drawing.file.toPath(), StandardOpenOption.READ)) {
+            ArrayList<Chunk> entries = new ArrayList<>();
+            Root root = drawing.readIndex(channel, entries);
+            drawing.readSymbols(channel, root.formatVersion);
+            ArrayList<ForkJoinTask<ShapeRecord[]>> decoding = new ArrayList<>();
+            for (Chunk chunk : entries) {
+                if (overlaps(chunk.bounds, region)) {
+                    decoding.add(ForkJoinPool.commonPool().submit(() -> salvage(
+                            readStored(channel, chunk, root.formatVersion), chunk, drawing.symbols, root.formatVersion)));
+                }
+            }
+            for (ForkJoinTask<ShapeRecord[]> task : decoding) {
+                for (ShapeRecord record : await(task)) {
+                    if (record != null && overlaps(boundsOf(new ShapeRecord[] {record}), region)) {
+                        found.add(record);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method checks every chunk of the current version of a paged file, in parallel, and
+     * returns how many of its records are damaged (or refer to a symbol that is). It throws an
+     * IOException if the file is not a paged drawing, its index is damaged, or it is from before
+     * version 3 and any of its chunks are damaged.
+     * @param pagedFile
+     * @return
+     * @throws IOException
+     */
+    public static int verify(File pagedFile) throws IOException {
+        PagedDrawing drawing = new PagedDrawing(pagedFile);
+        int damagedRecords = 0;
+        try (FileChannel channel = FileChannel.open(drawing.file.toPath(), StandardOpenOption.READ)) {
+            ArrayList<Chunk> entries = new ArrayList<>();
+            Root root = drawing.readIndex(channel, entries);
+            drawing.readSymbols(channel, root.formatVersion);
+            ArrayList<ForkJoinTask<ShapeRecord[]>> checks = new ArrayList<>();
+            for (Chunk chunk : entries) {
+                checks.add(ForkJoinPool.commonPool().submit(() -> salvage(
+                        readStored(channel, chunk, root.formatVersion), chunk, drawing.symbols, root.formatVersion)));
+            }
+            for (ForkJoinTask<ShapeRecord[]> task : checks) {
+                for (ShapeRecord record : await(task)) {
+                    if (record == null) {
+                        damagedRecords++;
+                    }
+                }
+            }
+        }
+        return damagedRecords;
+    }
+
+    /**
+     * This method reads the preview saved with the current version of a paged file, without
+     * reading its shapes, or returns null if the file is from before version 4, which has no
+     * preview. It throws an IOException if the file is not a paged drawing, or its index or
+     * preview is damaged.
+     * @param pagedFile
+     * @return
+     * @throws IOException
+     */
+    public static DrawingPreview readPreview(File pagedFile) throws IOException {
+        PagedDrawing drawing = new PagedDrawing(pagedFile);
+        try (FileChannel channel = FileChannel.open(drawing.file.toPath(), StandardOpenOption.READ)) {
+            drawing.readIndex(channel, new ArrayList<>());
+            if (drawing.previewChunk == null) {
+                return null;
+            }
+            return DrawingPreview.readFrom(new DataInputStream(new ByteArrayInputStream(
+                    unpack(read(channel, drawing.previewChunk), drawing.previewChunk.rawLength))));
+        }
+    }
+
+    /**
+     * This method is an accessor for the paged file.
+     * @return
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * This method returns how many records were damaged, and left out, when the file was
+     * opened.
+     * @return
+     */
+    public int getDamagedCount() {
+        return this.damaged;
+    }
+
+    /**
+     * This method returns whether the chunks written from now on are compressed.
+     * @return
+     */
+    public boolean isCompressed() {
+        return this.compress;
+    }
+
+    /**
+     * This method sets whether the chunks written from now on are compressed. The chunks that
+     * are already in the file stay as they are until they are written again.
+     * @param compressChunks
+     */
+    public void setCompressed(boolean compressChunks) {
+        this.compress = compressChunks;
+    }
+
+    /**
+     * This method returns the layers of the last version saved or read, each as {id, visible,
+     * locked}, from the bottom layer up.
+     * @return
+     */
+    public List<int[]> getLayers() {
+        return Collections.unmodifiableList(this.layers);
+    }
+
+    /**
+     * This method returns the records of the last version saved or read, bottom first.
+     * @return
+     */
+    public List<ShapeRecord> getRecords() {
+        ArrayList<ShapeRecord> records = new ArrayList<>();
+        for (Chunk chunk : this.chunks) {
+            Collections.addAll(records, chunk.records);
+        }
+        return records;
+    }
+
+    /**
+     * This method takes the given records as the ones the file holds, in place of the records
+     * that were read, which must be the same shapes in the same order. It is called once the
+     * records read have been turned into shapes (and given the ids, groups, and shared points
+     * they have on screen), so that only shapes edited after that count as changed.
+     * @param records
+     */
+    public void adopt(List<ShapeRecord> records) {
+        int next = 0;
+        for (Chunk chunk : this.chunks) {
+            if (next + chunk.records.length > records.size()) {
+                break;
+            }
+            for (int i=0; i<chunk.records.length; i++) {
+                chunk.records[i] = records.get(next++);
+            }
+        }
+        if (next != records.size()) {
+            throw new IllegalArgumentException("The file holds " + next + " shapes, not " + records.size());
+        }
+    }
+
+    /**
+     * This method saves the given version of the drawing (its layers, each as {id, visible,
+     * locked}, and its records, bottom first) to the paged file, and returns how many records
+     * were written. Only the chunks whose records changed since the last save are written,
+     * along with a new index; if the file now has more unused space than used, its chunks are
+     * split up too much, or it is no longer the version this paged drawing last saved or read,
+     * the whole drawing is written out again instead.
+     * @param drawingLayers
+     * @param records
+     * @return
+     * @throws IOException
+     */
+    public int save(List<int[]> drawingLayers, List<ShapeRecord> records) throws IOException {
+        if (!this.file.exists()) {
+            return this.rewrite(drawingLayers, records);
+        }
+        ArrayList<Symbol> newSymbols = new ArrayList<>(this.symbols);
+        IdentityHashMap<Symbol, Integer> symbolIndexes = indexesOf(newSymbols);
+        for (ShapeRecord record : records) {
+            if (record.getSymbol() != null && !symbolIndexes.containsKey(record.getSymbol())) {
+                symbolIndexes.put(record.getSymbol(), newSymbols.size());
+                newSymbols.add(record.getSymbol());
+            }
+        }
+        IdentityHashMap<ShapeRecord, Chunk> starts = new IdentityHashMap<>();
+        for (Chunk chunk : this.chunks) {
+            if (!chunk.damaged) {
+                starts.put(chunk.records[0], chunk);
+            }
+        }
+
+        //the chunks that are still the same are kept, and the runs of records between them are new chunks
+        ArrayList<Chunk> layout = new ArrayList<>();
+        ArrayList<ShapeRecord> pending = new ArrayList<>();
+        int written = 0;
+        int next = 0;
+        while (next < records.size()) {
+            Chunk unchanged = starts.get(records.get(next));
+            if (unchanged != null && unchanged.holds(records, next)) {
+                written += pending.size();
+                splitRun(pending, layout);
+                layout.add(unchanged);
+                next += unchanged.records.length;
+            }
+            else {
+                pending.add(records.get(next));
+                next++;
+            }
+        }
+        written += pending.size();
+        splitRun(pending, layout);
+
+        if (!this.isCurrent()) {
+            return this.rewrite(drawingLayers, records);
+        }
+        ForkJoinTask<DrawingPreview> preview = ForkJoinPool.commonPool().submit(() ->
+                DrawingPreview.of(drawingLayers, records));
+        long liveBytes;
+        long fileBytes;
+        Chunk newSymbolChunk = this.symbolChunk;
+        Chunk newPreviewChunk = new Chunk(0, 0, 0, 0, null);
+        try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long end = this.writeChunks(channel, channel.size(), layout, symbolIndexes);
+            if (newSymbolChunk == null || newSymbols.size() != this.symbols.size()) {
+                newSymbolChunk = new Chunk(0, 0, 0, 0, null);
+                newSymbolChunk.pack(encodeSymbols(newSymbols), this.compress);
+                end = newSymbolChunk.writeAt(channel, end);
+            }
+            newPreviewChunk.pack(encodePreview(await(preview)), true);
+            end = newPreviewChunk.writeAt(channel, end);
+            Chunk indexChunk = new Chunk(0, 0, 0, 0, null);
+            indexChunk.pack(encodeIndex(drawingLayers, newSymbolChunk, newPreviewChunk, layout), false);
+            fileBytes = indexChunk.writeAt(channel, end);
+            commit(channel, this.generation + 1, indexChunk);
+            liveBytes = HEADER_SIZE + newSymbolChunk.length + newPreviewChunk.length + indexChunk.length;
+            for (Chunk chunk : layout) {
+                liveBytes += chunk.length;
+            }
+        }
+        this.generation++;
+        this.layers = new ArrayList<>(drawingLayers);
+        this.symbols = newSymbols;
+        this.symbolChunk = newSymbolChunk;
+        this.previewChunk = newPreviewChunk;
+        this.chunks = layout;
+        if ((fileBytes > 2 * liveBytes && fileBytes > MIN_COMPACT_BYTES)
+                || layout.size() > 2 * (records.size() / CHUNK_RECORDS + 1)) {
+            return this.rewrite(drawingLayers, records);
+        }
+        return written;
+    }
+
+    /**
+     * This helper method returns whether the file's current root is still the one this
+     * drawing was read or last saved as, in this version of the format, so that new chunks can
+     * be added to it.
+     * @return
+     * @throws IOException
+     */
+    private boolean isCurrent() throws IOException {
+        try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)) {
+            Root root = readRoot(channel);
+            return root != null && root.generation == this.generation && root.formatVersion == FORMAT_VERSION;
+        }
+    }
+
+    /**
+     * This helper method writes the whole drawing to a new file next to the paged file, in
+     * full chunks and with only the symbols that are placed, and then moves it over the paged
+     * file in a single step. It returns how many records were written.
+     * @param drawingLayers
+     * @param records
+     * @return
+     * @throws IOException
+     */
+    private int rewrite(List<int[]> drawingLayers, List<ShapeRecord> records) throws IOException {
+        ArrayList<Symbol> newSymbols = new ArrayList<>();
+        IdentityHashMap<Symbol, Integer> symbolIndexes = new IdentityHashMap<>();
+        for (ShapeRecord record : records) {
+            if (record.getSymbol() != null && !symbolIndexes.containsKey(record.getSymbol())) {
+                symbolIndexes.put(record.getSymbol(), newSymbols.size());
+                newSymbols.add(record.getSymbol());
+            }
+        }
+        ArrayList<Chunk> layout = new ArrayList<>();
+        splitRun(new ArrayList<>(records), layout);
+        ForkJoinTask<DrawingPreview> preview = ForkJoinPool.commonPool().submit(() ->
+                DrawingPreview.of(drawingLayers, records));
+        File temporary = new File(this.file.getPath() + ".tmp");
+        Chunk newSymbolChunk = new Chunk(0, 0, 0, 0, null);
+        Chunk newPreviewChunk = new Chunk(0, 0, 0, 0, null);
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION);
+            header.rewind();
+            writeFully(channel, header, 0);
+            newSymbolChunk.pack(encodeSymbols(newSymbols), this.compress);
+            long end = this.writeChunks(channel, newSymbolChunk.writeAt(channel, HEADER_SIZE), layout, symbolIndexes);
+            newPreviewChunk.pack(encodePreview(await(preview)), true);
+            end = newPreviewChunk.writeAt(channel, end);
+            Chunk indexChunk = new Chunk(0, 0, 0, 0, null);
+            indexChunk.pack(encodeIndex(drawingLayers, newSymbolChunk, newPreviewChunk, layout), false);
+            indexChunk.writeAt(channel, end);
+            commit(channel, 1, indexChunk);
+        }
+        Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.generation = 1;
+        this.layers = new ArrayList<>(drawingLayers);
+        this.symbols = newSymbols;
+        this.symbolChunk = newSymbolChunk;
+        this.previewChunk = newPreviewChunk;
+        this.chunks = layout;
+        return records.size();
+    }
+
+    /**
+     * This helper method splits the given run of records into as few new (not yet written)
+     * chunks of up to CHUNK_RECORDS as it takes, all about the same size (so that a run just
+     * over CHUNK_RECORDS long does not leave a sliver of a chunk), adds them to the layout, and
+     * empties the run.
+     * @param pending
+     * @param layout
+     */
+    private static void splitRun(ArrayList<ShapeRecord> pending, ArrayList<Chunk> layout) {
+        int pieces = (pending.size() + CHUNK_RECORDS - 1) / CHUNK_RECORDS;
+        for (int piece = 0; piece < pieces; piece++) {
+            layout.add(new Chunk(-1, 0, 0, 0, pending.subList(piece * pending.size() / pieces,
+                    (piece + 1) * pending.size() / pieces).toArray(new ShapeRecord[0])));
+        }
+        pending.clear();
+    }
+
+    /**
+     * This helper method reads the current root, and the index it points to: the layers, where
+     * the symbols and (from version 4 on) the preview are, and the entry of each chunk of shapes,
+     * which are added to the given list. It returns the root, or throws an IOException if there
+     * is no valid one.
+     * @param channel
+     * @param entries
+     * @return
+     * @throws IOException
+     */
+    private Root readIndex(FileChannel channel, ArrayList<Chunk> entries) throws IOException {
+        Root root = readRoot(channel);
+        if (root == null) {
+            throw new IOException(this.file + " is not a paged drawing, or both of its roots are damaged");
+        }
+        DataInputStream index = new DataInputStream(new ByteArrayInputStream(
+                read(channel, new Chunk(root.indexOffset, root.indexLength, root.indexCrc, 0, null))));
+        int layerCount = index.readInt();
+        for (int i=0; i<layerCount; i++) {
+            this.layers.add(new int[] {index.readInt(), index.readInt(), index.readInt()});
+        }
+        this.symbolChunk = Chunk.readFrom(index, root.formatVersion);
+        this.compress = this.symbolChunk.rawLength != 0;
+        if (root.formatVersion >= 4) {
+            this.previewChunk = Chunk.readFrom(index, root.formatVersion);
+        }
+        int chunkCount = index.readInt();
+        for (int c=0; c<chunkCount; c++) {
+            Chunk chunk = Chunk.readFrom(index, root.formatVersion);
+            this.compress = this.compress || chunk.rawLength != 0;
+            entries.add(chunk);
+        }
+        return root;
+    }
+
+    /**
+     * This helper method reads the symbols from the chunk the index named. In a file from
+     * version 3 on, they are left empty if their chunk is damaged, so only the instances of them
+     * are lost.
+     * @param channel
+     * @param formatVersion
+     * @throws IOException
+     */
+    private void readSymbols(FileChannel channel, int formatVersion) throws IOException {
+        try {
+            DataInputStream symbolData = new DataInputStream(new ByteArrayInputStream(
+                    unpack(read(channel, this.symbolChunk), this.symbolChunk.rawLength)));
+            int symbolCount = symbolData.readInt();
+            for (int i=0; i<symbolCount; i++) {
+                ArrayList<ShapeRecord> members = new ArrayList<>();
+                int memberCount = symbolData.readInt();
+                for (int m=0; m<memberCount; m++) {
+                    members.add(RecordFormat.readBinary(symbolData, Collections.emptyList()));
+                }
+                this.symbols.add(Symbol.define(members));
+            }
+        }
+        catch (IOException e) {
+            if (formatVersion < 3) {
+                throw e;
+            }
+            //the next save writes the symbols again
+            this.symbols.clear();
+            this.symbolChunk = null;
+        }
+    }
+
+    /**
+     * This helper method takes the records read from a chunk, where the damaged ones are null.
+     * If none are, the chunk is kept as it is. Otherwise the damaged records are counted, and
+     * the chunk keeps only the others (or is dropped, if there are none), and is marked as
+     * damaged, so that the next save writes them again.
+     * @param chunk
+     * @param records
+     */
+    private void keep(Chunk chunk, ShapeRecord[] records) {
+        ArrayList<ShapeRecord> intact = new ArrayList<>();
+        for (ShapeRecord record : records) {
+            if (record != null) {
+                intact.add(record);
+            }
+        }
+        chunk.records = intact.size() == records.length ? records : intact.toArray(new ShapeRecord[0]);
+        chunk.damaged = intact.size() != records.length;
+        this.damaged += records.length - intact.size();
+        if (chunk.records.length > 0) {
+            this.chunks.add(chunk);
+        }
+    }
+
+    /**
+     * This helper method writes every chunk in the layout that has not been written yet, in
+     * order, from the given position on, and returns where the file now ends. The chunks are
+     * all encoded (and compressed, if the drawing is) in parallel first.
+     * @param channel
+     * @param end
+     * @param layout
+     * @param symbolIndexes
+     * @return
+     * @throws IOException
+     */
+    private long writeChunks(FileChannel channel, long end, List<Chunk> layout,
+                             IdentityHashMap<Symbol, Integer> symbolIndexes) throws IOException {
+        ArrayList<Chunk> unwritten = new ArrayList<>();
+        for (Chunk chunk : layout) {
+            if (chunk.offset < 0) {
+                unwritten.add(chunk);
+            }
+        }
+        try {
+            ForkJoinPool.commonPool().invoke(new PackTask(unwritten, symbolIndexes, this.compress, 0, unwritten.size()));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Chunk chunk : unwritten) {
+            end = chunk.writeAt(channel, end);
+        }
+        return end;
+    }
+
+    /**
+     * This helper method commits a version of the file: once everything written so far is on
+     * the disk, the root slot for the given generation is pointed at the given index, and that
+     * too is flushed to the disk.
+     * @param channel
+     * @param newGeneration
+     * @param index
+     * @throws IOException
+     */
+    private static void commit(FileChannel channel, long newGeneration, Chunk index) throws IOException {
+        channel.force(true);
+        ByteBuffer root = ByteBuffer.allocate(ROOT_SIZE);
+        root.putLong(newGeneration).putLong(index.offset).putInt(index.length).putInt(index.crc);
+        CRC32 crc = new CRC32();
+        crc.update(root.array(), 0, ROOT_SIZE - 4);
+        root.putInt((int) crc.getValue());
+        root.rewind();
+        writeFully(channel, root, ROOT_OFFSET + (newGeneration % 2) * ROOT_SIZE);
+        channel.force(true);
+    }
+
+    /**
+     * This helper method reads the header, and returns the root slot with the highest
+     * generation whose checksum holds and whose index is whole, or null if there is none (or
+     * the file is not a paged drawing this class can read).
+     * @param channel
+     * @return
+     * @throws IOException
+     */
+    private static Root readRoot(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.rewind();
+        if (header.getInt() != MAGIC) {
+            return null;
+        }
+        int formatVersion = header.getInt();
+        if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+            return null;
+        }
+        Root best = null;
+        for (int slot = 0; slot < 2; slot++) {
+            int start = ROOT_OFFSET + slot * ROOT_SIZE;
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), start, ROOT_SIZE - 4);
+            header.position(start);
+            Root root = new Root(formatVersion, header.getLong(), header.getLong(), header.getInt(), header.getInt());
+            if (header.getInt() != (int) crc.getValue() || root.generation == 0
+                    || root.indexOffset + root.indexLength > channel.size()
+                    || (best != null && best.generation > root.generation)) {
+                continue;
+            }
+            try {
+                read(channel, new Chunk(root.indexOffset, root.indexLength, root.indexCrc, 0, null));
+                best = root;
+            }
+            catch (IOException e) {
+                //this root's index is damaged, so the other one is used
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This helper method reads a chunk's bytes (as stored), and throws an IOException if they
+     * do not match its checksum.
+     * @param channel
+     * @param chunk
+     * @return
+     * @throws IOException
+     */
+    private static byte[] read(FileChannel channel, Chunk chunk) throws IOException {
+        byte[] stored = readBytes(channel, chunk);
+        if (checksum(stored) != chunk.crc) {
+            throw new IOException("The chunk at " + chunk.offset + " is damaged");
+        }
+        return stored;
+    }
+
+    /**
+     * This helper method reads a chunk's bytes (as stored), without checking them, and throws
+     * an IOException if the chunk runs past the end of the file.
+     * @param channel
+     * @param chunk
+     * @return
+     * @throws IOException
+     */
+    private static byte[] readBytes(FileChannel channel, Chunk chunk) throws IOException {
+        if (chunk.length < 0 || chunk.offset < HEADER_SIZE || chunk.offset + chunk.length > channel.size()) {
+            throw new IOException("A chunk at " + chunk.offset + " runs past the end of the file");
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(chunk.length);
+        readFully(channel, bytes, chunk.offset);
+        return bytes.array();
+    }
+
+    /**
+     * This helper method reads a chunk of shapes' bytes (as stored), without checking them, or
+     * returns null if the chunk runs past the end of the file, which salvage() then treats as
+     * a chunk that is damaged throughout.
+     * @param channel
+     * @param chunk
+     * @param formatVersion
+     * @return
+     * @throws IOException
+     */
+    private static byte[] readStored(FileChannel channel, Chunk chunk, int formatVersion) throws IOException {
+        try {
+            return readBytes(channel, chunk);
+        }
+        catch (IOException e) {
+            if (formatVersion < 3) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * This helper method returns the records of a chunk of shapes, from its bytes as stored
+     * (or null, if they could not be read), with null in place of each record that is damaged:
+     * whose frame's checksum does not hold, that cannot be decoded, or that comes after a frame
+     * whose length is damaged. If the chunk's checksum holds, none are. In a file from before
+     * version 3, a chunk whose checksum does not hold throws an IOException instead.
+     * @param stored
+     * @param chunk
+     * @param symbolList
+     * @param formatVersion
+     * @return
+     * @throws IOException
+     */
+    private static ShapeRecord[] salvage(byte[] stored, Chunk chunk, List<Symbol> symbolList, int formatVersion)
+            throws IOException {
+        if (formatVersion < 3) {
+            if (stored == null || checksum(stored) != chunk.crc) {
+                throw new IOException("The chunk at " + chunk.offset + " is damaged");
+            }
+            return decodeRecords(unpack(stored, chunk.rawLength), symbolList);
+        }
+        if (stored == null) {
+            return new ShapeRecord[chunk.count];
+        }
+        byte[] raw;
+        try {
+            raw = unpack(stored, chunk.rawLength);
+        }
+        catch (IOException e) {
+            //a compressed chunk cannot be inflated past where it is damaged
+            return new ShapeRecord[chunk.count];
+        }
+        return decodeFrames(raw, chunk.count, symbolList);
+    }
+
+    /**
+     * This helper method encodes a chunk's records, each one in binary, framed by its length
+     * and its checksum.
+     * @param records
+     * @param symbolIndexes
+     * @return
+     * @throws IOException
+     */
+    private static byte[] encodeRecords(ShapeRecord[] records, IdentityHashMap<Symbol, Integer> symbolIndexes)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        DataOutputStream frameOut = new DataOutputStream(frame);
+        for (ShapeRecord record : records) {
+            frame.reset();
+            RecordFormat.writeBinary(frameOut, record, symbolIndexes);
+            byte[] encoded = frame.toByteArray();
+            out.writeInt(encoded.length);
+            out.writeInt(checksum(encoded));
+            out.write(encoded);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * This helper method decodes a chunk's framed records, written by encodeRecords(), with
+     * null in place of each one that is damaged. Once a frame's length is damaged, the frames
+     * after it cannot be found, so they are all damaged.
+     * @param raw
+     * @param count
+     * @param symbolList
+     * @return
+     */
+    private static ShapeRecord[] decodeFrames(byte[] raw, int count, List<Symbol> symbolList) {
+        ShapeRecord[] records = new ShapeRecord[count];
+        ByteBuffer frames = ByteBuffer.wrap(raw);
+        for (int i=0; i<count && frames.remaining() >= 8; i++) {
+            int length = frames.getInt();
+            int crc = frames.getInt();
+            if (length < 0 || length > frames.remaining()) {
+                break;
+            }
+            int start = frames.position();
+            frames.position(start + length);
+            CRC32 frameCrc = new CRC32();
+            frameCrc.update(raw, start, length);
+            if ((int) frameCrc.getValue() != crc) {
+                continue;
+            }
+            try {
+                records[i] = RecordFormat.readBinary(new DataInputStream(new ByteArrayInputStream(raw, start, length)),
+                        symbolList);
+            }
+            catch (IOException | RuntimeException e) {
+                //an instance of a symbol whose chunk is damaged, which is left out
+            }
+        }
+        return records;
+    }
+
+    /**
+     * This helper method decodes a chunk's records as a file from before version 3 holds
+     * them: how many there are, and then each one in binary, without frames.
+     * @param raw
+     * @param symbolList
+     * @return
+     * @throws IOException
+     */
+    private static ShapeRecord[] decodeRecords(byte[] raw, List<Symbol> symbolList) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        ShapeRecord[] records = new ShapeRecord[in.readInt()];
+        for (int i=0; i<records.length; i++) {
+            records[i] = RecordFormat.readBinary(in, symbolList);
+        }
+        return records;
+    }
+
+    /**
+     * This helper method encodes the symbols, in order, each as how many members it has and
+     * then each member in binary.
+     * @param symbolList
+     * @return
+     * @throws IOException
+     */
+    private static byte[] encodeSymbols(List<Symbol> symbolList) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(symbolList.size());
+        for (Symbol symbol : symbolList) {
+            out.writeInt(symbol.getMembers().size());
+            for (ShapeRecord member : symbol.getMembers()) {
+                RecordFormat.writeBinary(out, member, null);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * This helper method encodes a preview, as DrawingPreview.writeTo() writes it.
+     * @param preview
+     * @return
+     * @throws IOException
+     */
+    private static byte[] encodePreview(DrawingPreview preview) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        preview.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * This helper method encodes the index: how many layers there are and each one's id,
+     * visibility, and lock, where the chunks of symbols and of the preview are, and how many
+     * chunks of shapes there are and where each one is.
+     * @param drawingLayers
+     * @param symbolData
+     * @param previewData
+     * @param layout
+     * @return
+     * @throws IOException
+     */
+    private static byte[] encodeIndex(List<int[]> drawingLayers, Chunk symbolData, Chunk previewData,
+                                      List<Chunk> layout) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(drawingLayers.size());
+        for (int[] layer : drawingLayers) {
+            out.writeInt(layer[0]);
+            out.writeInt(layer[1]);
+            out.writeInt(layer[2]);
+        }
+        symbolData.writeTo(out);
+        previewData.writeTo(out);
+        out.writeInt(layout.size());
+        for (Chunk chunk : layout) {
+            chunk.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * This helper method returns the bounding box of the given records, as {minX, minY, maxX,
+     * maxY}, which is empty (its minimum is above its maximum) if they have no extent.
+     * @param records
+     * @return
+     */
+    private static double[] boundsOf(ShapeRecord[] records) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (ShapeRecord record : records) {
+            Symbol.addBounds(record, bounds);
+        }
+        return bounds;
+    }
+
+    /**
+     * This helper method returns whether two boxes, each as {minX, minY, maxX, maxY}, overlap
+     * (or touch).
+     * @param bounds
+     * @param region
+     * @return
+     */
+    private static boolean overlaps(double[] bounds, double[] region) {
+        return bounds[0] <= region[2] && bounds[2] >= region[0] && bounds[1] <= region[3] && bounds[3] >= region[1];
+    }
+
+    /**
+     * This helper method compresses the given bytes with Deflate, at its fastest level, and
+     * returns them, or returns null if they would not get any smaller.
+     * @param raw
+     * @return
+     */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] compressed = new byte[raw.length];
+            int size = 0;
+            while (!deflater.finished() && size < compressed.length) {
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            }
+            return deflater.finished() ? Arrays.copyOf(compressed, size) : null;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * This helper method returns a chunk's bytes as they were before being stored: inflated to
+     * the given length, or as they are if the length is zero. It throws an IOException if they
+     * do not inflate to exactly that length.
+     * @param stored
+     * @param rawLength
+     * @return
+     * @throws IOException
+     */
+    private static byte[] unpack(byte[] stored, int rawLength) throws IOException {
+        if (rawLength == 0) {
+            return stored;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] raw = new byte[rawLength];
+            int size = 0;
+            while (size < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, size, rawLength - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != rawLength || !inflater.finished()) {
+                throw new IOException("A compressed chunk does not inflate to " + rawLength + " bytes");
+            }
+            return raw;
+        }
+        catch (DataFormatException e) {
+            throw new IOException("A compressed chunk is damaged", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * This helper method waits for work handed to the pool (decoding a chunk, or drawing the
+     * preview), and returns its result, or throws the IOException it failed with.
+     * @param task
+     * @return
+     * @throws IOException
+     */
+    private static <T> T await(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pool");
+        }
+    }
+
+    /**
+     * This helper method returns a map from each of the given symbols to its position in the
+     * list, by identity.
+     * @param symbolList
+     * @return
+     */
+    private static IdentityHashMap<Symbol, Integer> indexesOf(List<Symbol> symbolList) {
+        IdentityHashMap<Symbol, Integer> indexes = new IdentityHashMap<>();
+        for (int i=0; i<symbolList.size(); i++) {
+            indexes.put(symbolList.get(i), i);
+        }
+        return indexes;
+    }
+
+    /**
+     * This helper method returns the CRC-32 checksum of the given bytes.
+     * @param bytes
+     * @return
+     */
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * This helper method writes all of the given buffer to the file at the given position.
+     * @param channel
+     * @param buffer
+     * @param position
+     * @throws IOException
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * This helper method fills the given buffer from the file at the given position, or throws
+     * an IOException if the file ends first.
+     * @param channel
+     * @param buffer
+     * @param position
+     * @throws IOException
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The file ends before " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * This is the Chunk class. It is where a run of bytes is in the file (its offset and
+     * length, or an offset of -1 if it has not been written yet), their checksum, how long they
+     * are once inflated (or zero, if they are stored as they are), and, for a chunk of shapes,
+     * how many records it holds, their bounding box, the records they were written from (or,
+     * if it was damaged, the ones that could still be read), and whether it was damaged. Between
+     * being packed and written, it also holds the bytes to store.
+     */
+    private static class Chunk {
+
+        private long offset;
+        private int length;
+        private int crc;
+        private int rawLength;
+        private int count;
+        private double[] bounds;
+        private ShapeRecord[] records;
+        private boolean damaged;
+        private byte[] stored;
+
+        /**
+         * This is the Chunk constructor. It takes in where the chunk is, how long it is, its
+         * checksum, how long it is once inflated (or zero), and the records it holds (or null).
+         * @param chunkOffset
+         * @param chunkLength
+         * @param chunkCrc
+         * @param inflatedLength
+         * @param chunkRecords
+         */
+        private Chunk(long chunkOffset, int chunkLength, int chunkCrc, int inflatedLength, ShapeRecord[] chunkRecords) {
+            this.offset = chunkOffset;
+            this.length = chunkLength;
+            this.crc = chunkCrc;
+            this.rawLength = inflatedLength;
+            this.count = chunkRecords != null ? chunkRecords.length : 0;
+            this.bounds = new double[] {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+            this.records = chunkRecords;
+            this.damaged = false;
+            this.stored = null;
+        }
+
+        /**
+         * This method reads an entry of the index, written by writeTo(). A version 1 file has
+         * no length once inflated, since nothing was compressed, and a file from before version
+         * 3 has no count or bounds, so the chunk is taken to reach everywhere.
+         * @param in
+         * @param formatVersion
+         * @return
+         * @throws IOException
+         */
+        private static Chunk readFrom(DataInputStream in, int formatVersion) throws IOException {
+            Chunk chunk = new Chunk(in.readLong(), in.readInt(), in.readInt(), formatVersion >= 2 ? in.readInt() : 0,
+                    null);
+            if (formatVersion >= 3) {
+                chunk.count = in.readInt();
+                for (int i=0; i<chunk.bounds.length; i++) {
+                    chunk.bounds[i] = in.readDouble();
+                }
+            }
+            return chunk;
+        }
+
+        /**
+         * This method sets the bytes to store for this chunk: the given bytes compressed, if
+         * asked and if that makes them smaller, or else the bytes themselves.
+         * @param raw
+         * @param compressChunk
+         */
+        private void pack(byte[] raw, boolean compressChunk) {
+            byte[] compressed = compressChunk ? deflate(raw) : null;
+            this.stored = compressed != null ? compressed : raw;
+            this.rawLength = compressed != null ? raw.length : 0;
+        }
+
+        /**
+         * This method writes the packed bytes to the file at the given position, which becomes
+         * the chunk's offset, and returns where they end.
+         * @param channel
+         * @param position
+         * @return
+         * @throws IOException
+         */
+        private long writeAt(FileChannel channel, long position) throws IOException {
+            writeFully(channel, ByteBuffer.wrap(this.stored), position);
+            this.offset = position;
+            this.length = this.stored.length;
+            this.crc = checksum(this.stored);
+            this.stored = null;
+            return position + this.length;
+        }
+
+        /**
+         * This method returns whether the given list, from the given position on, holds the
+         * same records as this chunk, in the same order.
+         * @param list
+         * @param from
+         * @return
+         */
+        private boolean holds(List<ShapeRecord> list, int from) {
+            if (from + this.records.length > list.size()) {
+                return false;
+            }
+            for (int i=0; i<this.records.length; i++) {
+                if (list.get(from + i) != this.records[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * This method writes where the chunk is, how long it is, its checksum, how long it is
+         * once inflated, how many records it holds, and their bounding box, as an entry of the
+         * index.
+         * @param out
+         * @throws IOException
+         */
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(this.offset);
+            out.writeInt(this.length);
+            out.writeInt(this.crc);
+            out.writeInt(this.rawLength);
+            out.writeInt(this.count);
+            for (double bound : this.bounds) {
+                out.writeDouble(bound);
+            }
+        }
+    }
+
+    /**
+     * This is the PackTask class. It encodes (and, if asked, compresses) the chunks from index
+     * "start" (inclusive) to index "end" (exclusive), and finds the bounding box of each one's
+     * records, splitting itself in two while it holds more than one of them.
+     */
+    private static class PackTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<Chunk> unwritten;
+        private IdentityHashMap<Symbol, Integer> symbolIndexes;
+        private boolean compress;
+        private int start;
+        private int end;
+
+        /**
+         * This is the PackTask constructor. It takes in the chunks, the position of each symbol
+         * the records may place, whether to compress, and the range of chunks to pack.
+         * @param chunkList
+         * @param indexes
+         * @param compressChunks
+         * @param startIndex
+         * @param endIndex
+         */
+        private PackTask(List<Chunk> chunkList, IdentityHashMap<Symbol, Integer> indexes, boolean compressChunks,
+                         int startIndex, int endIndex) {
+            this.unwritten = chunkList;
+            this.symbolIndexes = indexes;
+            this.compress = compressChunks;
+            this.start = startIndex;
+            this.end = endIndex;
+        }
+
+        /**
+         * This method packs the chunk, or splits the work in two.
+         */
+        @Override
+        protected void compute() {
+            if (this.end - this.start > 1) {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(new PackTask(this.unwritten, this.symbolIndexes, this.compress, this.start, middle),
+                        new PackTask(this.unwritten, this.symbolIndexes, this.compress, middle, this.end));
+                return;
+            }
+            for (int index = this.start; index < this.end; index++) {
+                Chunk chunk = this.unwritten.get(index);
+                try {
+                    chunk.pack(encodeRecords(chunk.records, this.symbolIndexes), this.compress);
+                    chunk.bounds = boundsOf(chunk.records);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * This is the Root class. It is what a root slot in the header holds: the generation of the
+     * version it commits, and where that version's index is, with its checksum, along with the
+     * format version of the file.
+     */
+    private static class Root {
+
+        private int formatVersion;
+        private long generation;
+        private long indexOffset;
+        private int indexLength;
+        private int indexCrc;
+
+        /**
+         * This is the Root constructor.
+         * @param version
+         * @param rootGeneration
+         * @param offset
+         * @param length
+         * @param crc
+         */
+        private Root(int version, long rootGeneration, long offset, int length, int crc) {
+            this.formatVersion = version;
+            this.generation = rootGeneration;
+            this.indexOffset = offset;
+            this.indexLength = length;
+            this.indexCrc = crc;
+        }
+    }
+}
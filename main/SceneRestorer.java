@@ -0,0 +1,222 @@
+package sketchy.main;
+
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import sketchy.document.DocumentSnapshot;
+import sketchy.document.GeometryPool;
+import sketchy.document.PersistentList;
+import sketchy.document.ShapeRecord;
+import sketchy.shapes.CurvedLine;
+import sketchy.shapes.Saveable;
+import sketchy.shapes.SketchyEllipse;
+import sketchy.shapes.SketchyRectangle;
+import sketchy.shapes.SketchyShape;
+import sketchy.shapes.SymbolInstance;
+import sketchy.shapes.SymbolRasters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * This is the SceneRestorer class. It puts the live drawing (the panes of the layers, the
+ * arraylist of shapes, and the arraylist of saveables) back into the state described by a
+ * checkpoint. Rather than clearing the screen and rebuilding it, it only touches what differs
+ * between the snapshot that is currently shown and the checkpoint: Saveables whose records
+ * differ are restored in place, and only the window of Saveables between the first and last
+ * change in order (or in layer) is removed from the panes and re-added. Undoing a move, a fill,
+ * or a resize therefore touches a single shape, and undoing a raise touches two. Since the
+ * window is contiguous in the arraylist of saveables, its nodes on each layer's pane are
+ * contiguous too, so the window is removed from each pane it spans in one change and re-added
+ * in one change, and even a large batch of edits (such as a committed transaction) costs a
+ * single scene-graph update per layer.
+ */
+public class SceneRestorer {
+
+    private ArrayList<SketchyShape> shapes;
+    private ArrayList<Saveable> saveables;
+    private HashMap<Integer, Saveable> liveSaveables;
+    private LayerStack layerStack;
+    private SymbolRasters rasters;
+    private GeometryPool pool;
+
+    /**
+     * This is the SceneRestorer constructor. It takes in the layers (whose panes the nodes of
+     * the Saveables are kept on), the arraylist of shapes, the arraylist of saveables, and a map
+     * from id to every Saveable that has been created (including deleted ones, since a
+     * checkpoint may bring them back), and the cache
+     * of bitmaps that instances of symbols are drawn from, and the pool of geometry that lines it
+     * creates take their boxed points from.
+     * @param layers
+     * @param shapesArray
+     * @param saved
+     * @param live
+     * @param symbolRasters
+     * @param geometryPool
+     */
+    public SceneRestorer(LayerStack layers, ArrayList<SketchyShape> shapesArray, ArrayList<Saveable> saved,
+                         HashMap<Integer, Saveable> live, SymbolRasters symbolRasters, GeometryPool geometryPool) {
+        this.layerStack = layers;
+        this.shapes = shapesArray;
+        this.saveables = saved;
+        this.liveSaveables = live;
+        this.rasters = symbolRasters;
+        this.pool = geometryPool;
+    }
+
+    /**
+     * This method changes the scene from the state described by the "shown" snapshot (which
+     * must match what is currently on screen) to the state described by the checkpoint. First,
+     * the Saveables at the bottom and at the top that are in the same place and on the same
+     * layer in both snapshots are restored in place, counting how many of those at the bottom
+     * are on each layer. Then the remaining window is removed from the arraylist of saveables,
+     * and from each layer's pane (starting after that layer's nodes at the bottom), and the
+     * checkpoint's Saveables for that window are added back in order, each onto the pane of its
+     * layer. If any Saveable was added or removed, the arraylist of shapes is rebuilt in order.
+     * @param shown
+     * @param checkpoint
+     */
+    public void restore(DocumentSnapshot shown, DocumentSnapshot checkpoint) {
+        PersistentList<ShapeRecord> from = shown.getRecords();
+        PersistentList<ShapeRecord> to = checkpoint.getRecords();
+        if (from == to) {
+            return;
+        }
+        int fromSize = from.size();
+        int toSize = to.size();
+        int common = Math.min(fromSize, toSize);
+
+        //Saveables at the bottom that did not change order or layer
+        int prefix = 0;
+        HashMap<Integer, Integer> below = new HashMap<>();
+        Iterator<ShapeRecord> fromRecords = from.iterator();
+        Iterator<ShapeRecord> toRecords = to.iterator();
+        while (prefix < common) {
+            ShapeRecord before = fromRecords.next();
+            ShapeRecord after = toRecords.next();
+            if (before.getId() != after.getId() || before.getLayer() != after.getLayer()) {
+                break;
+            }
+            this.restoreIfChanged(after);
+            below.merge(after.getLayer(), 1, Integer::sum);
+            prefix++;
+        }
+
+        //Saveables at the top that did not change order or layer
+        int suffix = 0;
+        while (suffix < common - prefix) {
+            ShapeRecord before = from.get(fromSize - 1 - suffix);
+            ShapeRecord after = to.get(toSize - 1 - suffix);
+            if (before.getId() != after.getId() || before.getLayer() != after.getLayer()) {
+                break;
+            }
+            this.restoreIfChanged(after);
+            suffix++;
+        }
+
+        //everything in between is removed and re-added in the checkpoint's order
+        if (prefix + suffix == fromSize && prefix + suffix == toSize) {
+            return;
+        }
+        HashMap<Integer, Integer> removed = new HashMap<>();
+        for (int index = prefix; index < fromSize - suffix; index++) {
+            removed.merge(from.get(index).getLayer(), 1, Integer::sum);
+        }
+        for (Integer layer : removed.keySet()) {
+            int start = below.getOrDefault(layer, 0);
+            this.layerStack.getContent(layer).getChildren().remove(start, start + removed.get(layer));
+        }
+        this.saveables.subList(prefix, fromSize - suffix).clear();
+        ArrayList<Saveable> window = new ArrayList<>();
+        LinkedHashMap<Integer, ArrayList<Node>> windowNodes = new LinkedHashMap<>();
+        for (int index = prefix; index < toSize - suffix; index++) {
+            ShapeRecord record = to.get(index);
+            Saveable saveable = this.restoreIfChanged(record);
+            saveable.setPane(this.layerStack.getContent(record.getLayer()));
+            window.add(saveable);
+            windowNodes.computeIfAbsent(record.getLayer(), (Integer layer) -> new ArrayList<>())
+                    .add(saveable.getNode());
+        }
+        this.saveables.addAll(prefix, window);
+        for (Integer layer : windowNodes.keySet()) {
+            this.layerStack.getContent(layer).getChildren()
+                    .addAll(below.getOrDefault(layer, 0), windowNodes.get(layer));
+        }
+
+        this.shapes.clear();
+        for (Saveable saveable : this.saveables) {
+            if (saveable instanceof SketchyShape) {
+                this.shapes.add((SketchyShape) saveable);
+            }
+        }
+    }
+
+    /**
+     * This method replaces the Saveable at the given index in the arraylist of saveables by
+     * the given pieces (see Transaction.split()), without comparing whole snapshots. The
+     * Saveable is restored from the first piece, and Saveables for the other pieces are created
+     * and put right above it, in the arraylists and on the pane of its layer. If there are no
+     * pieces, the Saveable is removed. This is how the eraser changes the scene as it goes.
+     * @param index
+     * @param pieces
+     */
+    public void split(int index, ShapeRecord[] pieces) {
+        Saveable saveable = this.saveables.get(index);
+        if (pieces.length == 0) {
+            saveable.removeFromPane();
+            this.saveables.remove(index);
+            this.shapes.remove(index);
+            return;
+        }
+        this.restoreIfChanged(pieces[0]);
+        Pane pane = this.layerStack.getContent(pieces[0].getLayer());
+        int paneIndex = pane.getChildren().indexOf(saveable.getNode());
+        for (int piece = 1; piece < pieces.length; piece++) {
+            Saveable added = this.restoreIfChanged(pieces[piece]);
+            added.setPane(pane);
+            added.addToPane(paneIndex + piece);
+            this.saveables.add(index + piece, added);
+            this.shapes.add(index + piece, (SketchyShape) added);
+        }
+    }
+
+    /**
+     * This helper method finds the live Saveable a record belongs to, and restores it from the
+     * record unless it already hands out that exact record. If no Saveable with the record's id
+     * has ever been created (the record was made by a transaction), a new one is created from
+     * the record. It returns the Saveable.
+     * @param record
+     * @return
+     */
+    private Saveable restoreIfChanged(ShapeRecord record) {
+        Saveable saveable = this.liveSaveables.get(record.getId());
+        if (saveable == null) {
+            saveable = this.create(record);
+            this.liveSaveables.put(record.getId(), saveable);
+        }
+        if (saveable.toRecord() != record) {
+            saveable.restore(record);
+        }
+        return saveable;
+    }
+
+    /**
+     * This method creates a new Saveable of the right type from a record, for the pane of the
+     * record's layer. The Saveable is not added to that pane or to any arraylist.
+     * @param record
+     * @return
+     */
+    public Saveable create(ShapeRecord record) {
+        Pane pane = this.layerStack.getContent(record.getLayer());
+        switch (record.getType()) {
+            case RECTANGLE:
+                return SketchyRectangle.fromRecord(record, pane);
+            case ELLIPSE:
+                return SketchyEllipse.fromRecord(record, pane);
+            case SYMBOL:
+                return SymbolInstance.fromRecord(record, pane, this.rasters);
+            default:
+                return CurvedLine.fromRecord(record, pane, this.pool);
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package sketchy.main;
 
 /**
- * This is the SelectOption enum class. There are four enums in total:
- * SELECT, PEN, RECTANGLE, and ELLIPSE. These correspond to the four radiobutton options.
+ * This is the SelectOption enum class. There are five enums in total:
+ * SELECT, PEN, RECTANGLE, ELLIPSE, and ERASER. These correspond to the five radiobutton options.
  */
 public enum SelectOption {
-    SELECT, PEN, RECTANGLE, ELLIPSE;
+    SELECT, PEN, RECTANGLE, ELLIPSE, ERASER;
 }
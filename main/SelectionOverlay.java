@@ -0,0 +1,139 @@
+package sketchy.main;
+
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Line;
+import sketchy.shapes.SketchyShape;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This is the SelectionOverlay class. It draws the selection chrome (the border and handles)
+ * of every selected shape on its own pane, which sits on top of the sketchy pane and lets all
+ * mouse events through to it. Selecting or deselecting a shape therefore only adds or removes
+ * nodes on the overlay, and never restyles the shape's own node, so shape nodes can stay cached
+ * as bitmaps however often the selection changes. Each shape's chrome is bound to the shape's
+ * node, so it follows the shape as it is moved, resized, and rotated. The overlay also draws
+ * the snapping guides shown while a shape is dragged.
+ */
+public class SelectionOverlay {
+
+    private Pane overlayPane;
+    private HashMap<SketchyShape, Node> chrome;
+    private ArrayList<Line> guides;
+
+    /**
+     * This is the SelectionOverlay constructor. The overlay pane is created here, and made
+     * transparent to the mouse.
+     */
+    public SelectionOverlay() {
+        this.overlayPane = new Pane();
+        this.overlayPane.setMouseTransparent(true);
+        this.chrome = new HashMap<>();
+        this.guides = new ArrayList<>();
+    }
+
+    /**
+     * This method is an accessor for the overlay pane, which should be stacked on top of the
+     * sketchy pane.
+     * @return
+     */
+    public Pane getPane() {
+        return this.overlayPane;
+    }
+
+    /**
+     * This method shows the selection chrome of the given shape, unless it is already shown.
+     * @param shape
+     */
+    public void show(SketchyShape shape) {
+        if (!this.chrome.containsKey(shape)) {
+            Node shapeChrome = shape.createSelectionChrome();
+            this.chrome.put(shape, shapeChrome);
+            this.overlayPane.getChildren().add(shapeChrome);
+        }
+    }
+
+    /**
+     * This method shows the selection chrome of every shape in the given collection. The new
+     * chrome is added to the overlay in a single change, so selecting hundreds of shapes at
+     * once costs a single scene-graph update.
+     * @param selected
+     */
+    public void showAll(Collection<? extends SketchyShape> selected) {
+        ArrayList<Node> added = new ArrayList<>();
+        for (SketchyShape shape : selected) {
+            if (!this.chrome.containsKey(shape)) {
+                Node shapeChrome = shape.createSelectionChrome();
+                this.chrome.put(shape, shapeChrome);
+                added.add(shapeChrome);
+            }
+        }
+        this.overlayPane.getChildren().addAll(added);
+    }
+
+    /**
+     * This method hides the selection chrome of the given shape, if it is shown.
+     * @param shape
+     */
+    public void hide(SketchyShape shape) {
+        Node shapeChrome = this.chrome.remove(shape);
+        if (shapeChrome != null) {
+            this.overlayPane.getChildren().remove(shapeChrome);
+        }
+    }
+
+    /**
+     * This method hides the selection chrome of every shape, and any guides.
+     */
+    public void clear() {
+        this.chrome.clear();
+        this.guides.clear();
+        this.overlayPane.getChildren().clear();
+    }
+
+    /**
+     * This method replaces the guides on the overlay with the given ones, each a line segment
+     * given as startX, startY, endX, endY.
+     * @param segments
+     */
+    public void showGuides(List<double[]> segments) {
+        this.clearGuides();
+        for (double[] segment : segments) {
+            Line guide = new Line(segment[0], segment[1], segment[2], segment[3]);
+            guide.setStroke(Constants.GUIDE_COLOR);
+            guide.setStrokeWidth(Constants.GUIDE_WIDTH);
+            this.guides.add(guide);
+        }
+        this.overlayPane.getChildren().addAll(this.guides);
+    }
+
+    /**
+     * This method removes every guide from the overlay.
+     */
+    public void clearGuides() {
+        if (!this.guides.isEmpty()) {
+            this.overlayPane.getChildren().removeAll(this.guides);
+            this.guides.clear();
+        }
+    }
+
+    /**
+     * This method returns whether the selection chrome of the given shape is shown.
+     * @param shape
+     * @return
+     */
+    public boolean isShown(SketchyShape shape) {
+        return this.chrome.containsKey(shape);
+    }
+
+    /**
+     * This method returns how many shapes currently have their selection chrome shown.
+     * @return
+     */
+    public int getShownCount() {
+        return this.chrome.size();
+    }
+}
@@ -1,17 +1,51 @@
 package sketchy.main;
 
 import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.animation.AnimationTimer;
 import javafx.geometry.Point2D;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.stage.DirectoryChooser;
 import sketchy.commands.*;
+import sketchy.document.CommandType;
+import sketchy.document.Document;
+import sketchy.document.DocumentSnapshot;
+import sketchy.document.DrawingDiff;
+import sketchy.document.GeometryPool;
+import sketchy.document.History;
+import sketchy.document.MutationEvent;
+import sketchy.document.MutationKind;
+import sketchy.document.MutationPublisher;
+import sketchy.document.ParallelTransformer;
+import sketchy.document.PersistentList;
+import sketchy.document.ShapeRecord;
+import sketchy.document.SimilarityTransform;
+import sketchy.document.SnapshotChanges;
+import sketchy.document.StrokeEraser;
+import sketchy.document.StrokeIndex;
+import sketchy.document.Symbol;
+import sketchy.document.Transaction;
 import sketchy.shapes.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * This is the Sketchy class. It is the top-level logical class. It deals with things like
@@ -26,6 +60,7 @@ public class Sketchy {
     private CurvedLine newestCurvedLine;
     private Color currentSelectedColor;
     private SketchyShape selectedShape;
+    private LinkedHashSet<SketchyShape> picked;
     private ArrayList<SketchyShape> shapes;
     private ArrayList<Saveable> saveables;
     private Point2D prevMousePos;
@@ -38,6 +73,39 @@ public class Sketchy {
     private boolean moved;
     private boolean resized;
     private double lineWidth;
+    private Document document;
+    private boolean loading;
+    private History history;
+    private boolean historyMode;
+    private HashMap<Integer, Saveable> liveSaveables;
+    private SceneRestorer restorer;
+    private Runnable historyListener;
+    private double[] penBatch;
+    private int penBatchSize;
+    private AnimationTimer penDrain;
+    private Transaction transaction;
+    private MutationPublisher mutations;
+    private SelectionOverlay selectionOverlay;
+    private DiffOverlay diffOverlay;
+    private ParallelTransformer transformer;
+    private StrokeIndex strokeIndex;
+    private StrokeEraser eraser;
+    private Transaction erasing;
+    private LayerStack layerStack;
+    private Runnable layerListener;
+    private GeometryPool geometryPool;
+    private SymbolRasters symbolRasters;
+    private GroupTree groupTree;
+    private SnapIndex snapIndex;
+    private DocumentSnapshot viewedSnapshot;
+    private DocumentSnapshot announcedSnapshot;
+    private Point2D snapOffset;
+    private ArrayList<ShapeRecord> clipboard;
+    private int pasteCount;
+    private PagedDrawing pagedDrawing;
+    private boolean compressSaves;
+    private ThumbnailCache thumbnailCache;
+    private Symbol currentSymbol;
 
     /**
      * This is the Sketchy constructor. Here, the instance variables are initialized.
@@ -53,8 +121,13 @@ public class Sketchy {
         this.newestCurvedLine = null;
         this.currentSelectedColor = Color.WHITE;
         this.selectedShape = null;
+        this.picked = new LinkedHashSet<>();
         this.shapes = new ArrayList<>();
         this.saveables = new ArrayList<>();
+        this.selectionOverlay = new SelectionOverlay();
+        this.diffOverlay = new DiffOverlay();
+        this.layerStack = new LayerStack(this.sketchyPane);
+        this.layerListener = null;
         this.setUpSketchyPane();
         this.prevMousePos = null;
         this.moved = false;
@@ -62,25 +135,121 @@ public class Sketchy {
         this.undos = new Stack<>();
         this.redos = new Stack<>();
         this.lineWidth = Constants.DEFAULT_STROKE_WIDTH;
+        this.document = new Document();
+        this.loading = false;
+        this.history = new History(this.document.getSnapshot());
+        this.historyMode = false;
+        this.liveSaveables = new HashMap<>();
+        this.symbolRasters = new SymbolRasters();
+        this.geometryPool = new GeometryPool();
+        this.clipboard = new ArrayList<>();
+        this.pasteCount = 0;
+        this.pagedDrawing = null;
+        this.compressSaves = false;
+        this.thumbnailCache = null;
+        this.currentSymbol = null;
+        this.groupTree = new GroupTree(this.liveSaveables);
+        this.snapIndex = new SnapIndex(this.liveSaveables);
+        this.viewedSnapshot = this.document.getSnapshot();
+        this.announcedSnapshot = this.viewedSnapshot;
+        this.snapOffset = Point2D.ZERO;
+        this.restorer = new SceneRestorer(this.layerStack, this.shapes, this.saveables, this.liveSaveables,
+                this.symbolRasters, this.geometryPool);
+        this.historyListener = null;
+        this.penBatch = new double[2 * Constants.PEN_BATCH_CAPACITY];
+        this.penBatchSize = 0;
+        this.setUpPenDrain();
+        this.transaction = null;
+        this.mutations = new MutationPublisher(Executors.newCachedThreadPool((Runnable task) -> {
+            Thread thread = new Thread(task, "sketchy-mutations");
+            thread.setDaemon(true);
+            return thread;
+        }), Constants.MUTATION_BUFFER_SIZE);
+        this.transformer = new ParallelTransformer(ForkJoinPool.commonPool());
+        this.strokeIndex = new StrokeIndex();
+        this.eraser = new StrokeEraser(Constants.ERASER_RADIUS);
+        this.erasing = null;
     }
 
     /**
-     * This method sets up the sketchy pane. It sets it to the center of the root pane,
-     * then sets up mouse handling for on mouse pressed, on mouse dragged, and on mouse
-     * released.
+     * This method sets up the sketchy pane. It stacks it between the panes that show the
+     * bitmaps of the layers under and over the active layer, puts the selection overlay and then
+     * the diff overlay on top, and sets them all to the center of the root pane. It then sets up mouse handling for on
+     * mouse pressed, on mouse dragged, and on mouse released.
      */
     private void setUpSketchyPane() {
-        this.root.setCenter(this.sketchyPane);
+        this.root.setCenter(new StackPane(this.layerStack.getBelowPane(), this.sketchyPane,
+                this.layerStack.getAbovePane(), this.selectionOverlay.getPane(), this.diffOverlay.getPane()));
         this.sketchyPane.setOnMousePressed((MouseEvent e) -> this.handleMousePressed(e));
         this.sketchyPane.setOnMouseDragged((MouseEvent e) -> this.handleMouseDragged(e));
         this.sketchyPane.setOnMouseReleased((MouseEvent e) -> this.handleMouseReleased());
         this.sketchyPane.setFocusTraversable(false);
     }
 
+    /**
+     * This method sets up the timer that adds the pen samples captured since the last frame to
+     * the line being drawn, so its polyline is only updated once per frame however many mouse
+     * events came in. At most MAX_PEN_SAMPLES_PER_FRAME samples are added per frame, so a burst
+     * of samples cannot stall a frame; the rest wait for the next one. The timer is only running
+     * while a line is being drawn: it is started when the pen is pressed, and stopped when it is
+     * released.
+     */
+    private void setUpPenDrain() {
+        this.penDrain = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                Sketchy.this.drainPenSamples(Constants.MAX_PEN_SAMPLES_PER_FRAME);
+            }
+        };
+    }
+
+    /**
+     * This method adds every pen sample waiting in the batch to the newest CurvedLine, in one
+     * go, and empties the batch. It is called when the pen is released and before anything
+     * reads the drawing, so the line always has all of its samples by then.
+     */
+    private void drainPenSamples() {
+        this.drainPenSamples(Integer.MAX_VALUE);
+    }
+
+    /**
+     * This helper method adds up to the given number of the oldest pen samples waiting in the
+     * batch to the newest CurvedLine, in one go, and moves the rest to the front of the batch.
+     * @param limit
+     */
+    private void drainPenSamples(int limit) {
+        int count = Math.min(this.penBatchSize, limit);
+        if (count > 0 && this.newestCurvedLine != null) {
+            this.newestCurvedLine.addPoints(this.penBatch, count);
+        }
+        System.arraycopy(this.penBatch, 2 * count, this.penBatch, 0, 2 * (this.penBatchSize - count));
+        this.penBatchSize -= count;
+    }
+
+    /**
+     * This method captures one pen sample by adding it to the batch (which is made bigger if
+     * it is full); the sample is added to the line at the next frame that gets to it, or when
+     * the pen is released.
+     * @param x
+     * @param y
+     */
+    private void capturePenSample(double x, double y) {
+        if (2 * this.penBatchSize == this.penBatch.length) {
+            this.penBatch = Arrays.copyOf(this.penBatch, 2 * this.penBatch.length);
+        }
+        this.penBatch[2 * this.penBatchSize] = x;
+        this.penBatch[2 * this.penBatchSize + 1] = y;
+        this.penBatchSize++;
+    }
+
     /**
      * This method deals with keyboard input from the user, specifically to determine whether
      * to invoke the undo() or redo() methods. If both control and Z are held down at the same
      * time, then undo() is invoked. If both control and Y are held down, then redo() is invoked.
+     * Control and C, X, V, and D copy, cut, paste, and duplicate the selected shape. Control
+     * and G groups the shapes picked out with shift-clicks, and control, shift, and G ungroups
+     * the selected shape's outermost group. Control and M make the picked shapes into a symbol,
+     * and control and I place an instance of the current symbol.
      * This method is called from the control class, which does the actual keypress detection.
      * @param e
      */
@@ -97,6 +266,44 @@ public class Sketchy {
                     this.redo();
                 }
                 break;
+            case C:
+                if (e.isControlDown()) {
+                    this.copySelection();
+                }
+                break;
+            case X:
+                if (e.isControlDown()) {
+                    this.cutSelection();
+                }
+                break;
+            case V:
+                if (e.isControlDown()) {
+                    this.paste();
+                }
+                break;
+            case D:
+                if (e.isControlDown()) {
+                    this.duplicateSelection();
+                }
+                break;
+            case G:
+                if (e.isControlDown() && e.isShiftDown()) {
+                    this.ungroupSelection();
+                }
+                else if (e.isControlDown()) {
+                    this.groupSelection();
+                }
+                break;
+            case M:
+                if (e.isControlDown()) {
+                    this.makeSymbolFromSelection();
+                }
+                break;
+            case I:
+                if (e.isControlDown()) {
+                    this.placeCurrentSymbol();
+                }
+                break;
             default:
                 break;
         }
@@ -106,38 +313,43 @@ public class Sketchy {
      * This is the handleMousePressed method, and it is invoked when the mouse is clicked.
      * Based on the currently selected option, the method will carry out certain actions. If
      * SELECT is the current selectedOption enum, then a shape can be selected if the
-     * clicked point is contained within one of the shapes in the pane. If PEN is selected,
-     * a new CurvedLine will be instantiated. If RECTANGLE is selected, a new SketchyRectangle
-     * is created. If ELLIPSE is selected, an ellipse is created. Lastly, the value attached to
-     * prevMousePos is updated to the currently clicked location.
+     * clicked point is contained within one of the shapes in the pane (or picked out to be
+     * grouped, if shift is held down). If PEN is selected,
+     * a new CurvedLine will be instantiated, and the pen timer started. If RECTANGLE is selected, a new SketchyRectangle
+     * is created. If ELLIPSE is selected, an ellipse is created. If ERASER is selected, erasing
+     * starts at the clicked point. Nothing is selected, drawn, or erased while the active layer
+     * is hidden or locked. Lastly, the value attached to
+     * prevMousePos is updated to the currently clicked location, and the shape starts out
+     * unsnapped.
      * @param e
      */
     private void handleMousePressed(MouseEvent e) {
         double clickedX = e.getX();
         double clickedY = e.getY();
-        if (this.selectedOption != null) {
+        if (this.selectedOption != null && !this.layerStack.isEditable()) {
+            this.checkDeselect();
+        }
+        else if (this.selectedOption != null) {
             switch (this.selectedOption) {
                 case SELECT:
                     SketchyShape selected = this.checkShapeSelected(clickedX, clickedY);
+                    //shift-clicking picks out shapes to be grouped
+                    if (selected != null && e.isShiftDown()) {
+                        this.pickShape(selected);
+                    }
                     //clicked point contains shape
-                    if (selected != null) {
-                        if (this.selectedShape != null) {
-                            this.selectedShape.deselect();
-                        }
-                        selected.select();
-                        this.selectedShape = selected;
+                    else if (selected != null) {
+                        this.selectShape(selected);
                     }
                     //clicked point does not contain shape
                     else {
-                        if (this.selectedShape != null) {
-                            this.selectedShape.deselect();
-                            this.selectedShape = null;
-                        }
+                        this.checkDeselect();
                     }
                     break;
                 case PEN:
                     this.checkDeselect();
                     this.addCurvedLine(clickedX, clickedY);
+                    this.penDrain.start();
                     break;
                 case RECTANGLE:
                     this.addRectangle(clickedX, clickedY);
@@ -149,34 +361,48 @@ public class Sketchy {
                     this.moved = false;
                     this.resized = false;
                     break;
+                case ERASER:
+                    this.checkDeselect();
+                    this.startErasing(clickedX, clickedY);
+                    break;
             }
         }
         this.prevMousePos = new Point2D(clickedX, clickedY);
+        this.snapOffset = Point2D.ZERO;
     }
 
     /**
      * This is the handleMouseDragged method, and it is invoked when the mouse is dragged.
-     * If the current selectedOption is PEN, the newest curved line is extended based on the
-     * points that the user is dragging over. If the option is RECTANGLE or ELLIPSE (which will
+     * If the current selectedOption is PEN, the point the user is dragging over is captured,
+     * and the newest curved line is extended with it at the next frame. If the option is RECTANGLE or ELLIPSE (which will
      * be the case when a new rectangle or ellipse is created), then the shape is resized.
      * Otherwise, if there is a shape selected and neither shift nor control are held,
-     * the shape is translated. If shift is held, the shape is resized. If control is held,
-     * the shape is rotated.
+     * the shape is translated, and then snapped (unless alt is held) so that one of its edges
+     * or its center lines up with another shape's, or it is spaced equally from its neighbors,
+     * with guides showing what it snapped to. If shift is held, the shape is resized. If control is held,
+     * the shape is rotated. Whenever a shape is dragged, a DRAGGED event is sent to the
+     * subscribers of the mutation stream (rapid drag events are coalesced per subscriber).
      * @param e
      */
     private void handleMouseDragged(MouseEvent e) {
         Point2D currMousePos = new Point2D(e.getX(), e.getY());
         if (this.selectedOption == SelectOption.PEN) {
             if (this.newestCurvedLine != null) {
-                this.newestCurvedLine.addPoint(currMousePos.getX(), currMousePos.getY());
+                this.capturePenSample(currMousePos.getX(), currMousePos.getY());
             }
         }
+        if (this.selectedOption == SelectOption.ERASER && this.erasing != null) {
+            this.erase(this.prevMousePos.getX(), this.prevMousePos.getY(), currMousePos.getX(), currMousePos.getY());
+        }
         if (this.selectedOption == SelectOption.RECTANGLE ||  this.selectedOption == SelectOption.ELLIPSE) {
-            this.selectedShape.resize(currMousePos, this);
+            if (this.selectedShape != null) {
+                this.selectedShape.resize(currMousePos, this);
+            }
         }
         else {
             if (this.selectedShape != null && !e.isShiftDown() && !e.isControlDown()) {
                 this.selectedShape.translate(currMousePos, this.prevMousePos);
+                this.snapDragged(!e.isAltDown());
                 this.moved = true;
             }
             else {
@@ -191,20 +417,69 @@ public class Sketchy {
                 }
             }
         }
+        if (this.selectedShape != null && this.selectedOption != SelectOption.PEN) {
+            this.mutations.publish(new MutationEvent(MutationKind.DRAGGED, null, this.announcedSnapshot, null,
+                    this.selectedShape.toRecord()));
+        }
         this.prevMousePos = new Point2D(currMousePos.getX(), currMousePos.getY());
     }
 
+    /**
+     * This helper method snaps the selected shape, which is being dragged, to the other shapes.
+     * The snap from the last drag event is taken back first, so that the shape follows the
+     * mouse between snaps, and the candidates come from the snap index, so only a handful of
+     * shapes are looked at however many there are. If snapping is off, the shape is unsnapped.
+     * @param snapping
+     */
+    private void snapDragged(boolean snapping) {
+        ShapeTransform bounds = this.selectedShape.getTransform();
+        double minX = bounds.getMinX() - this.snapOffset.getX();
+        double minY = bounds.getMinY() - this.snapOffset.getY();
+        double maxX = bounds.getMaxX() - this.snapOffset.getX();
+        double maxY = bounds.getMaxY() - this.snapOffset.getY();
+        Point2D offset = Point2D.ZERO;
+        if (snapping) {
+            SnapGuides guides = this.snapIndex.snap(this.selectedShape.getId(), minX, minY, maxX, maxY,
+                    Constants.SNAP_TOLERANCE);
+            offset = new Point2D(guides.getDx(), guides.getDy());
+            this.selectionOverlay.showGuides(guides.getSegments());
+        }
+        else {
+            this.selectionOverlay.clearGuides();
+        }
+        if (!offset.equals(this.snapOffset)) {
+            this.selectedShape.translate(offset, this.snapOffset);
+            this.snapOffset = offset;
+        }
+    }
+
     /**
      * This is the handleMouseReleased method, and it is invoked when the mouse is released.
      * This method updates the values of this.shapeWidth and this.shapeHeight if the selectedOption
      * is RECTANGLE or ELLIPSE. Next, the method determines whether a new command needs to be made.
      * It checks if the center has moved, and if so, it creates a new move command and adds it to
      * the undo stack. Else, if the angle has changed, a new rotate command is created. If the width
-     * or height have changed, then a resize command is created.
+     * or height have changed, then a resize command is created. If a line, rectangle, or ellipse
+     * was being drawn, a new snapshot of the document is published so that it includes the
+     * finished line or shape, and it replaces the checkpoint recorded when drawing started.
+     * The pen timer is stopped, and any pen samples still waiting are added to the line first. If lines were
+     * being erased, everything the eraser did is recorded as a single command. Any snapping
+     * guides are taken down.
      *
      */
     private void handleMouseReleased() {
-        if (this.selectedOption == SelectOption.RECTANGLE || this.selectedOption == SelectOption.ELLIPSE) {
+        this.selectionOverlay.clearGuides();
+        this.penDrain.stop();
+        this.drainPenSamples();
+        if (this.selectedOption == SelectOption.ERASER) {
+            this.finishErasing();
+        }
+        if (this.selectedOption == SelectOption.PEN || this.selectedOption == SelectOption.RECTANGLE
+                || this.selectedOption == SelectOption.ELLIPSE) {
+            this.updateLatestCheckpoint();
+        }
+        if ((this.selectedOption == SelectOption.RECTANGLE || this.selectedOption == SelectOption.ELLIPSE)
+                && this.selectedShape != null) {
             this.shapeWidth = this.selectedShape.getWidth();
             this.shapeHeight = this.selectedShape.getHeight();
         }
@@ -233,42 +508,44 @@ public class Sketchy {
     }
 
     /**
-     * This method adds a CurvedLine to the pane at the provided coordinates. It instantiates
-     * the line, then adds it to the pane graphically and adds it to the arraylist of
-     * saveables. It then creates a new commands and invokes this.newCommand with the new
-     * command as the argument.
+     * This method adds a CurvedLine to the pane at the provided coordinates. Any pen samples
+     * still waiting for the previous line are added to it first. It then instantiates
+     * the line on the active layer, then adds it to the pane graphically and adds it to the arraylists of
+     * shapes and saveables (so it can be selected later, like any other shape). It then creates
+     * a new commands and invokes this.newCommand with the new command as the argument.
      * @param clickedX
      * @param clickedY
      */
     private CurvedLine addCurvedLine(double clickedX, double clickedY) {
-        this.newestCurvedLine = new CurvedLine(clickedX, clickedY, this.sketchyPane, this.currentSelectedColor, this.lineWidth);
+        this.drainPenSamples();
+        this.newestCurvedLine = new CurvedLine(clickedX, clickedY, this.layerStack.getActive().getContent(),
+                this.currentSelectedColor, this.lineWidth);
+        this.newestCurvedLine.setLayer(this.layerStack.getActive().getId());
         this.newestCurvedLine.addToPane();
+        this.shapes.add(this.newestCurvedLine);
         this.saveables.add(this.newestCurvedLine);
+        this.liveSaveables.put(this.newestCurvedLine.getId(), this.newestCurvedLine);
 
         //command
-        Command line = new DrawLine(this.newestCurvedLine, this.saveables);
+        Command line = new DrawLine(this.newestCurvedLine, this.shapes, this.saveables);
         this.newCommand(line);
 
         return this.newestCurvedLine;
     }
 
     /**
-     * This helper method sets up a new SketchyShape. It adds it to the pane, to the arraylist
-     * of saveables, and to the arraylist of shapes. It also selects this newly-created shape,
-     * and updates certain instance variables.
+     * This helper method sets up a new SketchyShape. It puts it on the active layer, and adds
+     * it to the pane, to the arraylist of saveables, and to the arraylist of shapes. It also
+     * selects this newly-created shape, and updates certain instance variables.
      * @param shape
      */
     private void setUpNewShape(SketchyShape shape) {
+        shape.setLayer(this.layerStack.getActive().getId());
         shape.addToPane();
         this.shapes.add(shape);
         this.saveables.add(shape);
-        if (this.selectedShape != null) {
-            this.selectedShape.deselect();
-        }
-        shape.select();
-        this.selectedShape = shape;
-        this.shapeAngle = this.selectedShape.getAngle();
-        this.shapeCenter = this.selectedShape.getCenter();
+        this.liveSaveables.put(shape.getId(), shape);
+        this.selectShape(shape);
     }
 
     /**
@@ -280,7 +557,8 @@ public class Sketchy {
      * @param clickedY
      */
     private SketchyRectangle addRectangle(double clickedX, double clickedY) {
-        SketchyRectangle rectangle = new SketchyRectangle(new Point2D(clickedX, clickedY), this.sketchyPane, this.currentSelectedColor);
+        SketchyRectangle rectangle = new SketchyRectangle(new Point2D(clickedX, clickedY),
+                this.layerStack.getActive().getContent(), this.currentSelectedColor);
         this.setUpNewShape(rectangle);
 
         //command
@@ -299,7 +577,8 @@ public class Sketchy {
      * @param clickedY
      */
     private SketchyEllipse addEllipse(double clickedX, double clickedY) {
-        SketchyEllipse ellipse = new SketchyEllipse(new Point2D(clickedX, clickedY), this.sketchyPane, this.currentSelectedColor);
+        SketchyEllipse ellipse = new SketchyEllipse(new Point2D(clickedX, clickedY),
+                this.layerStack.getActive().getContent(), this.currentSelectedColor);
         this.setUpNewShape(ellipse);
 
         //command
@@ -309,45 +588,178 @@ public class Sketchy {
         return ellipse;
     }
 
+    /**
+     * This helper method adds a Saveable made from the given record on top of the drawing (and
+     * so on top of the pane of its layer), without selecting it or making a command for it.
+     * @param record
+     * @return
+     */
+    private Saveable addFromRecord(ShapeRecord record) {
+        Saveable saveable = this.restorer.create(record);
+        saveable.addToPane();
+        this.saveables.add(saveable);
+        if (saveable instanceof SketchyShape) {
+            this.shapes.add((SketchyShape) saveable);
+        }
+        this.liveSaveables.put(saveable.getId(), saveable);
+        return saveable;
+    }
+
+    /**
+     * This helper method selects the given shape, deselecting the currently-selected shape
+     * (if any) first, and shows the shape's selection chrome on the overlay. The shape's angle,
+     * center, and size are remembered, so that the move, rotate, or resize that may follow can
+     * be undone back to them. If the shape is an instance of a symbol, that symbol becomes the
+     * one placed by placeCurrentSymbol().
+     * @param shape
+     */
+    private void selectShape(SketchyShape shape) {
+        this.checkDeselect();
+        shape.select();
+        this.selectionOverlay.show(shape);
+        this.selectedShape = shape;
+        if (shape.toRecord().getSymbol() != null) {
+            this.currentSymbol = shape.toRecord().getSymbol();
+        }
+        this.shapeAngle = shape.getAngle();
+        this.shapeCenter = shape.getCenter();
+        this.shapeWidth = shape.getWidth();
+        this.shapeHeight = shape.getHeight();
+    }
+
     /**
      * This helper method checks whether there is a currently-selected shape, and if so,
-     * the shape is deselected and this.selectedShape is set to be null.
+     * the shape is deselected, its selection chrome is hidden, and this.selectedShape is
+     * set to be null. Any shapes picked out to be grouped are let go of as well.
      */
     private void checkDeselect() {
         if (this.selectedShape != null) {
             this.selectedShape.deselect();
+            this.selectionOverlay.hide(this.selectedShape);
+            this.selectedShape = null;
+        }
+        for (SketchyShape shape : this.picked) {
+            this.selectionOverlay.hide(shape);
+        }
+        this.picked.clear();
+    }
+
+    /**
+     * This helper method adds the given shape to the shapes picked out to be grouped, or takes
+     * it back out if it was already picked, and is invoked when a shape is clicked with shift
+     * held down. The selected shape (if any) is picked first, so that shift-clicking adds to it,
+     * and is then deselected, so that the next drag does not move it. Picked shapes keep their
+     * selection chrome shown.
+     * @param shape
+     */
+    private void pickShape(SketchyShape shape) {
+        if (this.selectedShape != null) {
+            this.selectedShape.deselect();
+            this.picked.add(this.selectedShape);
             this.selectedShape = null;
         }
+        if (this.picked.remove(shape)) {
+            this.selectionOverlay.hide(shape);
+        }
+        else {
+            this.picked.add(shape);
+            this.selectionOverlay.show(shape);
+        }
     }
 
     /**
      * This helper method checks if there is a shape to be selected at a given clicked
      * point, given by the arguments "x" and "y". If there are shapes (the shapes array is
      * not null), then for each shape in the array starting from the end of the array (since
-     * shapes graphically on top are the last shapes in the arraylist), the point is
-     * rotated and the shape checks whether it contains that rotated point.
+     * shapes graphically on top are the last shapes in the arraylist), the shape checks whether
+     * it contains the point. Each shape accounts for its own rotation using its cached inverse
+     * transform, and rejects points outside its cached bounding box without any trigonometry.
+     * Lines are shapes too, and contain the points within reach of their stroke. Only shapes on
+     * the active layer can be selected.
      * @param x
      * @param y
      * @return
      */
     private SketchyShape checkShapeSelected(double x, double y) {
-        if (this.shapes != null) {
-            for (int index=this.shapes.size()-1; index>=0; index--) {
-                SketchyShape shape = this.shapes.get(index);
-                Point2D toRotate = new Point2D(x, y);
-                Point2D center = shape.getCenter();
-                Point2D rotated = this.rotatePoint(toRotate, center, shape.getAngle());
-                if (shape.contains(rotated.getX(), rotated.getY())) {
-                    return shape;
-                }
+        return this.groupTree.hit(x, y, this.layerStack.getActive().getId());
+    }
+
+    /**
+     * This method starts erasing at the given point. The drawing is published once, as it is
+     * before anything is erased, and a transaction is begun from it that collects everything
+     * the eraser does until it is let go, so that the whole erase can be undone in one go. The
+     * stroke index is brought up to date with the drawing here, and is then kept up to date by
+     * the eraser itself.
+     * @param x
+     * @param y
+     */
+    private void startErasing(double x, double y) {
+        DocumentSnapshot start = this.document.publish(this.saveables);
+        this.strokeIndex.sync(start);
+        this.erasing = new Transaction(start);
+        this.erase(x, y, x, y);
+    }
+
+    /**
+     * This method erases the parts of lines that the eraser touches as it moves in a straight
+     * line from (fromX, fromY) to (toX, toY), splitting lines that it cuts through. The stroke
+     * index is asked for the lines near the eraser's path, so lines elsewhere are never looked
+     * at, and each of those lines only checks the segments its SegmentIndex finds near the path.
+     * Only lines on the active layer are erased. Each cut is applied right away to the erase's
+     * transaction, to the stroke index, and (through the SceneRestorer) to the pane, at the cut
+     * line's stacking index (which the stroke index keeps, so the drawing is never scanned for
+     * it), touching only the line that was cut; nothing is published, and the views are not refreshed, until
+     * erasing finishes.
+     * @param fromX
+     * @param fromY
+     * @param toX
+     * @param toY
+     */
+    private void erase(double fromX, double fromY, double toX, double toY) {
+        int activeLayer = this.layerStack.getActive().getId();
+        for (ShapeRecord line : this.strokeIndex.query(Math.min(fromX, toX) - Constants.ERASER_RADIUS,
+                Math.min(fromY, toY) - Constants.ERASER_RADIUS, Math.max(fromX, toX) + Constants.ERASER_RADIUS,
+                Math.max(fromY, toY) + Constants.ERASER_RADIUS)) {
+            if (line.getLayer() != activeLayer) {
+                continue;
+            }
+            ShapeRecord[] pieces = this.eraser.erase(line, this.strokeIndex.getSegments(line), fromX, fromY, toX, toY);
+            if (pieces != null) {
+                int index = this.strokeIndex.indexOf(line);
+                this.erasing.splitAt(index, pieces);
+                this.strokeIndex.split(line, pieces, this.erasing.getRecords());
+                this.restorer.split(index, pieces);
             }
         }
-        return null;
+    }
+
+    /**
+     * This method finishes erasing. If anything was erased, the erase's records become the
+     * drawing's latest snapshot (they already match what is on the pane), and a single Batch
+     * command is made that goes from the drawing as it was before erasing started to the
+     * drawing as it is now, so one undo brings back everything the eraser removed. The views
+     * are then brought up to date once, for the whole erase.
+     */
+    private void finishErasing() {
+        if (this.erasing == null) {
+            return;
+        }
+        Transaction finished = this.erasing;
+        this.erasing = null;
+        finished.close();
+        if (finished.hasChanges()) {
+            DocumentSnapshot before = finished.getBase();
+            DocumentSnapshot after = this.document.restore(new DocumentSnapshot(before.getVersion(),
+                    finished.getRecords()));
+            this.deselectIfRemoved();
+            Command erase = new Batch(before, after, (DocumentSnapshot snapshot) -> this.restoreCheckpoint(snapshot));
+            this.newCommand(erase);
+        }
     }
 
     /**
      * This method rotates a given point (pointToRotate) around another given point (rotateAround) by a certain
-     * number of degrees (the argument "angle"). This method is used when checking containment to account
+     * number of degrees (the argument "angle"). This method is used when resizing to account
      * for if a shape has been rotated. This implementation is based off the pseudocode on the Sketchy handout.
      * @param pointToRotate
      * @param rotateAround
@@ -387,6 +799,9 @@ public class Sketchy {
             case ELLIPSE:
                 this.selectedOption = SelectOption.ELLIPSE;
                 break;
+            case ERASER:
+                this.selectedOption = SelectOption.ERASER;
+                break;
         }
     }
 
@@ -430,6 +845,7 @@ public class Sketchy {
             int paneIndex = this.selectedShape.getPaneIndex();
             this.selectedShape.delete(this.shapes, this.saveables);
             SketchyShape deleted = this.selectedShape;
+            this.selectionOverlay.hide(deleted);
             this.selectedShape = null;
 
             //command
@@ -439,193 +855,1332 @@ public class Sketchy {
     }
 
     /**
-     * This method raises the shape up one layer, and is invoked when the raise button is
-     * pressed. If the difference in pane indices between the next shape and the current shape
-     * is only 1, then the current shape is moved one index upwards in the shape array. Then,
-     * the shape is moved upwards one layer in the pane, graphically. Lastly, a raise
-     * command is created and added to the undo stack.
+     * This method raises the shape above the next shape on its layer, and is invoked when the
+     * raise button is pressed. Shapes on other layers are skipped, since they are drawn from
+     * their layer's bitmap, so moving past them would not change anything on screen. The shape
+     * is moved upwards in the shapes array, in the saveables array, and graphically in the pane.
+     * Lastly, a raise command is created and added to the undo stack.
      */
     public void raiseShape() {
         if (this.selectedShape != null) {
             int currShapeIndex = this.shapes.indexOf(this.selectedShape);
             int currPaneIndex = this.selectedShape.getPaneIndex();
-            int nextShapeIndex = currShapeIndex + 1;
             int moveShapeIndex = currShapeIndex;
+            int moveToPaneIndex = currPaneIndex;
 
-            //if there is a shape after the current shape in the shapes array
-            if (nextShapeIndex < this.shapes.size()) {
-                SketchyShape nextShape = this.shapes.get(nextShapeIndex);
-                if (nextShape.getPaneIndex() - currPaneIndex == 1) {
-                    moveShapeIndex += 1;
-                    this.shapes.remove(this.selectedShape);
-                    this.shapes.add(moveShapeIndex, this.selectedShape);
+            //the next shape after the current shape that is on the same layer
+            for (int index = currShapeIndex + 1; index < this.shapes.size(); index++) {
+                SketchyShape nextShape = this.shapes.get(index);
+                if (nextShape.getLayer() == this.selectedShape.getLayer()) {
+                    moveShapeIndex = index;
+                    moveToPaneIndex = nextShape.getPaneIndex();
+                    break;
                 }
             }
-            //if there is more in the pane's list of children after the current shape
-            if (currPaneIndex + 1 < this.sketchyPane.getChildren().size()) {
-                this.selectedShape.raiseOrLowerInPane(currPaneIndex + 1);
-            }
+            if (moveShapeIndex != currShapeIndex) {
+                this.moveInZOrder(this.selectedShape, moveShapeIndex, moveToPaneIndex);
 
-            //command
-            Command raise = new Raise(this.shapes, this.saveables, this.selectedShape, currShapeIndex,
-                    moveShapeIndex, currPaneIndex, currPaneIndex + 1);
-            this.newCommand(raise);
+                //command
+                Command raise = new Raise(this.shapes, this.saveables, this.selectedShape, currShapeIndex,
+                        moveShapeIndex, currPaneIndex, moveToPaneIndex);
+                this.newCommand(raise);
+            }
         }
     }
 
     /**
-     * This method lowers the shape one layer, and is invoked when the lower button is pressed.
-     * If the difference in indices between the current shape and the previous shape is only 1,
-     * then the shape is moved backwards one index in the shapes array. Next, the shape is
-     * graphically moved downwards in the pane's list of children. Lastly, a lower command is
-     * created and added to the undo stack.
+     * This method lowers the shape below the previous shape on its layer, and is invoked when
+     * the lower button is pressed. As with raising, shapes on other layers are skipped. The
+     * shape is moved backwards in the shapes array, in the saveables array, and graphically in
+     * the pane's list of children. Lastly, a lower command is created and added to the undo
+     * stack.
      */
     public void lowerShape() {
         if (this.selectedShape != null) {
             int currShapeIndex = this.shapes.indexOf(this.selectedShape);
             int currPaneIndex = this.selectedShape.getPaneIndex();
-            int prevShapeIndex = currShapeIndex - 1;
             int moveShapeIndex = currShapeIndex;
+            int moveToPaneIndex = currPaneIndex;
 
-            //if there is a shape before the current shape in the shapes array
-            if (prevShapeIndex >= 0) {
-                SketchyShape prevShape = this.shapes.get(prevShapeIndex);
-                if (currPaneIndex - prevShape.getPaneIndex() == 1) {
-                    moveShapeIndex -= 1;
-                    this.shapes.remove(this.selectedShape);
-                    this.shapes.add(moveShapeIndex, this.selectedShape);
+            //the previous shape before the current shape that is on the same layer
+            for (int index = currShapeIndex - 1; index >= 0; index--) {
+                SketchyShape prevShape = this.shapes.get(index);
+                if (prevShape.getLayer() == this.selectedShape.getLayer()) {
+                    moveShapeIndex = index;
+                    moveToPaneIndex = prevShape.getPaneIndex();
+                    break;
                 }
             }
-            //if there is more in the pane's list of children before the current shape
-            if (currPaneIndex - 1 >= 0) {
-                this.selectedShape.raiseOrLowerInPane(currPaneIndex - 1);
-            }
+            if (moveShapeIndex != currShapeIndex) {
+                this.moveInZOrder(this.selectedShape, moveShapeIndex, moveToPaneIndex);
 
-            //command
-            Command lower = new Lower(this.shapes, this.saveables, this.selectedShape, currShapeIndex,
-                    moveShapeIndex, currPaneIndex, currPaneIndex-1);
-            this.newCommand(lower);
+                //command
+                Command lower = new Lower(this.shapes, this.saveables, this.selectedShape, currShapeIndex,
+                        moveShapeIndex, currPaneIndex, moveToPaneIndex);
+                this.newCommand(lower);
+            }
         }
     }
 
+    /**
+     * This helper method moves a shape to the given index in the shapes array and the
+     * saveables array, and to the given index in its layer's pane's list of children.
+     * @param shape
+     * @param shapeIndex
+     * @param paneIndex
+     */
+    private void moveInZOrder(SketchyShape shape, int shapeIndex, int paneIndex) {
+        this.shapes.remove(shape);
+        this.shapes.add(shapeIndex, shape);
+        this.saveables.remove(shape);
+        this.saveables.add(shapeIndex, shape);
+        shape.raiseOrLowerInPane(paneIndex);
+    }
+
     /**
      * This method is called when the undo button is pressed. If the undo stack
      * isn't empty, then the top command is popped, and undo is called on this
-     * command. Then, that command is pushed to the top of the redos stack.
+     * command. Then, that command is pushed to the top of the redos stack. In history
+     * mode, the previous checkpoint is restored directly instead of calling undo on the
+     * command, and the command is just moved from one stack to the other.
      */
     public void undo() {
-        if (!this.undos.isEmpty()) {
+        if (!this.undos.isEmpty() && this.history.canUndo()) {
             Command top = this.undos.pop();
-            top.undo();
+            if (this.historyMode) {
+                this.restoreCheckpoint(this.history.undo());
+            }
+            else {
+                top.undo();
+                this.history.undo();
+                this.publishSnapshot();
+                this.deselectIfRemoved();
+                this.refreshViews();
+            }
             this.redos.push(top);
+            this.historyChanged();
+            this.publishMutation(MutationKind.UNDONE, top);
         }
     }
 
     /**
      * This method is called when the redo button is pressed. If the redos pile
      * is not empty, then the top command is pushed, redo is called on the command,
-     * and the command is pushed to the top of the undos stack.
+     * and the command is pushed to the top of the undos stack. In history mode, the
+     * next checkpoint is restored directly instead of calling redo on the command.
      */
     public void redo() {
-        if (!this.redos.isEmpty()) {
+        if (!this.redos.isEmpty() && this.history.canRedo()) {
             Command top = this.redos.pop();
-            top.redo();
+            if (this.historyMode) {
+                this.restoreCheckpoint(this.history.redo());
+            }
+            else {
+                top.redo();
+                this.history.redo();
+                this.publishSnapshot();
+                this.deselectIfRemoved();
+                this.refreshViews();
+            }
             this.undos.push(top);
+            this.historyChanged();
+            this.publishMutation(MutationKind.REDONE, top);
         }
     }
 
     /**
-     * This method adds a new command to the undos stack. The command is passed as an argument.
-     * The redos stack is then cleared.
-     * @param command
+     * This method puts the drawing back into the state saved in the given checkpoint. The
+     * latest state of the drawing is published first, so the restorer knows exactly what is on
+     * screen, and then only the shapes and layers that differ are changed. If the selected
+     * shape is not part of the checkpoint, it is deselected, and the bitmaps of the layers
+     * the checkpoint changed are redrawn. It returns the snapshot that is published for the
+     * restored drawing.
+     * @param checkpoint
+     * @return
      */
-    private void newCommand(Command command) {
-        this.undos.push(command);
-        this.redos.clear();
+    private DocumentSnapshot restoreCheckpoint(DocumentSnapshot checkpoint) {
+        DocumentSnapshot shown = this.document.publish(this.saveables);
+        this.restorer.restore(shown, checkpoint);
+        DocumentSnapshot restored = this.document.restore(checkpoint);
+        this.deselectIfRemoved();
+        this.refreshViews();
+        return restored;
     }
 
     /**
-     * This method graphically and logically clears the screen. It clears the pane's
-     * list of children, then clears the arraylist of shapes, and then clears the
-     * stack of undos and the stack of redos.
+     * This helper method deselects the selected shape (and lets go of the shapes picked out to
+     * be grouped) if it, or any of them, is no longer part of the drawing (for example, after
+     * undoing its creation), so that its selection chrome does not stay on the overlay.
      */
-    private void clearScreen() {
-        this.sketchyPane.getChildren().clear();
-        this.shapes.clear();
-        this.undos.clear();
-        this.redos.clear();
+    private void deselectIfRemoved() {
+        boolean removed = this.selectedShape != null && !this.shapes.contains(this.selectedShape);
+        for (SketchyShape shape : this.picked) {
+            removed = removed || !this.shapes.contains(shape);
+        }
+        if (removed) {
+            this.checkDeselect();
+        }
     }
 
     /**
-     * This method saves the current drawing to a file, and is invoked when the save button is
-     * pressed. It first retrieves the name of the file to be written in, and opens it for writing.
-     * Then, for each Saveable in the saveables array, the writeToFile() method from the Saveable
-     * interface is called on the Saveable. Once the loop is exited, the file is closed for writing.
+     * This method begins a transaction, for scripted or bulk edits. Edits made through the
+     * returned Transaction are not applied to the shapes, saveables, or pane until
+     * commitTransaction() is called, and are thrown away by rollbackTransaction(). Only one
+     * transaction can be open at a time.
+     * @return
      */
-    public void save() {
-        String filename = CS15FileIO.getFileName(true, this.sketchyPane.getScene().getWindow());
-        if (filename != null) {
-            CS15FileIO io = new CS15FileIO();
-            io.openWrite(filename);
-            for (Saveable save : this.saveables) {
-                save.writeToFile(io);
+    public Transaction beginTransaction() {
+        if (this.transaction != null) {
+            throw new IllegalStateException("A transaction is already open");
+        }
+        this.drainPenSamples();
+        this.transaction = new Transaction(this.document.publish(this.saveables));
+        return this.transaction;
+    }
+
+    /**
+     * This method commits the open transaction. All of its edits are applied to the drawing
+     * together, with a single update to the pane, and are recorded as a single Batch command
+     * (and a single checkpoint), so one undo reverses all of them. If the drawing was changed
+     * some other way while the transaction was open, nothing is applied and an
+     * IllegalStateException is thrown. If applying the edits fails part way through, the drawing
+     * is rolled back to how it was before the transaction and the exception is rethrown.
+     */
+    public void commitTransaction() {
+        Transaction committing = this.requireTransaction();
+        this.transaction = null;
+        committing.close();
+        if (!committing.hasChanges()) {
+            return;
+        }
+        DocumentSnapshot before = this.document.publish(this.saveables);
+        if (before.getRecords() != committing.getBase().getRecords()) {
+            throw new IllegalStateException("The drawing changed while the transaction was open; "
+                    + "the transaction was rolled back");
+        }
+        DocumentSnapshot after;
+        try {
+            after = this.restoreCheckpoint(new DocumentSnapshot(before.getVersion(), committing.getRecords()));
+        }
+        catch (RuntimeException e) {
+            this.restoreCheckpoint(before);
+            throw e;
+        }
+        Command batch = new Batch(before, after, (DocumentSnapshot snapshot) -> this.restoreCheckpoint(snapshot));
+        this.newCommand(batch);
+    }
+
+    /**
+     * This method rolls back the open transaction. Since none of its edits have been applied,
+     * they are simply thrown away.
+     */
+    public void rollbackTransaction() {
+        Transaction rollingBack = this.requireTransaction();
+        this.transaction = null;
+        rollingBack.close();
+    }
+
+    /**
+     * This method runs the given edits in a transaction. If they complete, the transaction is
+     * committed; if they throw an exception, the transaction is rolled back and the exception
+     * is rethrown.
+     * @param edits
+     */
+    public void runTransaction(Consumer<Transaction> edits) {
+        Transaction running = this.beginTransaction();
+        try {
+            edits.accept(running);
+        }
+        catch (RuntimeException e) {
+            this.rollbackTransaction();
+            throw e;
+        }
+        this.commitTransaction();
+    }
+
+    /**
+     * This method moves, rotates, and/or scales the shapes and lines with the given ids all at
+     * once. Their new geometry (including every point of every line) is computed in parallel on
+     * the fork-join pool, and then applied to the drawing in a single transaction, so the whole
+     * operation updates the pane once and is undone with a single undo.
+     * @param ids
+     * @param transform
+     */
+    public void transformShapes(Collection<Integer> ids, SimilarityTransform transform) {
+        HashSet<Integer> wanted = new HashSet<>(ids);
+        this.runTransaction((Transaction edits) -> {
+            ArrayList<ShapeRecord> selected = new ArrayList<>();
+            for (ShapeRecord record : edits.getRecords()) {
+                if (wanted.contains(record.getId())) {
+                    selected.add(record);
+                }
             }
-            io.closeWrite();
+            edits.replaceAll(this.transformer.transform(selected, transform));
+        });
+    }
+
+    /**
+     * This method applies the given transform to the selected shape, as a single command. If
+     * the shape is in a group, the whole of its outermost group is transformed with it.
+     * @param transform
+     */
+    public void transformSelection(SimilarityTransform transform) {
+        if (this.selectedShape != null) {
+            this.transformShapes(this.groupTree.getOutermostMembers(this.selectedShape.getId()), transform);
         }
     }
 
     /**
-     * This method loads a file containing a drawing, and is called when the load button is
-     * pressed. The screen is cleared both graphically and logically, and then the chosen file
-     * is opened for reading. While the file has more data inside it, the contents of the file
-     * are processed in different ways depending on if the object to be created is a line, an
-     * ellipse, or a rectangle. Each object is graphically added to the pane and logically added
-     * to the arraylists after it is instantiated and initialized.
+     * This method groups the shapes with the given ids, and returns the id of the new group.
+     * A shape that is already in a group brings the whole of its outermost group along, so the
+     * new group holds that group (which is how groups are nested). It is a single command, so
+     * undoing it ungroups them again.
+     * @param ids
+     * @return
      */
-    public void load() {
-        SketchyShape lastCreatedShape = null;
-        String filename = CS15FileIO.getFileName(false, this.sketchyPane.getScene().getWindow());
-        if (filename != null) {
-            this.clearScreen();
-            CS15FileIO io = new CS15FileIO();
-            io.openRead(filename);
-            while (io.hasMoreData()) {
-                String shapeType = io.readString();
-                if (shapeType.equals("rectangle")) {
-                    Color rgb = Color.rgb(io.readInt(), io.readInt(), io.readInt());
-                    SketchyShape rect = this.addRectangle(io.readDouble(), io.readDouble());
-                    rect.setColor(rgb);
-                    rect.setWidth(io.readDouble());
-                    rect.setHeight(io.readDouble());
-                    rect.setAngle(io.readDouble());
-                    lastCreatedShape = rect;
-                }
-                else if (shapeType.equals("ellipse")) {
-                    Color rgb = Color.rgb(io.readInt(), io.readInt(), io.readInt());
-                    SketchyShape ellipse = this.addEllipse(io.readDouble(), io.readDouble());
-                    ellipse.setColor(rgb);
-                    ellipse.setWidth(io.readDouble());
-                    ellipse.setHeight(io.readDouble());
-                    ellipse.setAngle(io.readDouble());
-                    lastCreatedShape = ellipse;
-                }
-                //in the case of a line
-                else {
-                    Color rgb = Color.rgb(io.readInt(), io.readInt(), io.readInt());
-                    CurvedLine line = this.addCurvedLine(io.readDouble(), io.readDouble());
-                    line.setWidth(io.readDouble());
-                    line.setColor(rgb);
-                    int howManyPointsToIterate = io.readInt();
-                    for (int i=0; i<howManyPointsToIterate/2; i++) {
-                        line.addPoint(io.readDouble(), io.readDouble());
+    public int groupShapes(Collection<Integer> ids) {
+        HashSet<Integer> wanted = new HashSet<>(ids);
+        int groupId = ShapeRecord.newId();
+        this.runTransaction((Transaction edits) -> {
+            HashSet<Integer> outermost = new HashSet<>();
+            for (ShapeRecord record : edits.getRecords()) {
+                if (wanted.contains(record.getId()) && record.getGroups() != null) {
+                    outermost.add(record.getGroups()[0]);
+                }
+            }
+            ArrayList<ShapeRecord> grouped = new ArrayList<>();
+            for (ShapeRecord record : edits.getRecords()) {
+                int[] path = record.getGroups();
+                if ((path == null && wanted.contains(record.getId())) || (path != null && outermost.contains(path[0]))) {
+                    int[] nested = new int[path == null ? 1 : path.length + 1];
+                    nested[0] = groupId;
+                    if (path != null) {
+                        System.arraycopy(path, 0, nested, 1, path.length);
                     }
+                    grouped.add(record.withGroups(nested));
                 }
             }
-            if (lastCreatedShape != null) {
-                this.shapeCenter = lastCreatedShape.getCenter();
+            if (grouped.isEmpty()) {
+                throw new IllegalArgumentException("None of the shapes are in the drawing");
             }
-            io.closeRead();
+            edits.replaceAll(grouped.toArray(new ShapeRecord[0]));
+        });
+        return groupId;
+    }
+
+    /**
+     * This method ungroups the group with the given id: its shapes and the groups directly
+     * inside it are left where they are, in whatever group it was in. It is a single command.
+     * @param groupId
+     */
+    public void ungroup(int groupId) {
+        this.runTransaction((Transaction edits) -> {
+            ArrayList<ShapeRecord> ungrouped = new ArrayList<>();
+            for (ShapeRecord record : edits.getRecords()) {
+                if (record.isInGroup(groupId)) {
+                    int[] path = record.getGroups();
+                    int[] remaining = null;
+                    if (path.length > 1) {
+                        remaining = new int[path.length - 1];
+                        int next = 0;
+                        for (int group : path) {
+                            if (group != groupId) {
+                                remaining[next] = group;
+                                next++;
+                            }
+                        }
+                    }
+                    ungrouped.add(record.withGroups(remaining));
+                }
+            }
+            if (ungrouped.isEmpty()) {
+                throw new IllegalArgumentException("There is no group " + groupId + " in the drawing");
+            }
+            edits.replaceAll(ungrouped.toArray(new ShapeRecord[0]));
+        });
+    }
+
+    /**
+     * This method groups the shapes picked out with shift-clicks (and the selected shape, if
+     * there is one), each with the rest of its outermost group, and is invoked when the group
+     * button is pressed, or control and G are pressed. Nothing is grouped unless at least two
+     * shapes are picked, or while the active layer is hidden or locked. It is a single command.
+     */
+    public void groupSelection() {
+        LinkedHashSet<Integer> ids = new LinkedHashSet<>();
+        for (SketchyShape shape : this.picked) {
+            ids.add(shape.getId());
+        }
+        if (this.selectedShape != null) {
+            ids.add(this.selectedShape.getId());
+        }
+        this.checkDeselect();
+        if (ids.size() > 1 && this.layerStack.isEditable()) {
+            this.groupShapes(ids);
+        }
+    }
+
+    /**
+     * This method ungroups the outermost group of the selected shape, leaving the shapes and
+     * groups directly inside it where they are, and is invoked when the ungroup button is
+     * pressed, or control, shift, and G are pressed. Nothing happens if the selected shape is
+     * not in a group, or while the active layer is hidden or locked. It is a single command.
+     */
+    public void ungroupSelection() {
+        if (this.selectedShape != null && this.selectedShape.getGroups() != null && this.layerStack.isEditable()) {
+            int groupId = this.selectedShape.getGroups()[0];
+            this.checkDeselect();
+            this.ungroup(groupId);
+        }
+    }
+
+    /**
+     * This method makes the shapes picked out with shift-clicks (and the selected shape, if
+     * there is one), each with the rest of its outermost group, into a new symbol, and replaces
+     * them with a single instance of it. It is invoked when the make symbol button is pressed,
+     * or control and M are pressed, and the new symbol becomes the one placed by
+     * placeCurrentSymbol(). Nothing happens if no shape is picked or selected, or while the
+     * active layer is hidden or locked. It is a single command.
+     */
+    public void makeSymbolFromSelection() {
+        LinkedHashSet<Integer> ids = new LinkedHashSet<>();
+        for (SketchyShape shape : this.picked) {
+            ids.addAll(this.groupTree.getOutermostMembers(shape.getId()));
+        }
+        if (this.selectedShape != null) {
+            ids.addAll(this.groupTree.getOutermostMembers(this.selectedShape.getId()));
         }
+        this.checkDeselect();
+        if (!ids.isEmpty() && this.layerStack.isEditable()) {
+            this.currentSymbol = this.defineSymbol(ids);
+        }
+    }
+
+    /**
+     * This method places a new instance of the current symbol (the one last made with
+     * makeSymbolFromSelection(), or the symbol of the instance last selected) on top of the
+     * active layer, centered on the last point pressed on the pane, or on the middle of the
+     * pane if it has not been pressed yet. It is invoked when the place symbol button is
+     * pressed, or control and I are pressed. Nothing happens if there is no current symbol, or
+     * while the active layer is hidden or locked. It is a single command.
+     */
+    public void placeCurrentSymbol() {
+        if (this.currentSymbol != null && this.layerStack.isEditable()) {
+            Point2D center = this.prevMousePos;
+            if (center == null) {
+                center = new Point2D(this.sketchyPane.getWidth() / 2, this.sketchyPane.getHeight() / 2);
+            }
+            this.placeSymbol(this.currentSymbol, center.getX(), center.getY());
+        }
+    }
+
+    /**
+     * This method returns the ids of the shapes that the shape with the given id goes along
+     * with: every shape in its outermost group, or just the shape itself if it is not in one.
+     * @param id
+     * @return
+     */
+    public List<Integer> getGroupMembers(int id) {
+        return this.groupTree.getOutermostMembers(id);
+    }
+
+    /**
+     * This method returns the ids of the shapes whose bounding boxes overlap the given box.
+     * Groups whose boxes are out of the way are skipped without looking at their shapes.
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return
+     */
+    public List<Integer> findShapes(double minX, double minY, double maxX, double maxY) {
+        return this.groupTree.query(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * This method makes the shapes and lines with the given ids into a new symbol, and replaces
+     * them with a single instance of it, drawn where they were. The instance takes the place
+     * (and the layer) of the topmost of them. It is a single command, and the new symbol is
+     * returned so that it can be placed again.
+     * @param ids
+     * @return
+     */
+    public Symbol defineSymbol(Collection<Integer> ids) {
+        HashSet<Integer> wanted = new HashSet<>(ids);
+        Symbol[] defined = new Symbol[1];
+        this.runTransaction((Transaction edits) -> {
+            ArrayList<ShapeRecord> members = new ArrayList<>();
+            for (ShapeRecord record : edits.getRecords()) {
+                if (wanted.contains(record.getId())) {
+                    members.add(record);
+                }
+            }
+            if (members.isEmpty()) {
+                throw new IllegalArgumentException("None of the shapes are in the drawing");
+            }
+            Symbol symbol = Symbol.define(members);
+
+            //the symbol's members were all moved by the same amount, so the instance is moved back by it
+            ShapeRecord first = members.get(0);
+            double centerX = first.getCenterX() - symbol.getMembers().get(0).getCenterX();
+            double centerY = first.getCenterY() - symbol.getMembers().get(0).getCenterY();
+            ShapeRecord top = members.get(members.size() - 1);
+            for (int i=0; i<members.size() - 1; i++) {
+                edits.remove(members.get(i).getId());
+            }
+            edits.split(top.getId(), new ShapeRecord[] {new ShapeRecord(ShapeRecord.newId(), symbol, null,
+                    centerX, centerY, symbol.getWidth(), symbol.getHeight(), 0, top.getLayer())});
+            defined[0] = symbol;
+        });
+        return defined[0];
+    }
+
+    /**
+     * This method places a new instance of the given symbol, at its own size, centered on the
+     * given point, on top of the active layer. It is a single command. It returns the id of the
+     * new instance.
+     * @param symbol
+     * @param x
+     * @param y
+     * @return
+     */
+    public int placeSymbol(Symbol symbol, double x, double y) {
+        int[] placed = new int[1];
+        this.runTransaction((Transaction edits) -> placed[0] = edits.addSymbol(symbol, x, y, 1, null,
+                this.layerStack.getActive().getId()));
+        return placed[0];
+    }
+
+    /**
+     * This method changes what a symbol draws: its members become the given records, and every
+     * instance of any version of the symbol draws the new version from then on, keeping its
+     * place, angle, scale, and color. It is a single command, so undoing it brings back the old
+     * version in every instance at once. The new version is returned, and becomes the current
+     * symbol if the old version was. There is no button for this, since the new members are
+     * given as records; it is meant for scripts and bulk edits, like transactions.
+     * @param symbol
+     * @param members
+     * @return
+     */
+    public Symbol redefineSymbol(Symbol symbol, List<ShapeRecord> members) {
+        Symbol redefined = symbol.redefine(members);
+        this.runTransaction((Transaction edits) -> {
+            ArrayList<ShapeRecord> instances = new ArrayList<>();
+            for (ShapeRecord record : edits.getRecords()) {
+                if (record.getSymbol() != null && record.getSymbol().getId() == symbol.getId()) {
+                    instances.add(record.withSymbol(redefined));
+                }
+            }
+            edits.replaceAll(instances.toArray(new ShapeRecord[0]));
+        });
+        if (this.currentSymbol != null && this.currentSymbol.getId() == symbol.getId()) {
+            this.currentSymbol = redefined;
+        }
+        return redefined;
+    }
+
+    /**
+     * This method copies the shapes and lines with the given ids to the clipboard, in the order
+     * they are stacked. The clipboard only holds their records, which never change, so copying
+     * does not copy any geometry; the lines' points are interned in the geometry pool, so that
+     * every copy pasted from them shares one array (and one boxed array on screen).
+     * @param ids
+     */
+    public void copyShapes(Collection<Integer> ids) {
+        HashSet<Integer> wanted = new HashSet<>(ids);
+        this.drainPenSamples();
+        this.clipboard = new ArrayList<>();
+        for (ShapeRecord record : this.document.publish(this.saveables)) {
+            if (wanted.contains(record.getId())) {
+                this.clipboard.add(this.geometryPool.intern(record));
+            }
+        }
+        this.pasteCount = 0;
+    }
+
+    /**
+     * This method copies the selected shape to the clipboard, along with the rest of its
+     * outermost group if it is in one, and is invoked when control and C are pressed.
+     */
+    public void copySelection() {
+        if (this.selectedShape != null) {
+            this.copyShapes(this.groupTree.getOutermostMembers(this.selectedShape.getId()));
+        }
+    }
+
+    /**
+     * This method copies the selected shape (and the rest of its outermost group) to the
+     * clipboard and then removes it from the drawing, as a single command, and is invoked when
+     * control and X are pressed. Pasting afterwards puts the copies where the shapes were.
+     */
+    public void cutSelection() {
+        if (this.selectedShape != null) {
+            List<Integer> members = this.groupTree.getOutermostMembers(this.selectedShape.getId());
+            this.copyShapes(members);
+            this.pasteCount = -1;
+            this.checkDeselect();
+            this.runTransaction((Transaction edits) -> {
+                for (int id : members) {
+                    edits.remove(id);
+                }
+            });
+        }
+    }
+
+    /**
+     * This method pastes the shapes on the clipboard onto the active layer, and is invoked when
+     * control and V are pressed. Each paste is moved PASTE_OFFSET further down and to the right
+     * than the last, so that the copies do not hide each other. It is a single command, and it
+     * returns the ids of the copies.
+     * @return
+     */
+    public List<Integer> paste() {
+        this.pasteCount++;
+        return this.pasteRecords(this.clipboard, this.pasteCount * Constants.PASTE_OFFSET);
+    }
+
+    /**
+     * This method puts a copy of the selected shape (and the rest of its outermost group) just
+     * below and to the right of it, without touching the clipboard, and is invoked when control
+     * and D are pressed. It is a single command, and it returns the ids of the copies.
+     * @return
+     */
+    public List<Integer> duplicateSelection() {
+        ArrayList<ShapeRecord> originals = new ArrayList<>();
+        if (this.selectedShape != null) {
+            HashSet<Integer> members = new HashSet<>(this.groupTree.getOutermostMembers(this.selectedShape.getId()));
+            for (ShapeRecord record : this.document.publish(this.saveables)) {
+                if (members.contains(record.getId())) {
+                    originals.add(this.geometryPool.intern(record));
+                }
+            }
+        }
+        return this.pasteRecords(originals, Constants.PASTE_OFFSET);
+    }
+
+    /**
+     * This helper method adds copies of the given records on top of the active layer, moved by
+     * the given offset in both x and y, as a single command, and selects the topmost copy. The
+     * copies share the records' points. Copies of shapes that were grouped together are grouped
+     * together again, in new groups of their own. Nothing is pasted while the active layer is
+     * hidden or locked. It returns the ids of the copies.
+     * @param records
+     * @param offset
+     * @return
+     */
+    private List<Integer> pasteRecords(List<ShapeRecord> records, double offset) {
+        ArrayList<Integer> pasted = new ArrayList<>();
+        if (records.isEmpty() || !this.layerStack.isEditable()) {
+            return pasted;
+        }
+        this.checkDeselect();
+        int layer = this.layerStack.getActive().getId();
+        HashMap<Integer, Integer> newGroups = new HashMap<>();
+        this.runTransaction((Transaction edits) -> {
+            for (ShapeRecord record : records) {
+                int[] path = record.getGroups();
+                int[] copiedPath = null;
+                if (path != null) {
+                    copiedPath = new int[path.length];
+                    for (int i=0; i<path.length; i++) {
+                        copiedPath[i] = newGroups.computeIfAbsent(path[i], (Integer group) -> ShapeRecord.newId());
+                    }
+                }
+                pasted.add(edits.addCopy(record.withLayer(layer).withGroups(copiedPath), offset, offset));
+            }
+        });
+        this.selectShape((SketchyShape) this.liveSaveables.get(pasted.get(pasted.size() - 1)));
+        return pasted;
+    }
+
+    /**
+     * This helper method returns the open transaction, or throws an IllegalStateException if
+     * there is none.
+     * @return
+     */
+    private Transaction requireTransaction() {
+        if (this.transaction == null) {
+            throw new IllegalStateException("No transaction is open");
+        }
+        return this.transaction;
+    }
+
+    /**
+     * This method jumps straight to the given position in the undo/redo history (the number of
+     * commands that should be in effect), and is invoked when the history slider is moved.
+     * The checkpoint for that position is restored directly, so jumping back 10,000 edits costs
+     * the same as jumping back one: only the shapes and layers that differ are touched. The
+     * commands are then moved between the undo and redo stacks so that undo and redo carry on
+     * from the new position.
+     * @param position
+     */
+    public void scrubTo(int position) {
+        if (position < 0 || position >= this.history.size() || position == this.history.getCursor()) {
+            return;
+        }
+        this.restoreCheckpoint(this.history.jumpTo(position));
+        while (this.undos.size() > position) {
+            this.redos.push(this.undos.pop());
+        }
+        while (this.undos.size() < position) {
+            this.undos.push(this.redos.pop());
+        }
+        this.historyChanged();
+        this.publishMutation(MutationKind.RESYNC, null);
+    }
+
+    /**
+     * This method returns how many positions there are in the undo/redo history (one more
+     * than the number of commands that can be undone or redone).
+     * @return
+     */
+    public int getHistorySize() {
+        return this.history.size();
+    }
+
+    /**
+     * This method returns the current position in the undo/redo history (the number of
+     * commands currently in effect).
+     * @return
+     */
+    public int getHistoryPosition() {
+        return this.history.getCursor();
+    }
+
+    /**
+     * This method sets the Runnable that is run every time the undo/redo history or the
+     * position in it changes. The Control class uses this to keep the history slider up to date.
+     * @param listener
+     */
+    public void setHistoryListener(Runnable listener) {
+        this.historyListener = listener;
+    }
+
+    /**
+     * This helper method lets the history listener (if there is one) know that the history
+     * has changed.
+     */
+    private void historyChanged() {
+        if (this.historyListener != null) {
+            this.historyListener.run();
+        }
+    }
+
+    /**
+     * This method turns history mode on or off, and is invoked when the history mode check box
+     * is toggled. In history mode, undo and redo restore checkpoints of the whole document
+     * instead of reversing commands one by one, so they take the same time whatever the edit.
+     * @param enabled
+     */
+    public void setHistoryMode(boolean enabled) {
+        this.historyMode = enabled;
+    }
+
+    /**
+     * This method turns compression of paged saves on or off, and is invoked when the compress
+     * saves check box is toggled. It takes effect on the next save, for the chunks that save
+     * writes.
+     * @param enabled
+     */
+    public void setCompressSaves(boolean enabled) {
+        this.compressSaves = enabled;
+    }
+
+    /**
+     * This method adds a new command to the undos stack. The command is passed as an argument.
+     * The redos stack is then cleared, and a new snapshot of the document is published and
+     * recorded as a checkpoint in the history, and the layers are brought up to date with it.
+     * @param command
+     */
+    private void newCommand(Command command) {
+        this.undos.push(command);
+        this.redos.clear();
+        if (!this.loading) {
+            this.history.record(this.document.publish(this.saveables));
+            this.refreshViews();
+            this.historyChanged();
+            this.publishMutation(MutationKind.EXECUTED, command);
+        }
+    }
+
+    /**
+     * This method publishes a new snapshot of the drawing and uses it to replace the latest
+     * checkpoint in the history. It is used once a line or shape is done being drawn, since its
+     * command (and checkpoint) were created when the mouse was first pressed. Subscribers of the
+     * mutation stream are sent the finished command again, with the updated snapshot.
+     */
+    private void updateLatestCheckpoint() {
+        if (!this.loading && !this.undos.isEmpty()) {
+            this.history.replaceCurrent(this.document.publish(this.saveables));
+            this.refreshViews();
+            this.publishMutation(MutationKind.EXECUTED, this.undos.peek());
+        }
+    }
+
+    /**
+     * This method publishes a new snapshot of the drawing to the document, so that readers on
+     * other threads see the result of the latest command. While a file is being loaded, nothing
+     * is published until the whole file has been read.
+     */
+    private void publishSnapshot() {
+        if (!this.loading) {
+            this.document.publish(this.saveables);
+        }
+    }
+
+    /**
+     * This method returns the most recently published snapshot of the drawing. Unlike the
+     * rest of this class, it is safe to call from any thread (for example, from an autosave
+     * or export thread), and it never blocks the editor.
+     * @return
+     */
+    public DocumentSnapshot getSnapshot() {
+        return this.document.getSnapshot();
+    }
+
+    /**
+     * This method returns the stream of changes to the drawing. Subscribers receive a
+     * MutationEvent for every command that is carried out, undone, or redone (with the type of
+     * the command and the shapes it changed), for drags in progress, and for loads and jumps
+     * through the history. Events are delivered on a
+     * background thread, with a separate buffer per subscriber, so a slow subscriber never holds
+     * up the editor.
+     * @return
+     */
+    public Flow.Publisher<MutationEvent> getMutations() {
+        return this.mutations;
+    }
+
+    /**
+     * This helper method sends a MutationEvent of the given kind, carrying the latest snapshot,
+     * the type of the given command (if there is one), and the changes since the snapshot of the
+     * previous event, to the subscribers of the mutation stream. The changes are worked out here
+     * rather than taken from refreshViews(), since the views may be refreshed more than once
+     * between two events (an undone Batch restores its checkpoint, and then undo refreshes them
+     * again); a RESYNC event carries no changes. The event is only buffered here; it is
+     * delivered on a background thread.
+     * @param kind
+     * @param command
+     */
+    private void publishMutation(MutationKind kind, Command command) {
+        CommandType commandType = null;
+        if (command != null) {
+            commandType = command.getType();
+        }
+        DocumentSnapshot snapshot = this.document.getSnapshot();
+        SnapshotChanges changes = null;
+        if (kind != MutationKind.RESYNC) {
+            changes = SnapshotChanges.between(this.announcedSnapshot, snapshot);
+        }
+        this.announcedSnapshot = snapshot;
+        this.mutations.publish(new MutationEvent(kind, commandType, snapshot, changes, null));
+    }
+
+    /**
+     * This helper method brings the layers, the group tree, and the snap index up to date with
+     * the latest snapshot of the drawing, so the bitmap of any layer that changed (other than
+     * the active one) is redrawn, the boxes of the groups whose shapes changed are updated, and
+     * those shapes' edges and centers are moved in the snap index. The changes since the
+     * snapshot the views were last brought up to date with are worked out once, from the parts
+     * of the two snapshots that are not shared, and handed to the views. While a file is being
+     * loaded, nothing is updated until the whole file has been read.
+     */
+    private void refreshViews() {
+        if (!this.loading) {
+            DocumentSnapshot snapshot = this.document.getSnapshot();
+            SnapshotChanges changes = SnapshotChanges.between(this.viewedSnapshot, snapshot);
+            this.layerStack.refresh(changes);
+            this.groupTree.refresh(changes);
+            this.snapIndex.refresh(changes);
+            this.viewedSnapshot = snapshot;
+        }
+    }
+
+    /**
+     * This method adds a new layer on top of the others and makes it the active layer, and is
+     * invoked when the new layer button is pressed.
+     */
+    public void addLayer() {
+        this.checkDeselect();
+        this.layerStack.addLayer();
+        this.layersChanged();
+    }
+
+    /**
+     * This method makes the layer at the given position the active layer, and is invoked when
+     * a layer is chosen from the list of layers. Positions count from the top layer, which is
+     * at position 0, in the same order as getLayerNames().
+     * @param position
+     */
+    public void selectLayer(int position) {
+        List<Layer> layers = this.layerStack.getLayers();
+        Layer chosen = layers.get(layers.size() - 1 - position);
+        if (chosen != this.layerStack.getActive()) {
+            this.checkDeselect();
+            this.layerStack.setActive(chosen);
+            this.layersChanged();
+        }
+    }
+
+    /**
+     * This method shows or hides the active layer, and is invoked when the show layer check box
+     * is toggled. The selected shape is deselected when its layer is hidden.
+     * @param shown
+     */
+    public void setLayerVisible(boolean shown) {
+        if (!shown) {
+            this.checkDeselect();
+        }
+        this.layerStack.setVisible(this.layerStack.getActive(), shown);
+        this.layersChanged();
+    }
+
+    /**
+     * This method locks or unlocks the active layer, and is invoked when the lock layer check
+     * box is toggled. The selected shape is deselected when its layer is locked.
+     * @param locked
+     */
+    public void setLayerLocked(boolean locked) {
+        if (locked) {
+            this.checkDeselect();
+        }
+        this.layerStack.getActive().setLocked(locked);
+        this.layersChanged();
+    }
+
+    /**
+     * This method moves the active layer one place up the stack of layers, and is invoked when
+     * the raise layer button is pressed.
+     */
+    public void raiseLayer() {
+        this.layerStack.moveActive(1);
+        this.layersChanged();
+    }
+
+    /**
+     * This method moves the active layer one place down the stack of layers, and is invoked when
+     * the lower layer button is pressed.
+     */
+    public void lowerLayer() {
+        this.layerStack.moveActive(-1);
+        this.layersChanged();
+    }
+
+    /**
+     * This method returns the names of the layers, from the top layer down.
+     * @return
+     */
+    public List<String> getLayerNames() {
+        List<Layer> layers = this.layerStack.getLayers();
+        ArrayList<String> names = new ArrayList<>();
+        for (int index = layers.size() - 1; index >= 0; index--) {
+            names.add(layers.get(index).getName());
+        }
+        return names;
+    }
+
+    /**
+     * This method returns the position of the active layer, counting from the top layer.
+     * @return
+     */
+    public int getActiveLayerPosition() {
+        List<Layer> layers = this.layerStack.getLayers();
+        return layers.size() - 1 - layers.indexOf(this.layerStack.getActive());
+    }
+
+    /**
+     * This method returns whether the active layer is shown.
+     * @return
+     */
+    public boolean isLayerVisible() {
+        return this.layerStack.getActive().isVisible();
+    }
+
+    /**
+     * This method returns whether the active layer is locked.
+     * @return
+     */
+    public boolean isLayerLocked() {
+        return this.layerStack.getActive().isLocked();
+    }
+
+    /**
+     * This method sets the Runnable that is run every time the layers, or the active layer,
+     * change. The Control class uses this to keep the layer controls up to date.
+     * @param listener
+     */
+    public void setLayerListener(Runnable listener) {
+        this.layerListener = listener;
+    }
+
+    /**
+     * This helper method lets the layer listener (if there is one) know that the layers have
+     * changed.
+     */
+    private void layersChanged() {
+        if (this.layerListener != null) {
+            this.layerListener.run();
+        }
+    }
+
+    /**
+     * This method graphically and logically clears the screen. It deselects the selected
+     * shape, clears the arraylists of shapes and saveables, and then clears the stack of undos
+     * and the stack of redos. The drawing is left with a single, empty layer, whose empty pane
+     * replaces the panes that held the nodes of the old layers.
+     */
+    private void clearScreen() {
+        this.checkDeselect();
+        this.shapes.clear();
+        this.saveables.clear();
+        this.layerStack.reset();
+        this.geometryPool.clear();
+        this.symbolRasters.clear();
+        this.groupTree.clear();
+        this.snapIndex.clear();
+        this.viewedSnapshot = new DocumentSnapshot(0, PersistentList.empty());
+        this.currentSymbol = null;
+        this.diffOverlay.clear();
+        this.undos.clear();
+        this.redos.clear();
+    }
+
+    /**
+     * This method saves the current drawing to a file, and is invoked when the save button is
+     * pressed. It first retrieves the name of the file to be written in, and opens it for writing.
+     * The layers are written first: "layers", then how many there are, then the id of each one
+     * (from the bottom layer up) followed by 1 or 0 for whether it is shown and for whether it is
+     * locked. Each symbol that is placed in the drawing is written next, once: "symbol", its id
+     * and version, how many members it has, and then each member, written like a shape of its
+     * type. Then, for each Saveable in the saveables array, the writeToFile() method from the Saveable
+     * interface is called on the Saveable, preceded by "layer" and the id of its layer whenever
+     * that differs from the previous Saveable's, and by "groups", how many groups it is in, and
+     * their ids (from the outermost one in) whenever those differ. Shapes that are repeated (the same shape, just
+     * somewhere else) are only written out once: the first one is preceded by "define" and a
+     * definition number, and every other one is written as "use", the definition number, and the
+     * coordinates of its center (or of a line's first point). Once the loop is exited, the file is closed for writing.
+     * A file whose name ends in PAGED_FILE_SUFFIX is saved as a paged file instead, by savePaged().
+     */
+    public void save() {
+        String filename = CS15FileIO.getFileName(true, this.sketchyPane.getScene().getWindow());
+        if (filename != null && filename.endsWith(Constants.PAGED_FILE_SUFFIX)) {
+            this.savePaged(new File(filename));
+        }
+        else if (filename != null) {
+            CS15FileIO io = new CS15FileIO();
+            io.openWrite(filename);
+            List<Layer> layers = this.layerStack.getLayers();
+            io.writeString("layers");
+            io.writeInt(layers.size());
+            for (Layer layer : layers) {
+                io.writeInt(layer.getId());
+                io.writeInt(layer.isVisible() ? 1 : 0);
+                io.writeInt(layer.isLocked() ? 1 : 0);
+            }
+            ArrayList<ShapeRecord> records = new ArrayList<>();
+            LinkedHashSet<Symbol> symbols = new LinkedHashSet<>();
+            for (ShapeRecord record : this.document.publish(this.saveables)) {
+                records.add(record);
+                if (record.getSymbol() != null) {
+                    symbols.add(record.getSymbol());
+                }
+            }
+            for (Symbol symbol : symbols) {
+                io.writeString("symbol");
+                io.writeInt(symbol.getId());
+                io.writeInt(symbol.getVersion());
+                io.writeInt(symbol.getMembers().size());
+                for (ShapeRecord member : symbol.getMembers()) {
+                    RecordFormat.write(io, member);
+                }
+            }
+            int[] repeats = GeometryPool.findRepeats(records);
+            boolean[] repeated = new boolean[records.size()];
+            for (int i=0; i<records.size(); i++) {
+                if (repeats[i] >= 0) {
+                    repeated[repeats[i]] = true;
+                }
+            }
+            int[] definitions = new int[records.size()];
+            int definitionCount = 0;
+            int currentLayer = 0;
+            int[] currentGroups = null;
+            for (int i=0; i<records.size(); i++) {
+                Saveable save = this.saveables.get(i);
+                if (save.getLayer() != currentLayer) {
+                    currentLayer = save.getLayer();
+                    io.writeString("layer");
+                    io.writeInt(currentLayer);
+                }
+                if (!Arrays.equals(records.get(i).getGroups(), currentGroups)) {
+                    currentGroups = records.get(i).getGroups();
+                    io.writeString("groups");
+                    io.writeInt(currentGroups == null ? 0 : currentGroups.length);
+                    if (currentGroups != null) {
+                        for (int group : currentGroups) {
+                            io.writeInt(group);
+                        }
+                    }
+                }
+                if (repeats[i] >= 0) {
+                    io.writeString("use");
+                    io.writeInt(definitions[repeats[i]]);
+                    io.writeDouble(records.get(i).getCenterX());
+                    io.writeDouble(records.get(i).getCenterY());
+                    continue;
+                }
+                if (repeated[i]) {
+                    definitions[i] = definitionCount;
+                    definitionCount++;
+                    io.writeString("define");
+                    io.writeInt(definitions[i]);
+                }
+                save.writeToFile(io);
+            }
+            io.closeWrite();
+        }
+    }
+
+    /**
+     * This helper method saves the drawing to a paged file. If the drawing was last saved to
+     * (or loaded from) the same paged file, only the chunks holding shapes that changed since
+     * then are written, along with a new index; otherwise the whole drawing is written to it.
+     * The chunks written are compressed if compressed saves are on.
+     * @param file
+     */
+    private void savePaged(File file) {
+        ArrayList<int[]> layers = new ArrayList<>();
+        for (Layer layer : this.layerStack.getLayers()) {
+            layers.add(new int[] {layer.getId(), layer.isVisible() ? 1 : 0, layer.isLocked() ? 1 : 0});
+        }
+        List<ShapeRecord> records = this.document.publish(this.saveables).getRecords().toArrayList();
+        try {
+            if (this.pagedDrawing != null && this.pagedDrawing.getFile().equals(file.getAbsoluteFile())) {
+                this.pagedDrawing.setCompressed(this.compressSaves);
+                this.pagedDrawing.save(layers, records);
+            }
+            else {
+                this.pagedDrawing = PagedDrawing.create(file, layers, records, this.compressSaves);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not save " + file, e);
+        }
+    }
+
+    /**
+     * This method loads a file containing a drawing, and is called when the load button is
+     * pressed. The chosen file is read first, without touching the screen: a token file is read
+     * into records by DrawingFilter, each on the layer named by the last "layer" entry (or on
+     * the bottom layer, for files saved without layers) and in the groups named by the last
+     * "groups" entry, with every "use" of a "define" written out in full at its coordinates,
+     * and every "instance" drawing the "symbol" read before it. A file whose name ends in
+     * PAGED_FILE_SUFFIX is read as a paged file instead, leaving out any shape whose record is
+     * damaged (its chunk is written again on the next save), and the paged drawing is kept so
+     * the next save to the same file only writes what changed. Only once the file has been read
+     * is the screen cleared, and each record added to the pane and to the arraylists, in groups
+     * given new ids (so they cannot be confused with groups already made in this session). Every
+     * line's points are interned in the geometry pool, so lines with the same points (whether
+     * they came from a "use" or not) share a single copy of them. A single snapshot of the
+     * document is published once the whole file has been read, and the history (and the undo
+     * stack) starts over from it, so the loaded drawing is the oldest point undo can reach.
+     */
+    public void load() {
+        String filename = CS15FileIO.getFileName(false, this.sketchyPane.getScene().getWindow());
+        if (filename != null) {
+            this.loadFile(filename);
+        }
+    }
+
+    /**
+     * This method shows every drawing in a folder, with its preview, and is called when the
+     * browse button is pressed. The chosen folder is shown in a DrawingBrowser, whose previews
+     * come from the thumbnail cache in the user's home directory (made the first time it is
+     * needed), and the drawing whose tile is clicked is loaded, as load() loads a file.
+     */
+    public void browse() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Browse Drawings");
+        File folder = chooser.showDialog(this.sketchyPane.getScene().getWindow());
+        if (folder == null) {
+            return;
+        }
+        if (this.thumbnailCache == null) {
+            try {
+                this.thumbnailCache = new ThumbnailCache(new File(System.getProperty("user.home"),
+                        Constants.THUMBNAIL_CACHE_DIRECTORY), Constants.THUMBNAIL_CACHE_ENTRIES);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not open the thumbnail cache", e);
+            }
+        }
+        new DrawingBrowser(this.thumbnailCache, (File file) -> this.loadFile(file.getPath()))
+                .show(folder, this.sketchyPane.getScene().getWindow());
+    }
+
+    /**
+     * This helper method loads the named file in place of the drawing, as load() describes.
+     * The whole file is read into records before anything on screen is touched, so a file that
+     * cannot be read (because it is not a drawing, or is damaged) leaves the drawing as it was,
+     * and the exception is thrown to the caller. Once the file has been read, the screen is
+     * cleared and the drawing is rebuilt from the records; the loading flag is set while that
+     * happens, and is always reset afterwards, even if rebuilding fails.
+     * @param filename
+     */
+    private void loadFile(String filename) {
+        File file = new File(filename);
+        PagedDrawing paged = null;
+        List<int[]> layers;
+        List<ShapeRecord> records;
+        if (filename.endsWith(Constants.PAGED_FILE_SUFFIX)) {
+            try {
+                paged = PagedDrawing.open(file);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + file, e);
+            }
+            layers = paged.getLayers();
+            records = paged.getRecords();
+        }
+        else {
+            layers = this.readTokenLayers(filename);
+            records = this.readTokenRecords(filename);
+        }
+
+        this.clearScreen();
+        this.pagedDrawing = paged;
+        this.loading = true;
+        try {
+            this.rebuild(layers, records);
+        }
+        finally {
+            this.loading = false;
+        }
+        this.undos.clear();
+        this.history.reset(this.document.publish(this.saveables));
+        if (this.pagedDrawing != null) {
+            this.pagedDrawing.adopt(this.document.getSnapshot().getRecords().toArrayList());
+        }
+        this.refreshViews();
+        this.layersChanged();
+        this.historyChanged();
+        this.publishMutation(MutationKind.RESYNC, null);
+    }
+
+    /**
+     * This helper method reads the list of layers of a token file, as {id, visible, locked}
+     * for each layer (a file saved without layers has a single layer with id 0).
+     * @param filename
+     * @return
+     */
+    private List<int[]> readTokenLayers(String filename) {
+        CS15FileIO io = new CS15FileIO();
+        io.openRead(filename);
+        try {
+            return DrawingFilter.readLayers(io);
+        }
+        finally {
+            io.closeRead();
+        }
+    }
+
+    /**
+     * This helper method reads every shape of a token file into records, in stacking order,
+     * each on its layer and in its groups, with every "use" of a definition written out in
+     * full and every "instance" pointing at the symbol read before it, as DrawingFilter.readAll()
+     * does. Nothing on screen is touched.
+     * @param filename
+     * @return
+     */
+    private List<ShapeRecord> readTokenRecords(String filename) {
+        CS15FileIO io = new CS15FileIO();
+        io.openRead(filename);
+        try {
+            return DrawingFilter.readAll(io);
+        }
+        finally {
+            io.closeRead();
+        }
+    }
+
+    /**
+     * This helper method builds the drawing from the layers and records read from a file. The
+     * layers replace the drawing's layers, and each record is added on top of the others, in
+     * the groups it was saved in (which are given new ids, so they cannot be confused with
+     * groups already made in this session), with its points interned in the geometry pool so
+     * lines with the same points share a single copy of them.
+     * @param layers
+     * @param records
+     */
+    private void rebuild(List<int[]> layers, List<ShapeRecord> records) {
+        ArrayList<Layer> loaded = new ArrayList<>();
+        for (int[] saved : layers) {
+            Layer layer = new Layer(saved[0]);
+            layer.setVisible(saved[1] != 0);
+            layer.setLocked(saved[2] != 0);
+            loaded.add(layer);
+        }
+        this.layerStack.setLayers(loaded);
+        HashMap<Integer, Integer> groupIds = new HashMap<>();
+        for (ShapeRecord record : records) {
+            int[] groups = record.getGroups();
+            if (groups != null) {
+                groups = groups.clone();
+                for (int i=0; i<groups.length; i++) {
+                    groups[i] = groupIds.computeIfAbsent(groups[i], (Integer saved) -> ShapeRecord.newId());
+                }
+            }
+            this.addFromRecord(this.geometryPool.intern(record.withGroups(groups)));
+        }
+    }
+
+    /**
+     * This method compares the drawing on screen with a saved drawing, and is called when the
+     * compare button is pressed. The chosen file is read into records (without touching the
+     * scene graph, and through PagedDrawing if it is a paged file, as load() does) as the old
+     * version, and the changes are marked on the diff overlay, as showDiff() does. It returns the diff, or null if no file was chosen.
+     * @return
+     */
+    public DrawingDiff compareWithFile() {
+        String filename = CS15FileIO.getFileName(false, this.sketchyPane.getScene().getWindow());
+        if (filename == null) {
+            return null;
+        }
+        List<ShapeRecord> saved;
+        if (filename.endsWith(Constants.PAGED_FILE_SUFFIX)) {
+            try {
+                saved = PagedDrawing.open(new File(filename)).getRecords();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + filename, e);
+            }
+        }
+        else {
+            saved = this.readTokenRecords(filename);
+        }
+        return this.showDiff(saved);
+    }
+
+    /**
+     * This method compares the drawing on screen with the given old version of it, marks every
+     * shape that was added, removed, moved, recolored, moved to another layer, or reshaped on the
+     * diff overlay, and returns the diff. The markers show the drawing as it was when this was
+     * called; they stay until hideDiff() is called or another drawing is loaded.
+     * @param before
+     * @return
+     */
+    public DrawingDiff showDiff(List<ShapeRecord> before) {
+        DrawingDiff diff = DrawingDiff.compare(before, this.document.publish(this.saveables).getRecords().toArrayList());
+        this.diffOverlay.show(diff);
+        return diff;
+    }
+
+    /**
+     * This method removes every marker from the diff overlay, and is called when the hide
+     * changes button is pressed.
+     */
+    public void hideDiff() {
+        this.diffOverlay.clear();
     }
 
     /**
@@ -0,0 +1,688 @@
+package sketchy.main;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.scene.paint.Color;
+import sketchy.document.BulkHitTester;
+import sketchy.document.DrawingDiff;
+import sketchy.document.ShapeChange;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeStore;
+import sketchy.document.ShapeType;
+import sketchy.document.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the SketchyBatch class. It is a command-line program (it does not open a window) for
+ * processing many saved drawings at once. Every drawing is streamed through a DrawingFilter,
+ * entry by entry, without building a scene graph. Drawings are handled in parallel by a fixed
+ * number of workers, and only a few drawings per worker are ever waiting in the queue (once it
+ * is full, the main thread handles the next drawing itself), so thousands of files can be
+ * handed to it at once. Each drawing that fails is reported, and the others go on.
+ *
+ * Usage: SketchyBatch [-j workers] [-o output directory] command files...
+ *
+ * stats                  print what is in each drawing, and the totals
+ * recolor r g b          draw every shape in one color (r, g, and b are from 0 to 255)
+ * strip-lines            remove every line
+ * flatten                write every repeated shape out in full, for readers without definitions
+ * merge output           merge the drawings, in order, into a single drawing, with all their layers
+ * convert                turn each paged drawing into a text one, and each text drawing into a paged one
+ * diff                   list how the second of two drawings differs from the first, shape by shape
+ * verify                 check every chunk of each paged drawing, and count the damaged shapes
+ * region x0 y0 x1 y1     list the shapes of each drawing that reach into a region
+ *
+ * Except for stats, merge, diff, verify, and region, each drawing is written to a file of the same
+ * name in the output directory, which must be given and must not be where the drawings are; convert
+ * adds PAGED_FILE_SUFFIX to the name of a text drawing, and takes it off the name of a paged one.
+ * verify only takes paged drawings, which it reads through PagedDrawing instead, diff and region
+ * take either kind, and the other commands only take text drawings, so paged drawings are
+ * converted to be used with them.
+ */
+public class SketchyBatch {
+
+    private static final int QUEUED_PER_WORKER = 2;
+
+    private int workers;
+    private File outputDirectory;
+
+    /**
+     * This is the SketchyBatch constructor. It takes in the number of workers, and the
+     * directory to write the processed drawings to (or null).
+     * @param workerCount
+     * @param directory
+     */
+    public SketchyBatch(int workerCount, File directory) {
+        this.workers = workerCount;
+        this.outputDirectory = directory;
+    }
+
+    /**
+     * This is the main method. It reads the options and the command, runs the command, and
+     * exits with status 1 if any drawing failed (or the command was wrong).
+     * @param argv
+     */
+    public static void main(String[] argv) {
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        File directory = null;
+        int next = 0;
+        while (next < argv.length && argv[next].startsWith("-")) {
+            if (argv[next].equals("-j") && next + 1 < argv.length) {
+                workerCount = Math.max(1, Integer.parseInt(argv[next + 1]));
+            }
+            else if (argv[next].equals("-o") && next + 1 < argv.length) {
+                directory = new File(argv[next + 1]);
+            }
+            else {
+                usage();
+                return;
+            }
+            next += 2;
+        }
+        if (next >= argv.length) {
+            usage();
+            return;
+        }
+        String command = argv[next];
+        next++;
+        SketchyBatch batch = new SketchyBatch(workerCount, directory);
+        boolean succeeded;
+        try {
+            switch (command) {
+                case "stats":
+                    succeeded = batch.stats(files(argv, next));
+                    break;
+                case "recolor":
+                    Color color = Color.rgb(Integer.parseInt(argv[next]), Integer.parseInt(argv[next + 1]),
+                            Integer.parseInt(argv[next + 2]));
+                    succeeded = batch.transform(files(argv, next + 3), color, false, false);
+                    break;
+                case "strip-lines":
+                    succeeded = batch.transform(files(argv, next), null, true, false);
+                    break;
+                case "flatten":
+                    succeeded = batch.transform(files(argv, next), null, false, true);
+                    break;
+                case "merge":
+                    succeeded = batch.merge(argv[next], files(argv, next + 1));
+                    break;
+                case "convert":
+                    succeeded = batch.convert(files(argv, next));
+                    break;
+                case "diff":
+                    List<String> pair = files(argv, next);
+                    if (pair.size() != 2) {
+                        throw new IllegalArgumentException("diff compares exactly two drawings");
+                    }
+                    succeeded = batch.diff(pair.get(0), pair.get(1));
+                    break;
+                case "verify":
+                    succeeded = batch.verify(files(argv, next));
+                    break;
+                case "region":
+                    succeeded = batch.region(Double.parseDouble(argv[next]), Double.parseDouble(argv[next + 1]),
+                            Double.parseDouble(argv[next + 2]), Double.parseDouble(argv[next + 3]),
+                            files(argv, next + 4));
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            succeeded = false;
+        }
+        if (!succeeded) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method prints what is in each of the given drawings, in order, and then the totals.
+     * It returns whether every drawing could be read.
+     * @param files
+     * @return
+     */
+    public boolean stats(List<String> files) {
+        DrawingStats total = new DrawingStats();
+        List<Future<DrawingStats>> results = this.runAll(files, (String file) -> {
+            CS15FileIO in = new CS15FileIO();
+            in.openRead(file);
+            try {
+                return new DrawingFilter(null, null, false, false).copy(in, null);
+            }
+            finally {
+                in.closeRead();
+            }
+        });
+        boolean succeeded = true;
+        for (int i=0; i<files.size(); i++) {
+            DrawingStats stats = this.await(files.get(i), results.get(i));
+            if (stats == null) {
+                succeeded = false;
+                continue;
+            }
+            System.out.println(files.get(i) + ": " + stats);
+            total.add(stats);
+        }
+        System.out.println("total: " + total);
+        return succeeded;
+    }
+
+    /**
+     * This method streams each of the given drawings through a DrawingFilter with the given
+     * options, into a file of the same name in the output directory, and prints the totals of
+     * what was written. A drawing that fails leaves no output file. It returns whether every
+     * drawing was written.
+     * @param files
+     * @param recolor
+     * @param stripLines
+     * @param flatten
+     * @return
+     */
+    public boolean transform(List<String> files, Color recolor, boolean stripLines, boolean flatten) {
+        this.checkOutputs(files, false);
+        List<Future<DrawingStats>> results = this.runAll(files, (String file) -> {
+            File output = this.outputFor(file, false);
+            CS15FileIO in = new CS15FileIO();
+            CS15FileIO out = new CS15FileIO();
+            in.openRead(file);
+            out.openWrite(output.getPath());
+            boolean written = false;
+            try {
+                DrawingStats stats = new DrawingFilter(out, recolor, stripLines, flatten).copy(in, null);
+                written = true;
+                return stats;
+            }
+            finally {
+                in.closeRead();
+                out.closeWrite();
+                if (!written) {
+                    output.delete();
+                }
+            }
+        });
+        DrawingStats total = new DrawingStats();
+        boolean succeeded = true;
+        for (int i=0; i<files.size(); i++) {
+            DrawingStats stats = this.await(files.get(i), results.get(i));
+            if (stats == null) {
+                succeeded = false;
+            }
+            else {
+                total.add(stats);
+            }
+        }
+        System.out.println("wrote " + total + " to " + this.outputDirectory);
+        return succeeded;
+    }
+
+    /**
+     * This method converts each of the given drawings into the other format, into the output
+     * directory: a paged drawing is read through PagedDrawing and written as a text drawing
+     * (without its extension), and a text drawing is read into records with DrawingFilter and
+     * written as a paged drawing (with PAGED_FILE_SUFFIX added). Shapes keep their layers,
+     * groups, and symbols; repeated shapes are written out in full. A paged drawing with damaged
+     * shapes fails, rather than being written without them. A drawing that fails leaves no output
+     * file. It prints the totals of what was converted, and returns whether every drawing was.
+     * @param files
+     * @return
+     */
+    public boolean convert(List<String> files) {
+        this.checkOutputs(files, true);
+        List<Future<DrawingStats>> results = this.runAll(files, (String file) -> {
+            File output = this.outputFor(file, true);
+            if (file.endsWith(Constants.PAGED_FILE_SUFFIX)) {
+                PagedDrawing paged = PagedDrawing.open(new File(file));
+                if (paged.getDamagedCount() > 0) {
+                    throw new IOException(paged.getDamagedCount() + " shapes are damaged");
+                }
+                CS15FileIO out = new CS15FileIO();
+                out.openWrite(output.getPath());
+                boolean written = false;
+                try {
+                    DrawingStats stats = new DrawingFilter(out, null, false, false).writeAll(paged.getLayers(),
+                            paged.getRecords());
+                    written = true;
+                    return stats;
+                }
+                finally {
+                    out.closeWrite();
+                    if (!written) {
+                        output.delete();
+                    }
+                }
+            }
+            CS15FileIO in = new CS15FileIO();
+            in.openRead(file);
+            List<int[]> layers;
+            try {
+                layers = DrawingFilter.readLayers(in);
+            }
+            finally {
+                in.closeRead();
+            }
+            in.openRead(file);
+            List<ShapeRecord> records;
+            try {
+                records = DrawingFilter.readAll(in);
+            }
+            finally {
+                in.closeRead();
+            }
+            PagedDrawing.create(output, layers, records, false);
+            return new DrawingFilter(null, null, false, false).writeAll(layers, records);
+        });
+        DrawingStats total = new DrawingStats();
+        boolean succeeded = true;
+        for (int i=0; i<files.size(); i++) {
+            DrawingStats stats = this.await(files.get(i), results.get(i));
+            if (stats == null) {
+                succeeded = false;
+            }
+            else {
+                total.add(stats);
+            }
+        }
+        System.out.println("converted " + total + " into " + this.outputDirectory);
+        return succeeded;
+    }
+
+    /**
+     * This method merges the given drawings, in order (so the first is at the bottom), into a
+     * single drawing in the given file. The merged drawing has every layer of every drawing,
+     * renumbered and stacked in the same order. Since there is only one output, the drawings are
+     * streamed into it one at a time; any drawing that cannot be read stops the merge, and no
+     * output is left. It returns whether the merge succeeded.
+     * @param output
+     * @param files
+     * @return
+     */
+    public boolean merge(String output, List<String> files) {
+        ArrayList<int[]> layers = new ArrayList<>();
+        ArrayList<HashMap<Integer, Integer>> layerIds = new ArrayList<>();
+        for (String file : files) {
+            CS15FileIO in = new CS15FileIO();
+            in.openRead(file);
+            HashMap<Integer, Integer> ids = new HashMap<>();
+            try {
+                for (int[] layer : DrawingFilter.readLayers(in)) {
+                    ids.put(layer[0], layers.size());
+                    layers.add(new int[] {layers.size(), layer[1], layer[2]});
+                }
+            }
+            finally {
+                in.closeRead();
+            }
+            layerIds.add(ids);
+        }
+        CS15FileIO out = new CS15FileIO();
+        out.openWrite(output);
+        DrawingStats total = new DrawingStats();
+        DrawingFilter filter = new DrawingFilter(out, null, false, false);
+        boolean written = false;
+        try {
+            filter.writeLayers(layers);
+            for (int i=0; i<files.size(); i++) {
+                CS15FileIO in = new CS15FileIO();
+                in.openRead(files.get(i));
+                try {
+                    total.add(filter.copy(in, layerIds.get(i)));
+                }
+                catch (RuntimeException e) {
+                    System.err.println(files.get(i) + ": " + e);
+                    return false;
+                }
+                finally {
+                    in.closeRead();
+                }
+            }
+            written = true;
+        }
+        finally {
+            out.closeWrite();
+            if (!written) {
+                new File(output).delete();
+            }
+        }
+        System.out.println("merged " + total + " into " + output);
+        return true;
+    }
+
+    /**
+     * This method compares two drawings with a DrawingDiff, and prints each shape that was
+     * added, removed, or changed (with where it was and where it is), and then how many shapes
+     * changed in each way. Both drawings are read in full, with every use written out, and
+     * either of them may be a paged drawing. It
+     * returns whether both drawings could be read.
+     * @param oldFile
+     * @param newFile
+     * @return
+     */
+    public boolean diff(String oldFile, String newFile) {
+        List<ShapeRecord> before = readAll(oldFile);
+        List<ShapeRecord> after = readAll(newFile);
+        if (before == null || after == null) {
+            return false;
+        }
+        DrawingDiff diff = DrawingDiff.compare(before, after);
+        for (ShapeChange change : diff.getChanges()) {
+            StringBuilder line = new StringBuilder(change.getKinds().toString().toLowerCase());
+            ShapeRecord shown = change.getAfter() != null ? change.getAfter() : change.getBefore();
+            line.append(' ').append(shown.getType().name().toLowerCase());
+            if (change.getBefore() != null) {
+                line.append(" at ").append(change.getBefore().getCenterX()).append(' ')
+                        .append(change.getBefore().getCenterY());
+            }
+            if (change.getAfter() != null) {
+                line.append(change.getBefore() != null ? " now at " : " at ").append(change.getAfter().getCenterX())
+                        .append(' ').append(change.getAfter().getCenterY());
+            }
+            System.out.println(line);
+        }
+        System.out.println(diff);
+        return true;
+    }
+
+    /**
+     * This method checks every chunk of each of the given paged drawings, in order (the
+     * chunks of each drawing are checked in parallel), and prints how many of its shapes are
+     * damaged. It returns whether every drawing could be read and had no damaged shapes.
+     * @param files
+     * @return
+     */
+    public boolean verify(List<String> files) {
+        boolean succeeded = true;
+        for (String file : files) {
+            try {
+                int damaged = PagedDrawing.verify(new File(file));
+                System.out.println(file + ": " + (damaged == 0 ? "intact" : damaged + " damaged shapes"));
+                succeeded = succeeded && damaged == 0;
+            }
+            catch (IOException e) {
+                System.err.println(file + ": " + e);
+                succeeded = false;
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * This method prints, for each of the given drawings, every shape that reaches into the
+     * given region (its kind and where it is), and then how many there were. Only the chunks of
+     * a paged drawing that reach into the region are read, and a text drawing is read in full.
+     * The shapes read are then narrowed down by overlapping(), so a rotated rectangle or an
+     * ellipse only counts if the shape itself overlaps the region, not just its bounding box.
+     * It returns whether every drawing could be read.
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param files
+     * @return
+     */
+    public boolean region(double minX, double minY, double maxX, double maxY, List<String> files) {
+        BulkHitTester tester = BulkHitTester.create();
+        boolean succeeded = true;
+        for (String file : files) {
+            try {
+                List<ShapeRecord> read;
+                if (file.endsWith(Constants.PAGED_FILE_SUFFIX)) {
+                    read = PagedDrawing.readRegion(new File(file), minX, minY, maxX, maxY);
+                }
+                else {
+                    read = readAll(file);
+                    if (read == null) {
+                        succeeded = false;
+                        continue;
+                    }
+                }
+                List<ShapeRecord> found = overlapping(read, minX, minY, maxX, maxY, tester);
+                for (ShapeRecord record : found) {
+                    System.out.println(record.getType().name().toLowerCase() + " at " + record.getCenterX() + ' '
+                            + record.getCenterY());
+                }
+                System.out.println(file + ": " + found.size() + " shapes");
+            }
+            catch (IOException e) {
+                System.err.println(file + ": " + e);
+                succeeded = false;
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * This helper method returns the given records that reach into the given region, in order.
+     * The rectangles and ellipses are put into a ShapeStore and found with one scan of its
+     * columns by the given BulkHitTester, which tests the shapes themselves; lines and instances
+     * of symbols count if their bounding boxes overlap the region.
+     * @param records
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param tester
+     * @return
+     */
+    private static List<ShapeRecord> overlapping(List<ShapeRecord> records, double minX, double minY, double maxX,
+                                                 double maxY, BulkHitTester tester) {
+        ShapeStore store = new ShapeStore(records.size());
+        int[] indexOfHandle = new int[records.size()];
+        boolean[] overlaps = new boolean[records.size()];
+        for (int i=0; i<records.size(); i++) {
+            ShapeRecord record = records.get(i);
+            if (record.getType() == ShapeType.RECTANGLE || record.getType() == ShapeType.ELLIPSE) {
+                indexOfHandle[store.add(record)] = i;
+            }
+            else {
+                double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+                Symbol.addBounds(record, bounds);
+                overlaps[i] = bounds[0] <= maxX && bounds[2] >= minX && bounds[1] <= maxY && bounds[3] >= minY;
+            }
+        }
+        int[] handles = new int[store.size()];
+        int hits = tester.intersecting(store, minX, minY, maxX, maxY, handles);
+        for (int i=0; i<hits; i++) {
+            overlaps[indexOfHandle[handles[i]]] = true;
+        }
+        ArrayList<ShapeRecord> found = new ArrayList<>();
+        for (int i=0; i<records.size(); i++) {
+            if (overlaps[i]) {
+                found.add(records.get(i));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This helper method reads every shape in the given drawing (through PagedDrawing if it is a
+     * paged drawing, and with DrawingFilter if it is a text one), or reports the failure and
+     * returns null if it cannot be read.
+     * @param file
+     * @return
+     */
+    private static List<ShapeRecord> readAll(String file) {
+        if (file.endsWith(Constants.PAGED_FILE_SUFFIX)) {
+            try {
+                return PagedDrawing.open(new File(file)).getRecords();
+            }
+            catch (IOException | RuntimeException e) {
+                System.err.println(file + ": " + e);
+                return null;
+            }
+        }
+        CS15FileIO in = new CS15FileIO();
+        in.openRead(file);
+        try {
+            return DrawingFilter.readAll(in);
+        }
+        catch (RuntimeException e) {
+            System.err.println(file + ": " + e);
+            return null;
+        }
+        finally {
+            in.closeRead();
+        }
+    }
+
+    /**
+     * This helper method runs the given task on every file with the workers, and returns the
+     * results in the same order as the files. At most QUEUED_PER_WORKER files per worker wait
+     * in the queue; once it is full, the calling thread runs the next task itself, which keeps
+     * it from queueing any more until a worker catches up.
+     * @param files
+     * @param task
+     * @return
+     */
+    private List<Future<DrawingStats>> runAll(List<String> files, FileTask task) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(this.workers, this.workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUED_PER_WORKER * this.workers), new ThreadPoolExecutor.CallerRunsPolicy());
+        ArrayList<Future<DrawingStats>> results = new ArrayList<>();
+        try {
+            for (String file : files) {
+                results.add(pool.submit(() -> task.run(file)));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * This helper method waits for the result for the given file, and returns it, or reports
+     * the failure and returns null if the file could not be processed.
+     * @param file
+     * @param result
+     * @return
+     */
+    private DrawingStats await(String file, Future<DrawingStats> result) {
+        try {
+            return result.get();
+        }
+        catch (ExecutionException e) {
+            System.err.println(file + ": " + e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println(file + ": interrupted");
+        }
+        return null;
+    }
+
+    /**
+     * This helper method makes sure an output directory was given, and makes it, and checks
+     * that no two of the given drawings would be written to the same output file and that none
+     * would be written over itself, throwing an IllegalArgumentException if one would.
+     * @param files
+     * @param converting
+     */
+    private void checkOutputs(List<String> files, boolean converting) {
+        if (this.outputDirectory == null) {
+            throw new IllegalArgumentException("An output directory must be given with -o");
+        }
+        this.outputDirectory.mkdirs();
+        HashSet<File> outputs = new HashSet<>();
+        for (String file : files) {
+            File output = canonical(this.outputFor(file, converting));
+            if (!outputs.add(output)) {
+                throw new IllegalArgumentException("More than one drawing would be written to " + output.getName());
+            }
+            if (output.equals(canonical(new File(file)))) {
+                throw new IllegalArgumentException("Writing " + file + " would overwrite it");
+            }
+        }
+    }
+
+    /**
+     * This helper method returns the file in the output directory that the given drawing is
+     * written to: one of the same name, or, when converting, one whose name has PAGED_FILE_SUFFIX
+     * taken off (for a paged drawing) or added (for a text drawing).
+     * @param file
+     * @param converting
+     * @return
+     */
+    private File outputFor(String file, boolean converting) {
+        String name = new File(file).getName();
+        if (converting && name.endsWith(Constants.PAGED_FILE_SUFFIX)) {
+            name = name.substring(0, name.length() - Constants.PAGED_FILE_SUFFIX.length());
+        }
+        else if (converting) {
+            name = name + Constants.PAGED_FILE_SUFFIX;
+        }
+        return new File(this.outputDirectory, name);
+    }
+
+    /**
+     * This helper method returns the files named from the given position of the arguments on,
+     * or throws an IllegalArgumentException if there are none.
+     * @param argv
+     * @param from
+     * @return
+     */
+    private static List<String> files(String[] argv, int from) {
+        if (from >= argv.length) {
+            throw new IllegalArgumentException("No drawings were given");
+        }
+        return Arrays.asList(argv).subList(from, argv.length);
+    }
+
+    /**
+     * This helper method returns the canonical form of a file's path, so that two paths to the
+     * same file can be recognized.
+     * @param file
+     * @return
+     */
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        }
+        catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * This helper method prints how the program is used.
+     */
+    private static void usage() {
+        System.err.println("Usage: SketchyBatch [-j workers] [-o output directory] command files...");
+        System.err.println("  stats                print what is in each drawing, and the totals");
+        System.err.println("  recolor r g b        draw every shape in one color");
+        System.err.println("  strip-lines          remove every line");
+        System.err.println("  flatten              write every repeated shape out in full");
+        System.err.println("  merge output         merge the drawings into one, with all their layers");
+        System.err.println("  convert              turn paged drawings into text ones, and text drawings into paged ones");
+        System.err.println("  diff                 list how the second of two drawings differs from the first");
+        System.err.println("  verify               count the damaged shapes in each paged drawing");
+        System.err.println("  region x0 y0 x1 y1   list the shapes of each drawing that reach into a region");
+        System.exit(1);
+    }
+
+    /**
+     * This is the FileTask interface. It is the work the batch does on a single file.
+     */
+    private interface FileTask {
+
+        /**
+         * This method processes the given file, and returns what was in it.
+         * @param file
+         * @return
+         * @throws Exception
+         */
+        DrawingStats run(String file) throws Exception;
+    }
+}
@@ -0,0 +1,63 @@
+package sketchy.main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the SnapGuides class. It is the result of snapping a shape that is being dragged:
+ * how far to move the shape so that it snaps, and the guide lines to draw to show what it
+ * snapped to. Each guide is a line segment, given as its start and end points.
+ */
+public class SnapGuides {
+
+    private double dx;
+    private double dy;
+    private ArrayList<double[]> segments;
+
+    /**
+     * This is the SnapGuides constructor. It takes in how far to move the shape along x and y.
+     * There are no guides until they are added.
+     * @param moveX
+     * @param moveY
+     */
+    public SnapGuides(double moveX, double moveY) {
+        this.dx = moveX;
+        this.dy = moveY;
+        this.segments = new ArrayList<>();
+    }
+
+    /**
+     * This method is an accessor for how far to move the shape along x.
+     * @return
+     */
+    public double getDx() {
+        return this.dx;
+    }
+
+    /**
+     * This method is an accessor for how far to move the shape along y.
+     * @return
+     */
+    public double getDy() {
+        return this.dy;
+    }
+
+    /**
+     * This method adds a guide from (startX, startY) to (endX, endY).
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     */
+    public void addSegment(double startX, double startY, double endX, double endY) {
+        this.segments.add(new double[] {startX, startY, endX, endY});
+    }
+
+    /**
+     * This method returns the guides, each as startX, startY, endX, endY.
+     * @return
+     */
+    public List<double[]> getSegments() {
+        return this.segments;
+    }
+}
@@ -0,0 +1,298 @@
+package sketchy.main;
+
+import sketchy.document.ShapeRecord;
+import sketchy.document.SnapshotChanges;
+import sketchy.shapes.Saveable;
+import sketchy.shapes.ShapeTransform;
+import sketchy.shapes.SketchyShape;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This is the SnapIndex class. It snaps a shape that is being dragged to the other shapes:
+ * an edge or center of its bounding box to an edge or center of theirs, or its position to
+ * where the gap between it and its neighbor equals the gap between that neighbor and the next
+ * shape along (equal spacing). The edges and centers of every shape's box are kept in sorted
+ * EdgeIndexes, one per kind of coordinate on each axis, so each drag event costs a handful of
+ * O(log n) lookups however many shapes there are, and never looks at every shape.
+ *
+ * The indexes are brought up to date from the changes between each snapshot of the drawing and
+ * the one before it, which are found without walking the drawing. Only the shapes that were
+ * added, removed, or changed are taken out and put back in, which is O(log n) each. Spacing only looks at the nearest shapes along the axis, whether or not they line up
+ * with the dragged shape on the other axis.
+ */
+public class SnapIndex {
+
+    private static final int MIN = 0;
+    private static final int CENTER = 1;
+    private static final int MAX = 2;
+
+    private HashMap<Integer, Saveable> liveSaveables;
+    private HashMap<Integer, double[]> boxes;
+    private EdgeIndex[][] edges;
+
+    /**
+     * This is the SnapIndex constructor. It takes in the map from id to every Saveable that has
+     * been created, which is where the index finds each shape's bounding box. The index starts
+     * out empty.
+     * @param live
+     */
+    public SnapIndex(HashMap<Integer, Saveable> live) {
+        this.liveSaveables = live;
+        this.boxes = new HashMap<>();
+        this.edges = new EdgeIndex[2][3];
+        for (int axis = 0; axis < 2; axis++) {
+            for (int kind = MIN; kind <= MAX; kind++) {
+                this.edges[axis][kind] = new EdgeIndex();
+            }
+        }
+    }
+
+    /**
+     * This method empties the index.
+     */
+    public void clear() {
+        this.boxes.clear();
+        for (EdgeIndex[] axisEdges : this.edges) {
+            for (EdgeIndex index : axisEdges) {
+                index.clear();
+            }
+        }
+    }
+
+    /**
+     * This method brings the index up to date with the given changes, which must turn the
+     * snapshot the index was last brought up to date with into one that describes what is in the
+     * arraylist of saveables. Shapes that were added, removed, or changed have their edges and
+     * centers put back in the right places; the rest of the index is not looked at.
+     * @param changes
+     */
+    public void refresh(SnapshotChanges changes) {
+        for (ShapeRecord record : changes.getRemoved()) {
+            this.removeBox(record.getId());
+        }
+        for (ShapeRecord record : changes.getUpdated()) {
+            this.removeBox(record.getId());
+            this.addBox(record.getId());
+        }
+        for (ShapeRecord record : changes.getAdded()) {
+            this.addBox(record.getId());
+        }
+    }
+
+    /**
+     * This method works out how to snap the shape with the given id, if its bounding box were
+     * at the given place, to the other shapes. On each axis, the snap that moves the shape the
+     * least (and no further than the tolerance) wins, with lining up edges or centers preferred
+     * over equal spacing. The guides are placed where they will be once the shape is moved.
+     * @param id
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param tolerance
+     * @return
+     */
+    public SnapGuides snap(int id, double minX, double minY, double maxX, double maxY, double tolerance) {
+        double[] box = {minX, minY, maxX, maxY};
+        AxisSnap snapX = this.snapAxis(0, box, id, tolerance);
+        AxisSnap snapY = this.snapAxis(1, box, id, tolerance);
+        SnapGuides guides = new SnapGuides(snapX.offset, snapY.offset);
+        double[] moved = {minX + snapX.offset, minY + snapY.offset, maxX + snapX.offset, maxY + snapY.offset};
+        this.addGuides(0, snapX, moved, guides);
+        this.addGuides(1, snapY, moved, guides);
+        return guides;
+    }
+
+    /**
+     * This helper method finds the best snap along one axis (0 for x, 1 for y) for a box.
+     * First, each of the box's edges and its center is lined up with the nearest edge or center
+     * of another shape; then the box is spaced equally from its nearest neighbors before and
+     * after it, or centered between them.
+     * @param axis
+     * @param box
+     * @param id
+     * @param tolerance
+     * @return
+     */
+    private AxisSnap snapAxis(int axis, double[] box, int id, double tolerance) {
+        AxisSnap best = new AxisSnap(tolerance);
+        Set<Integer> self = Set.of(id);
+        double low = box[axis];
+        double high = box[axis + 2];
+        double[] features = {low, (low + high) / 2, high};
+        for (double feature : features) {
+            for (int kind = MIN; kind <= MAX; kind++) {
+                Map.Entry<Double, Integer> found = this.edges[axis][kind].nearest(feature, best.distance, self);
+                if (found != null && Math.abs(found.getKey() - feature) < best.distance) {
+                    best.align(found.getKey() - feature, found.getKey(), found.getValue());
+                }
+            }
+        }
+
+        //equal spacing after the neighbor before the box
+        Map.Entry<Double, Integer> before = this.edges[axis][MAX].below(low, self);
+        if (before != null) {
+            double[] neighbor = this.boxes.get(before.getValue());
+            Map.Entry<Double, Integer> further = this.edges[axis][MAX].below(neighbor[axis],
+                    Set.of(id, before.getValue()));
+            if (further != null && neighbor[axis] >= further.getKey()) {
+                double gap = neighbor[axis] - further.getKey();
+                best.space(neighbor[axis + 2] + gap - low, new double[] {further.getKey(), neighbor[axis],
+                        neighbor[axis + 2], neighbor[axis + 2] + gap});
+            }
+        }
+
+        //equal spacing before the neighbor after the box
+        Map.Entry<Double, Integer> after = this.edges[axis][MIN].above(high, self);
+        if (after != null) {
+            double[] neighbor = this.boxes.get(after.getValue());
+            Map.Entry<Double, Integer> further = this.edges[axis][MIN].above(neighbor[axis + 2],
+                    Set.of(id, after.getValue()));
+            if (further != null && further.getKey() >= neighbor[axis + 2]) {
+                double gap = further.getKey() - neighbor[axis + 2];
+                best.space(neighbor[axis] - gap - high, new double[] {neighbor[axis] - gap, neighbor[axis],
+                        neighbor[axis + 2], further.getKey()});
+            }
+        }
+
+        //centered between the neighbors on both sides
+        if (before != null && after != null && high - low <= after.getKey() - before.getKey()) {
+            double free = (after.getKey() - before.getKey() - (high - low)) / 2;
+            best.space(before.getKey() + free - low, new double[] {before.getKey(), before.getKey() + free,
+                    after.getKey() - free, after.getKey()});
+        }
+        return best;
+    }
+
+    /**
+     * This helper method adds the guides for one axis's snap, given the box where the shape
+     * will be: a line across both boxes through the coordinate that was lined up, or a line
+     * through the middle of the box across each of the equal gaps.
+     * @param axis
+     * @param snap
+     * @param moved
+     * @param guides
+     */
+    private void addGuides(int axis, AxisSnap snap, double[] moved, SnapGuides guides) {
+        int across = 1 - axis;
+        if (snap.target >= 0) {
+            double[] target = this.boxes.get(snap.target);
+            double from = Math.min(moved[across], target[across]);
+            double to = Math.max(moved[across + 2], target[across + 2]);
+            this.addSegment(axis, snap.value, from, snap.value, to, guides);
+        }
+        if (snap.gaps != null) {
+            double middle = (moved[across] + moved[across + 2]) / 2;
+            this.addSegment(axis, snap.gaps[0], middle, snap.gaps[1], middle, guides);
+            this.addSegment(axis, snap.gaps[2], middle, snap.gaps[3], middle, guides);
+        }
+    }
+
+    /**
+     * This helper method adds a guide given by its coordinates along the axis and across it.
+     * @param axis
+     * @param startAlong
+     * @param startAcross
+     * @param endAlong
+     * @param endAcross
+     * @param guides
+     */
+    private void addSegment(int axis, double startAlong, double startAcross, double endAlong, double endAcross,
+                            SnapGuides guides) {
+        if (axis == 0) {
+            guides.addSegment(startAlong, startAcross, endAlong, endAcross);
+        }
+        else {
+            guides.addSegment(startAcross, startAlong, endAcross, endAlong);
+        }
+    }
+
+    /**
+     * This helper method puts a shape's box (minX, minY, maxX, maxY), as it is now, into the
+     * indexes.
+     * @param id
+     */
+    private void addBox(int id) {
+        ShapeTransform bounds = ((SketchyShape) this.liveSaveables.get(id)).getTransform();
+        double[] box = {bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY()};
+        this.boxes.put(id, box);
+        for (int axis = 0; axis < 2; axis++) {
+            this.edges[axis][MIN].add(box[axis], id);
+            this.edges[axis][CENTER].add((box[axis] + box[axis + 2]) / 2, id);
+            this.edges[axis][MAX].add(box[axis + 2], id);
+        }
+    }
+
+    /**
+     * This helper method takes a shape's box out of the indexes, if it is in them.
+     * @param id
+     */
+    private void removeBox(int id) {
+        double[] box = this.boxes.remove(id);
+        if (box != null) {
+            for (int axis = 0; axis < 2; axis++) {
+                this.edges[axis][MIN].remove(box[axis], id);
+                this.edges[axis][CENTER].remove((box[axis] + box[axis + 2]) / 2, id);
+                this.edges[axis][MAX].remove(box[axis + 2], id);
+            }
+        }
+    }
+
+    /**
+     * This is the AxisSnap class. It holds the best snap found so far along one axis: how far
+     * it moves the shape, and either the coordinate it lines up with (and whose shape it is),
+     * or the two equal gaps (as from, to, from, to).
+     */
+    private static class AxisSnap {
+
+        private double offset;
+        private double distance;
+        private double value;
+        private int target;
+        private double[] gaps;
+
+        /**
+         * This is the AxisSnap constructor. It takes in the tolerance, which is how far the
+         * first snap found may move the shape. Until one is found, the shape is not moved.
+         * @param tolerance
+         */
+        private AxisSnap(double tolerance) {
+            this.offset = 0;
+            this.distance = tolerance;
+            this.target = -1;
+            this.gaps = null;
+        }
+
+        /**
+         * This method makes lining up with the given coordinate (of the shape with the given
+         * id), which moves the shape by the given offset, the best snap.
+         * @param move
+         * @param coordinate
+         * @param shapeId
+         */
+        private void align(double move, double coordinate, int shapeId) {
+            this.offset = move;
+            this.distance = Math.abs(move);
+            this.value = coordinate;
+            this.target = shapeId;
+            this.gaps = null;
+        }
+
+        /**
+         * This method makes the given equal spacing the best snap, if it moves the shape less
+         * than the best snap so far.
+         * @param move
+         * @param equalGaps
+         */
+        private void space(double move, double[] equalGaps) {
+            if (Math.abs(move) < this.distance) {
+                this.offset = move;
+                this.distance = Math.abs(move);
+                this.target = -1;
+                this.gaps = equalGaps;
+            }
+        }
+    }
+}
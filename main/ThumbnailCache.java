@@ -0,0 +1,222 @@
+package sketchy.main;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import sketchy.document.ShapeRecord;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This is the ThumbnailCache class. It keeps the previews of saved drawings in a directory on
+ * the disk, one compressed file per drawing, so that a folder of drawings can be shown again
+ * without reading any of them. A drawing's entry is named by a hash of its path, size, and
+ * when it was last changed, so saving a drawing again gives it a new entry instead of showing
+ * the old one, and looking a drawing up never reads the drawing itself.
+ *
+ * At most a given number of entries are kept, and the one that was used longest ago goes first.
+ * The order is kept in memory, and on the disk as when each entry file was last used (which
+ * is when a new cache over the same directory picks it up from). A drawing that is not in the
+ * cache is read as cheaply as it can be: a paged file from version 4 on only has its preview
+ * read, and any other drawing is read in full (without a scene graph) and drawn.
+ *
+ * Its methods are synchronized where they touch the entries, but drawings are read outside of
+ * that, so many threads can fill the cache at once.
+ */
+public class ThumbnailCache {
+
+    private static final String ENTRY_SUFFIX = ".preview";
+
+    private File directory;
+    private int capacity;
+    private LinkedHashMap<String, File> entries;
+
+    /**
+     * This is the ThumbnailCache constructor. It takes in the directory to keep the previews
+     * in (which is made if there is none) and how many to keep, and picks up the entries already
+     * in the directory, from the one used longest ago.
+     * @param cacheDirectory
+     * @param maxEntries
+     * @throws IOException
+     */
+    public ThumbnailCache(File cacheDirectory, int maxEntries) throws IOException {
+        this.directory = cacheDirectory;
+        this.capacity = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        Files.createDirectories(cacheDirectory.toPath());
+        File[] found = cacheDirectory.listFiles((File folder, String name) -> name.endsWith(ENTRY_SUFFIX));
+        if (found != null) {
+            Arrays.sort(found, Comparator.comparingLong(File::lastModified));
+            for (File entry : found) {
+                String name = entry.getName();
+                this.entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), entry);
+            }
+        }
+        this.evict();
+    }
+
+    /**
+     * This method returns the preview of the given drawing: from the cache if it is there, and
+     * otherwise read from the drawing, and then added to the cache. It throws an IOException if
+     * the drawing cannot be read.
+     * @param drawing
+     * @return
+     * @throws IOException
+     */
+    public DrawingPreview getPreview(File drawing) throws IOException {
+        String key = keyOf(drawing);
+        DrawingPreview cached = this.lookUp(key);
+        if (cached != null) {
+            return cached;
+        }
+        DrawingPreview preview = render(drawing);
+        this.store(key, preview);
+        return preview;
+    }
+
+    /**
+     * This method returns how many previews the cache holds.
+     * @return
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * This helper method returns the preview with the given key, and marks it as just used, or
+     * returns null if it is not in the cache (or its file cannot be read, in which case it is
+     * dropped).
+     * @param key
+     * @return
+     */
+    private synchronized DrawingPreview lookUp(String key) {
+        File entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = new InflaterInputStream(new BufferedInputStream(Files.newInputStream(entry.toPath())))) {
+            DrawingPreview preview = DrawingPreview.readFrom(new DataInputStream(in));
+            entry.setLastModified(System.currentTimeMillis());
+            return preview;
+        }
+        catch (IOException e) {
+            this.entries.remove(key);
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * This helper method writes the preview with the given key to a file of its own (first to a
+     * temporary file, which is then moved into place, so an entry is never half written), and
+     * drops the entries used longest ago if there are too many. A preview that cannot be written
+     * is simply not kept.
+     * @param key
+     * @param preview
+     */
+    private synchronized void store(String key, DrawingPreview preview) {
+        File entry = new File(this.directory, key + ENTRY_SUFFIX);
+        File temporary = new File(this.directory, key + ".tmp");
+        try {
+            try (OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary.toPath())))) {
+                DataOutputStream data = new DataOutputStream(out);
+                preview.writeTo(data);
+                data.flush();
+            }
+            Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            temporary.delete();
+            return;
+        }
+        this.entries.put(key, entry);
+        this.evict();
+    }
+
+    /**
+     * This helper method deletes the entries used longest ago until there are no more than
+     * the cache keeps.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, File>> oldest = this.entries.entrySet().iterator();
+        while (this.entries.size() > this.capacity && oldest.hasNext()) {
+            oldest.next().getValue().delete();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * This helper method returns the key of a drawing's entry: the SHA-256 hash, in hex, of its
+     * canonical path, its size, and when it was last changed.
+     * @param drawing
+     * @return
+     * @throws IOException
+     */
+    private static String keyOf(File drawing) throws IOException {
+        if (!drawing.isFile()) {
+            throw new IOException(drawing + " is not a file");
+        }
+        String identity = drawing.getCanonicalPath() + "\n" + drawing.length() + "\n" + drawing.lastModified();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte value : hash) {
+                key.append(String.format("%02x", value));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256", e);
+        }
+    }
+
+    /**
+     * This helper method reads a drawing's preview: only the preview, from a paged file that has
+     * one, and otherwise by reading the drawing's layers and records and drawing them.
+     * @param drawing
+     * @return
+     * @throws IOException
+     */
+    private static DrawingPreview render(File drawing) throws IOException {
+        if (drawing.getName().endsWith(Constants.PAGED_FILE_SUFFIX)) {
+            DrawingPreview saved = PagedDrawing.readPreview(drawing);
+            if (saved != null) {
+                return saved;
+            }
+            PagedDrawing paged = PagedDrawing.open(drawing);
+            return DrawingPreview.of(paged.getLayers(), paged.getRecords());
+        }
+        try {
+            CS15FileIO in = new CS15FileIO();
+            in.openRead(drawing.getPath());
+            List<int[]> layers = DrawingFilter.readLayers(in);
+            in.closeRead();
+            in.openRead(drawing.getPath());
+            List<ShapeRecord> records = DrawingFilter.readAll(in);
+            in.closeRead();
+            return DrawingPreview.of(layers, records);
+        }
+        catch (RuntimeException e) {
+            throw new IOException(drawing + " is not a drawing", e);
+        }
+    }
+}
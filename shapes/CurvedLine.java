@@ -1,21 +1,61 @@
 package sketchy.shapes;
 
 import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Polyline;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Affine;
+import sketchy.document.GeometryPool;
+import sketchy.document.LineTransform;
+import sketchy.document.SegmentIndex;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeType;
 import sketchy.main.Constants;
+import sketchy.main.Sketchy;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This is the CurvedLine class. It is a wrapper class for an instance of Polyline.
  * It represents a line that can be free-drawn by the user when the "PEN" option is
- * selected (radio buttons). This class implements the Saveable interface.
+ * selected (radio buttons). This class implements the SketchyShape interface, so a line can be
+ * selected, moved, rotated, and resized like the other shapes.
+ *
+ * The polyline's points are never rewritten when the line is moved, rotated, or resized.
+ * Instead, the line keeps a LineTransform (rotating and scaling about the center of its points'
+ * bounding box, then moving), which is handed to the polyline as an Affine, so every drag
+ * event costs the same however many points the line has. The transform is only applied to the
+ * points one by one when they are needed: when the line is saved, and when it is hit-tested
+ * (and then only the few segments its SegmentIndex finds near the point).
+ * The stroke width is divided by the transform's scale, so that the stroke looks as wide on
+ * screen after a resize as it did before (exactly so when the line is scaled evenly).
  */
-public class CurvedLine implements Saveable{
+public class CurvedLine implements SketchyShape{
 
     private Polyline polyline;
     private Pane sketchyPane;
     private Color color;
+    private double strokeWidth;
+    private boolean currentlySelected;
+    private int id;
+    private int layer;
+    private int[] groups;
+    private ShapeRecord record;
+    private ShapeRecord lastRecord;
+    private boolean pointsChanged;
+    private LineTransform lineTransform;
+    private Affine affine;
+    private Rectangle frame;
+    private ShapeTransform transform;
+    private SegmentIndex segments;
+    private GeometryPool pool;
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
 
     /**
      * This is the CurvedLine constructor. It takes in four parameters: two doubles,
@@ -32,7 +72,26 @@ public class CurvedLine implements Saveable{
         this.polyline = new Polyline(x, y);
         this.color = selectedColor;
         this.polyline.setStroke(this.color);
+        this.strokeWidth = width;
         this.polyline.setStrokeWidth(width);
+        this.currentlySelected = false;
+        this.id = ShapeRecord.newId();
+        this.layer = 0;
+        this.groups = null;
+        this.record = null;
+        this.lastRecord = null;
+        this.pointsChanged = true;
+        this.minX = x;
+        this.minY = y;
+        this.maxX = x;
+        this.maxY = y;
+        this.lineTransform = LineTransform.identity(x, y);
+        this.affine = new Affine();
+        this.polyline.getTransforms().add(this.affine);
+        this.frame = new Rectangle(x, y, 0, 0);
+        this.transform = new ShapeTransform();
+        this.segments = null;
+        this.pool = null;
     }
 
     /**
@@ -40,6 +99,7 @@ public class CurvedLine implements Saveable{
      * CurvedLine class to maintain encapsulation, as no other class should have access
      * to the wrapped polyline.
      */
+    @Override
     public void addToPane() {
         this.sketchyPane.getChildren().add(this.polyline);
     }
@@ -50,6 +110,7 @@ public class CurvedLine implements Saveable{
      * the pane's list of children.
      * @param index
      */
+    @Override
     public void addToPane(int index) {
         this.sketchyPane.getChildren().add(index, this.polyline);
     }
@@ -59,6 +120,7 @@ public class CurvedLine implements Saveable{
      * of children.
      * @return
      */
+    @Override
     public int getPaneIndex() {
         return this.sketchyPane.getChildren().indexOf(this.polyline);
     }
@@ -67,10 +129,21 @@ public class CurvedLine implements Saveable{
      * This method has the polyline remove itself from the pane. It takes in no parameters
      * and has no return value.
      */
+    @Override
     public void removeFromPane() {
         this.sketchyPane.getChildren().remove(this.polyline);
     }
 
+    /**
+     * This method sets the pane the line adds itself to, which is the pane of the layer it
+     * is on. The line must not be on a pane when this is called.
+     * @param pane
+     */
+    @Override
+    public void setPane(Pane pane) {
+        this.sketchyPane = pane;
+    }
+
     /**
      * This method adds a point to the polyline. It accepts two parameters of type double,
      * x and y, representing the x and y coordinates of the new point to be added. It has
@@ -79,35 +152,420 @@ public class CurvedLine implements Saveable{
      * @param y
      */
     public void addPoint(double x, double y) {
+        this.record = null;
+        this.pointsChanged = true;
         this.polyline.getPoints().addAll(x, y);
+        this.includeInBounds(x, y);
+    }
+
+    /**
+     * This method adds a batch of points to the polyline at once. It accepts an array of
+     * coordinates laid out as x0, y0, x1, y1, ... and the number of points to take from it.
+     * Adding the whole batch in one call means the polyline only has to update once, rather
+     * than once per point.
+     * @param coords
+     * @param count
+     */
+    public void addPoints(double[] coords, int count) {
+        if (count <= 0) {
+            return;
+        }
+        this.record = null;
+        this.pointsChanged = true;
+        Double[] boxed = new Double[2 * count];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = coords[i];
+        }
+        this.polyline.getPoints().addAll(boxed);
+        for (int i = 0; i < boxed.length; i += 2) {
+            this.includeInBounds(coords[i], coords[i + 1]);
+        }
+    }
+
+    /**
+     * This helper method grows the bounding box of the line's (untransformed) points so that
+     * it includes the given point.
+     * @param x
+     * @param y
+     */
+    private void includeInBounds(double x, double y) {
+        this.minX = Math.min(this.minX, x);
+        this.minY = Math.min(this.minY, y);
+        this.maxX = Math.max(this.maxX, x);
+        this.maxY = Math.max(this.maxY, y);
+        this.transform.invalidate();
+    }
+
+    /**
+     * This helper method works out the bounding box of the line's (untransformed) points from
+     * scratch, after they have all been replaced.
+     */
+    private void recomputeBounds() {
+        List<Double> points = this.polyline.getPoints();
+        this.minX = Double.POSITIVE_INFINITY;
+        this.minY = Double.POSITIVE_INFINITY;
+        this.maxX = Double.NEGATIVE_INFINITY;
+        this.maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i + 1 < points.size(); i += 2) {
+            this.includeInBounds(points.get(i), points.get(i + 1));
+        }
+        if (points.size() < 2) {
+            this.minX = 0;
+            this.minY = 0;
+            this.maxX = 0;
+            this.maxY = 0;
+        }
     }
 
     /**
-     * This method returns a String representing the coordinates of each point that makes
-     * up the line, each coordinate being separated by a space. This is a helper method
-     * used by the writeToFile method (shown below).
+     * This helper method returns the line's transform, with its pivot moved to the center of
+     * the bounding box of the line's points if it is not there already (which does not change
+     * where any point is drawn). Rotating and resizing the line then happen about its center,
+     * as they do for the other shapes.
      * @return
      */
-    private String pointsToString() {
-        String pointsString = "";
-        for (double coord: this.polyline.getPoints()) {
-            pointsString = pointsString + coord + " ";
+    private LineTransform getLineTransform() {
+        double centerX = (this.minX + this.maxX) / 2;
+        double centerY = (this.minY + this.maxY) / 2;
+        if (this.lineTransform.getPivotX() != centerX || this.lineTransform.getPivotY() != centerY) {
+            this.lineTransform = this.lineTransform.withPivot(centerX, centerY);
         }
-        return pointsString;
+        return this.lineTransform;
+    }
+
+    /**
+     * This helper method replaces the line's transform, and brings the polyline's Affine, the
+     * stroke width, and the frame the selection chrome is bound to up to date with it. None of
+     * this depends on how many points the line has.
+     * @param newTransform
+     */
+    private void setLineTransform(LineTransform newTransform) {
+        this.record = null;
+        this.transform.invalidate();
+        this.lineTransform = newTransform;
+        this.applyLineTransform();
+    }
+
+    /**
+     * This helper method hands the line's transform to the polyline's Affine, and updates the
+     * stroke width and the selection frame to match.
+     */
+    private void applyLineTransform() {
+        LineTransform current = this.getLineTransform();
+        this.affine.setToTransform(current.getMxx(), current.getMxy(), current.getTx(),
+                current.getMyx(), current.getMyy(), current.getTy());
+        double scale = Math.sqrt(Math.abs(current.getScaleX() * current.getScaleY()));
+        if (scale > 0) {
+            this.polyline.setStrokeWidth(this.strokeWidth / scale);
+        }
+        double width = this.getWidth();
+        double height = this.getHeight();
+        this.frame.setX(current.getCenterX() - width / 2);
+        this.frame.setY(current.getCenterY() - height / 2);
+        this.frame.setWidth(width);
+        this.frame.setHeight(height);
+        this.frame.setRotate(current.getAngle());
+    }
+
+    /**
+     * This method rotates the line based on two Point2Ds: one representing the point to
+     * rotate to (curr), and one representing the previous mouse point. The angle is worked out
+     * the same way as for the rectangle, about the line's center, and only the line's transform
+     * changes.
+     * @param curr
+     * @param prev
+     */
+    @Override
+    public void rotate(Point2D curr, Point2D prev) {
+        LineTransform current = this.getLineTransform();
+        double centerX = current.getCenterX();
+        double centerY = current.getCenterY();
+        double angle = Math.toDegrees(Math.atan2(prev.getY() - centerY, prev.getX() - centerX) -
+                Math.atan2(curr.getY() - centerY, curr.getX() - centerX));
+        this.setLineTransform(current.withAngle(current.getAngle() - angle));
+    }
+
+    /**
+     * This method translates the line based on the values of two points: one representing
+     * the current point (curr), and one representing the previous point (prev). Only the line's
+     * transform is moved; its points are left as they are.
+     * @param curr
+     * @param prev
+     */
+    @Override
+    public void translate(Point2D curr, Point2D prev) {
+        this.setLineTransform(this.getLineTransform().translated(curr.getX() - prev.getX(),
+                curr.getY() - prev.getY()));
+    }
+
+    /**
+     * This method resizes the line based on its current center and the Point2D provided as an
+     * argument that represents the new mouse position, the same way the rectangle is resized:
+     * the mouse position is rotated into the line's frame, and the line is scaled so that the
+     * corner of its bounding box follows it.
+     * @param currMousePos
+     * @param sketchy
+     */
+    @Override
+    public void resize(Point2D currMousePos, Sketchy sketchy) {
+        Point2D center = this.getCenter();
+        Point2D rotated = sketchy.rotatePoint(currMousePos, center, this.getAngle());
+        this.setWidth(2 * Math.abs(rotated.getX() - center.getX()));
+        this.setHeight(2 * Math.abs(rotated.getY() - center.getY()));
+    }
+
+    /**
+     * This method has the line delete itself. It first removes itself from the arraylist
+     * of shapes, then from the arraylist of saveables. Lastly, it graphically removes
+     * itself from the sketchyPane.
+     * @param shapes
+     * @param saveables
+     */
+    @Override
+    public void delete(ArrayList<SketchyShape> shapes, ArrayList<Saveable> saveables) {
+        shapes.remove(this);
+        saveables.remove(this);
+        this.sketchyPane.getChildren().remove(this.polyline);
+    }
+
+    /**
+     * This method has the line add itself both graphically and logically. It takes in
+     * four parameters to do so: the index in the shapes array, its index in its layer's
+     * pane's list of children, the arraylist of shapes, and the arraylist of saveables.
+     * @param index
+     * @param paneIndex
+     * @param shapes
+     * @param saveables
+     */
+    @Override
+    public void add(int index, int paneIndex, ArrayList<SketchyShape> shapes, ArrayList<Saveable> saveables) {
+        shapes.add(index, this);
+        saveables.add(index, this);
+        this.sketchyPane.getChildren().add(paneIndex, this.polyline);
     }
 
     /**
      * This method sets the stroke width of the line, based on the value of the width argument.
+     * @param width
      */
-    public void setWidth(double width) {
-        this.polyline.setStrokeWidth(width);
+    public void setStrokeWidth(double width) {
+        this.record = null;
+        this.transform.invalidate();
+        this.strokeWidth = width;
+        this.applyLineTransform();
     }
 
     /**
      * This method sets the color of the line, based on the value of the given Color argument.
+     * The color instance variable is updated too, so that the line is saved with its new color.
+     * @param color
      */
+    @Override
     public void setColor(Color color) {
+        this.record = null;
         this.polyline.setStroke(color);
+        this.color = color;
+    }
+
+    /**
+     * This method is invoked when the line is selected. Its currentlySelected boolean
+     * instance variable is set to true; the line's border and handles are drawn on the
+     * selection overlay (see createSelectionChrome).
+     */
+    @Override
+    public void select() {
+        this.currentlySelected = true;
+    }
+
+    /**
+     * This method is invoked when the line is deselected, and currentlySelected is set
+     * to be false.
+     */
+    @Override
+    public void deselect() {
+        this.currentlySelected = false;
+    }
+
+    /**
+     * This method creates the selection chrome for the line: a border around the line's
+     * (transformed) bounding box, and a handle at each corner. The chrome is bound to a frame
+     * rectangle that is kept up to date with the line's transform, so it follows the line as it
+     * is moved, resized, and rotated.
+     * @return
+     */
+    @Override
+    public Node createSelectionChrome() {
+        return SelectionChrome.createBox(this.frame);
+    }
+
+    /**
+     * This method has the line graphically raise or lower itself, based on the value of the
+     * integer provided as an argument. It first removes itself from the pane's list of children,
+     * then re-adds itself at the provided index.
+     * @param moveToIndex
+     */
+    @Override
+    public void raiseOrLowerInPane(int moveToIndex) {
+        this.sketchyPane.getChildren().remove(this.polyline);
+        this.sketchyPane.getChildren().add(moveToIndex, this.polyline);
+    }
+
+    /**
+     * This method returns whether the line is currently selected, by returning
+     * the value of the currentlySelected instance variable.
+     * @return
+     */
+    @Override
+    public boolean isSelected() {
+        return this.currentlySelected;
+    }
+
+    /**
+     * This method returns whether or not a certain point is on the line. A point counts as on
+     * the line if it is within half the stroke width (or LINE_HIT_TOLERANCE, if that is larger)
+     * of one of its segments, as drawn. Points outside the line's cached bounding box are
+     * rejected right away; for the rest, the line's SegmentIndex finds the few segments that
+     * could be close enough, and only those are checked exactly. The index is built from the
+     * line's points the first time it is needed, and is kept until the points change (moving,
+     * rotating, or resizing the line does not change them).
+     * @param x
+     * @param y
+     * @return
+     */
+    @Override
+    public boolean contains(double x, double y) {
+        if (!this.getTransform().boundsContain(x, y)) {
+            return false;
+        }
+        ShapeRecord current = this.toRecord();
+        if (this.segments == null || !this.segments.isFor(current)) {
+            this.segments = new SegmentIndex(current);
+        }
+        return this.segments.hits(current, x, y, this.getHitTolerance());
+    }
+
+    /**
+     * This helper method returns how far from the line a point can be and still count as on it.
+     * @return
+     */
+    private double getHitTolerance() {
+        return Math.max(this.strokeWidth / 2, Constants.LINE_HIT_TOLERANCE);
+    }
+
+    /**
+     * This method is an accessor for the line's cached transform, which includes its
+     * axis-aligned bounding box (grown by the hit tolerance, so that it covers every point that
+     * contains() accepts). The transform is brought up to date first if needed.
+     * @return
+     */
+    @Override
+    public ShapeTransform getTransform() {
+        if (!this.transform.isValid()) {
+            LineTransform current = this.getLineTransform();
+            double tolerance = this.getHitTolerance();
+            this.transform.update(current.getCenterX(), current.getCenterY(), this.getWidth() / 2 + tolerance,
+                    this.getHeight() / 2 + tolerance, current.getAngle(), false);
+        }
+        return this.transform;
+    }
+
+    /**
+     * This method is an accessor for the current color of the line.
+     * @return
+     */
+    @Override
+    public Color getColor() {
+        return this.color;
+    }
+
+    /**
+     * This method is an accessor for the center of the line (the center of the bounding box of
+     * its points, where it is drawn), which is returned as a Point2D.
+     * @return
+     */
+    @Override
+    public Point2D getCenter() {
+        LineTransform current = this.getLineTransform();
+        return new Point2D(current.getCenterX(), current.getCenterY());
+    }
+
+    /**
+     * This is a mutator method for the center of the line, which is updated based on the
+     * Point2D provided as an argument.
+     * @param point
+     */
+    @Override
+    public void setCenter(Point2D point) {
+        this.setLineTransform(this.getLineTransform().withCenter(point.getX(), point.getY()));
+    }
+
+    /**
+     * This method is an accessor for the rotation/angle of the line.
+     * @return
+     */
+    @Override
+    public double getAngle() {
+        return this.lineTransform.getAngle();
+    }
+
+    /**
+     * This method is a mutator for the rotation/angle of the line, based on a double
+     * provided as an argument.
+     * @param angle
+     */
+    @Override
+    public void setAngle(double angle) {
+        this.setLineTransform(this.getLineTransform().withAngle(angle));
+    }
+
+    /**
+     * This method is an accessor for the current width of the line: the width of the bounding
+     * box of its points, scaled by its transform.
+     * @return
+     */
+    @Override
+    public double getWidth() {
+        return (this.maxX - this.minX) * this.lineTransform.getScaleX();
+    }
+
+    /**
+     * This method is an accessor for the current height of the line: the height of the
+     * bounding box of its points, scaled by its transform.
+     * @return
+     */
+    @Override
+    public double getHeight() {
+        return (this.maxY - this.minY) * this.lineTransform.getScaleY();
+    }
+
+    /**
+     * This method is a mutator for the width of the line, which is updated based on a double
+     * provided as an argument. A line whose points are all in one column has no width to scale,
+     * and is left as it is.
+     * @param width
+     */
+    @Override
+    public void setWidth(double width) {
+        double rawWidth = this.maxX - this.minX;
+        if (rawWidth > 0) {
+            LineTransform current = this.getLineTransform();
+            this.setLineTransform(current.withScale(width / rawWidth, current.getScaleY()));
+        }
+    }
+
+    /**
+     * This method is a mutator for the height of the line, which is updated based on a double
+     * provided as an argument. A line whose points are all in one row has no height to scale,
+     * and is left as it is.
+     * @param height
+     */
+    @Override
+    public void setHeight(double height) {
+        double rawHeight = this.maxY - this.minY;
+        if (rawHeight > 0) {
+            LineTransform current = this.getLineTransform();
+            this.setLineTransform(current.withScale(current.getScaleX(), height / rawHeight));
+        }
     }
 
     /**
@@ -115,31 +573,182 @@ public class CurvedLine implements Saveable{
      * written to as a parameter (type CS15FileIO), and first writes "line" to show that it is
      * a line. It then writes three ints representing R, G, and B. It then writes the x and y
      * coordinates (doubles) of the very first point of the polyline. Then, it writes an int
-     * representing how many points are in the arraylist of points. Lastly, the remaining
-     * points are written to the file as a string.
+     * representing how many coordinates follow the first point. Lastly, the remaining
+     * points are written to the file as a string. The line's transform is baked into the
+     * points as they are written (the file format has no room for it), but the polyline itself
+     * is left untouched.
+     * The entry is written from the line's record, by RecordFormat.
      * @param io
      */
     @Override
     public void writeToFile(CS15FileIO io) {
-        io.writeString("line");
-        //color
-        io.writeInt((int)(this.color.getRed() * Constants.RGB));
-        io.writeInt((int)(this.color.getGreen() * Constants.RGB));
-        io.writeInt((int)(this.color.getBlue() * Constants.RGB));
-
-        //first point coordinates
-        io.writeDouble(this.polyline.getPoints().get(0));
-        this.polyline.getPoints().remove(0);
-        io.writeDouble(this.polyline.getPoints().get(0));
-        this.polyline.getPoints().remove(0);
-
-        //width
-        io.writeDouble(this.polyline.getStrokeWidth());
-
-        //how many points in the arraylist
-        io.writeInt(this.polyline.getPoints().size());
-
-        //remaining points
-        io.writeString(this.pointsToString());
+        RecordFormat.write(io, this.toRecord());
+    }
+
+    /**
+     * This method returns an immutable record of the line's current state. The points are
+     * only copied out of the polyline if they have changed since the last record was made;
+     * if just the color, width, or transform changed, the new record shares the points of the
+     * last one, so a record made while the line is being dragged costs the same however many
+     * points it has. Until the line changes again, the cached record is handed back.
+     * @return
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        if (this.record == null) {
+            LineTransform current = this.getLineTransform();
+            if (current.isIdentity()) {
+                current = null;
+            }
+            if (this.pointsChanged || this.lastRecord == null) {
+                double[] points = new double[this.polyline.getPoints().size()];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = this.polyline.getPoints().get(i);
+                }
+                this.record = new ShapeRecord(this.id, ShapeType.LINE, this.color, 0, 0,
+                        this.strokeWidth, 0, 0, points, null, this.layer).withLineTransform(current).withGroups(this.groups);
+            }
+            else {
+                ShapeRecord styled = this.lastRecord.withStyle(this.color, this.strokeWidth);
+                if (styled.getLayer() != this.layer) {
+                    styled = styled.withLayer(this.layer);
+                }
+                this.record = styled.withLineTransform(current).withGroups(this.groups);
+            }
+            this.lastRecord = this.record;
+            this.pointsChanged = false;
+        }
+        return this.record;
+    }
+
+    /**
+     * This method puts the line back into the state described by the given record, which must
+     * be one of its own records. The points are only copied back into the polyline if they are
+     * different from the ones it currently has; otherwise only the transform, color, and width
+     * change. Afterwards, the record becomes its cached record again.
+     * @param record
+     */
+    @Override
+    public void restore(ShapeRecord record) {
+        ShapeRecord current = this.toRecord();
+        if (!current.hasSamePoints(record)) {
+            Double[] points;
+            if (this.pool != null) {
+                points = this.pool.boxedPoints(record);
+            }
+            else {
+                points = new Double[2 * record.getPointCount()];
+                for (int i = 0; i < record.getPointCount(); i++) {
+                    points[2 * i] = record.getRawPointX(i);
+                    points[2 * i + 1] = record.getRawPointY(i);
+                }
+            }
+            this.polyline.getPoints().setAll(points);
+            this.recomputeBounds();
+        }
+        this.setColor(record.getColor());
+        this.strokeWidth = record.getWidth();
+        LineTransform restored = record.getLineTransform();
+        if (restored == null) {
+            restored = LineTransform.identity((this.minX + this.maxX) / 2, (this.minY + this.maxY) / 2);
+        }
+        this.setLineTransform(restored);
+        this.layer = record.getLayer();
+        this.groups = record.getGroups();
+        this.record = record;
+        this.lastRecord = record;
+        this.pointsChanged = false;
+    }
+
+    /**
+     * This method is an accessor for the line's id, which stays the same for as long as the
+     * line exists.
+     * @return
+     */
+    @Override
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * This method is an accessor for the id of the layer the line is on.
+     * @return
+     */
+    @Override
+    public int getLayer() {
+        return this.layer;
+    }
+
+    /**
+     * This method moves the line to the layer with the given id. Only its records change; the
+     * LayerStack decides how (and whether) the line is drawn.
+     * @param layerId
+     */
+    @Override
+    public void setLayer(int layerId) {
+        this.layer = layerId;
+        this.record = null;
+    }
+
+    /**
+     * This method is an accessor for the ids of the groups the line is in, from the outermost
+     * one in, or null if it is not in any group.
+     * @return
+     */
+    @Override
+    public int[] getGroups() {
+        return this.groups;
+    }
+
+    /**
+     * This method puts the line in the given groups (from the outermost one in, or null for
+     * none). The array must not be modified afterwards.
+     * @param groupIds
+     */
+    @Override
+    public void setGroups(int[] groupIds) {
+        this.groups = groupIds;
+        this.record = null;
+    }
+
+    /**
+     * This method creates a new CurvedLine (which is not yet added to the pane) from a record, for
+     * example one that was made by a transaction rather than by drawing. The new line takes
+     * on the record's id, so it can be matched up with the record in later snapshots.
+     * @param record
+     * @param pane
+     * @return
+     */
+    public static CurvedLine fromRecord(ShapeRecord record, Pane pane) {
+        return fromRecord(record, pane, null);
+    }
+
+    /**
+     * This method creates a new CurvedLine from a record, like the one above, but takes its
+     * boxed points (whenever it is restored) from the given pool of geometry, so lines that
+     * share a points array, such as pasted copies of the same stroke, also share their boxed
+     * points instead of each boxing its own.
+     * @param record
+     * @param pane
+     * @param geometryPool
+     * @return
+     */
+    public static CurvedLine fromRecord(ShapeRecord record, Pane pane, GeometryPool geometryPool) {
+        CurvedLine line = new CurvedLine(record.getCenterX(), record.getCenterY(), pane, record.getColor(), record.getWidth());
+        line.id = record.getId();
+        line.pool = geometryPool;
+        line.restore(record);
+        return line;
+    }
+
+    /**
+     * This method returns the wrapped polyline. It is only meant for classes that manage the
+     * scene graph in bulk (for example, adding many nodes to the pane in a single change);
+     * everything else should go through the methods of this class.
+     * @return
+     */
+    @Override
+    public Node getNode() {
+        return this.polyline;
     }
 }
@@ -0,0 +1,251 @@
+package sketchy.shapes;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.scene.paint.Color;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeType;
+import sketchy.document.Symbol;
+import sketchy.main.Constants;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the RecordFormat class. It is how a single shape, line, or instance of a symbol is
+ * written to and read from a file, working from its ShapeRecord rather than from its node, so
+ * every Saveable writes itself through it, and drawings can also be read and written without a
+ * scene graph (by the batch tool, for example). Each entry starts with the type of the shape,
+ * followed by its color:
+ *
+ * rectangle r g b x y width height angle (x and y are the top-left corner)
+ * ellipse r g b centerX centerY radiusX radiusY angle
+ * line r g b firstX firstY strokeWidth count x1 y1 x2 y2 ... (count is how many coordinates follow)
+ * instance symbolId version hasColor [r g b] centerX centerY width height angle
+ *
+ * Records can also be written in binary, for paged drawings. A binary record holds everything a
+ * record does apart from its id, including its layer and groups, so it can be read on its own:
+ *
+ * type (byte) layer groupCount group... hasColor [r g b] (bytes), then
+ * centerX centerY width height angle for a rectangle or ellipse,
+ * symbolIndex centerX centerY width height angle for an instance (the index is into a list of
+ * symbols kept alongside the records), or strokeWidth pointCount x1 y1 x2 y2 ... for a line.
+ */
+public class RecordFormat {
+
+    /**
+     * This method writes the entry for the given record: a rectangle, an ellipse, a line (with
+     * its transform baked into its points, since the file has no room for it), or an instance
+     * of a symbol (which refers to its symbol by id and version).
+     * @param io
+     * @param record
+     */
+    public static void write(CS15FileIO io, ShapeRecord record) {
+        if (record.getType() == ShapeType.SYMBOL) {
+            io.writeString("instance");
+            io.writeInt(record.getSymbol().getId());
+            io.writeInt(record.getSymbol().getVersion());
+
+            //RGB, if the members are all drawn in one color
+            io.writeInt(record.getColor() != null ? 1 : 0);
+            if (record.getColor() != null) {
+                writeColor(io, record.getColor());
+            }
+            io.writeDouble(record.getCenterX());
+            io.writeDouble(record.getCenterY());
+            io.writeDouble(record.getWidth());
+            io.writeDouble(record.getHeight());
+            io.writeDouble(record.getAngle());
+            return;
+        }
+        io.writeString(record.getType() == ShapeType.RECTANGLE ? "rectangle"
+                : record.getType() == ShapeType.ELLIPSE ? "ellipse" : "line");
+        writeColor(io, record.getColor());
+        if (record.getType() == ShapeType.LINE) {
+            io.writeDouble(record.getPointX(0));
+            io.writeDouble(record.getPointY(0));
+            io.writeDouble(record.getWidth());
+            io.writeInt(2 * record.getPointCount() - 2);
+            StringBuilder pointsString = new StringBuilder();
+            for (int i=1; i<record.getPointCount(); i++) {
+                pointsString.append(record.getPointX(i)).append(' ');
+                pointsString.append(record.getPointY(i)).append(' ');
+            }
+            io.writeString(pointsString.toString());
+            return;
+        }
+        //a rectangle is written from its top-left corner, an ellipse from its center
+        if (record.getType() == ShapeType.RECTANGLE) {
+            io.writeDouble(record.getCenterX() - record.getWidth() / 2);
+            io.writeDouble(record.getCenterY() - record.getHeight() / 2);
+        }
+        else {
+            io.writeDouble(record.getCenterX());
+            io.writeDouble(record.getCenterY());
+        }
+        io.writeDouble(record.getWidth());
+        io.writeDouble(record.getHeight());
+        io.writeDouble(record.getAngle());
+    }
+
+    /**
+     * This method reads the rest of a rectangle, ellipse, or line entry, whose type (the first
+     * word of the entry) has already been read, into a new record. The record has a new id, and
+     * is on the bottom layer and in no group.
+     * @param io
+     * @param type
+     * @return
+     */
+    public static ShapeRecord read(CS15FileIO io, String type) {
+        Color rgb = Color.rgb(io.readInt(), io.readInt(), io.readInt());
+        if (type.equals("line")) {
+            double firstX = io.readDouble();
+            double firstY = io.readDouble();
+            double strokeWidth = io.readDouble();
+            double[] points = new double[2 + io.readInt()];
+            points[0] = firstX;
+            points[1] = firstY;
+            for (int i=2; i<points.length; i++) {
+                points[i] = io.readDouble();
+            }
+            return new ShapeRecord(ShapeRecord.newId(), ShapeType.LINE, rgb, firstX, firstY, strokeWidth, 0, 0, points);
+        }
+        double x = io.readDouble();
+        double y = io.readDouble();
+        double width = io.readDouble();
+        double height = io.readDouble();
+        double angle = io.readDouble();
+        if (type.equals("rectangle")) {
+            return new ShapeRecord(ShapeRecord.newId(), ShapeType.RECTANGLE, rgb, x + width / 2, y + height / 2,
+                    width, height, angle, null);
+        }
+        if (type.equals("ellipse")) {
+            return new ShapeRecord(ShapeRecord.newId(), ShapeType.ELLIPSE, rgb, x, y, width, height, angle, null);
+        }
+        throw new IllegalArgumentException("Unknown kind of shape: " + type);
+    }
+
+    /**
+     * This method reads the rest of an instance entry, whose first word has already been read,
+     * into a new record on the given layer. The symbols are looked up by "id version", as they
+     * were written; an instance of a symbol that has not been read yet is an error.
+     * @param io
+     * @param symbols
+     * @param layer
+     * @return
+     */
+    public static ShapeRecord readInstance(CS15FileIO io, Map<String, Symbol> symbols, int layer) {
+        String key = io.readInt() + " " + io.readInt();
+        Symbol symbol = symbols.get(key);
+        if (symbol == null) {
+            throw new IllegalArgumentException("The file places symbol " + key + " before defining it");
+        }
+        Color override = null;
+        if (io.readInt() != 0) {
+            override = Color.rgb(io.readInt(), io.readInt(), io.readInt());
+        }
+        return new ShapeRecord(ShapeRecord.newId(), symbol, override, io.readDouble(), io.readDouble(),
+                io.readDouble(), io.readDouble(), io.readDouble(), layer);
+    }
+
+    /**
+     * This method writes the given record in binary. An instance refers to its symbol by its
+     * position in the list of symbols the given map was made from.
+     * @param out
+     * @param record
+     * @param symbolIndexes
+     * @throws IOException
+     */
+    public static void writeBinary(DataOutput out, ShapeRecord record, Map<Symbol, Integer> symbolIndexes)
+            throws IOException {
+        out.writeByte(record.getType().ordinal());
+        out.writeInt(record.getLayer());
+        int[] groups = record.getGroups();
+        out.writeInt(groups == null ? 0 : groups.length);
+        if (groups != null) {
+            for (int group : groups) {
+                out.writeInt(group);
+            }
+        }
+        out.writeBoolean(record.getColor() != null);
+        if (record.getColor() != null) {
+            out.writeByte((int)(record.getColor().getRed() * Constants.RGB));
+            out.writeByte((int)(record.getColor().getGreen() * Constants.RGB));
+            out.writeByte((int)(record.getColor().getBlue() * Constants.RGB));
+        }
+        if (record.getType() == ShapeType.LINE) {
+            out.writeDouble(record.getWidth());
+            out.writeInt(record.getPointCount());
+            for (int i=0; i<record.getPointCount(); i++) {
+                out.writeDouble(record.getPointX(i));
+                out.writeDouble(record.getPointY(i));
+            }
+            return;
+        }
+        if (record.getType() == ShapeType.SYMBOL) {
+            out.writeInt(symbolIndexes.get(record.getSymbol()));
+        }
+        out.writeDouble(record.getCenterX());
+        out.writeDouble(record.getCenterY());
+        out.writeDouble(record.getWidth());
+        out.writeDouble(record.getHeight());
+        out.writeDouble(record.getAngle());
+    }
+
+    /**
+     * This method reads a record written by writeBinary() into a new record with a new id. An
+     * instance's symbol is looked up in the given list.
+     * @param in
+     * @param symbols
+     * @return
+     * @throws IOException
+     */
+    public static ShapeRecord readBinary(DataInput in, List<Symbol> symbols) throws IOException {
+        int typeIndex = in.readUnsignedByte();
+        if (typeIndex >= ShapeType.values().length) {
+            throw new IOException("Unknown kind of shape: " + typeIndex);
+        }
+        ShapeType type = ShapeType.values()[typeIndex];
+        int layer = in.readInt();
+        int depth = in.readInt();
+        int[] groups = depth == 0 ? null : new int[depth];
+        for (int i=0; i<depth; i++) {
+            groups[i] = in.readInt();
+        }
+        Color rgb = null;
+        if (in.readBoolean()) {
+            rgb = Color.rgb(in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedByte());
+        }
+        if (type == ShapeType.LINE) {
+            double strokeWidth = in.readDouble();
+            double[] points = new double[2 * in.readInt()];
+            for (int i=0; i<points.length; i++) {
+                points[i] = in.readDouble();
+            }
+            return new ShapeRecord(ShapeRecord.newId(), type, rgb, points.length > 0 ? points[0] : 0,
+                    points.length > 0 ? points[1] : 0, strokeWidth, 0, 0, points, null, layer).withGroups(groups);
+        }
+        if (type == ShapeType.SYMBOL) {
+            int symbolIndex = in.readInt();
+            if (symbolIndex < 0 || symbolIndex >= symbols.size()) {
+                throw new IOException("The file places symbol " + symbolIndex + ", which it does not define");
+            }
+            return new ShapeRecord(ShapeRecord.newId(), symbols.get(symbolIndex), rgb, in.readDouble(), in.readDouble(),
+                    in.readDouble(), in.readDouble(), in.readDouble(), layer).withGroups(groups);
+        }
+        return new ShapeRecord(ShapeRecord.newId(), type, rgb, in.readDouble(), in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readDouble(), null, null, layer).withGroups(groups);
+    }
+
+    /**
+     * This helper method writes a color as its red, green, and blue values from 0 to 255.
+     * @param io
+     * @param color
+     */
+    private static void writeColor(CS15FileIO io, Color color) {
+        io.writeInt((int)(color.getRed() * Constants.RGB));
+        io.writeInt((int)(color.getGreen() * Constants.RGB));
+        io.writeInt((int)(color.getBlue() * Constants.RGB));
+    }
+}
@@ -1,12 +1,31 @@
 package sketchy.shapes;
 
 import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import sketchy.document.ShapeRecord;
 
 /**
  * This is the Saveable interface. Objects that implement this interface are the CurvedLine,
- * SketchyRectangle, and SketchyEllipse, since those are the three types of objects that need
- * to be able to be saved.
+ * SketchyRectangle, SketchyEllipse, and SymbolInstance, since those are the four types of
+ * objects that need to be able to be saved. Each of them can also describe its current state as an immutable
+ * ShapeRecord, which is what document snapshots are made of, and can put itself back into the
+ * state described by one of its own records, which is how checkpoints are restored. Every
+ * Saveable is on one of the drawing's layers, and may be in nested groups. Its node is kept
+ * on the pane of its layer, which is set when it moves to another layer.
  */
 public interface Saveable {
     void writeToFile(CS15FileIO cs15file);
+    ShapeRecord toRecord();
+    void restore(ShapeRecord record);
+    int getId();
+    int getLayer();
+    void setLayer(int layerId);
+    int[] getGroups();
+    void setGroups(int[] groupIds);
+    void addToPane();
+    void addToPane(int index);
+    void removeFromPane();
+    void setPane(Pane pane);
+    Node getNode();
 }
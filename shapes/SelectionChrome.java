@@ -0,0 +1,65 @@
+package sketchy.shapes;
+
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.value.ObservableNumberValue;
+import javafx.scene.Group;
+import javafx.scene.shape.Rectangle;
+import sketchy.main.Constants;
+
+/**
+ * This is the SelectionChrome class. It holds the helper methods the shapes use to build their
+ * selection chrome (the border and handles drawn on the selection overlay), so that every
+ * shape's chrome looks the same.
+ */
+final class SelectionChrome {
+
+    private SelectionChrome() {
+    }
+
+    /**
+     * This method creates the selection chrome for a rotated box: a border with the same
+     * geometry as the given rectangle, and a handle at each corner. The chrome's properties are
+     * bound to the rectangle's, so it follows the rectangle as it is moved, resized, and rotated.
+     * @param box
+     * @return
+     */
+    static Group createBox(Rectangle box) {
+        Rectangle border = new Rectangle();
+        border.xProperty().bind(box.xProperty());
+        border.yProperty().bind(box.yProperty());
+        border.widthProperty().bind(box.widthProperty());
+        border.heightProperty().bind(box.heightProperty());
+        border.setFill(null);
+        border.setStroke(Constants.BORDER_COLOR);
+        border.setStrokeWidth(Constants.BORDER_WIDTH);
+
+        DoubleBinding right = box.xProperty().add(box.widthProperty());
+        DoubleBinding bottom = box.yProperty().add(box.heightProperty());
+        Group chrome = new Group(border,
+                createHandle(box.xProperty(), box.yProperty()),
+                createHandle(right, box.yProperty()),
+                createHandle(box.xProperty(), bottom),
+                createHandle(right, bottom));
+
+        //the chrome is symmetric about the box's center, so it rotates about the same point
+        chrome.rotateProperty().bind(box.rotateProperty());
+        return chrome;
+    }
+
+    /**
+     * This method creates a square selection handle centered on the given coordinates.
+     * @param x
+     * @param y
+     * @return
+     */
+    static Rectangle createHandle(ObservableNumberValue x, ObservableNumberValue y) {
+        Rectangle handle = new Rectangle(0, 0, Constants.HANDLE_SIZE, Constants.HANDLE_SIZE);
+        handle.xProperty().bind(Bindings.subtract(x, Constants.HANDLE_SIZE / 2));
+        handle.yProperty().bind(Bindings.subtract(y, Constants.HANDLE_SIZE / 2));
+        handle.setFill(Constants.HANDLE_COLOR);
+        handle.setStroke(Constants.BORDER_COLOR);
+        handle.setStrokeWidth(Constants.BORDER_WIDTH);
+        return handle;
+    }
+}
@@ -0,0 +1,145 @@
+package sketchy.shapes;
+
+/**
+ * This is the ShapeTransform class. It caches, for one rectangle or ellipse, the inverse of its
+ * rotation about its center (as a sine and cosine) and its axis-aligned bounding box in scene
+ * coordinates. Shapes invalidate it whenever their geometry changes, and it is only recomputed
+ * the next time a containment check needs it, so a burst of checks against an unchanged shape
+ * never calls Math.sin or Math.cos.
+ */
+public class ShapeTransform {
+
+    private boolean valid;
+    private double centerX;
+    private double centerY;
+    private double cosine;
+    private double sine;
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+
+    /**
+     * This is the ShapeTransform constructor. It starts out invalid, so the first containment
+     * check computes it.
+     */
+    public ShapeTransform() {
+        this.valid = false;
+    }
+
+    /**
+     * This method marks the cached transform and bounding box as out of date. It is called
+     * whenever the shape is moved, rotated, or resized.
+     */
+    public void invalidate() {
+        this.valid = false;
+    }
+
+    /**
+     * This method returns whether the cached values are still up to date.
+     * @return
+     */
+    public boolean isValid() {
+        return this.valid;
+    }
+
+    /**
+     * This method recomputes the cached values from the shape's center, the half-extents of its
+     * unrotated bounds (half the width and height for a rectangle, the radii for an ellipse), and
+     * its angle of rotation in degrees. If the shape is an ellipse, the bounding box is fitted to
+     * the rotated ellipse instead of to its rotated bounding rectangle.
+     * @param x
+     * @param y
+     * @param halfWidth
+     * @param halfHeight
+     * @param angle
+     * @param ellipse
+     */
+    public void update(double x, double y, double halfWidth, double halfHeight, double angle, boolean ellipse) {
+        this.centerX = x;
+        this.centerY = y;
+        this.cosine = Math.cos(Math.toRadians(angle));
+        this.sine = Math.sin(Math.toRadians(angle));
+        double extentX;
+        double extentY;
+        if (ellipse) {
+            extentX = Math.hypot(halfWidth * this.cosine, halfHeight * this.sine);
+            extentY = Math.hypot(halfWidth * this.sine, halfHeight * this.cosine);
+        }
+        else {
+            extentX = Math.abs(halfWidth * this.cosine) + Math.abs(halfHeight * this.sine);
+            extentY = Math.abs(halfWidth * this.sine) + Math.abs(halfHeight * this.cosine);
+        }
+        this.minX = x - extentX;
+        this.minY = y - extentY;
+        this.maxX = x + extentX;
+        this.maxY = y + extentY;
+        this.valid = true;
+    }
+
+    /**
+     * This method returns whether a point in scene coordinates is inside the cached
+     * axis-aligned bounding box. This is the cheap test that rules out most points.
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean boundsContain(double x, double y) {
+        return x >= this.minX && x <= this.maxX && y >= this.minY && y <= this.maxY;
+    }
+
+    /**
+     * This method maps a point in scene coordinates into the shape's unrotated frame, and
+     * returns its x coordinate relative to the shape's center. This is the same rotation that
+     * Sketchy.rotatePoint carries out, using the cached sine and cosine.
+     * @param x
+     * @param y
+     * @return
+     */
+    public double toLocalX(double x, double y) {
+        return (x - this.centerX) * this.cosine + (y - this.centerY) * this.sine;
+    }
+
+    /**
+     * This method maps a point in scene coordinates into the shape's unrotated frame, and
+     * returns its y coordinate relative to the shape's center.
+     * @param x
+     * @param y
+     * @return
+     */
+    public double toLocalY(double x, double y) {
+        return -(x - this.centerX) * this.sine + (y - this.centerY) * this.cosine;
+    }
+
+    /**
+     * This method is an accessor for the left edge of the bounding box.
+     * @return
+     */
+    public double getMinX() {
+        return this.minX;
+    }
+
+    /**
+     * This method is an accessor for the top edge of the bounding box.
+     * @return
+     */
+    public double getMinY() {
+        return this.minY;
+    }
+
+    /**
+     * This method is an accessor for the right edge of the bounding box.
+     * @return
+     */
+    public double getMaxX() {
+        return this.maxX;
+    }
+
+    /**
+     * This method is an accessor for the bottom edge of the bounding box.
+     * @return
+     */
+    public double getMaxY() {
+        return this.maxY;
+    }
+}
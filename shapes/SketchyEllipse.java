@@ -1,10 +1,15 @@
 package sketchy.shapes;
 
 import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.beans.binding.DoubleBinding;
 import javafx.geometry.Point2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Ellipse;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeType;
 import sketchy.main.Constants;
 import sketchy.main.Sketchy;
 import java.util.ArrayList;
@@ -20,6 +25,11 @@ public class SketchyEllipse implements SketchyShape{
     private Pane sketchyPane;
     private boolean currentlySelected;
     private Color color;
+    private int id;
+    private int layer;
+    private int[] groups;
+    private ShapeRecord record;
+    private ShapeTransform transform;
 
     /**
      * This is the SketchyEllipse constructor. It takes in three parameters: one Point2D
@@ -35,6 +45,11 @@ public class SketchyEllipse implements SketchyShape{
         this.ellipse = new Ellipse(clicked.getX(), clicked.getY(), 0, 0);
         this.ellipse.setFill(this.color);
         this.currentlySelected = true;
+        this.id = ShapeRecord.newId();
+        this.layer = 0;
+        this.groups = null;
+        this.record = null;
+        this.transform = new ShapeTransform();
     }
 
     /**
@@ -47,6 +62,8 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void rotate(Point2D curr, Point2D prev) {
+        this.record = null;
+        this.transform.invalidate();
         double angle = Math.toDegrees(Math.atan2(prev.getY() - this.ellipse.getCenterY(),
                 prev.getX() - this.ellipse.getCenterX()) -
                 Math.atan2(curr.getY() - this.ellipse.getCenterY(),
@@ -63,6 +80,8 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void translate(Point2D curr, Point2D prev) {
+        this.record = null;
+        this.transform.invalidate();
         double diffX = curr.getX() - prev.getX();
         double diffY = curr.getY() - prev.getY();
         this.ellipse.setCenterX(diffX + this.ellipse.getCenterX());
@@ -81,6 +100,8 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void resize(Point2D currMousePos, Sketchy sketchy) {
+        this.record = null;
+        this.transform.invalidate();
         Point2D center = new Point2D(this.ellipse.getCenterX(), this.ellipse.getCenterY());
         Point2D rotated = sketchy.rotatePoint(currMousePos, center, this.ellipse.getRotate());
 
@@ -107,8 +128,9 @@ public class SketchyEllipse implements SketchyShape{
 
     /**
      * This method has the ellipse add itself both graphically and logically. It takes in
-     * four parameters to do so: the index in the shapes array, its index in the pane's list
-     * of children, the arraylist of shapes, and the arraylist of saveables.
+     * four parameters to do so: the index in the shapes array (which is also its index in
+     * the arraylist of saveables), its index in its layer's pane's list of children, the
+     * arraylist of shapes, and the arraylist of saveables.
      * @param index
      * @param paneIndex
      * @param shapes
@@ -117,8 +139,8 @@ public class SketchyEllipse implements SketchyShape{
     @Override
     public void add(int index, int paneIndex, ArrayList<SketchyShape> shapes, ArrayList<Saveable> saveables) {
         shapes.add(index, this);
-        saveables.add(paneIndex, this);
-        this.sketchyPane.getChildren().add(index, this.ellipse);
+        saveables.add(index, this);
+        this.sketchyPane.getChildren().add(paneIndex, this.ellipse);
     }
 
     /**
@@ -128,6 +150,7 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void setColor(Color color) {
+        this.record = null;
         this.ellipse.setFill(color);
         this.color = color;
     }
@@ -142,27 +165,86 @@ public class SketchyEllipse implements SketchyShape{
     }
 
     /**
-     * This method is invoked when the ellipse is selected. The ellipse gives itself a black
-     * border, the width of the border is set, and its currentlySelected boolean instance variable
-     * is set to true.
+     * This method has the ellipse add itself graphically ONLY, at the given index in the
+     * pane's list of children.
+     * @param index
+     */
+    @Override
+    public void addToPane(int index) {
+        this.sketchyPane.getChildren().add(index, this.ellipse);
+    }
+
+    /**
+     * This method has the ellipse remove itself graphically ONLY. It removes itself
+     * from the pane.
+     */
+    @Override
+    public void removeFromPane() {
+        this.sketchyPane.getChildren().remove(this.ellipse);
+    }
+
+    /**
+     * This method sets the pane the ellipse adds itself to, which is the pane of the layer it
+     * is on. The ellipse must not be on a pane when this is called.
+     * @param pane
+     */
+    @Override
+    public void setPane(Pane pane) {
+        this.sketchyPane = pane;
+    }
+
+    /**
+     * This method is invoked when the ellipse is selected. Its currentlySelected boolean
+     * instance variable is set to true. The ellipse itself is not restyled; its border and
+     * handles are drawn on the selection overlay instead (see createSelectionChrome).
      */
     @Override
     public void select() {
-        this.ellipse.setStroke(Constants.BORDER_COLOR);
-        this.ellipse.setStrokeWidth(Constants.BORDER_WIDTH);
         this.currentlySelected = true;
     }
 
     /**
-     * This method is invoked when the ellipse is deselected. The ellipse removes its border,
-     * and currentlySelected is set to be false.
+     * This method is invoked when the ellipse is deselected, and currentlySelected is set
+     * to be false.
      */
     @Override
     public void deselect() {
-        this.ellipse.setStroke(null);
         this.currentlySelected = false;
     }
 
+    /**
+     * This method creates the selection chrome for the ellipse: a border with the same
+     * geometry as the ellipse, and a handle at each corner of its bounding box. The chrome's
+     * properties are bound to the ellipse's, so it follows the ellipse as it is moved, resized,
+     * and rotated without the ellipse ever being restyled.
+     * @return
+     */
+    @Override
+    public Node createSelectionChrome() {
+        Ellipse border = new Ellipse();
+        border.centerXProperty().bind(this.ellipse.centerXProperty());
+        border.centerYProperty().bind(this.ellipse.centerYProperty());
+        border.radiusXProperty().bind(this.ellipse.radiusXProperty());
+        border.radiusYProperty().bind(this.ellipse.radiusYProperty());
+        border.setFill(null);
+        border.setStroke(Constants.BORDER_COLOR);
+        border.setStrokeWidth(Constants.BORDER_WIDTH);
+
+        DoubleBinding left = this.ellipse.centerXProperty().subtract(this.ellipse.radiusXProperty());
+        DoubleBinding right = this.ellipse.centerXProperty().add(this.ellipse.radiusXProperty());
+        DoubleBinding top = this.ellipse.centerYProperty().subtract(this.ellipse.radiusYProperty());
+        DoubleBinding bottom = this.ellipse.centerYProperty().add(this.ellipse.radiusYProperty());
+        Group chrome = new Group(border,
+                SelectionChrome.createHandle(left, top),
+                SelectionChrome.createHandle(right, top),
+                SelectionChrome.createHandle(left, bottom),
+                SelectionChrome.createHandle(right, bottom));
+
+        //the chrome is symmetric about the ellipse's center, so it rotates about the same point
+        chrome.rotateProperty().bind(this.ellipse.rotateProperty());
+        return chrome;
+    }
+
     /**
      * This method has the ellipse graphically raise or lower itself, based on the value of the
      * integer provided as an argument. It first removes itself from the pane's list of children,
@@ -187,18 +269,36 @@ public class SketchyEllipse implements SketchyShape{
 
     /**
      * This method returns whether or not a certain point is within the bounds
-     * of a shape. It does this by taking in two arguments, x and y, representing the x and
-     * y coordinates of the clicked point, and checking whether the ellipse contains them.
+     * of a shape. It takes in two arguments, x and y, representing the x and y coordinates of
+     * the clicked point in scene coordinates (the ellipse accounts for its own rotation). Points
+     * outside the ellipse's cached bounding box are rejected right away; the rest are mapped into
+     * the ellipse's unrotated frame with its cached inverse rotation and checked exactly.
      * @param x
      * @param y
      * @return
      */
     @Override
     public boolean contains(double x, double y) {
-        if (this.ellipse.contains(x, y)) {
-            return true;
+        if (!this.getTransform().boundsContain(x, y)) {
+            return false;
+        }
+        double localX = this.transform.toLocalX(x, y) / this.ellipse.getRadiusX();
+        double localY = this.transform.toLocalY(x, y) / this.ellipse.getRadiusY();
+        return localX * localX + localY * localY <= 1;
+    }
+
+    /**
+     * This method is an accessor for the ellipse's cached transform, which includes its
+     * axis-aligned bounding box. The transform is brought up to date first if needed.
+     * @return
+     */
+    @Override
+    public ShapeTransform getTransform() {
+        if (!this.transform.isValid()) {
+            this.transform.update(this.ellipse.getCenterX(), this.ellipse.getCenterY(),
+                    this.ellipse.getRadiusX(), this.ellipse.getRadiusY(), this.ellipse.getRotate(), true);
         }
-        return false;
+        return this.transform;
     }
 
     /**
@@ -235,6 +335,8 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void setAngle(double angle) {
+        this.record = null;
+        this.transform.invalidate();
         this.ellipse.setRotate(angle);
     }
 
@@ -263,6 +365,8 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void setWidth(double width) {
+        this.record = null;
+        this.transform.invalidate();
         this.ellipse.setRadiusX(width);
     }
 
@@ -273,6 +377,8 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void setHeight(double height) {
+        this.record = null;
+        this.transform.invalidate();
         this.ellipse.setRadiusY(height);
     }
 
@@ -293,6 +399,8 @@ public class SketchyEllipse implements SketchyShape{
      */
     @Override
     public void setCenter(Point2D point) {
+        this.record = null;
+        this.transform.invalidate();
         this.ellipse.setCenterX(point.getX());
         this.ellipse.setCenterY(point.getY());
     }
@@ -303,26 +411,125 @@ public class SketchyEllipse implements SketchyShape{
      * an ellipse. It then writes three ints representing R, G, and B. It writes two doubles
      * representing its center coodinates, and then another two doubles representing its width
      * and height. Lastly, it writes a double representing its angle of rotation.
+     * The entry is written from the ellipse's record, by RecordFormat.
      * @param io
      */
     @Override
     public void writeToFile(CS15FileIO io) {
-        io.writeString("ellipse");
+        RecordFormat.write(io, this.toRecord());
+    }
+
+    /**
+     * This method returns an immutable record of the ellipse's current state. The record is
+     * cached, and the same record is handed back until the ellipse is changed, so that document
+     * snapshots can share it.
+     * @return
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        if (this.record == null) {
+            Point2D center = this.getCenter();
+            this.record = new ShapeRecord(this.id, ShapeType.ELLIPSE, this.color, center.getX(), center.getY(),
+                    this.getWidth(), this.getHeight(), this.getAngle(), null, null, this.layer)
+                    .withGroups(this.groups);
+        }
+        return this.record;
+    }
 
-        //RGB
-        io.writeInt((int)(this.color.getRed() * Constants.RGB));
-        io.writeInt((int)(this.color.getGreen() * Constants.RGB));
-        io.writeInt((int)(this.color.getBlue() * Constants.RGB));
+    /**
+     * This method puts the ellipse back into the state described by the given record, which
+     * must be one of its own records. Afterwards, the record becomes its cached record again.
+     * @param record
+     */
+    @Override
+    public void restore(ShapeRecord record) {
+        this.setColor(record.getColor());
+        this.ellipse.setCenterX(record.getCenterX());
+        this.ellipse.setCenterY(record.getCenterY());
+        this.ellipse.setRadiusX(record.getWidth());
+        this.ellipse.setRadiusY(record.getHeight());
+        this.ellipse.setRotate(record.getAngle());
+        this.layer = record.getLayer();
+        this.groups = record.getGroups();
+        this.record = record;
+        this.transform.invalidate();
+    }
 
-        //center
-        io.writeDouble(this.getCenter().getX());
-        io.writeDouble(this.getCenter().getY());
+    /**
+     * This method is an accessor for the ellipse's id, which stays the same for as long as
+     * the ellipse exists.
+     * @return
+     */
+    @Override
+    public int getId() {
+        return this.id;
+    }
 
-        //width and height
-        io.writeDouble(this.ellipse.getRadiusX());
-        io.writeDouble(this.ellipse.getRadiusY());
+    /**
+     * This method is an accessor for the id of the layer the ellipse is on.
+     * @return
+     */
+    @Override
+    public int getLayer() {
+        return this.layer;
+    }
+
+    /**
+     * This method moves the ellipse to the layer with the given id. Only its records change; the
+     * LayerStack decides how (and whether) the ellipse is drawn.
+     * @param layerId
+     */
+    @Override
+    public void setLayer(int layerId) {
+        this.layer = layerId;
+        this.record = null;
+    }
 
-        //angle
-        io.writeDouble(this.ellipse.getRotate());
+    /**
+     * This method is an accessor for the ids of the groups the ellipse is in, from the outermost
+     * one in, or null if it is not in any group.
+     * @return
+     */
+    @Override
+    public int[] getGroups() {
+        return this.groups;
+    }
+
+    /**
+     * This method puts the ellipse in the given groups (from the outermost one in, or null for
+     * none). The array must not be modified afterwards.
+     * @param groupIds
+     */
+    @Override
+    public void setGroups(int[] groupIds) {
+        this.groups = groupIds;
+        this.record = null;
+    }
+
+    /**
+     * This method creates a new SketchyEllipse (which is not yet added to the pane) from a record, for
+     * example one that was made by a transaction rather than by drawing. The new ellipse takes
+     * on the record's id, so it can be matched up with the record in later snapshots.
+     * @param record
+     * @param pane
+     * @return
+     */
+    public static SketchyEllipse fromRecord(ShapeRecord record, Pane pane) {
+        SketchyEllipse ellipse = new SketchyEllipse(new Point2D(record.getCenterX(), record.getCenterY()), pane, record.getColor());
+        ellipse.id = record.getId();
+        ellipse.restore(record);
+        ellipse.deselect();
+        return ellipse;
+    }
+
+    /**
+     * This method returns the wrapped ellipse. It is only meant for classes that manage the
+     * scene graph in bulk (for example, adding many nodes to the pane in a single change);
+     * everything else should go through the methods of this class.
+     * @return
+     */
+    @Override
+    public Node getNode() {
+        return this.ellipse;
     }
 }
@@ -2,10 +2,12 @@ package sketchy.shapes;
 
 import cs15.fnl.sketchySupport.CS15FileIO;
 import javafx.geometry.Point2D;
+import javafx.scene.Node;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
-import sketchy.main.Constants;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeType;
 import sketchy.main.Sketchy;
 import java.util.ArrayList;
 
@@ -20,6 +22,11 @@ public class SketchyRectangle implements SketchyShape{
     private Pane sketchyPane;
     private boolean currentlySelected;
     private Color color;
+    private int id;
+    private int layer;
+    private int[] groups;
+    private ShapeRecord record;
+    private ShapeTransform transform;
 
     /**
      * This is the SketchyRectangle constructor. It takes in three parameters: a Point2D
@@ -35,6 +42,11 @@ public class SketchyRectangle implements SketchyShape{
         this.rectangle = new Rectangle(clicked.getX(), clicked.getY(), 0, 0);
         this.rectangle.setFill(this.color);
         this.currentlySelected = true;
+        this.id = ShapeRecord.newId();
+        this.layer = 0;
+        this.groups = null;
+        this.record = null;
+        this.transform = new ShapeTransform();
     }
 
     /**
@@ -48,6 +60,8 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void rotate(Point2D curr, Point2D prev) {
+        this.record = null;
+        this.transform.invalidate();
         double centerX = this.rectangle.getX() + this.rectangle.getWidth() / 2;
         double centerY = this.rectangle.getY() + this.rectangle.getHeight() / 2;
         double angle = Math.toDegrees(Math.atan2(prev.getY() - centerY, prev.getX() - centerX) -
@@ -64,6 +78,8 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void translate(Point2D curr, Point2D prev) {
+        this.record = null;
+        this.transform.invalidate();
         double diffX = curr.getX() - prev.getX();
         double diffY = curr.getY() - prev.getY();
         this.rectangle.setX(diffX + this.rectangle.getX());
@@ -83,6 +99,8 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void resize(Point2D currMousePos, Sketchy sketchy) {
+        this.record = null;
+        this.transform.invalidate();
         //calculate center of rectangle
         Point2D center = new Point2D(this.rectangle.getX() + this.rectangle.getWidth() / 2,
                 this.rectangle.getY() + this.rectangle.getHeight() / 2);
@@ -126,8 +144,9 @@ public class SketchyRectangle implements SketchyShape{
 
     /**
      * This method has the rectangle add itself both graphically and logically. It takes in
-     * four parameters to do so: the index in the shapes array, its index in the pane's list
-     * of children, the arraylist of shapes, and the arraylist of saveables.
+     * four parameters to do so: the index in the shapes array (which is also its index in
+     * the arraylist of saveables), its index in its layer's pane's list of children, the
+     * arraylist of shapes, and the arraylist of saveables.
      * @param index
      * @param paneIndex
      * @param shapes
@@ -136,8 +155,8 @@ public class SketchyRectangle implements SketchyShape{
     @Override
     public void add(int index, int paneIndex, ArrayList<SketchyShape> shapes, ArrayList<Saveable> saveables) {
         shapes.add(index, this);
-        saveables.add(paneIndex, this);
-        this.sketchyPane.getChildren().add(index, this.rectangle);
+        saveables.add(index, this);
+        this.sketchyPane.getChildren().add(paneIndex, this.rectangle);
     }
 
     /**
@@ -147,6 +166,7 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void setColor(Color color) {
+        this.record = null;
         this.rectangle.setFill(color);
         this.color = color;
     }
@@ -161,27 +181,65 @@ public class SketchyRectangle implements SketchyShape{
     }
 
     /**
-     * This method is invoked when the rectangle is selected. It gives itself a black
-     * border, the width of the border is set, and its currentlySelected boolean instance variable
-     * is set to true.
+     * This method has the rectangle add itself graphically ONLY, at the given index in the
+     * pane's list of children.
+     * @param index
+     */
+    @Override
+    public void addToPane(int index) {
+        this.sketchyPane.getChildren().add(index, this.rectangle);
+    }
+
+    /**
+     * This method has the rectangle remove itself graphically ONLY. It removes itself
+     * from the pane.
+     */
+    @Override
+    public void removeFromPane() {
+        this.sketchyPane.getChildren().remove(this.rectangle);
+    }
+
+    /**
+     * This method sets the pane the rectangle adds itself to, which is the pane of the layer it
+     * is on. The rectangle must not be on a pane when this is called.
+     * @param pane
+     */
+    @Override
+    public void setPane(Pane pane) {
+        this.sketchyPane = pane;
+    }
+
+    /**
+     * This method is invoked when the rectangle is selected. Its currentlySelected boolean
+     * instance variable is set to true. The rectangle itself is not restyled; its border and
+     * handles are drawn on the selection overlay instead (see createSelectionChrome).
      */
     @Override
     public void select() {
-        this.rectangle.setStroke(Constants.BORDER_COLOR);
-        this.rectangle.setStrokeWidth(Constants.BORDER_WIDTH);
         this.currentlySelected = true;
     }
 
     /**
-     * This method is invoked when the rectangle is deselected. It removes its border,
-     * and currentlySelected is set to be false.
+     * This method is invoked when the rectangle is deselected, and currentlySelected is
+     * set to be false.
      */
     @Override
     public void deselect() {
-        this.rectangle.setStroke(null);
         this.currentlySelected = false;
     }
 
+    /**
+     * This method creates the selection chrome for the rectangle: a border with the same
+     * geometry as the rectangle, and a handle at each corner. The chrome's properties are bound
+     * to the rectangle's, so it follows the rectangle as it is moved, resized, and rotated
+     * without the rectangle ever being restyled.
+     * @return
+     */
+    @Override
+    public Node createSelectionChrome() {
+        return SelectionChrome.createBox(this.rectangle);
+    }
+
     /**
      * This method has the rectangle graphically raise or lower itself, based on the value of the
      * integer provided as an argument. It first removes itself from the pane's list of children,
@@ -206,18 +264,36 @@ public class SketchyRectangle implements SketchyShape{
 
     /**
      * This method returns whether or not a certain point is within the bounds
-     * of a shape. It does this by taking in two arguments, x and y, representing the x and
-     * y coordinates of the clicked point, and checking whether the rectangle contains them.
+     * of a shape. It takes in two arguments, x and y, representing the x and y coordinates of
+     * the clicked point in scene coordinates (the rectangle accounts for its own rotation). Points
+     * outside the rectangle's cached bounding box are rejected right away; the rest are mapped into
+     * the rectangle's unrotated frame with its cached inverse rotation and checked exactly.
      * @param x
      * @param y
      * @return
      */
     @Override
     public boolean contains(double x, double y) {
-        if (this.rectangle.contains(x, y)) {
-            return true;
+        if (!this.getTransform().boundsContain(x, y)) {
+            return false;
+        }
+        return Math.abs(this.transform.toLocalX(x, y)) <= this.rectangle.getWidth() / 2
+                && Math.abs(this.transform.toLocalY(x, y)) <= this.rectangle.getHeight() / 2;
+    }
+
+    /**
+     * This method is an accessor for the rectangle's cached transform, which includes its
+     * axis-aligned bounding box. The transform is brought up to date first if needed.
+     * @return
+     */
+    @Override
+    public ShapeTransform getTransform() {
+        if (!this.transform.isValid()) {
+            Point2D center = this.getCenter();
+            this.transform.update(center.getX(), center.getY(), this.rectangle.getWidth() / 2,
+                    this.rectangle.getHeight() / 2, this.rectangle.getRotate(), false);
         }
-        return false;
+        return this.transform;
     }
 
     /**
@@ -255,6 +331,8 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void setAngle(double angle) {
+        this.record = null;
+        this.transform.invalidate();
         this.rectangle.setRotate(angle);
     }
 
@@ -283,6 +361,8 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void setWidth(double width) {
+        this.record = null;
+        this.transform.invalidate();
         this.rectangle.setWidth(width);
     }
 
@@ -293,6 +373,8 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void setHeight(double height) {
+        this.record = null;
+        this.transform.invalidate();
         this.rectangle.setHeight(height);
     }
 
@@ -313,6 +395,8 @@ public class SketchyRectangle implements SketchyShape{
      */
     @Override
     public void setCenter(Point2D point) {
+        this.record = null;
+        this.transform.invalidate();
         this.rectangle.setX(point.getX() - this.rectangle.getWidth() / 2);
         this.rectangle.setY(point.getY() - this.rectangle.getHeight() / 2);
     }
@@ -323,26 +407,125 @@ public class SketchyRectangle implements SketchyShape{
      * a rectangle. It then writes three ints representing R, G, and B. It writes two doubles
      * representing its coodinates, and then another two doubles representing its width
      * and height. Lastly, it writes a double representing its angle of rotation.
+     * The entry is written from the rectangle's record, by RecordFormat.
      * @param io
      */
     @Override
     public void writeToFile(CS15FileIO io) {
-        io.writeString("rectangle");
+        RecordFormat.write(io, this.toRecord());
+    }
+
+    /**
+     * This method returns an immutable record of the rectangle's current state. The record is
+     * cached, and the same record is handed back until the rectangle is changed, so that document
+     * snapshots can share it.
+     * @return
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        if (this.record == null) {
+            Point2D center = this.getCenter();
+            this.record = new ShapeRecord(this.id, ShapeType.RECTANGLE, this.color, center.getX(), center.getY(),
+                    this.getWidth(), this.getHeight(), this.getAngle(), null, null, this.layer)
+                    .withGroups(this.groups);
+        }
+        return this.record;
+    }
 
-        //RGB
-        io.writeInt((int)(this.color.getRed() * Constants.RGB));
-        io.writeInt((int)(this.color.getGreen() * Constants.RGB));
-        io.writeInt((int)(this.color.getBlue() * Constants.RGB));
+    /**
+     * This method puts the rectangle back into the state described by the given record, which
+     * must be one of its own records. Afterwards, the record becomes its cached record again.
+     * @param record
+     */
+    @Override
+    public void restore(ShapeRecord record) {
+        this.setColor(record.getColor());
+        this.rectangle.setWidth(record.getWidth());
+        this.rectangle.setHeight(record.getHeight());
+        this.rectangle.setX(record.getCenterX() - record.getWidth() / 2);
+        this.rectangle.setY(record.getCenterY() - record.getHeight() / 2);
+        this.rectangle.setRotate(record.getAngle());
+        this.layer = record.getLayer();
+        this.groups = record.getGroups();
+        this.record = record;
+        this.transform.invalidate();
+    }
 
-        //x and y
-        io.writeDouble(this.rectangle.getX());
-        io.writeDouble(this.rectangle.getY());
+    /**
+     * This method is an accessor for the rectangle's id, which stays the same for as long as
+     * the rectangle exists.
+     * @return
+     */
+    @Override
+    public int getId() {
+        return this.id;
+    }
 
-        //width and height
-        io.writeDouble(this.rectangle.getWidth());
-        io.writeDouble(this.rectangle.getHeight());
+    /**
+     * This method is an accessor for the id of the layer the rectangle is on.
+     * @return
+     */
+    @Override
+    public int getLayer() {
+        return this.layer;
+    }
+
+    /**
+     * This method moves the rectangle to the layer with the given id. Only its records change; the
+     * LayerStack decides how (and whether) the rectangle is drawn.
+     * @param layerId
+     */
+    @Override
+    public void setLayer(int layerId) {
+        this.layer = layerId;
+        this.record = null;
+    }
 
-        //angle
-        io.writeDouble(this.rectangle.getRotate());
+    /**
+     * This method is an accessor for the ids of the groups the rectangle is in, from the outermost
+     * one in, or null if it is not in any group.
+     * @return
+     */
+    @Override
+    public int[] getGroups() {
+        return this.groups;
+    }
+
+    /**
+     * This method puts the rectangle in the given groups (from the outermost one in, or null for
+     * none). The array must not be modified afterwards.
+     * @param groupIds
+     */
+    @Override
+    public void setGroups(int[] groupIds) {
+        this.groups = groupIds;
+        this.record = null;
+    }
+
+    /**
+     * This method creates a new SketchyRectangle (which is not yet added to the pane) from a record, for
+     * example one that was made by a transaction rather than by drawing. The new rectangle takes
+     * on the record's id, so it can be matched up with the record in later snapshots.
+     * @param record
+     * @param pane
+     * @return
+     */
+    public static SketchyRectangle fromRecord(ShapeRecord record, Pane pane) {
+        SketchyRectangle rectangle = new SketchyRectangle(new Point2D(record.getCenterX(), record.getCenterY()), pane, record.getColor());
+        rectangle.id = record.getId();
+        rectangle.restore(record);
+        rectangle.deselect();
+        return rectangle;
+    }
+
+    /**
+     * This method returns the wrapped rectangle. It is only meant for classes that manage the
+     * scene graph in bulk (for example, adding many nodes to the pane in a single change);
+     * everything else should go through the methods of this class.
+     * @return
+     */
+    @Override
+    public Node getNode() {
+        return this.rectangle;
     }
 }
@@ -0,0 +1,533 @@
+package sketchy.shapes;
+
+import cs15.fnl.sketchySupport.CS15FileIO;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import sketchy.document.ShapeRecord;
+import sketchy.document.Symbol;
+import sketchy.main.Constants;
+import sketchy.main.Sketchy;
+import java.util.ArrayList;
+
+/**
+ * This is the SymbolInstance class. It is one placement of a Symbol in the drawing. It
+ * implements the SketchyShape interface, and by extension, the Saveable interface, so it can be
+ * selected, moved, rotated, resized, filled, raised, lowered, and deleted like any other shape.
+ *
+ * The instance does not hold any of the symbol's members. It is drawn by an ImageView showing
+ * the symbol's bitmap (shared with every other instance at about the same scale, through
+ * SymbolRasters), stretched over the instance's box. The box itself is kept in a Rectangle that
+ * is never added to the pane, so the instance moves, rotates, and resizes exactly like a
+ * SketchyRectangle, and its selection chrome is the same. Filling an instance draws every
+ * member of the symbol in that color.
+ */
+public class SymbolInstance implements SketchyShape {
+
+    private Rectangle frame;
+    private ImageView view;
+    private Pane sketchyPane;
+    private SymbolRasters rasters;
+    private Symbol symbol;
+    private Color colorOverride;
+    private boolean currentlySelected;
+    private int id;
+    private int layer;
+    private int[] groups;
+    private ShapeRecord record;
+    private ShapeTransform transform;
+
+    /**
+     * This is the SymbolInstance constructor. It takes in the symbol, the center of the
+     * instance, the scale it is drawn at, the sketchy pane, and the cache of symbol bitmaps.
+     * The instance is drawn in its members' own colors.
+     * @param placed
+     * @param center
+     * @param scale
+     * @param pane
+     * @param symbolRasters
+     */
+    public SymbolInstance(Symbol placed, Point2D center, double scale, Pane pane, SymbolRasters symbolRasters) {
+        this.sketchyPane = pane;
+        this.rasters = symbolRasters;
+        this.symbol = placed;
+        this.colorOverride = null;
+        this.frame = new Rectangle(center.getX() - placed.getWidth() * scale / 2,
+                center.getY() - placed.getHeight() * scale / 2, placed.getWidth() * scale, placed.getHeight() * scale);
+        this.view = new ImageView();
+        this.view.setPreserveRatio(false);
+        this.view.setSmooth(true);
+        this.currentlySelected = true;
+        this.id = ShapeRecord.newId();
+        this.layer = 0;
+        this.groups = null;
+        this.record = null;
+        this.transform = new ShapeTransform();
+        this.place();
+    }
+
+    /**
+     * This method rotates the instance based on two Point2Ds: one representing the point to
+     * rotate to (curr), and one representing the previous mouse point, in the same way as
+     * SketchyRectangle.
+     * @param curr
+     * @param prev
+     */
+    @Override
+    public void rotate(Point2D curr, Point2D prev) {
+        Point2D center = this.getCenter();
+        double angle = Math.toDegrees(Math.atan2(prev.getY() - center.getY(), prev.getX() - center.getX()) -
+                Math.atan2(curr.getY() - center.getY(), curr.getX() - center.getX()));
+        this.setAngle(this.frame.getRotate() - angle);
+    }
+
+    /**
+     * This method translates the instance by the difference between the current point (curr)
+     * and the previous point (prev).
+     * @param curr
+     * @param prev
+     */
+    @Override
+    public void translate(Point2D curr, Point2D prev) {
+        Point2D center = this.getCenter();
+        this.setCenter(new Point2D(center.getX() + curr.getX() - prev.getX(),
+                center.getY() + curr.getY() - prev.getY()));
+    }
+
+    /**
+     * This method resizes the instance from its center, so that its corner follows the new
+     * mouse position, in the same way as SketchyRectangle. The mouse position is first rotated
+     * into the instance's unrotated frame with the Sketchy class' rotatePoint method. The symbol
+     * is stretched to fill the new box.
+     * @param currMousePos
+     * @param sketchy
+     */
+    @Override
+    public void resize(Point2D currMousePos, Sketchy sketchy) {
+        Point2D center = this.getCenter();
+        Point2D rotated = sketchy.rotatePoint(currMousePos, center, this.frame.getRotate());
+        this.frame.setWidth(2 * Math.abs(rotated.getX() - center.getX()));
+        this.frame.setHeight(2 * Math.abs(rotated.getY() - center.getY()));
+        this.setCenter(center);
+    }
+
+    /**
+     * This method has the instance delete itself. It first removes itself from the arraylist
+     * of shapes, then from the arraylist of saveables. Lastly, it graphically removes
+     * itself from the sketchyPane.
+     * @param shapeArray
+     * @param saveables
+     */
+    @Override
+    public void delete(ArrayList<SketchyShape> shapeArray, ArrayList<Saveable> saveables) {
+        shapeArray.remove(this);
+        saveables.remove(this);
+        this.sketchyPane.getChildren().remove(this.view);
+    }
+
+    /**
+     * This method has the instance add itself both graphically and logically, at its index in
+     * the shapes array (and the arraylist of saveables) and its index in its layer's pane's list of
+     * children.
+     * @param index
+     * @param paneIndex
+     * @param shapes
+     * @param saveables
+     */
+    @Override
+    public void add(int index, int paneIndex, ArrayList<SketchyShape> shapes, ArrayList<Saveable> saveables) {
+        shapes.add(index, this);
+        saveables.add(index, this);
+        this.sketchyPane.getChildren().add(paneIndex, this.view);
+    }
+
+    /**
+     * This method draws every member of the symbol in the given color, or, if the color is
+     * null, in their own colors again.
+     * @param color
+     */
+    @Override
+    public void setColor(Color color) {
+        this.record = null;
+        this.colorOverride = color;
+        this.place();
+    }
+
+    /**
+     * This method has the instance add itself graphically ONLY. It adds itself to the pane.
+     */
+    @Override
+    public void addToPane() {
+        this.sketchyPane.getChildren().add(this.view);
+    }
+
+    /**
+     * This method has the instance add itself graphically ONLY, at the given index in the
+     * pane's list of children.
+     * @param index
+     */
+    @Override
+    public void addToPane(int index) {
+        this.sketchyPane.getChildren().add(index, this.view);
+    }
+
+    /**
+     * This method has the instance remove itself graphically ONLY. It removes itself from
+     * the pane.
+     */
+    @Override
+    public void removeFromPane() {
+        this.sketchyPane.getChildren().remove(this.view);
+    }
+
+    /**
+     * This method sets the pane the instance adds itself to, which is the pane of the layer it
+     * is on. The instance must not be on a pane when this is called.
+     * @param pane
+     */
+    @Override
+    public void setPane(Pane pane) {
+        this.sketchyPane = pane;
+    }
+
+    /**
+     * This method is invoked when the instance is selected. Its border and handles are drawn
+     * on the selection overlay (see createSelectionChrome).
+     */
+    @Override
+    public void select() {
+        this.currentlySelected = true;
+    }
+
+    /**
+     * This method is invoked when the instance is deselected.
+     */
+    @Override
+    public void deselect() {
+        this.currentlySelected = false;
+    }
+
+    /**
+     * This method creates the selection chrome for the instance, which is the same as a
+     * rectangle's: a border around its box, and a handle at each corner.
+     * @return
+     */
+    @Override
+    public Node createSelectionChrome() {
+        return SelectionChrome.createBox(this.frame);
+    }
+
+    /**
+     * This method has the instance graphically raise or lower itself to the provided index in
+     * the pane's list of children.
+     * @param moveToIndex
+     */
+    @Override
+    public void raiseOrLowerInPane(int moveToIndex) {
+        this.sketchyPane.getChildren().remove(this.view);
+        this.sketchyPane.getChildren().add(moveToIndex, this.view);
+    }
+
+    /**
+     * This method returns whether the instance is currently selected.
+     * @return
+     */
+    @Override
+    public boolean isSelected() {
+        return this.currentlySelected;
+    }
+
+    /**
+     * This method returns whether a point (in scene coordinates) is within the instance's box.
+     * As with a rectangle, points outside the cached bounding box are rejected right away, and
+     * the rest are mapped into the box's unrotated frame and checked exactly. The whole box
+     * counts, including the transparent parts of the symbol's bitmap.
+     * @param x
+     * @param y
+     * @return
+     */
+    @Override
+    public boolean contains(double x, double y) {
+        if (!this.getTransform().boundsContain(x, y)) {
+            return false;
+        }
+        return Math.abs(this.transform.toLocalX(x, y)) <= this.frame.getWidth() / 2
+                && Math.abs(this.transform.toLocalY(x, y)) <= this.frame.getHeight() / 2;
+    }
+
+    /**
+     * This method is an accessor for the instance's cached transform, which includes its
+     * axis-aligned bounding box. The transform is brought up to date first if needed.
+     * @return
+     */
+    @Override
+    public ShapeTransform getTransform() {
+        if (!this.transform.isValid()) {
+            Point2D center = this.getCenter();
+            this.transform.update(center.getX(), center.getY(), this.frame.getWidth() / 2,
+                    this.frame.getHeight() / 2, this.frame.getRotate(), false);
+        }
+        return this.transform;
+    }
+
+    /**
+     * This method is an accessor for the color every member is drawn in, which is null if the
+     * members are drawn in their own colors.
+     * @return
+     */
+    @Override
+    public Color getColor() {
+        return this.colorOverride;
+    }
+
+    /**
+     * This method is an accessor for the center of the instance, which is returned as a Point2D.
+     * @return
+     */
+    @Override
+    public Point2D getCenter() {
+        return new Point2D(this.frame.getX() + this.frame.getWidth() / 2,
+                this.frame.getY() + this.frame.getHeight() / 2);
+    }
+
+    /**
+     * This method is an accessor for the angle of rotation of the instance.
+     * @return
+     */
+    @Override
+    public double getAngle() {
+        return this.frame.getRotate();
+    }
+
+    /**
+     * This method sets the angle of rotation of the instance.
+     * @param angle
+     */
+    @Override
+    public void setAngle(double angle) {
+        this.frame.setRotate(angle);
+        this.place();
+    }
+
+    /**
+     * This method is an accessor for the width the instance is drawn at.
+     * @return
+     */
+    @Override
+    public double getWidth() {
+        return this.frame.getWidth();
+    }
+
+    /**
+     * This method is an accessor for the height the instance is drawn at.
+     * @return
+     */
+    @Override
+    public double getHeight() {
+        return this.frame.getHeight();
+    }
+
+    /**
+     * This method sets the width the instance is drawn at, keeping its top-left corner.
+     * @param width
+     */
+    @Override
+    public void setWidth(double width) {
+        this.frame.setWidth(width);
+        this.place();
+    }
+
+    /**
+     * This method sets the height the instance is drawn at, keeping its top-left corner.
+     * @param height
+     */
+    @Override
+    public void setHeight(double height) {
+        this.frame.setHeight(height);
+        this.place();
+    }
+
+    /**
+     * This method returns the instance's index in the pane's list of children.
+     * @return
+     */
+    @Override
+    public int getPaneIndex() {
+        return this.sketchyPane.getChildren().indexOf(this.view);
+    }
+
+    /**
+     * This method moves the instance so that its center is at the given point.
+     * @param point
+     */
+    @Override
+    public void setCenter(Point2D point) {
+        this.frame.setX(point.getX() - this.frame.getWidth() / 2);
+        this.frame.setY(point.getY() - this.frame.getHeight() / 2);
+        this.place();
+    }
+
+    /**
+     * This method writes the instance to a file: "instance", the id and version of its symbol,
+     * 1 and the RGB values of its color if it has one (or 0 if it does not), the x and y
+     * coordinates of its center, the width and height it is drawn at, and its angle. The
+     * symbol's members are written once, ahead of every instance (see Sketchy.save).
+     * The entry is written from the instance's record, by RecordFormat.
+     * @param io
+     */
+    @Override
+    public void writeToFile(CS15FileIO io) {
+        RecordFormat.write(io, this.toRecord());
+    }
+
+    /**
+     * This method returns an immutable record of the instance's current state. The record is
+     * cached, and the same record is handed back until the instance is changed.
+     * @return
+     */
+    @Override
+    public ShapeRecord toRecord() {
+        if (this.record == null) {
+            Point2D center = this.getCenter();
+            this.record = new ShapeRecord(this.id, this.symbol, this.colorOverride, center.getX(), center.getY(),
+                    this.getWidth(), this.getHeight(), this.getAngle(), this.layer).withGroups(this.groups);
+        }
+        return this.record;
+    }
+
+    /**
+     * This method puts the instance back into the state described by the given record, which
+     * must be one of its own records. The record may draw a different version of the symbol,
+     * for example after the symbol was redefined. Afterwards, the record becomes its cached
+     * record again.
+     * @param restored
+     */
+    @Override
+    public void restore(ShapeRecord restored) {
+        this.symbol = restored.getSymbol();
+        this.colorOverride = restored.getColor();
+        this.frame.setWidth(restored.getWidth());
+        this.frame.setHeight(restored.getHeight());
+        this.frame.setX(restored.getCenterX() - restored.getWidth() / 2);
+        this.frame.setY(restored.getCenterY() - restored.getHeight() / 2);
+        this.frame.setRotate(restored.getAngle());
+        this.layer = restored.getLayer();
+        this.groups = restored.getGroups();
+        this.place();
+        this.record = restored;
+    }
+
+    /**
+     * This method is an accessor for the instance's id, which stays the same for as long as
+     * the instance exists.
+     * @return
+     */
+    @Override
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * This method is an accessor for the id of the layer the instance is on.
+     * @return
+     */
+    @Override
+    public int getLayer() {
+        return this.layer;
+    }
+
+    /**
+     * This method moves the instance to the layer with the given id.
+     * @param layerId
+     */
+    @Override
+    public void setLayer(int layerId) {
+        this.layer = layerId;
+        this.record = null;
+    }
+
+    /**
+     * This method is an accessor for the ids of the groups the instance is in, from the outermost
+     * one in, or null if it is not in any group.
+     * @return
+     */
+    @Override
+    public int[] getGroups() {
+        return this.groups;
+    }
+
+    /**
+     * This method puts the instance in the given groups (from the outermost one in, or null for
+     * none). The array must not be modified afterwards.
+     * @param groupIds
+     */
+    @Override
+    public void setGroups(int[] groupIds) {
+        this.groups = groupIds;
+        this.record = null;
+    }
+
+    /**
+     * This method is an accessor for the symbol the instance draws.
+     * @return
+     */
+    public Symbol getSymbol() {
+        return this.symbol;
+    }
+
+    /**
+     * This method creates a new SymbolInstance (which is not yet added to the pane) from a
+     * record. The new instance takes on the record's id, so it can be matched up with the
+     * record in later snapshots.
+     * @param record
+     * @param pane
+     * @param symbolRasters
+     * @return
+     */
+    public static SymbolInstance fromRecord(ShapeRecord record, Pane pane, SymbolRasters symbolRasters) {
+        SymbolInstance instance = new SymbolInstance(record.getSymbol(),
+                new Point2D(record.getCenterX(), record.getCenterY()), 1, pane, symbolRasters);
+        instance.id = record.getId();
+        instance.restore(record);
+        instance.deselect();
+        return instance;
+    }
+
+    /**
+     * This method returns the ImageView that draws the instance. It is only meant for classes
+     * that manage the scene graph in bulk; everything else should go through the methods of
+     * this class.
+     * @return
+     */
+    @Override
+    public Node getNode() {
+        return this.view;
+    }
+
+    /**
+     * This helper method is called whenever the instance changes. It drops the cached record
+     * and transform, stretches the ImageView over the instance's box, and shows the symbol's
+     * bitmap for the scale the instance is now drawn at (which is usually the one it already
+     * shows).
+     */
+    private void place() {
+        this.record = null;
+        this.transform.invalidate();
+        double width = Math.max(Constants.MIN_SYMBOL_SIZE, this.frame.getWidth());
+        double height = Math.max(Constants.MIN_SYMBOL_SIZE, this.frame.getHeight());
+        this.view.setX(this.frame.getX());
+        this.view.setY(this.frame.getY());
+        this.view.setFitWidth(width);
+        this.view.setFitHeight(height);
+        this.view.setRotate(this.frame.getRotate());
+        double scale = Math.max(width / this.symbol.getWidth(), height / this.symbol.getHeight());
+        Image image = this.rasters.getImage(this.symbol, scale, this.colorOverride);
+        if (this.view.getImage() != image) {
+            this.view.setImage(image);
+        }
+    }
+}
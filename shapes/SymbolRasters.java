@@ -0,0 +1,143 @@
+package sketchy.shapes;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Scale;
+import sketchy.document.ShapeRecord;
+import sketchy.document.ShapeType;
+import sketchy.document.Symbol;
+import sketchy.main.Constants;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+/**
+ * This is the SymbolRasters class. It keeps the bitmaps that instances of symbols are drawn
+ * from, so that a symbol placed a thousand times is drawn once rather than as a thousand copies
+ * of its members. There is one bitmap per symbol per scale (and per color, for instances whose
+ * members are all drawn in one color), and every instance drawn at about the same scale shares
+ * it. Scales are rounded up to the next power of the square root of two, so a bitmap is never
+ * stretched by more than that, and resizing an instance only draws a new bitmap every so often.
+ *
+ * The bitmaps of a symbol are only kept while the symbol itself is (that is, while some record
+ * the drawing or its history can reach still refers to it), so redefining a symbol lets the
+ * bitmaps of its old version go once nothing can bring it back.
+ */
+public class SymbolRasters {
+
+    private static final double LEVEL_STEP = Math.sqrt(2);
+
+    private WeakHashMap<Symbol, HashMap<String, Image>> images;
+
+    /**
+     * This is the SymbolRasters constructor. The cache starts out empty.
+     */
+    public SymbolRasters() {
+        this.images = new WeakHashMap<>();
+    }
+
+    /**
+     * This method returns the bitmap to draw the given symbol from at the given scale, drawing
+     * it first if no instance has needed it yet. If the color is not null, every member is
+     * drawn in it. The bitmap covers the symbol's bounds, and is at least as detailed as the
+     * scale needs (up to Constants.MAX_SYMBOL_RASTER_SIZE pixels on a side).
+     * @param symbol
+     * @param scale
+     * @param colorOverride
+     * @return
+     */
+    public Image getImage(Symbol symbol, double scale, Color colorOverride) {
+        double level = this.levelFor(symbol, scale);
+        HashMap<String, Image> rasters = this.images.computeIfAbsent(symbol, (Symbol key) -> new HashMap<>());
+        String key = level + " " + colorOverride;
+        Image image = rasters.get(key);
+        if (image == null) {
+            image = this.render(symbol, level, colorOverride);
+            rasters.put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * This method returns the number of bitmaps in the cache.
+     * @return
+     */
+    public int size() {
+        int count = 0;
+        for (HashMap<String, Image> rasters : this.images.values()) {
+            count += rasters.size();
+        }
+        return count;
+    }
+
+    /**
+     * This method empties the cache.
+     */
+    public void clear() {
+        this.images.clear();
+    }
+
+    /**
+     * This helper method rounds the scale an instance is drawn at up to the scale its bitmap is
+     * drawn at: the next power of LEVEL_STEP, within the limits in Constants, and no larger than
+     * keeps the bitmap within Constants.MAX_SYMBOL_RASTER_SIZE.
+     * @param symbol
+     * @param scale
+     * @return
+     */
+    private double levelFor(Symbol symbol, double scale) {
+        double clamped = Math.max(Constants.MIN_SYMBOL_RASTER_SCALE, Math.min(Constants.MAX_SYMBOL_RASTER_SCALE, scale));
+        double level = Math.pow(LEVEL_STEP, Math.ceil(Math.log(clamped) / Math.log(LEVEL_STEP) - 1e-9));
+        double largest = Constants.MAX_SYMBOL_RASTER_SIZE / Math.max(symbol.getWidth(), symbol.getHeight());
+        while (level > largest && level > Constants.MIN_SYMBOL_RASTER_SCALE) {
+            level /= LEVEL_STEP;
+        }
+        return level;
+    }
+
+    /**
+     * This helper method draws the bitmap of a symbol at the given scale. The members are made
+     * into nodes on a scratch pane, which is never shown, and a snapshot of the pane is taken
+     * with a transparent background.
+     * @param symbol
+     * @param level
+     * @param colorOverride
+     * @return
+     */
+    private Image render(Symbol symbol, double level, Color colorOverride) {
+        Pane scratch = new Pane();
+        for (ShapeRecord member : symbol.getMembers()) {
+            if (colorOverride != null) {
+                member = member.withColor(colorOverride);
+            }
+            this.createMember(member, scratch).addToPane(scratch.getChildren().size());
+        }
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        parameters.setTransform(new Scale(level, level));
+        double width = Math.max(1, Math.ceil(symbol.getWidth() * level));
+        double height = Math.max(1, Math.ceil(symbol.getHeight() * level));
+        parameters.setViewport(new Rectangle2D(-symbol.getWidth() * level / 2, -symbol.getHeight() * level / 2,
+                width, height));
+        return scratch.snapshot(parameters, null);
+    }
+
+    /**
+     * This helper method creates the Saveable that draws one member of a symbol on the given
+     * pane. Members are only ever rectangles, ellipses, and lines.
+     * @param member
+     * @param pane
+     * @return
+     */
+    private Saveable createMember(ShapeRecord member, Pane pane) {
+        if (member.getType() == ShapeType.RECTANGLE) {
+            return SketchyRectangle.fromRecord(member, pane);
+        }
+        if (member.getType() == ShapeType.ELLIPSE) {
+            return SketchyEllipse.fromRecord(member, pane);
+        }
+        return CurvedLine.fromRecord(member, pane);
+    }
+}
@@ -0,0 +1,268 @@
+package sketchy.document;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This is the VectorHitTester class. It is the BulkHitTester that uses the Vector API
+ * (jdk.incubator.vector): the ShapeStore's columns are loaded a vector of shapes at a time, and
+ * the containment and bounds math is done for every shape in the vector at once. Both the
+ * rectangle and the ellipse result are computed for each lane, and the shape's type picks
+ * between them only for the lanes where one of them matched. The shapes left over at the end of
+ * the store, fewer than a whole vector, go through ScalarHitTester's math.
+ *
+ * intersecting only uses the vectors to rule out shapes whose bounds miss the region; the few
+ * shapes left are checked exactly by ScalarHitTester.intersects.
+ *
+ * This class needs the jdk.incubator.vector module, both to compile and to run, so it is kept
+ * out of the rest of the program in a source tree of its own (vector/), which is compiled on its
+ * own with --add-modules jdk.incubator.vector, into the same output as the rest. Nothing refers
+ * to it by name: BulkHitTester.create() loads it by reflection, and falls back to
+ * ScalarHitTester when it was not compiled or the module is missing when the program is run.
+ */
+public class VectorHitTester implements BulkHitTester {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int DOUBLE_BYTES = 8;
+
+    /**
+     * This method finds every shape that contains the given point.
+     * @param store
+     * @param x
+     * @param y
+     * @param handles
+     * @return
+     */
+    @Override
+    public int containing(ShapeStore store, double x, double y, int[] handles) {
+        ScalarHitTester.checkRoom(store, handles);
+        ByteBuffer centerXs = store.getCenterXColumn();
+        ByteBuffer centerYs = store.getCenterYColumn();
+        ByteBuffer widths = store.getWidthColumn();
+        ByteBuffer heights = store.getHeightColumn();
+        ByteBuffer cosines = store.getCosineColumn();
+        ByteBuffer sines = store.getSineColumn();
+        ByteBuffer types = store.getTypeColumn();
+        int size = store.size();
+        int bound = SPECIES.loopBound(size);
+        int found = 0;
+        for (int slot = 0; slot < bound; slot += SPECIES.length()) {
+            int offset = slot * DOUBLE_BYTES;
+            DoubleVector dx = load(centerXs, offset).neg().add(x);
+            DoubleVector dy = load(centerYs, offset).neg().add(y);
+            DoubleVector cosine = load(cosines, offset);
+            DoubleVector sine = load(sines, offset);
+            DoubleVector width = load(widths, offset);
+            DoubleVector height = load(heights, offset);
+            DoubleVector localX = dx.mul(cosine).add(dy.mul(sine));
+            DoubleVector localY = dy.mul(cosine).sub(dx.mul(sine));
+
+            VectorMask<Double> inRectangle = localX.abs().compare(VectorOperators.LE, width.mul(0.5))
+                    .and(localY.abs().compare(VectorOperators.LE, height.mul(0.5)));
+            DoubleVector unitX = localX.div(width);
+            DoubleVector unitY = localY.div(height);
+            VectorMask<Double> inEllipse = unitX.mul(unitX).add(unitY.mul(unitY)).compare(VectorOperators.LE, 1.0);
+            found = collect(store, types, slot, inRectangle.toLong(), inEllipse.toLong(), handles, found);
+        }
+        for (int slot = bound; slot < size; slot++) {
+            int offset = slot * DOUBLE_BYTES;
+            if (ScalarHitTester.contains(ScalarHitTester.isEllipse(types, slot), centerXs.getDouble(offset),
+                    centerYs.getDouble(offset), widths.getDouble(offset), heights.getDouble(offset),
+                    cosines.getDouble(offset), sines.getDouble(offset), x, y)) {
+                handles[found] = store.handleAt(slot);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method finds every shape that lies entirely inside the given region.
+     * @param store
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param handles
+     * @return
+     */
+    @Override
+    public int within(ShapeStore store, double minX, double minY, double maxX, double maxY, int[] handles) {
+        ScalarHitTester.checkRoom(store, handles);
+        ByteBuffer centerXs = store.getCenterXColumn();
+        ByteBuffer centerYs = store.getCenterYColumn();
+        ByteBuffer widths = store.getWidthColumn();
+        ByteBuffer heights = store.getHeightColumn();
+        ByteBuffer cosines = store.getCosineColumn();
+        ByteBuffer sines = store.getSineColumn();
+        ByteBuffer types = store.getTypeColumn();
+        int size = store.size();
+        int bound = SPECIES.loopBound(size);
+        int found = 0;
+        for (int slot = 0; slot < bound; slot += SPECIES.length()) {
+            int offset = slot * DOUBLE_BYTES;
+            DoubleVector centerX = load(centerXs, offset);
+            DoubleVector centerY = load(centerYs, offset);
+            DoubleVector cosine = load(cosines, offset);
+            DoubleVector sine = load(sines, offset);
+            DoubleVector width = load(widths, offset);
+            DoubleVector height = load(heights, offset);
+
+            //a rectangle's half-extents are half its size
+            DoubleVector halfWidth = width.mul(0.5);
+            DoubleVector halfHeight = height.mul(0.5);
+            DoubleVector extentX = halfWidth.mul(cosine).abs().add(halfHeight.mul(sine).abs());
+            DoubleVector extentY = halfWidth.mul(sine).abs().add(halfHeight.mul(cosine).abs());
+            VectorMask<Double> rectangleWithin = inside(centerX, centerY, extentX, extentY, minX, minY, maxX, maxY);
+
+            //an ellipse's half-extents are its radii
+            DoubleVector radiusCosX = width.mul(cosine);
+            DoubleVector radiusSinY = height.mul(sine);
+            DoubleVector radiusSinX = width.mul(sine);
+            DoubleVector radiusCosY = height.mul(cosine);
+            extentX = radiusCosX.mul(radiusCosX).add(radiusSinY.mul(radiusSinY)).sqrt();
+            extentY = radiusSinX.mul(radiusSinX).add(radiusCosY.mul(radiusCosY)).sqrt();
+            VectorMask<Double> ellipseWithin = inside(centerX, centerY, extentX, extentY, minX, minY, maxX, maxY);
+            found = collect(store, types, slot, rectangleWithin.toLong(), ellipseWithin.toLong(), handles, found);
+        }
+        for (int slot = bound; slot < size; slot++) {
+            int offset = slot * DOUBLE_BYTES;
+            boolean ellipse = ScalarHitTester.isEllipse(types, slot);
+            double halfWidth = ScalarHitTester.halfWidth(ellipse, widths.getDouble(offset));
+            double halfHeight = ScalarHitTester.halfWidth(ellipse, heights.getDouble(offset));
+            double extentX = ScalarHitTester.extentX(ellipse, halfWidth, halfHeight,
+                    cosines.getDouble(offset), sines.getDouble(offset));
+            double extentY = ScalarHitTester.extentY(ellipse, halfWidth, halfHeight,
+                    cosines.getDouble(offset), sines.getDouble(offset));
+            double centerX = centerXs.getDouble(offset);
+            double centerY = centerYs.getDouble(offset);
+            if (centerX - extentX >= minX && centerX + extentX <= maxX
+                    && centerY - extentY >= minY && centerY + extentY <= maxY) {
+                handles[found] = store.handleAt(slot);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method finds every shape that overlaps the given region. The vectors rule out the
+     * shapes that are too far away: whatever its type and angle, a shape's bounds never reach
+     * further from its center than its width plus its height (which covers an ellipse's radii
+     * as well as a rectangle's half-diagonal). The remaining shapes are checked exactly.
+     * @param store
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @param handles
+     * @return
+     */
+    @Override
+    public int intersecting(ShapeStore store, double minX, double minY, double maxX, double maxY, int[] handles) {
+        ScalarHitTester.checkRoom(store, handles);
+        ByteBuffer centerXs = store.getCenterXColumn();
+        ByteBuffer centerYs = store.getCenterYColumn();
+        ByteBuffer widths = store.getWidthColumn();
+        ByteBuffer heights = store.getHeightColumn();
+        ByteBuffer cosines = store.getCosineColumn();
+        ByteBuffer sines = store.getSineColumn();
+        ByteBuffer types = store.getTypeColumn();
+        int size = store.size();
+        int bound = SPECIES.loopBound(size);
+        int found = 0;
+        for (int slot = 0; slot < size; slot += SPECIES.length()) {
+            long candidates;
+            if (slot < bound) {
+                int offset = slot * DOUBLE_BYTES;
+                DoubleVector centerX = load(centerXs, offset);
+                DoubleVector centerY = load(centerYs, offset);
+                DoubleVector reach = load(widths, offset).add(load(heights, offset));
+                candidates = centerX.add(reach).compare(VectorOperators.GE, minX)
+                        .and(centerX.sub(reach).compare(VectorOperators.LE, maxX))
+                        .and(centerY.add(reach).compare(VectorOperators.GE, minY))
+                        .and(centerY.sub(reach).compare(VectorOperators.LE, maxY)).toLong();
+            }
+            else {
+                candidates = (1L << (size - slot)) - 1;
+            }
+            while (candidates != 0) {
+                int candidate = slot + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                int offset = candidate * DOUBLE_BYTES;
+                if (ScalarHitTester.intersects(ScalarHitTester.isEllipse(types, candidate),
+                        centerXs.getDouble(offset), centerYs.getDouble(offset), widths.getDouble(offset),
+                        heights.getDouble(offset), cosines.getDouble(offset), sines.getDouble(offset),
+                        minX, minY, maxX, maxY)) {
+                    handles[found] = store.handleAt(candidate);
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This helper method loads a vector of doubles from a column, starting at the given byte
+     * offset.
+     * @param column
+     * @param offset
+     * @return
+     */
+    private static DoubleVector load(ByteBuffer column, int offset) {
+        return DoubleVector.fromByteBuffer(SPECIES, column, offset, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * This helper method returns the lanes whose bounds, given by their centers and extents,
+     * lie inside the region.
+     * @param centerX
+     * @param centerY
+     * @param extentX
+     * @param extentY
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return
+     */
+    private static VectorMask<Double> inside(DoubleVector centerX, DoubleVector centerY, DoubleVector extentX,
+                                             DoubleVector extentY, double minX, double minY, double maxX, double maxY) {
+        return centerX.sub(extentX).compare(VectorOperators.GE, minX)
+                .and(centerX.add(extentX).compare(VectorOperators.LE, maxX))
+                .and(centerY.sub(extentY).compare(VectorOperators.GE, minY))
+                .and(centerY.add(extentY).compare(VectorOperators.LE, maxY));
+    }
+
+    /**
+     * This helper method adds the handles of the lanes that matched to the array of handles,
+     * and returns the new count. Each lane is a match if it is a rectangle and its bit is set in
+     * rectangleBits, or an ellipse and its bit is set in ellipseBits.
+     * @param store
+     * @param types
+     * @param slot
+     * @param rectangleBits
+     * @param ellipseBits
+     * @param handles
+     * @param found
+     * @return
+     */
+    private static int collect(ShapeStore store, ByteBuffer types, int slot, long rectangleBits, long ellipseBits,
+                               int[] handles, int found) {
+        long either = rectangleBits | ellipseBits;
+        while (either != 0) {
+            int lane = Long.numberOfTrailingZeros(either);
+            either &= either - 1;
+            long matched = ScalarHitTester.isEllipse(types, slot + lane) ? ellipseBits : rectangleBits;
+            if ((matched & (1L << lane)) != 0) {
+                handles[found] = store.handleAt(slot + lane);
+                found++;
+            }
+        }
+        return found;
+    }
+}